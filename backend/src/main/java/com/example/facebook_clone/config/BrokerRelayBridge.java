@@ -0,0 +1,114 @@
+package com.example.facebook_clone.config;
+
+import java.nio.charset.StandardCharsets;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import com.example.facebook_clone.service.BrokerRelay;
+
+/**
+ * Nối simple broker cục bộ với BrokerRelay (khi app.websocket.broker là local hoặc mongo).
+ * Chặn mọi tin đi vào brokerChannel tới /topic/** và /user/{userId}/** rồi phát qua relay; tin nhận từ instance khác
+ * được đưa lại vào brokerChannel kèm header đánh dấu để không bị phát lại. Tin /user/ được mỗi instance
+ * phân giải theo các phiên của người nhận đang nối vào chính nó. Các service vẫn gửi bằng SimpMessagingTemplate.
+ */
+@Component
+public class BrokerRelayBridge implements ChannelInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BrokerRelayBridge.class);
+
+    private static final String RELAYED_HEADER = "relayedFrom";
+    private static final String TOPIC_PREFIX = "/topic/";
+    private static final String USER_PREFIX = "/user/";
+
+    @Autowired(required = false)
+    private BrokerRelay brokerRelay;
+
+    @Lazy
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    /**
+     * Có relay nào được cấu hình không
+     */
+    public boolean isEnabled() {
+        return brokerRelay != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (brokerRelay != null) {
+            brokerRelay.start(this::deliver);
+            logger.info("Đã bật relay WebSocket {} cho instance {}",
+                brokerRelay.getClass().getSimpleName(), brokerRelay.getNodeId());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (brokerRelay != null) {
+            brokerRelay.stop();
+        }
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (brokerRelay == null
+                || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || destination == null || !(destination.startsWith(TOPIC_PREFIX) || destination.startsWith(USER_PREFIX))
+                || headers.containsKey(RELAYED_HEADER)) {
+            return message;
+        }
+
+        byte[] payload;
+        if (message.getPayload() instanceof byte[] bytes) {
+            payload = bytes;
+        } else if (message.getPayload() instanceof String text) {
+            payload = text.getBytes(StandardCharsets.UTF_8);
+        } else {
+            return message;
+        }
+
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        try {
+            brokerRelay.publish(new BrokerRelay.Frame(brokerRelay.getNodeId(), destination,
+                contentType != null ? contentType.toString() : null, payload));
+        } catch (RuntimeException e) {
+            // Client nối vào instance này vẫn nhận được tin
+            logger.error("Không thể phát tin {} qua relay", destination, e);
+        }
+        return message;
+    }
+
+    private void deliver(BrokerRelay.Frame frame) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(frame.destination());
+        if (frame.contentType() != null) {
+            accessor.setContentType(MimeType.valueOf(frame.contentType()));
+        }
+        accessor.setHeader(RELAYED_HEADER, frame.originNodeId());
+        accessor.setLeaveMutable(true);
+        messagingTemplate.send(frame.destination(),
+            MessageBuilder.createMessage(frame.payload(), accessor.getMessageHeaders()));
+    }
+}
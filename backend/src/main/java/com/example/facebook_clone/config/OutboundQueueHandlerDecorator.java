@@ -0,0 +1,71 @@
+package com.example.facebook_clone.config;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.springframework.lang.NonNull;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import com.example.facebook_clone.service.WebSocketMetricsService;
+
+/**
+ * Bọc mỗi phiên WebSocket mới trong QueuedSessionDecorator trước khi giao cho STOMP,
+ * để mọi lần gửi (kể cả frame lỗi/heartbeat) đi qua hàng đợi riêng của phiên
+ */
+class OutboundQueueHandlerDecorator extends WebSocketHandlerDecorator {
+
+    private final Executor drainExecutor;
+    private final WebSocketMetricsService metrics;
+    private final int maxQueuedFrames;
+    private final int maxBatchChars;
+    private final long sendTimeLimitMs;
+
+    private final Map<String, QueuedSessionDecorator> sessions = new ConcurrentHashMap<>();
+
+    OutboundQueueHandlerDecorator(WebSocketHandler delegate, Executor drainExecutor, WebSocketMetricsService metrics,
+                                  int maxQueuedFrames, int maxBatchChars, long sendTimeLimitMs) {
+        super(delegate);
+        this.drainExecutor = drainExecutor;
+        this.metrics = metrics;
+        this.maxQueuedFrames = maxQueuedFrames;
+        this.maxBatchChars = maxBatchChars;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+    }
+
+    @Override
+    public void afterConnectionEstablished(@NonNull WebSocketSession session) throws Exception {
+        QueuedSessionDecorator queued = new QueuedSessionDecorator(
+            session, drainExecutor, metrics, maxQueuedFrames, maxBatchChars, sendTimeLimitMs);
+        sessions.put(session.getId(), queued);
+        metrics.register(queued);
+        super.afterConnectionEstablished(queued);
+    }
+
+    @Override
+    public void handleMessage(@NonNull WebSocketSession session, @NonNull WebSocketMessage<?> message) throws Exception {
+        super.handleMessage(queued(session), message);
+    }
+
+    @Override
+    public void handleTransportError(@NonNull WebSocketSession session, @NonNull Throwable exception) throws Exception {
+        super.handleTransportError(queued(session), exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus closeStatus) throws Exception {
+        WebSocketSession queued = queued(session);
+        sessions.remove(session.getId());
+        metrics.unregister(session.getId());
+        super.afterConnectionClosed(queued, closeStatus);
+    }
+
+    private WebSocketSession queued(WebSocketSession session) {
+        QueuedSessionDecorator queued = sessions.get(session.getId());
+        return queued != null ? queued : session;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.facebook_clone.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import com.example.facebook_clone.service.PresenceService;
+
+/**
+ * Làm mới trạng thái hoạt động của phiên trong PresenceService với mọi frame từ client, kể cả heartbeat.
+ * CONNECT và DISCONNECT được PresenceService xử lý qua sự kiện phiên.
+ */
+@Component
+public class PresenceChannelInterceptor implements ChannelInterceptor {
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId != null && type != SimpMessageType.CONNECT && type != SimpMessageType.DISCONNECT) {
+            presenceService.touch(sessionId, SimpMessageHeaderAccessor.getUser(headers));
+        }
+        return message;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.facebook_clone.config;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import com.example.facebook_clone.service.WebSocketMetricsService;
+
+/**
+ * Hàng đợi gửi riêng cho một phiên WebSocket.
+ * sendMessage chỉ đưa frame vào hàng đợi rồi trả về, nên luồng của kênh outbound không bị giữ bởi client chậm.
+ * Một tác vụ xả hàng đợi gộp các frame STOMP văn bản liên tiếp thành một tin WebSocket (tối đa maxBatchChars ký tự).
+ * Phiên có quá maxQueuedFrames frame chờ hoặc frame cũ nhất chờ quá sendTimeLimitMs bị đóng.
+ */
+class QueuedSessionDecorator extends WebSocketSessionDecorator implements WebSocketMetricsService.SessionQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueuedSessionDecorator.class);
+
+    private record Pending(WebSocketMessage<?> message, long enqueuedAt) {
+    }
+
+    private final Executor drainExecutor;
+    private final WebSocketMetricsService metrics;
+    private final int maxQueuedFrames;
+    private final int maxBatchChars;
+    private final long sendTimeLimitMs;
+
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean dropped = new AtomicBoolean();
+
+    QueuedSessionDecorator(WebSocketSession session, Executor drainExecutor, WebSocketMetricsService metrics,
+                           int maxQueuedFrames, int maxBatchChars, long sendTimeLimitMs) {
+        super(session);
+        this.drainExecutor = drainExecutor;
+        this.metrics = metrics;
+        this.maxQueuedFrames = maxQueuedFrames;
+        this.maxBatchChars = maxBatchChars;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+    }
+
+    @Override
+    public String getSessionId() {
+        return getId();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    @Override
+    public long getOldestPendingMs() {
+        Pending oldest = queue.peek();
+        return oldest == null ? 0 : System.currentTimeMillis() - oldest.enqueuedAt();
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (dropped.get() || !isOpen()) {
+            return;
+        }
+        queue.add(new Pending(message, System.currentTimeMillis()));
+        if (depth.incrementAndGet() > maxQueuedFrames || getOldestPendingMs() > sendTimeLimitMs) {
+            drop(true);
+            return;
+        }
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            drainExecutor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Pending head;
+            while (!dropped.get() && (head = queue.poll()) != null) {
+                int frames = 1;
+                WebSocketMessage<?> toSend = head.message();
+
+                // Gộp các frame văn bản liên tiếp (mỗi frame STOMP kết thúc bằng ký tự NULL)
+                if (toSend instanceof TextMessage first) {
+                    StringBuilder batch = null;
+                    int size = first.getPayload().length();
+                    Pending next;
+                    while ((next = queue.peek()) != null && next.message() instanceof TextMessage text
+                            && size + text.getPayload().length() <= maxBatchChars) {
+                        if (batch == null) {
+                            batch = new StringBuilder(first.getPayload());
+                        }
+                        queue.poll();
+                        batch.append(text.getPayload());
+                        size = batch.length();
+                        frames++;
+                    }
+                    if (batch != null) {
+                        toSend = new TextMessage(batch);
+                    }
+                }
+                depth.addAndGet(-frames);
+
+                long start = System.nanoTime();
+                try {
+                    getDelegate().sendMessage(toSend);
+                    metrics.recordSend(frames, System.nanoTime() - start);
+                } catch (IOException | RuntimeException e) {
+                    metrics.recordSendFailure();
+                    logger.debug("Không thể gửi tới phiên {}: {}", getId(), e.getMessage());
+                    drop(false);
+                    return;
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+        // Frame có thể được thêm vào sau lần poll cuối nhưng trước khi bỏ cờ draining
+        if (!queue.isEmpty() && !dropped.get()) {
+            scheduleDrain();
+        }
+    }
+
+    private void drop(boolean slowConsumer) {
+        if (!dropped.compareAndSet(false, true)) {
+            return;
+        }
+        if (slowConsumer) {
+            metrics.recordDroppedSession();
+            logger.warn("Đóng phiên WebSocket {} vì nhận chậm ({} frame đang chờ)", getId(), depth.get());
+        }
+        queue.clear();
+        depth.set(0);
+        // Đóng ở luồng khác để không chặn luồng gửi nếu kết nối đang treo
+        drainExecutor.execute(() -> {
+            try {
+                getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Không thể đóng phiên {}: {}", getId(), e.getMessage());
+            }
+        });
+    }
+}
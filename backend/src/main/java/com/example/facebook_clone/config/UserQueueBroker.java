@@ -0,0 +1,124 @@
+package com.example.facebook_clone.config;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+
+/**
+ * Broker cho hàng đợi riêng của từng người dùng (/user/queue/*) khi dùng simple broker.
+ * UserDestinationMessageHandler đổi /user/{userId}/queue/x thành /queue/x-user{sessionId} cho mỗi phiên của người nhận;
+ * đích đó chỉ thuộc về đúng một phiên nên broker này tra subscription bằng một lần đọc map
+ * thay vì so khớp đích với mọi subscription như simple broker.
+ */
+class UserQueueBroker extends AbstractBrokerMessageHandler {
+
+    private static final String QUEUE_PREFIX = "/queue/";
+    private static final String SESSION_SUFFIX = "-user";
+
+    private record Target(String sessionId, String subscriptionId) {
+    }
+
+    // Đích đã phân giải -> subscription của phiên sở hữu
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+    // sessionId -> (subscriptionId -> đích đã phân giải), dùng khi hủy đăng ký hoặc ngắt kết nối
+    private final Map<String, Map<String, String>> sessionDestinations = new ConcurrentHashMap<>();
+
+    UserQueueBroker(SubscribableChannel clientInboundChannel, MessageChannel clientOutboundChannel,
+                    SubscribableChannel brokerChannel) {
+        super(clientInboundChannel, clientOutboundChannel, brokerChannel, List.of(QUEUE_PREFIX));
+    }
+
+    @Override
+    protected void startInternal() {
+        publishBrokerAvailableEvent();
+    }
+
+    @Override
+    protected void handleMessageInternal(@NonNull Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+
+        if (type == SimpMessageType.MESSAGE) {
+            if (destination != null && checkDestinationPrefix(destination)) {
+                deliver(destination, message);
+            }
+        } else if (type == SimpMessageType.SUBSCRIBE) {
+            if (destination != null && checkDestinationPrefix(destination) && sessionId != null && subscriptionId != null) {
+                subscribe(sessionId, subscriptionId, destination);
+            }
+        } else if (type == SimpMessageType.UNSUBSCRIBE) {
+            if (sessionId != null && subscriptionId != null) {
+                unsubscribe(sessionId, subscriptionId);
+            }
+        } else if (type == SimpMessageType.DISCONNECT) {
+            if (sessionId != null) {
+                removeSession(sessionId);
+            }
+        }
+    }
+
+    private void subscribe(String sessionId, String subscriptionId, String destination) {
+        // Chỉ chấp nhận đích do UserDestinationMessageHandler tạo cho chính phiên này,
+        // client không thể đăng ký thẳng hàng đợi của phiên khác
+        if (!destination.endsWith(SESSION_SUFFIX + sessionId)) {
+            logger.debug("Bỏ qua đăng ký " + destination + " từ phiên " + sessionId);
+            return;
+        }
+        sessionDestinations.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).put(subscriptionId, destination);
+        // Mỗi phiên chỉ cần một subscription cho một hàng đợi; đăng ký lại thay subscription cũ
+        targets.put(destination, new Target(sessionId, subscriptionId));
+    }
+
+    private void unsubscribe(String sessionId, String subscriptionId) {
+        Map<String, String> destinations = sessionDestinations.get(sessionId);
+        if (destinations == null) {
+            return;
+        }
+        String destination = destinations.remove(subscriptionId);
+        if (destination != null) {
+            targets.remove(destination, new Target(sessionId, subscriptionId));
+        }
+    }
+
+    private void removeSession(String sessionId) {
+        Map<String, String> destinations = sessionDestinations.remove(sessionId);
+        if (destinations == null) {
+            return;
+        }
+        destinations.forEach((subscriptionId, destination) ->
+            targets.remove(destination, new Target(sessionId, subscriptionId)));
+    }
+
+    private void deliver(String destination, Message<?> message) {
+        Target target = targets.get(destination);
+        if (target == null) {
+            return;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(target.sessionId());
+        accessor.setSubscriptionId(target.subscriptionId());
+        // Giữ header simpOrigDestination để client thấy đích /user/queue/x đã đăng ký
+        accessor.copyHeadersIfAbsent(message.getHeaders());
+        accessor.setLeaveMutable(true);
+        try {
+            getClientOutboundChannelForSession(target.sessionId())
+                .send(MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders()));
+        } catch (RuntimeException e) {
+            logger.error("Không thể gửi tin " + destination + " tới phiên " + target.sessionId(), e);
+        }
+    }
+}
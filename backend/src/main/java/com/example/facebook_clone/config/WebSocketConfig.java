@@ -1,21 +1,136 @@
 package com.example.facebook_clone.config;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
-import org.springframework.scheduling.concurrent.DefaultManagedTaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.lang.NonNull;
 
+import com.example.facebook_clone.security.StompAuthChannelInterceptor;
+import com.example.facebook_clone.service.WebSocketMetricsService;
+
 /**
- * Cấu hình WebSocket cho giao tiếp thời gian thực
+ * Cấu hình WebSocket cho giao tiếp thời gian thực.
+ * app.websocket.broker chọn cách phát tin /topic/**:
+ * simple (một instance), local/mongo (simple broker + BrokerRelay giữa các instance)
+ * hoặc stomp (broker STOMP ngoài như RabbitMQ/ActiveMQ).
+ * Kênh inbound/outbound dùng executor có kích thước cấu hình được; mỗi phiên có hàng đợi gửi riêng
+ * (QueuedSessionDecorator) nên một client chậm không giữ luồng gửi của các client khác.
+ * CONNECT phải kèm JWT (StompAuthChannelInterceptor); tin riêng của người dùng đi qua /user/queue/*
+ * và được UserQueueBroker giao thẳng tới phiên của người nhận. Mọi frame từ client làm mới trạng thái trực tuyến
+ * (PresenceChannelInterceptor).
  */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Value("${app.websocket.broker:simple}")
+    private String brokerMode;
+
+    @Value("${app.websocket.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${app.websocket.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${app.websocket.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${app.websocket.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${app.websocket.inbound.core-pool-size:4}")
+    private int inboundCorePoolSize;
+
+    @Value("${app.websocket.inbound.max-pool-size:16}")
+    private int inboundMaxPoolSize;
+
+    @Value("${app.websocket.inbound.queue-capacity:1000}")
+    private int inboundQueueCapacity;
+
+    @Value("${app.websocket.outbound.core-pool-size:4}")
+    private int outboundCorePoolSize;
+
+    @Value("${app.websocket.outbound.max-pool-size:16}")
+    private int outboundMaxPoolSize;
+
+    @Value("${app.websocket.outbound.queue-capacity:1000}")
+    private int outboundQueueCapacity;
+
+    @Value("${app.websocket.heartbeat-pool-size:2}")
+    private int heartbeatPoolSize;
+
+    // Chính sách client chậm: số frame chờ tối đa và thời gian chờ tối đa của frame cũ nhất
+    @Value("${app.websocket.session.max-queued-frames:1000}")
+    private int sessionMaxQueuedFrames;
+
+    @Value("${app.websocket.session.send-time-limit-ms:20000}")
+    private long sessionSendTimeLimitMs;
+
+    // Kích thước tối đa (ký tự) khi gộp nhiều frame vào một tin WebSocket
+    @Value("${app.websocket.session.max-batch-chars:65536}")
+    private int sessionMaxBatchChars;
+
+    @Autowired
+    private BrokerRelayBridge brokerRelayBridge;
+
+    @Autowired
+    private WebSocketMetricsService webSocketMetricsService;
+
+    @Autowired
+    private StompAuthChannelInterceptor stompAuthChannelInterceptor;
+
+    @Autowired
+    private PresenceChannelInterceptor presenceChannelInterceptor;
+
+    // Mỗi phiên xả hàng đợi trên một virtual thread riêng khi có frame
+    private final ExecutorService sessionDrainExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Scheduler gửi heartbeat của simple broker
+     */
+    @Bean
+    public ThreadPoolTaskScheduler webSocketHeartbeatScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(heartbeatPoolSize);
+        scheduler.setThreadNamePrefix("ws-heartbeat-");
+        return scheduler;
+    }
+
+    /**
+     * Broker cho /user/queue/* khi dùng simple broker (broker STOMP ngoài tự xử lý /queue)
+     */
+    @Bean
+    @ConditionalOnExpression("'${app.websocket.broker:simple}' != 'stomp'")
+    public UserQueueBroker userQueueBroker(@Qualifier("clientInboundChannel") SubscribableChannel clientInboundChannel,
+                                           @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                                           @Qualifier("brokerChannel") SubscribableChannel brokerChannel) {
+        UserQueueBroker broker = new UserQueueBroker(clientInboundChannel, clientOutboundChannel, brokerChannel);
+        broker.setPreservePublishOrder(true);
+        return broker;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sessionDrainExecutor.shutdown();
+    }
+
     /**
      * Cấu hình message broker
      *
@@ -23,10 +138,59 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
      */
     @Override
     public void configureMessageBroker(@NonNull MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic")
-            .setHeartbeatValue(new long[]{25000, 25000})
-            .setTaskScheduler(new DefaultManagedTaskScheduler());
+        if ("stomp".equals(brokerMode)) {
+            // Cần thêm reactor-netty vào classpath khi dùng broker STOMP ngoài
+            config.enableStompBrokerRelay("/topic", "/queue")
+                .setRelayHost(relayHost)
+                .setRelayPort(relayPort)
+                .setClientLogin(relayLogin)
+                .setClientPasscode(relayPasscode)
+                .setSystemLogin(relayLogin)
+                .setSystemPasscode(relayPasscode)
+                .setSystemHeartbeatSendInterval(25000)
+                .setSystemHeartbeatReceiveInterval(25000)
+                // Tin /user/ của người dùng đang nối vào instance khác được phát lại qua broker
+                .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                .setUserRegistryBroadcast("/topic/simp-user-registry");
+        } else {
+            config.enableSimpleBroker("/topic")
+                .setHeartbeatValue(new long[]{25000, 25000})
+                .setTaskScheduler(webSocketHeartbeatScheduler());
+            if (brokerRelayBridge.isEnabled()) {
+                config.configureBrokerChannel().interceptors(brokerRelayBridge);
+            }
+        }
         config.setApplicationDestinationPrefixes("/app");
+        config.setUserDestinationPrefix("/user/");
+        // Kênh outbound chạy nhiều luồng: giữ thứ tự tin gửi tới cùng một phiên
+        config.setPreservePublishOrder(true);
+    }
+
+    /**
+     * Executor cho tin từ client (CONNECT, SUBSCRIBE, SEND); CONNECT được xác thực bằng JWT
+     *
+     * @param registration Đối tượng cấu hình ChannelRegistration
+     */
+    @Override
+    public void configureClientInboundChannel(@NonNull ChannelRegistration registration) {
+        registration.taskExecutor()
+            .corePoolSize(inboundCorePoolSize)
+            .maxPoolSize(inboundMaxPoolSize)
+            .queueCapacity(inboundQueueCapacity);
+        registration.interceptors(stompAuthChannelInterceptor, presenceChannelInterceptor);
+    }
+
+    /**
+     * Executor cho tin gửi tới client; chỉ đưa frame vào hàng đợi của phiên nên không bị chặn bởi mạng
+     *
+     * @param registration Đối tượng cấu hình ChannelRegistration
+     */
+    @Override
+    public void configureClientOutboundChannel(@NonNull ChannelRegistration registration) {
+        registration.taskExecutor()
+            .corePoolSize(outboundCorePoolSize)
+            .maxPoolSize(outboundMaxPoolSize)
+            .queueCapacity(outboundQueueCapacity);
     }
 
     /**
@@ -54,7 +218,10 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     public void configureWebSocketTransport(@NonNull WebSocketTransportRegistration registration) {
         registration.setMessageSizeLimit(512 * 1024)
                    .setSendBufferSizeLimit(1024 * 1024)
-                   .setSendTimeLimit(20000);
+                   .setSendTimeLimit(20000)
+                   .addDecoratorFactory(handler -> new OutboundQueueHandlerDecorator(handler,
+                       sessionDrainExecutor, webSocketMetricsService,
+                       sessionMaxQueuedFrames, sessionMaxBatchChars, sessionSendTimeLimitMs));
     }
 }
 
@@ -15,6 +15,7 @@ import com.example.facebook_clone.model.User;
 import com.example.facebook_clone.repository.UserRepository;
 import com.example.facebook_clone.security.JwtUtil;
 import com.example.facebook_clone.service.EmailService;
+import com.example.facebook_clone.service.UserCacheService;
 
 /**
  * Controller xử lý các API liên quan đến xác thực người dùng
@@ -32,6 +33,9 @@ public class AuthController {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private UserCacheService userCacheService;
+
     /**
      * Đăng ký tài khoản mới
      *
@@ -48,6 +52,7 @@ public class AuthController {
 
             // Lưu user mới
             User savedUser = userRepository.save(user);
+            userCacheService.invalidate(savedUser.getId());
 
             // Tạo JWT token
             String token = jwtUtil.generateToken(savedUser.getId(), savedUser.getEmail(), savedUser.getRole());
@@ -1,24 +1,29 @@
 package com.example.facebook_clone.controller;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.facebook_clone.model.Comment;
-import com.example.facebook_clone.model.Post;
-import com.example.facebook_clone.repository.PostRepository;
+import com.example.facebook_clone.model.FeedCursor;
+import com.example.facebook_clone.model.LikeToggleResult;
+import com.example.facebook_clone.model.PostEvent;
+import com.example.facebook_clone.repository.CommentRepository;
+import com.example.facebook_clone.service.CommentService;
 import com.example.facebook_clone.service.NotificationService;
+import com.example.facebook_clone.service.PostEventService;
+import com.example.facebook_clone.service.PostHydrationService;
 
 /**
  * Controller xử lý các API liên quan đến bình luận
@@ -27,14 +32,23 @@ import com.example.facebook_clone.service.NotificationService;
 @RequestMapping("/api/comments")
 public class CommentController {
 
+    private static final int DEFAULT_REPLY_LIMIT = 20;
+    private static final int MAX_REPLY_LIMIT = 100;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
     @Autowired
-    private PostRepository postRepository;
+    private CommentService commentService;
+
+    @Autowired
+    private PostHydrationService postHydrationService;
 
     @Autowired
     private NotificationService notificationService;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private PostEventService postEventService;
 
     /**
      * Lấy thông tin chi tiết của một bình luận
@@ -45,35 +59,59 @@ public class CommentController {
     @GetMapping("/{commentId}")
     public ResponseEntity<?> getCommentById(@PathVariable String commentId) {
         try {
-            // Lấy tất cả bài đăng
-            List<Post> allPosts = postRepository.findAll();
-
-            // Tìm kiếm bình luận trong tất cả bài đăng
-            for (Post post : allPosts) {
-                if (post.getComments() != null) {
-                    Comment foundComment = findCommentById(post.getComments(), commentId);
-                    if (foundComment != null) {
-                        // Trả về bình luận kèm ID bài đăng
-                        Map<String, Object> result = new HashMap<>();
-                        result.put("id", foundComment.getId());
-                        result.put("content", foundComment.getContent());
-                        result.put("userId", foundComment.getUserId());
-                        result.put("createdAt", foundComment.getCreatedAt());
-                        result.put("parentId", foundComment.getParentId());
-                        result.put("postId", post.getId());
-
-                        return ResponseEntity.ok(result);
-                    }
-                }
+            Optional<Comment> commentOptional = commentRepository.findById(commentId);
+            if (!commentOptional.isPresent()) {
+                return ResponseEntity.notFound().build();
             }
 
-            return ResponseEntity.notFound().build();
+            Comment foundComment = commentOptional.get();
+
+            // Trả về bình luận kèm ID bài đăng
+            Map<String, Object> result = new HashMap<>();
+            result.put("id", foundComment.getId());
+            result.put("content", foundComment.getContent());
+            result.put("userId", foundComment.getUserId());
+            result.put("createdAt", foundComment.getCreatedAt());
+            result.put("parentId", foundComment.getParentId());
+            result.put("postId", foundComment.getPostId());
+
+            return ResponseEntity.ok(result);
         } catch (Exception e) {
             // Xử lý lỗi
             return ResponseEntity.badRequest().body("Lỗi khi lấy thông tin bình luận: " + e.getMessage());
         }
     }
 
+    /**
+     * Lấy trang trả lời trực tiếp của một bình luận (cũ nhất trước)
+     *
+     * @param commentId ID bình luận cha
+     * @param cursor Con trỏ trang trước (không bắt buộc)
+     * @param limit Số trả lời tối đa (không bắt buộc)
+     * @return Danh sách trả lời và con trỏ trang tiếp theo (null nếu hết)
+     */
+    @GetMapping("/{commentId}/replies")
+    public ResponseEntity<?> getReplies(
+            @PathVariable String commentId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        try {
+            int pageSize = (limit == null || limit <= 0) ? DEFAULT_REPLY_LIMIT : Math.min(limit, MAX_REPLY_LIMIT);
+            FeedCursor replyCursor = (cursor == null || cursor.isEmpty()) ? null : FeedCursor.decode(cursor);
+            List<Comment> replies = commentService.findRepliesPage(commentId, replyCursor, pageSize);
+            postHydrationService.hydrateComments(replies);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("comments", replies);
+            response.put("nextCursor", replies.size() < pageSize
+                ? null
+                : FeedCursor.of(replies.get(replies.size() - 1)).encode());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     /**
      * Thích hoặc bỏ thích bình luận
      *
@@ -89,84 +127,46 @@ public class CommentController {
                 return ResponseEntity.badRequest().body("Cần cung cấp userId");
             }
 
-            // Lấy tất cả bài đăng
-            List<Post> allPosts = postRepository.findAll();
-
-            // Tìm kiếm bình luận trong tất cả bài đăng
-            for (Post post : allPosts) {
-                if (post.getComments() != null) {
-                    Comment foundComment = findCommentById(post.getComments(), commentId);
-                    if (foundComment != null) {
-                        // Khởi tạo danh sách thích nếu chưa có
-                        if (foundComment.getLikes() == null) {
-                            foundComment.setLikes(new ArrayList<>());
-                        }
-
-                        // Thêm/xóa lượt thích
-                        List<String> likes = foundComment.getLikes();
-                        boolean isLikeAction;
-                        if (likes.contains(userId)) {
-                            likes.remove(userId);
-                            isLikeAction = false;
-                        } else {
-                            likes.add(userId);
-                            isLikeAction = true;
-                        }
-
-                        // Lưu bài đăng
-                        Post savedPost = postRepository.save(post);
-
-                        // Gửi cập nhật qua WebSocket
-                        messagingTemplate.convertAndSend("/topic/posts/" + post.getId(), savedPost);
-
-                        // Tạo thông báo nếu đây là hành động thích (không phải bỏ thích)
-                        if (isLikeAction && !foundComment.getUserId().equals(userId)) {
-                            notificationService.createCommentLikeNotification(
-                                foundComment.getUserId(),
-                                userId,
-                                commentId
-                            );
-                        }
-
-                        // Trả về kết quả
-                        Map<String, Object> response = new HashMap<>();
-                        response.put("success", true);
-                        response.put("liked", isLikeAction);
-                        response.put("likes", likes.size());
-                        return ResponseEntity.ok(response);
-                    }
-                }
+            Optional<Comment> commentOptional = commentRepository.findById(commentId);
+            if (!commentOptional.isPresent()) {
+                return ResponseEntity.notFound().build();
             }
+            String postId = commentOptional.get().getPostId();
 
-            return ResponseEntity.notFound().build();
+            // Thêm/xóa lượt thích bằng cập nhật nguyên tử
+            LikeToggleResult result = commentService.toggleLike(commentId, userId);
+            if (result == null) {
+                return ResponseEntity.notFound().build();
+            }
+
+            // Gửi sự kiện thay đổi lượt thích bình luận qua WebSocket
+            Map<String, Object> eventData = new HashMap<>();
+            eventData.put("commentId", commentId);
+            eventData.put("userId", userId);
+            eventData.put("liked", result.isLiked());
+            eventData.put("likeCount", result.getLikeCount());
+            postEventService.publish(PostEvent.Type.COMMENT_LIKE_CHANGED, postId, eventData);
+
+            // Tạo thông báo nếu đây là hành động thích (không phải bỏ thích)
+            if (result.isLiked() && !userId.equals(result.getOwnerId())) {
+                notificationService.createCommentLikeNotification(
+                    result.getOwnerId(),
+                    userId,
+                    commentId
+                );
+            } else if (!result.isLiked() && result.getOwnerId() != null) {
+                notificationService.retractCommentLikeNotification(result.getOwnerId(), userId, commentId);
+            }
+
+            // Trả về kết quả
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("liked", result.isLiked());
+            response.put("likes", result.getLikeCount());
+            return ResponseEntity.ok(response);
         } catch (Exception e) {
             // Xử lý lỗi
             return ResponseEntity.badRequest().body("Lỗi khi thích bình luận: " + e.getMessage());
         }
     }
-
-    /**
-     * Tìm bình luận theo ID trong danh sách bình luận
-     *
-     * @param comments Danh sách bình luận cần tìm
-     * @param commentId ID bình luận cần tìm
-     * @return Bình luận tìm thấy hoặc null nếu không tìm thấy
-     */
-    private Comment findCommentById(List<Comment> comments, String commentId) {
-        if (comments == null) return null;
-
-        for (Comment comment : comments) {
-            if (comment.getId().equals(commentId)) {
-                return comment;
-            }
-            // Kiểm tra trong danh sách trả lời
-            if (comment.getReplies() != null) {
-                Comment found = findCommentById(comment.getReplies(), commentId);
-                if (found != null) {
-                    return found;
-                }
-            }
-        }
-        return null;
-    }
 }
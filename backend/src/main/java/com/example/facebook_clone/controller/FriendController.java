@@ -4,10 +4,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -21,8 +25,9 @@ import org.springframework.web.bind.annotation.RestController;
 import com.example.facebook_clone.model.Friend;
 import com.example.facebook_clone.model.User;
 import com.example.facebook_clone.repository.FriendRepository;
-import com.example.facebook_clone.repository.UserRepository;
+import com.example.facebook_clone.service.FriendSuggestionService;
 import com.example.facebook_clone.service.NotificationService;
+import com.example.facebook_clone.service.UserCacheService;
 
 /**
  * Controller xử lý các API liên quan đến bạn bè
@@ -31,11 +36,16 @@ import com.example.facebook_clone.service.NotificationService;
 @RequestMapping("/api/friends")
 public class FriendController {
 
+    private static final int SUGGESTION_LIMIT = 10;
+
     @Autowired
     private FriendRepository friendRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private FriendSuggestionService friendSuggestionService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
 
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
@@ -43,6 +53,9 @@ public class FriendController {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private UserCacheService userCacheService;
+
     /**
      * Gửi lời mời kết bạn
      *
@@ -81,13 +94,13 @@ public class FriendController {
 
             // Gửi thông báo WebSocket cho người nhận lời mời
             Map<String, Object> requestInfo = new HashMap<>();
-            User requestUser = userRepository.findById(userId).orElse(null);
+            User requestUser = userCacheService.findSummaryById(userId).orElse(null);
             requestInfo.put("requestId", savedRequest.getId());
             requestInfo.put("user", requestUser);
             requestInfo.put("type", "NEW_REQUEST");
 
             // Gửi đến topic của người nhận lời mời
-            messagingTemplate.convertAndSend("/topic/friends/" + friendId, requestInfo);
+            messagingTemplate.convertAndSendToUser(friendId, "/queue/friends", requestInfo);
 
             // Tạo thông báo cho lời mời kết bạn
             notificationService.createFriendRequestNotification(friendId, userId, savedRequest.getId());
@@ -132,7 +145,7 @@ public class FriendController {
                 Map<String, Object> notification = new HashMap<>();
                 notification.put("type", "REQUEST_REJECTED");
                 notification.put("requestId", requestId);
-                messagingTemplate.convertAndSend("/topic/friends/" + userId, notification);
+                messagingTemplate.convertAndSendToUser(userId, "/queue/friends", notification);
                 
                 // Xóa lời mời kết bạn
                 friendRepository.delete(friendRequest);
@@ -151,10 +164,11 @@ public class FriendController {
                     reverseRequest.setFriendId(friendRequest.getUserId());
                     reverseRequest.setStatus("ACCEPTED");
                     friendRepository.save(reverseRequest);
+                    friendSuggestionService.addFriendship(friendRequest.getUserId(), friendRequest.getFriendId());
 
                     // Lấy thông tin người dùng cho cả hai người
-                    User requestUser = userRepository.findById(friendRequest.getUserId()).orElse(null);
-                    User friendUser = userRepository.findById(friendRequest.getFriendId()).orElse(null);
+                    User requestUser = userCacheService.findSummaryById(friendRequest.getUserId()).orElse(null);
+                    User friendUser = userCacheService.findSummaryById(friendRequest.getFriendId()).orElse(null);
 
                     // Gửi thông báo WebSocket cho cả hai người dùng
                     if (requestUser != null && friendUser != null) {
@@ -162,7 +176,7 @@ public class FriendController {
                         Map<String, Object> notificationForRequester = new HashMap<>();
                         notificationForRequester.put("type", "REQUEST_ACCEPTED");
                         notificationForRequester.put("friend", friendUser);
-                        messagingTemplate.convertAndSend("/topic/friends/" + friendRequest.getUserId(), notificationForRequester);
+                        messagingTemplate.convertAndSendToUser(friendRequest.getUserId(), "/queue/friends", notificationForRequester);
 
                         // Tạo thông báo cho việc chấp nhận kết bạn
                         notificationService.createFriendAcceptNotification(friendRequest.getUserId(), friendRequest.getFriendId(), friendRequest.getId());
@@ -171,7 +185,7 @@ public class FriendController {
                         Map<String, Object> notificationForAccepter = new HashMap<>();
                         notificationForAccepter.put("type", "FRIEND_ADDED");
                         notificationForAccepter.put("friend", requestUser);
-                        messagingTemplate.convertAndSend("/topic/friends/" + friendRequest.getFriendId(), notificationForAccepter);
+                        messagingTemplate.convertAndSendToUser(friendRequest.getFriendId(), "/queue/friends", notificationForAccepter);
                     }
                 } catch (Exception e) {
                     // Ghi nhận lỗi nhưng vẫn tiếp tục xử lý
@@ -208,6 +222,7 @@ public class FriendController {
             if (!friendships2.isEmpty()) {
                 friendRepository.deleteAll(friendships2);
             }
+            friendSuggestionService.removeFriendship(userId, friendId);
 
             // Gửi thông báo WebSocket cho cả hai người dùng
             Map<String, Object> notification = new HashMap<>();
@@ -215,8 +230,8 @@ public class FriendController {
             notification.put("userId", userId);
             notification.put("friendId", friendId);
 
-            messagingTemplate.convertAndSend("/topic/friends/" + userId, notification);
-            messagingTemplate.convertAndSend("/topic/friends/" + friendId, notification);
+            messagingTemplate.convertAndSendToUser(userId, "/queue/friends", notification);
+            messagingTemplate.convertAndSendToUser(friendId, "/queue/friends", notification);
 
             return ResponseEntity.ok(Map.of("message", "Đã hủy kết bạn thành công"));
         } catch (Exception e) {
@@ -245,10 +260,13 @@ public class FriendController {
                     .map(Friend::getFriendId)
                     .collect(Collectors.toList());
 
-            List<User> friendUsers = userRepository.findAllById(friendIds);
+            Map<String, User> friendUsers = userCacheService.findSummariesByIds(friendIds);
 
-            // Đảm bảo trả về một mảng, ngay cả khi không tìm thấy user nào
-            List<User> result = friendUsers != null ? friendUsers : new ArrayList<>();
+            // Giữ thứ tự danh sách bạn bè, bỏ qua người dùng không còn tồn tại
+            List<User> result = friendIds.stream()
+                    .map(friendUsers::get)
+                    .filter(user -> user != null)
+                    .collect(Collectors.toList());
             return ResponseEntity.ok(result);
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of("error", "Lỗi khi lấy danh sách bạn bè: " + e.getMessage()));
@@ -269,8 +287,11 @@ public class FriendController {
             // Tạo map để lưu thông tin user và request id
             List<Map<String, Object>> result = new ArrayList<>();
 
+            Map<String, User> requestUsers = userCacheService.findSummariesByIds(
+                    pendingRequests.stream().map(Friend::getUserId).collect(Collectors.toList()));
+
             for (Friend request : pendingRequests) {
-                User requestUser = userRepository.findById(request.getUserId()).orElse(null);
+                User requestUser = requestUsers.get(request.getUserId());
                 if (requestUser != null) {
                     Map<String, Object> requestInfo = new HashMap<>();
                     requestInfo.put("requestId", request.getId());
@@ -286,7 +307,8 @@ public class FriendController {
     }
 
     /**
-     * Lấy danh sách gợi ý kết bạn
+     * Lấy danh sách gợi ý kết bạn: bạn của bạn bè, xếp theo số bạn chung.
+     * Nếu chưa đủ (ví dụ người dùng mới chưa có bạn), bổ sung thêm người dùng khác.
      *
      * @param userId ID người dùng cần lấy gợi ý kết bạn
      * @return Danh sách gợi ý kết bạn
@@ -294,31 +316,55 @@ public class FriendController {
     @GetMapping("/suggestions/{userId}")
     public ResponseEntity<?> getFriendSuggestions(@PathVariable String userId) {
         try {
-            // Lấy danh sách bạn bè hiện tại (chỉ lấy những người đã ACCEPTED)
-            List<Friend> friends = friendRepository.findByUserIdOrFriendIdAndStatus(userId, userId, "ACCEPTED");
-            Set<String> friendIds = friends.stream()
-                    .map(friend -> friend.getUserId().equals(userId) ? friend.getFriendId() : friend.getUserId())
-                    .collect(Collectors.toSet());
-
-            // Lấy danh sách lời mời kết bạn đang chờ (PENDING) mà người dùng đã gửi
-            List<Friend> pendingRequests = friendRepository.findByUserIdAndStatus(userId, "PENDING");
-            Set<String> pendingRequestIds = pendingRequests.stream()
-                    .map(Friend::getFriendId)
-                    .collect(Collectors.toSet());
-
-            // Thêm userId vào set để loại trừ
-            friendIds.add(userId);
+            // Loại trừ chính mình và các lời mời đang chờ theo cả hai chiều (bạn hiện tại đã được chỉ mục loại trừ)
+            Set<String> excludedIds = new HashSet<>();
+            excludedIds.add(userId);
+            friendRepository.findByUserIdAndStatus(userId, "PENDING")
+                    .forEach(request -> excludedIds.add(request.getFriendId()));
+            friendRepository.findByFriendIdAndStatus(userId, "PENDING")
+                    .forEach(request -> excludedIds.add(request.getUserId()));
+
+            // Lấy dư để bù cho người dùng đã bị xóa nhưng vẫn còn trong quan hệ bạn bè
+            List<FriendSuggestionService.Suggestion> ranked =
+                    friendSuggestionService.suggest(userId, excludedIds, SUGGESTION_LIMIT * 2);
+            Map<String, User> users = userCacheService.findSummariesByIds(ranked.stream()
+                    .map(FriendSuggestionService.Suggestion::getUserId)
+                    .collect(Collectors.toList()));
+
+            List<Map<String, Object>> suggestions = new ArrayList<>();
+            for (FriendSuggestionService.Suggestion suggestion : ranked) {
+                User user = users.get(suggestion.getUserId());
+                if (user != null && suggestions.size() < SUGGESTION_LIMIT) {
+                    suggestions.add(toSuggestion(user, suggestion.getMutualFriends()));
+                    excludedIds.add(user.getId());
+                }
+            }
 
-            // Lấy tất cả user trừ những người đã là bạn và những người đang có lời mời PENDING
-            List<User> allUsers = userRepository.findAll();
-            List<User> suggestions = allUsers.stream()
-                    .filter(user -> !friendIds.contains(user.getId()) && !pendingRequestIds.contains(user.getId()))
-                    .limit(10)
-                    .collect(Collectors.toList());
+            // Bổ sung người dùng không có bạn chung, loại trừ bạn hiện tại
+            if (suggestions.size() < SUGGESTION_LIMIT) {
+                friendRepository.findByUserIdAndStatus(userId, "ACCEPTED")
+                        .forEach(friend -> excludedIds.add(friend.getFriendId()));
+                Query query = new Query(Criteria.where("_id").nin(excludedIds))
+                        .limit(SUGGESTION_LIMIT - suggestions.size());
+                query.fields().include("firstName", "lastName", "avatar");
+                for (User user : mongoTemplate.find(query, User.class)) {
+                    suggestions.add(toSuggestion(user, 0));
+                }
+            }
 
             return ResponseEntity.ok(suggestions);
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of("error", "Lỗi khi lấy gợi ý kết bạn: " + e.getMessage()));
         }
     }
+
+    private static Map<String, Object> toSuggestion(User user, int mutualFriends) {
+        Map<String, Object> suggestion = new HashMap<>();
+        suggestion.put("id", user.getId());
+        suggestion.put("firstName", user.getFirstName());
+        suggestion.put("lastName", user.getLastName());
+        suggestion.put("avatar", user.getAvatar());
+        suggestion.put("mutualFriends", mutualFriends);
+        return suggestion;
+    }
 }
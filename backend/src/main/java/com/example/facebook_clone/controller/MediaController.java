@@ -0,0 +1,218 @@
+package com.example.facebook_clone.controller;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.facebook_clone.model.ImageVariant;
+import com.example.facebook_clone.service.FileStorageService;
+import com.example.facebook_clone.service.ImageVariantService;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Phục vụ file tải lên (/uploads/{tên}) và bản thu nhỏ của ảnh (/uploads/variants/{key}/{tên}).
+ * Hỗ trợ tải từng đoạn (Range, một đoạn mỗi request) để tua video, ETag mạnh theo SHA-256 của nội dung,
+ * If-None-Match/If-Modified-Since và If-Range. File lưu theo nội dung không bao giờ đổi nên được cache vĩnh viễn;
+ * file cũ dạng {millis}_{tên} giữ thời gian cache 1 giờ như trước.
+ * Nội dung được gửi bằng sendfile của Tomcat (FileChannel.transferTo thẳng vào socket, không chép qua heap);
+ * connector không hỗ trợ thì dùng FileChannel.transferTo vào output stream của response.
+ * Bản thu nhỏ chưa có được tạo ngay ở request đầu tiên và lưu trên đĩa; không tạo được thì chuyển hướng về ảnh gốc.
+ */
+@RestController
+public class MediaController {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaController.class);
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String IMMUTABLE_CACHE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable().getHeaderValue();
+    private static final String LEGACY_CACHE = CacheControl.maxAge(3600, TimeUnit.SECONDS).getHeaderValue();
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @GetMapping("/uploads/{*path}")
+    public void getFile(@PathVariable String path, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String name = fileStorageService.fileNameOf("/uploads" + path);
+        if (name == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        serve(name, fileStorageService.resolveFile(name), request, response);
+    }
+
+    @GetMapping(ImageVariant.URL_PREFIX + "{variant}/{*path}")
+    public void getVariant(@PathVariable String variant, @PathVariable String path,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String originalUrl = "/uploads" + path;
+        ImageVariant imageVariant = ImageVariant.fromKey(variant);
+        String name = fileStorageService.fileNameOf(originalUrl);
+        if (imageVariant == null || name == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        Path file = imageVariantService.resolve(name, imageVariant);
+        if (file == null) {
+            response.sendRedirect(originalUrl);
+            return;
+        }
+        serve(name, file, request, response);
+    }
+
+    private void serve(String name, Path file, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        if (!attributes.isRegularFile()) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        long length = attributes.size();
+        // Header HTTP chỉ chính xác tới giây
+        long lastModified = attributes.lastModifiedTime().toMillis() / 1000 * 1000;
+        String etag = "\"" + fileStorageService.contentHash(name, file, attributes) + "\"";
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+            fileStorageService.isContentAddressed(name) ? IMMUTABLE_CACHE : LEGACY_CACHE);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && length > 0 && ifRangeMatches(request, etag, lastModified)) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+                // Nhiều đoạn (multipart/byteranges) không được trình duyệt dùng khi phát video: trả toàn bộ file
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                    if (start >= length || start > end) {
+                        throw new IllegalArgumentException("Đoạn nằm ngoài file: " + rangeHeader);
+                    }
+                    response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+                }
+            } catch (IllegalArgumentException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+        }
+
+        long count = end - start + 1;
+        MediaType mediaType = MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        response.setContentType(mediaType.toString());
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat gửi đoạn file sau khi servlet trả về; end không bao gồm
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long sent = in.transferTo(position, end + 1 - position, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+            }
+        } catch (IOException e) {
+            // Thường là trình duyệt hủy request khi người dùng tua video; response đã gửi một phần nên không báo lỗi
+            logger.debug("Dừng gửi file {}: {}", name, e.getMessage());
+        }
+    }
+
+    private static boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String candidate = tag.trim();
+                // So sánh yếu: bỏ tiền tố W/
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals("*") || candidate.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
+    }
+
+    /**
+     * If-Range chỉ cho phép trả một đoạn khi client đang giữ đúng phiên bản này (so sánh mạnh)
+     */
+    private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        return dateHeader(request, HttpHeaders.IF_RANGE) == lastModified;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String header) {
+        try {
+            return request.getDateHeader(header);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
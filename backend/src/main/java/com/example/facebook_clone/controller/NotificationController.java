@@ -2,12 +2,14 @@ package com.example.facebook_clone.controller;
 
 import com.example.facebook_clone.model.Notification;
 import com.example.facebook_clone.model.User;
-import com.example.facebook_clone.repository.UserRepository;
+import com.example.facebook_clone.service.NotificationDispatcher;
 import com.example.facebook_clone.service.NotificationService;
+import com.example.facebook_clone.service.UserCacheService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,23 +23,37 @@ public class NotificationController {
     private NotificationService notificationService;
     
     @Autowired
-    private UserRepository userRepository;
+    private UserCacheService userCacheService;
+
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+
+    // Thống kê hàng đợi gửi thông báo (độ sâu, độ trễ, số bị bỏ)
+    @GetMapping("/pipeline/stats")
+    public ResponseEntity<?> getPipelineStats() {
+        return ResponseEntity.ok(notificationDispatcher.getStats());
+    }
     
     // Lấy tất cả thông báo của người dùng
     @GetMapping("/{userId}")
     public ResponseEntity<?> getNotifications(@PathVariable String userId) {
         try {
             List<Notification> notifications = notificationService.getNotificationsForUser(userId);
-            
-            // Lấy thông tin người gửi cho mỗi thông báo
+
+            // Lấy thông tin người gửi cho tất cả thông báo trong một lần
+            Map<String, User> senders = userCacheService.findSummariesByIds(notifications.stream()
+                .map(Notification::getSenderId)
+                .filter(senderId -> senderId != null)
+                .collect(Collectors.toSet()));
+
             List<Map<String, Object>> notificationsWithSender = notifications.stream()
                 .map(notification -> {
                     Map<String, Object> notificationData = new HashMap<>();
                     notificationData.put("notification", notification);
                     
-                    if (notification.getSenderId() != null) {
-                        userRepository.findById(notification.getSenderId())
-                            .ifPresent(sender -> notificationData.put("sender", sender));
+                    User sender = senders.get(notification.getSenderId());
+                    if (sender != null) {
+                        notificationData.put("sender", sender);
                     }
                     
                     return notificationData;
@@ -83,8 +99,29 @@ public class NotificationController {
     @PutMapping("/mark-all-read/{userId}")
     public ResponseEntity<?> markAllAsRead(@PathVariable String userId) {
         try {
-            notificationService.markAllAsRead(userId);
-            return ResponseEntity.ok(Map.of("message", "All notifications marked as read"));
+            long modified = notificationService.markAllAsRead(userId);
+            return ResponseEntity.ok(Map.of(
+                "message", "All notifications marked as read",
+                "modified", modified,
+                "unreadCount", notificationService.getUnreadCount(userId)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Đánh dấu đã đọc tới một thông báo (notificationId) hoặc một thời điểm (timestamp, epoch millis)
+    @PutMapping("/mark-read-up-to/{userId}")
+    public ResponseEntity<?> markAsReadUpTo(@PathVariable String userId, @RequestBody Map<String, Object> request) {
+        try {
+            String notificationId = (String) request.get("notificationId");
+            Object timestamp = request.get("timestamp");
+            Date upTo = timestamp == null ? null : new Date(((Number) timestamp).longValue());
+
+            long modified = notificationService.markAsReadUpTo(userId, notificationId, upTo);
+            return ResponseEntity.ok(Map.of(
+                "modified", modified,
+                "unreadCount", notificationService.getUnreadCount(userId)));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -107,8 +144,8 @@ public class NotificationController {
     @DeleteMapping("/all/{userId}")
     public ResponseEntity<?> deleteAllNotifications(@PathVariable String userId) {
         try {
-            notificationService.deleteAllNotificationsForUser(userId);
-            return ResponseEntity.ok(Map.of("message", "All notifications deleted"));
+            long deleted = notificationService.deleteAllNotificationsForUser(userId);
+            return ResponseEntity.ok(Map.of("message", "All notifications deleted", "deleted", deleted));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -1,7 +1,9 @@
 package com.example.facebook_clone.controller;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -10,7 +12,6 @@ import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -24,13 +25,25 @@ import org.springframework.web.multipart.MultipartFile;
 
 import com.example.facebook_clone.model.Comment;
 import com.example.facebook_clone.model.CommentRequest;
+import com.example.facebook_clone.model.FeedCursor;
+import com.example.facebook_clone.model.ImageVariant;
+import com.example.facebook_clone.model.LikeToggleResult;
 import com.example.facebook_clone.model.Post;
+import com.example.facebook_clone.model.PostEvent;
 import com.example.facebook_clone.model.SharePostRequest;
 import com.example.facebook_clone.model.User;
+import com.example.facebook_clone.repository.CommentRepository;
 import com.example.facebook_clone.repository.PostRepository;
-import com.example.facebook_clone.repository.UserRepository;
+import com.example.facebook_clone.service.CommentService;
 import com.example.facebook_clone.service.FileStorageService;
+import com.example.facebook_clone.service.ImageVariantService;
+import com.example.facebook_clone.service.MediaIngestionService;
 import com.example.facebook_clone.service.NotificationService;
+import com.example.facebook_clone.service.PostEventService;
+import com.example.facebook_clone.service.PostHydrationService;
+import com.example.facebook_clone.service.PostLikeService;
+import com.example.facebook_clone.service.PostSearchService;
+import com.example.facebook_clone.service.UserCacheService;
 
 /**
  * Controller xử lý các API liên quan đến bài đăng
@@ -46,16 +59,37 @@ public class PostController {
     private FileStorageService fileStorageService;
 
     @Autowired
-    private UserRepository userRepository;
+    private MediaIngestionService mediaIngestionService;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private UserCacheService userCacheService;
 
     // UserService không được sử dụng trực tiếp trong controller này
 
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private PostHydrationService postHydrationService;
+
+    @Autowired
+    private PostSearchService postSearchService;
+
+    @Autowired
+    private CommentService commentService;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private PostLikeService postLikeService;
+
+    @Autowired
+    private PostEventService postEventService;
+
     // Không sử dụng baseUrl
 
     /**
@@ -81,77 +115,141 @@ public class PostController {
         post.setUserId(userId);
         post.setPrivacy(privacy);
 
-        // Xử lý hình ảnh
-        if (images != null && images.length > 0) {
-            List<String> imageUrls = new ArrayList<>();
-            for (MultipartFile image : images) {
-                String fileName = fileStorageService.storeFile(image);
-                imageUrls.add("/uploads/" + fileName);
-            }
-            post.setImages(imageUrls);
+        // Lưu song song hình ảnh và video; lỗi ở một file thì không file nào được giữ lại
+        List<MultipartFile> uploads = new ArrayList<>();
+        int imageCount = images != null ? images.length : 0;
+        if (images != null) {
+            uploads.addAll(Arrays.asList(images));
         }
-
-        // Xử lý video
-        if (videos != null && videos.length > 0) {
-            List<String> videoUrls = new ArrayList<>();
-            for (MultipartFile video : videos) {
-                String fileName = fileStorageService.storeFile(video);
-                videoUrls.add("/uploads/" + fileName);
-            }
-            post.setVideos(videoUrls);
+        if (videos != null) {
+            uploads.addAll(Arrays.asList(videos));
+        }
+        List<String> mediaUrls = mediaIngestionService.storeAll(uploads);
+        if (imageCount > 0) {
+            post.setImages(new ArrayList<>(mediaUrls.subList(0, imageCount)));
+        }
+        if (mediaUrls.size() > imageCount) {
+            post.setVideos(new ArrayList<>(mediaUrls.subList(imageCount, mediaUrls.size())));
         }
 
-        Post savedPost = postRepository.save(post);
+        Post savedPost;
+        try {
+            savedPost = postRepository.save(post);
+        } catch (RuntimeException e) {
+            mediaIngestionService.releaseAll(mediaUrls);
+            throw e;
+        }
+        imageVariantService.generateAsync(savedPost.getImages(), ImageVariant.THUMB, ImageVariant.FEED);
+        postSearchService.index(savedPost);
 
         // Thêm thông tin người dùng vào bài đăng
-        Optional<User> userOptional = userRepository.findById(userId);
+        Optional<User> userOptional = userCacheService.findSummaryById(userId);
         userOptional.ifPresent(savedPost::setUser);
 
         return ResponseEntity.ok(savedPost);
     }
 
     /**
-     * Lấy tất cả bài đăng
+     * Kích thước trang mặc định và tối đa của bảng tin
+     */
+    private static final int DEFAULT_FEED_LIMIT = 20;
+    private static final int MAX_FEED_LIMIT = 100;
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+
+    /**
+     * Số bình luận gốc kèm luồng trả lời trả về trong trang chi tiết và bản tin WebSocket
+     */
+    private static final int DETAIL_COMMENT_LIMIT = 50;
+
+    /**
+     * Lấy trang đầu (hoặc trang tiếp theo) của bảng tin dưới dạng danh sách
      *
      * @param userId ID người dùng đang xem (để kiểm tra quyền riêng tư)
+     * @param cursor Con trỏ trang trước (không bắt buộc)
+     * @param limit Số bài tối đa (không bắt buộc)
      * @return Danh sách bài đăng
      */
     @GetMapping
-    public ResponseEntity<List<Post>> getAllPosts(@RequestParam(value = "userId", required = false) String userId) {
-        List<Post> posts;
+    public ResponseEntity<?> getAllPosts(
+            @RequestParam(value = "userId", required = false) String userId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        try {
+            List<Post> posts = loadFeedPage(userId, cursor, limit);
+            return ResponseEntity.ok(posts);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 
-        if (userId != null) {
-            // Lấy tất cả bài viết công khai của người khác và tất cả bài viết của mình
-            posts = postRepository.findAll().stream()
-                .filter(post ->
-                    post.getUserId().equals(userId) || // Bài viết của mình
-                    "PUBLIC".equals(post.getPrivacy()) // Bài viết công khai của người khác
-                )
-                .collect(Collectors.toList());
-        } else {
-            // Nếu không có userId, chỉ lấy bài viết công khai
-            posts = postRepository.findAll().stream()
-                .filter(post -> "PUBLIC".equals(post.getPrivacy()))
-                .collect(Collectors.toList());
+    /**
+     * Lấy bảng tin phân trang theo con trỏ (createdAt, id)
+     *
+     * @param userId ID người dùng đang xem (để kiểm tra quyền riêng tư)
+     * @param cursor Con trỏ nhận được từ trang trước (bỏ trống cho trang đầu)
+     * @param limit Số bài tối đa trong trang
+     * @return Danh sách bài đăng và con trỏ trang tiếp theo (null nếu hết)
+     */
+    @GetMapping("/feed")
+    public ResponseEntity<?> getFeed(
+            @RequestParam(value = "userId", required = false) String userId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        try {
+            int pageSize = resolveFeedLimit(limit);
+            List<Post> posts = loadFeedPage(userId, cursor, pageSize);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("posts", posts);
+            response.put("nextCursor", posts.size() < pageSize
+                ? null
+                : FeedCursor.of(posts.get(posts.size() - 1)).encode());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
+    }
 
-        posts.forEach(post -> {
-            // Thêm thông tin người dùng vào bài đăng
-            Optional<User> userOptional = userRepository.findById(post.getUserId());
-            userOptional.ifPresent(post::setUser);
-
-            // Xử lý bài đăng được chia sẻ
-            if (post.getOriginalPostId() != null) {
-                Post originalPost = postRepository.findById(post.getOriginalPostId()).orElse(null);
-                if (originalPost != null) {
-                    post.setOriginalPost(originalPost);
-                    Optional<User> userOptionalOriginalPost = userRepository.findById(originalPost.getUserId());
-                    userOptionalOriginalPost.ifPresent(originalPost::setUser);
-                }
-            }
-        });
+    /**
+     * Truy vấn một trang bảng tin và thêm thông tin người dùng, bài đăng gốc
+     *
+     * @param userId ID người dùng đang xem
+     * @param cursor Con trỏ trang trước (có thể null)
+     * @param limit Số bài tối đa (có thể null)
+     * @return Danh sách bài đăng của trang
+     */
+    private List<Post> loadFeedPage(String userId, String cursor, Integer limit) {
+        FeedCursor feedCursor = (cursor == null || cursor.isEmpty()) ? null : FeedCursor.decode(cursor);
+        List<Post> posts = postRepository.findFeedPage(
+            userId,
+            feedCursor != null ? feedCursor.getCreatedAt() : null,
+            feedCursor != null ? feedCursor.getId() : null,
+            resolveFeedLimit(limit));
+
+        // Gắn vài bình luận đầu tiên, sau đó bổ sung người dùng và bài đăng gốc theo lô cho cả trang
+        commentService.attachTopComments(posts);
+        postHydrationService.hydrate(posts);
+
+        return posts;
+    }
 
-        return ResponseEntity.ok(posts);
+    /**
+     * Đếm tổng số bài đăng (trang quản trị), không tải danh sách bài đăng
+     *
+     * @return Số bài đăng
+     */
+    @GetMapping("/count")
+    public ResponseEntity<?> countPosts() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("count", postRepository.count());
+        return ResponseEntity.ok(response);
+    }
+
+    private int resolveFeedLimit(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_FEED_LIMIT;
+        }
+        return Math.min(limit, MAX_FEED_LIMIT);
     }
 
     /**
@@ -175,7 +273,8 @@ public class PostController {
                 .collect(Collectors.toList());
         }
 
-        posts.forEach(this::populatePostData);
+        commentService.attachTopComments(posts);
+        postHydrationService.hydrate(posts);
         return ResponseEntity.ok(posts);
     }
 
@@ -187,36 +286,40 @@ public class PostController {
      * @return Danh sách bài đăng phù hợp
      */
     @GetMapping("/search")
-    public ResponseEntity<List<Post>> searchPosts(@RequestParam String query, @RequestParam(required = false) String userId) {
-        List<Post> allPosts;
-
-        if (userId != null) {
-            // Lấy tất cả bài viết công khai và bài viết riêng tư của người dùng hiện tại
-            allPosts = postRepository.findAll().stream()
-                .filter(post ->
-                    post.getUserId().equals(userId) || // Bài viết của mình
-                    "PUBLIC".equals(post.getPrivacy()) // Bài viết công khai của người khác
-                )
-                .collect(Collectors.toList());
-        } else {
-            // Nếu không có userId, chỉ lấy bài viết công khai
-            allPosts = postRepository.findAll().stream()
-                .filter(post -> "PUBLIC".equals(post.getPrivacy()))
-                .collect(Collectors.toList());
+    public ResponseEntity<List<Post>> searchPosts(
+            @RequestParam String query,
+            @RequestParam(required = false) String userId,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        // Tra chỉ mục đảo ngược (đã lọc quyền riêng tư và xếp hạng)
+        List<String> postIds = postSearchService.search(query, userId, resolveSearchLimit(limit));
+        if (postIds.isEmpty()) {
+            return ResponseEntity.ok(new ArrayList<>());
         }
 
-        // Lọc bài viết theo nội dung chứa query (không phân biệt chữ hoa/thường)
-        List<Post> filteredPosts = allPosts.stream()
-            .filter(post -> post.getContent() != null &&
-                post.getContent().toLowerCase().contains(query.toLowerCase()))
+        // Tải bài đăng một lần và giữ nguyên thứ tự xếp hạng
+        Map<String, Post> postsById = new HashMap<>();
+        for (Post post : postRepository.findAllById(postIds)) {
+            postsById.put(post.getId(), post);
+        }
+        List<Post> filteredPosts = postIds.stream()
+            .map(postsById::get)
+            .filter(post -> post != null)
             .collect(Collectors.toList());
 
-        // Thêm thông tin người dùng vào các bài đăng
-        filteredPosts.forEach(this::populatePostData);
+        // Thêm bình luận đầu tiên và thông tin người dùng vào các bài đăng
+        commentService.attachTopComments(filteredPosts);
+        postHydrationService.hydrate(filteredPosts);
 
         return ResponseEntity.ok(filteredPosts);
     }
 
+    private int resolveSearchLimit(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_SEARCH_LIMIT;
+        }
+        return Math.min(limit, MAX_FEED_LIMIT);
+    }
+
     /**
      * Lấy thông tin chi tiết của một bài đăng
      *
@@ -240,7 +343,8 @@ public class PostController {
                 return ResponseEntity.status(403).body("Bạn không có quyền xem bài đăng này");
             }
 
-            populatePostData(post);
+            commentService.attachCommentThreads(post, DETAIL_COMMENT_LIMIT);
+            postHydrationService.hydrate(post);
             return ResponseEntity.ok(post);
         } catch (Exception e) {
             // Xử lý lỗi
@@ -248,36 +352,6 @@ public class PostController {
         }
     }
 
-    /**
-     * Thêm thông tin người dùng vào bài đăng và bình luận
-     *
-     * @param post Bài đăng cần thêm thông tin
-     */
-    private void populatePostData(Post post) {
-        // Thêm thông tin người dùng vào bài đăng
-        Optional<User> postUserOptional = userRepository.findById(post.getUserId());
-        postUserOptional.ifPresent(post::setUser);
-
-        // Thêm thông tin người dùng vào bình luận
-        if (post.getComments() != null) {
-            post.getComments().forEach(comment -> {
-                Optional<User> commentUserOptional = userRepository.findById(comment.getUserId());
-                commentUserOptional.ifPresent(comment::setUser);
-            });
-        }
-
-        // Nếu là bài đăng được chia sẻ, thêm thông tin bài đăng gốc
-        if (post.isShared() && post.getOriginalPostId() != null) {
-            Optional<Post> originalPostOptional = postRepository.findById(post.getOriginalPostId());
-            if (originalPostOptional.isPresent()) {
-                Post originalPost = originalPostOptional.get();
-                // Đệ quy thêm thông tin cho bài đăng gốc
-                populatePostData(originalPost);
-                post.setOriginalPost(originalPost);
-            }
-        }
-    }
-
     /**
      * Xóa bài đăng
      *
@@ -296,18 +370,20 @@ public class PostController {
 
             Post post = postOptional.get();
 
-            // Cho phép admin xóa bất kỳ bài đăng nào
-            if (userId.equals("admin")) {
-                postRepository.deleteById(id);
-                return ResponseEntity.ok().build();
-            }
-
-            // Kiểm tra xem người dùng có phải là chủ sở hữu không
-            if (!post.getUserId().equals(userId)) {
+            // Cho phép admin xóa bất kỳ bài đăng nào, người khác chỉ xóa được bài của mình
+            if (!userId.equals("admin") && !post.getUserId().equals(userId)) {
                 return ResponseEntity.status(403).body("Bạn không có quyền xóa bài đăng này");
             }
 
-            postRepository.deleteById(id);
+            // Chỉ request thực sự xóa được tài liệu mới bỏ tham chiếu media (tránh trừ hai lần khi bấm xóa hai lần)
+            Post removed = postRepository.deleteAndGet(id);
+            if (removed == null) {
+                return ResponseEntity.notFound().build();
+            }
+            postSearchService.remove(id);
+            commentService.deleteCommentsForPost(id);
+            postEventService.forget(id);
+            releaseMedia(removed);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
             // Xử lý lỗi
@@ -320,39 +396,39 @@ public class PostController {
      *
      * @param postId ID bài đăng
      * @param request Thông tin yêu cầu (userId)
-     * @return Bài đăng đã cập nhật
+     * @return Trạng thái thích mới và số lượt thích
      */
     @PostMapping("/{postId}/like")
     public ResponseEntity<?> likePost(@PathVariable String postId, @RequestBody Map<String, String> request) {
         try {
-            Post post = postRepository.findById(postId)
-                    .orElseThrow(() -> new RuntimeException("Không tìm thấy bài đăng"));
-
-            // Cập nhật danh sách thích
             String userId = request.get("userId");
-            List<String> likes = new ArrayList<>(post.getLikes());
-            if (likes.contains(userId)) {
-                likes.remove(userId);
-            } else {
-                likes.add(userId);
+            if (userId == null) {
+                return ResponseEntity.badRequest().body("Cần cung cấp userId");
             }
-            post.setLikes(likes);
-
-            // Lưu và thêm thông tin người dùng
-            Post savedPost = postRepository.save(post);
-            populatePostData(savedPost);
-
-            // Gửi cập nhật qua WebSocket
-            messagingTemplate.convertAndSend("/topic/posts/" + postId, savedPost);
 
-            // Tạo thông báo khi có người thích bài viết
-            // Kiểm tra xem hành động là thích hay bỏ thích
-            boolean isLikeAction = likes.contains(userId);
-            if (isLikeAction) {
-                notificationService.createLikeNotification(post.getUserId(), userId, postId);
+            // Cập nhật nguyên tử trên MongoDB, không ghi lại cả bài đăng
+            LikeToggleResult result = postLikeService.toggleLike(postId, userId);
+
+            // Gửi sự kiện thay đổi qua WebSocket
+            Map<String, Object> eventData = new HashMap<>();
+            eventData.put("userId", userId);
+            eventData.put("likeCount", result.getLikeCount());
+            postEventService.publish(result.isLiked() ? PostEvent.Type.LIKE_ADDED : PostEvent.Type.LIKE_REMOVED,
+                postId, result.getEventSeq(), eventData);
+
+            // Tạo thông báo khi có người thích bài viết, rút lại khi bỏ thích
+            if (result.isLiked()) {
+                notificationService.createLikeNotification(result.getOwnerId(), userId, postId);
+            } else if (result.getOwnerId() != null) {
+                notificationService.retractLikeNotification(result.getOwnerId(), userId, postId);
             }
 
-            return ResponseEntity.ok(savedPost);
+            Map<String, Object> response = new HashMap<>();
+            response.put("postId", postId);
+            response.put("userId", userId);
+            response.put("liked", result.isLiked());
+            response.put("likeCount", result.getLikeCount());
+            return ResponseEntity.ok(response);
         } catch (RuntimeException e) {
             // Xử lý lỗi không tìm thấy bài đăng
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -361,6 +437,37 @@ public class PostController {
             return ResponseEntity.badRequest().body("Lỗi khi thích bài đăng: " + e.getMessage());
         }
     }
+
+    /**
+     * Lấy trang bình luận gốc của bài đăng (cũ nhất trước)
+     *
+     * @param postId ID bài đăng
+     * @param cursor Con trỏ trang trước (không bắt buộc)
+     * @param limit Số bình luận tối đa (không bắt buộc)
+     * @return Danh sách bình luận và con trỏ trang tiếp theo (null nếu hết)
+     */
+    @GetMapping("/{postId}/comments")
+    public ResponseEntity<?> getComments(
+            @PathVariable String postId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        try {
+            int pageSize = resolveFeedLimit(limit);
+            FeedCursor commentCursor = (cursor == null || cursor.isEmpty()) ? null : FeedCursor.decode(cursor);
+            List<Comment> comments = commentService.findTopLevelPage(postId, commentCursor, pageSize);
+            postHydrationService.hydrateComments(comments);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("comments", comments);
+            response.put("nextCursor", comments.size() < pageSize
+                ? null
+                : FeedCursor.of(comments.get(comments.size() - 1)).encode());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     /**
      * Thêm bình luận vào bài đăng
      *
@@ -374,53 +481,34 @@ public class PostController {
             Post post = postRepository.findById(postId)
                     .orElseThrow(() -> new RuntimeException("Không tìm thấy bài đăng"));
 
+            Comment parentComment = null;
+
             // Kiểm tra độ sâu của comment
             if (request.getParentId() != null && !request.getParentId().isEmpty()) {
-                Comment parentComment = findCommentById(post.getComments(), request.getParentId());
+                parentComment = commentRepository.findById(request.getParentId())
+                    .filter(parent -> postId.equals(parent.getPostId()))
+                    .orElse(null);
                 if (parentComment == null) {
                     return ResponseEntity.badRequest().body("Không tìm thấy bình luận cha");
                 }
 
-                // Tính độ sâu của comment
-                int depth = calculateCommentDepth(post.getComments(), request.getParentId());
-                if (depth >= 3) { // 3 là max depth cho phép (tổng 3 tầng: 0,1,2,3)
+                // Độ sâu được lưu sẵn trên bình luận cha
+                if (parentComment.getDepth() >= CommentService.MAX_PARENT_DEPTH) {
                     return ResponseEntity.badRequest().body("Đã đạt độ sâu tối đa cho phép");
                 }
             }
 
-            Comment comment = new Comment();
-            comment.setId(UUID.randomUUID().toString());
-            comment.setUserId(request.getUserId());
-            comment.setContent(request.getContent());
-            comment.setCreatedAt(new Date());
+            // Ghi bình luận vào collection riêng, không ghi lại tài liệu bài đăng
+            Comment comment = commentService.addComment(postId, request.getUserId(), request.getContent(), parentComment);
 
-            // Xử lý reply comment
-            if (request.getParentId() != null && !request.getParentId().isEmpty()) {
-                Comment parentComment = findCommentById(post.getComments(), request.getParentId());
-                comment.setParentId(request.getParentId());
-                if (parentComment.getReplies() == null) {
-                    parentComment.setReplies(new ArrayList<>());
-                }
-                parentComment.getReplies().add(comment);
-            } else {
-                if (post.getComments() == null) {
-                    post.setComments(new ArrayList<>());
-                }
-                post.getComments().add(comment);
-            }
-
-            // Thêm thông tin người dùng vào bình luận
-            Optional<User> userOptional = userRepository.findById(request.getUserId());
-            userOptional.ifPresent(comment::setUser);
-
-            Post savedPost = postRepository.save(post);
-            populatePostData(savedPost);
-
-            // Gửi cập nhật qua WebSocket
-            messagingTemplate.convertAndSend("/topic/posts/" + postId, savedPost);
+            // Gửi sự kiện bình luận mới qua WebSocket
+            postHydrationService.hydrateComments(List.of(comment));
+            Map<String, Object> eventData = new HashMap<>();
+            eventData.put("comment", comment);
+            postEventService.publish(PostEvent.Type.COMMENT_ADDED, postId, eventData);
 
             // Tạo thông báo nếu đây là bình luận mới (không phải reply)
-            if (request.getParentId() == null || request.getParentId().isEmpty()) {
+            if (parentComment == null) {
                 // Chỉ tạo thông báo nếu người bình luận không phải là chủ bài viết
                 if (!request.getUserId().equals(post.getUserId())) {
                     notificationService.createCommentNotification(
@@ -431,9 +519,8 @@ public class PostController {
                     );
                 }
             } else {
-                // Đây là reply, tìm comment gốc để lấy userId
-                Comment parentComment = findCommentById(post.getComments(), request.getParentId());
-                if (parentComment != null && !request.getUserId().equals(parentComment.getUserId())) {
+                // Đây là reply, thông báo cho chủ bình luận cha
+                if (!request.getUserId().equals(parentComment.getUserId())) {
                     notificationService.createReplyNotification(
                         parentComment.getUserId(),
                         request.getUserId(),
@@ -443,7 +530,7 @@ public class PostController {
                 }
             }
 
-            return ResponseEntity.ok(savedPost);
+            return ResponseEntity.ok(loadPostDetail(postId));
         } catch (RuntimeException e) {
             // Xử lý lỗi không tìm thấy bài đăng
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -454,47 +541,104 @@ public class PostController {
     }
 
     /**
-     * Tìm bình luận theo ID trong danh sách bình luận
+     * Lấy các sự kiện bị thiếu của bài đăng cho client phát hiện khoảng trống seq
      *
-     * @param comments Danh sách bình luận cần tìm
-     * @param commentId ID bình luận cần tìm
-     * @return Bình luận tìm thấy hoặc null nếu không tìm thấy
+     * @param postId ID bài đăng
+     * @param since Số thứ tự sự kiện cuối cùng client đã áp dụng
+     * @param viewerId ID người dùng đang xem (để kiểm tra quyền riêng tư)
+     * @return seq hiện tại kèm danh sách sự kiện còn thiếu, hoặc kèm toàn bộ bài đăng nếu không bù được
      */
-    private Comment findCommentById(List<Comment> comments, String commentId) {
-        if (comments == null) return null;
+    @GetMapping("/{postId}/events")
+    public ResponseEntity<?> getPostEvents(
+            @PathVariable String postId,
+            @RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(required = false) String viewerId) {
+        try {
+            Post state = postRepository.findSyncState(postId);
+            if (state == null) {
+                return ResponseEntity.notFound().build();
+            }
+
+            if ("PRIVATE".equals(state.getPrivacy()) && (viewerId == null || !state.getUserId().equals(viewerId))) {
+                return ResponseEntity.status(403).body("Bạn không có quyền xem bài đăng này");
+            }
 
-        for (Comment comment : comments) {
-            if (comment.getId().equals(commentId)) {
-                return comment;
+            Map<String, Object> response = new HashMap<>();
+            List<PostEvent> events = postEventService.findEventsSince(postId, since, state.getEventSeq());
+            if (events != null) {
+                response.put("seq", state.getEventSeq());
+                response.put("events", events);
+                return ResponseEntity.ok(response);
             }
-            // Kiểm tra trong danh sách trả lời
-            if (comment.getReplies() != null) {
-                Comment found = findCommentById(comment.getReplies(), commentId);
-                if (found != null) {
-                    return found;
-                }
+
+            // Không còn đủ sự kiện trong bộ nhớ: trả về toàn bộ bài đăng để client thay thế
+            Post post = loadPostDetail(postId);
+            if (post == null) {
+                return ResponseEntity.notFound().build();
             }
+            response.put("seq", post.getEventSeq());
+            response.put("post", post);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            // Xử lý lỗi
+            return ResponseEntity.badRequest().body("Lỗi khi đồng bộ bài đăng: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tải bài đăng kèm bình luận và thông tin người dùng
+     *
+     * @param postId ID bài đăng
+     * @return Bài đăng hoặc null nếu không còn tồn tại
+     */
+    private Post loadPostDetail(String postId) {
+        Post post = postRepository.findById(postId).orElse(null);
+        if (post != null) {
+            commentService.attachCommentThreads(post, DETAIL_COMMENT_LIMIT);
+            postHydrationService.hydrate(post);
         }
-        return null;
+        return post;
     }
 
     /**
-     * Tính độ sâu của bình luận
+     * Bỏ tham chiếu tới hình ảnh và video của bài đăng đã xóa
      *
-     * @param comments Danh sách bình luận
-     * @param commentId ID bình luận cần tính độ sâu
-     * @return Độ sâu của bình luận
+     * @param post Bài đăng đã xóa
      */
-    private int calculateCommentDepth(List<Comment> comments, String commentId) {
-        int depth = 0;
-        Comment comment = findCommentById(comments, commentId);
+    private void releaseMedia(Post post) {
+        fileStorageService.releaseRemoved(post.getImages(), null);
+        fileStorageService.releaseRemoved(post.getVideos(), null);
+    }
 
-        while (comment != null && comment.getParentId() != null) {
-            depth++;
-            comment = findCommentById(comments, comment.getParentId());
+    /**
+     * Gửi sự kiện sửa bài đăng chỉ gồm các trường đã thay đổi
+     *
+     * @param post Bài đăng sau khi sửa
+     */
+    // Mỗi URL cũ chỉ được giữ tối đa số lần nó đang có trong bài đăng, vì mỗi lần xuất hiện ứng với một tham chiếu
+    // đã cộng khi lưu; giữ thêm bản sao sẽ làm bỏ tham chiếu nhiều lần khi xóa bài và xóa nhầm file bài khác còn dùng
+    private static List<String> keptMedia(List<String> current, String[] keep) {
+        List<String> kept = new ArrayList<>();
+        if (current == null || keep == null) {
+            return kept;
+        }
+        List<String> available = new ArrayList<>(current);
+        for (String url : keep) {
+            if (available.remove(url)) {
+                kept.add(url);
+            }
         }
+        return kept;
+    }
 
-        return depth;
+    private void publishPostEdited(Post post) {
+        Map<String, Object> eventData = new HashMap<>();
+        eventData.put("content", post.getContent());
+        eventData.put("privacy", post.getPrivacy());
+        eventData.put("images", post.getImages());
+        eventData.put("imageVariants", post.getImageVariants());
+        eventData.put("videos", post.getVideos());
+        postEventService.publish(PostEvent.Type.POST_EDITED, post.getId(), eventData);
     }
 
     /**
@@ -519,8 +663,9 @@ public class PostController {
             sharedPost.setOriginalPostId(request.getOriginalPostId());
 
             Post savedPost = postRepository.save(sharedPost);
+            postSearchService.index(savedPost);
             // Thêm thông tin người dùng và bài đăng gốc
-            populatePostData(savedPost);
+            postHydrationService.hydrate(savedPost);
 
             return ResponseEntity.ok(savedPost);
         } catch (RuntimeException e) {
@@ -573,12 +718,15 @@ public class PostController {
                 post.setPrivacy(privacy);
             }
 
-            // Lưu và thêm thông tin người dùng
-            Post savedPost = postRepository.save(post);
-            populatePostData(savedPost);
+            // Chỉ ghi các trường đã sửa để không ghi đè media, likes/bộ đếm đang được cập nhật đồng thời
+            postRepository.updateContent(post);
+            Post savedPost = post;
+            postSearchService.index(savedPost);
+            commentService.attachCommentThreads(savedPost, DETAIL_COMMENT_LIMIT);
+            postHydrationService.hydrate(savedPost);
 
-            // Gửi cập nhật qua WebSocket
-            messagingTemplate.convertAndSend("/topic/posts/" + id, savedPost);
+            // Gửi sự kiện sửa bài đăng qua WebSocket
+            publishPostEdited(savedPost);
 
             return ResponseEntity.ok(savedPost);
         } catch (Exception e) {
@@ -634,56 +782,59 @@ public class PostController {
                 post.setPrivacy(privacy);
             }
 
-            // Xử lý hình ảnh giữ lại
-            List<String> updatedImages = new ArrayList<>();
-            if (keepImages != null && keepImages.length > 0) {
-                for (String imagePath : keepImages) {
-                    if (post.getImages() != null && post.getImages().contains(imagePath)) {
-                        updatedImages.add(imagePath);
-                    }
-                }
-            }
-
-            // Xử lý video giữ lại
-            List<String> updatedVideos = new ArrayList<>();
-            if (keepVideos != null && keepVideos.length > 0) {
-                for (String videoPath : keepVideos) {
-                    if (post.getVideos() != null && post.getVideos().contains(videoPath)) {
-                        updatedVideos.add(videoPath);
-                    }
-                }
-            }
+            // Xử lý hình ảnh và video giữ lại
+            List<String> updatedImages = keptMedia(post.getImages(), keepImages);
+            List<String> updatedVideos = keptMedia(post.getVideos(), keepVideos);
 
-            // Xử lý hình ảnh mới
-            if (images != null && images.length > 0) {
+            // Lưu song song hình ảnh và video mới
+            List<MultipartFile> uploads = new ArrayList<>();
+            if (images != null) {
                 for (MultipartFile image : images) {
                     if (!image.isEmpty()) {
-                        String fileName = fileStorageService.storeFile(image);
-                        updatedImages.add("/uploads/" + fileName);
+                        uploads.add(image);
                     }
                 }
             }
-
-            // Xử lý video mới
-            if (videos != null && videos.length > 0) {
+            int newImageCount = uploads.size();
+            if (videos != null) {
                 for (MultipartFile video : videos) {
                     if (!video.isEmpty()) {
-                        String fileName = fileStorageService.storeFile(video);
-                        updatedVideos.add("/uploads/" + fileName);
+                        uploads.add(video);
                     }
                 }
             }
+            List<String> newMediaUrls = mediaIngestionService.storeAll(uploads);
+            updatedImages.addAll(newMediaUrls.subList(0, newImageCount));
+            updatedVideos.addAll(newMediaUrls.subList(newImageCount, newMediaUrls.size()));
 
             // Cập nhật danh sách hình ảnh và video
+            List<String> previousImages = post.getImages();
+            List<String> previousVideos = post.getVideos();
             post.setImages(updatedImages);
             post.setVideos(updatedVideos);
 
-            // Lưu và thêm thông tin người dùng
-            Post savedPost = postRepository.save(post);
-            populatePostData(savedPost);
+            // Chỉ ghi các trường đã sửa, và chỉ khi media chưa bị lần sửa khác thay đổi kể từ lúc đọc
+            boolean updated;
+            try {
+                updated = postRepository.updateEditableFields(post, previousImages, previousVideos);
+            } catch (RuntimeException e) {
+                mediaIngestionService.releaseAll(newMediaUrls);
+                throw e;
+            }
+            if (!updated) {
+                mediaIngestionService.releaseAll(newMediaUrls);
+                return ResponseEntity.status(409).body("Bài đăng vừa được sửa ở nơi khác, vui lòng tải lại và thử lại");
+            }
+            imageVariantService.generateAsync(newMediaUrls.subList(0, newImageCount), ImageVariant.THUMB, ImageVariant.FEED);
+            fileStorageService.releaseRemoved(previousImages, updatedImages);
+            fileStorageService.releaseRemoved(previousVideos, updatedVideos);
+            Post savedPost = post;
+            postSearchService.index(savedPost);
+            commentService.attachCommentThreads(savedPost, DETAIL_COMMENT_LIMIT);
+            postHydrationService.hydrate(savedPost);
 
-            // Gửi cập nhật qua WebSocket
-            messagingTemplate.convertAndSend("/topic/posts/" + id, savedPost);
+            // Gửi sự kiện sửa bài đăng qua WebSocket
+            publishPostEdited(savedPost);
 
             return ResponseEntity.ok(savedPost);
         } catch (Exception e) {
@@ -703,43 +854,33 @@ public class PostController {
     @DeleteMapping("/{postId}/comments/{commentId}")
     public ResponseEntity<?> deleteComment(@PathVariable String postId, @PathVariable String commentId, @RequestParam String userId) {
         try {
-            // Kiểm tra xem bài viết có tồn tại không
-            Optional<Post> postOptional = postRepository.findById(postId);
-            if (!postOptional.isPresent()) {
-                return ResponseEntity.notFound().build();
-            }
-
-            Post post = postOptional.get();
-
             // Tìm bình luận cần xóa
-            Comment commentToDelete = findCommentById(post.getComments(), commentId);
-            if (commentToDelete == null) {
+            Optional<Comment> commentOptional = commentRepository.findById(commentId);
+            if (!commentOptional.isPresent() || !postId.equals(commentOptional.get().getPostId())) {
                 return ResponseEntity.notFound().build();
             }
 
+            Comment commentToDelete = commentOptional.get();
+
             // Kiểm tra xem người dùng có phải là chủ sở hữu bình luận không
             if (!commentToDelete.getUserId().equals(userId)) {
                 return ResponseEntity.status(403).body("Bạn không có quyền xóa bình luận này");
             }
 
-            // Xóa bình luận
-            if (commentToDelete.getParentId() == null) {
-                // Nếu là bình luận gốc, xóa khỏi danh sách bình luận của bài viết
-                post.getComments().removeIf(c -> c.getId().equals(commentId));
-            } else {
-                // Nếu là bình luận con, tìm bình luận cha và xóa khỏi danh sách replies
-                Comment parentComment = findCommentById(post.getComments(), commentToDelete.getParentId());
-                if (parentComment != null && parentComment.getReplies() != null) {
-                    parentComment.getReplies().removeIf(r -> r.getId().equals(commentId));
-                }
-            }
+            // Xóa bình luận cùng các trả lời của nó
+            int deletedCount = commentService.deleteComment(commentToDelete);
 
-            // Lưu và thêm thông tin người dùng
-            Post savedPost = postRepository.save(post);
-            populatePostData(savedPost);
+            // Gửi sự kiện xóa bình luận qua WebSocket
+            Map<String, Object> eventData = new HashMap<>();
+            eventData.put("commentId", commentId);
+            eventData.put("parentId", commentToDelete.getParentId());
+            eventData.put("deletedCount", deletedCount);
+            postEventService.publish(PostEvent.Type.COMMENT_DELETED, postId, eventData);
 
-            // Gửi cập nhật qua WebSocket
-            messagingTemplate.convertAndSend("/topic/posts/" + postId, savedPost);
+            Post savedPost = loadPostDetail(postId);
+            if (savedPost == null) {
+                return ResponseEntity.notFound().build();
+            }
 
             return ResponseEntity.ok(savedPost);
         } catch (Exception e) {
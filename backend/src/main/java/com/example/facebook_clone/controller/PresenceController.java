@@ -0,0 +1,46 @@
+package com.example.facebook_clone.controller;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.facebook_clone.service.PresenceService;
+
+@RestController
+@RequestMapping("/api/presence")
+public class PresenceController {
+
+    @Autowired
+    private PresenceService presenceService;
+
+    // Bạn bè đang trực tuyến, dùng làm trạng thái ban đầu trước khi nhận sự kiện /user/queue/presence
+    @GetMapping("/friends/{userId}")
+    public ResponseEntity<?> getOnlineFriends(@PathVariable String userId) {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("online", presenceService.getOnlineFriendIds(userId));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Client gửi /app/typing với {peerId, typing}; người gửi lấy từ phiên STOMP đã xác thực
+    @MessageMapping("/typing")
+    public void typing(@Payload Map<String, Object> payload, Principal principal) {
+        if (principal == null || !(payload.get("peerId") instanceof String peerId)) {
+            return;
+        }
+        presenceService.typing(principal.getName(), peerId, Boolean.TRUE.equals(payload.get("typing")));
+    }
+}
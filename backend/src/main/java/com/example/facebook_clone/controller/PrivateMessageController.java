@@ -1,16 +1,20 @@
 package com.example.facebook_clone.controller;
 
+import com.example.facebook_clone.model.ConversationState;
+import com.example.facebook_clone.model.FeedCursor;
 import com.example.facebook_clone.model.PrivateMessage;
 import com.example.facebook_clone.model.PrivateMessageRequest;
 import com.example.facebook_clone.model.User;
 import com.example.facebook_clone.repository.PrivateMessageRepository;
-import com.example.facebook_clone.repository.UserRepository;
 import com.example.facebook_clone.service.NotificationService;
+import com.example.facebook_clone.service.PrivateMessageService;
+import com.example.facebook_clone.service.UserCacheService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -21,11 +25,19 @@ import java.util.Optional;
 @RequestMapping("/api/messages")
 public class PrivateMessageController {
 
+    private static final int DEFAULT_CONVERSATION_LIMIT = 30;
+    private static final int MAX_CONVERSATION_LIMIT = 100;
+    private static final int DEFAULT_INBOX_LIMIT = 20;
+    private static final int MAX_INBOX_LIMIT = 50;
+
     @Autowired
     private PrivateMessageRepository privateMessageRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private PrivateMessageService privateMessageService;
+
+    @Autowired
+    private UserCacheService userCacheService;
 
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
@@ -44,17 +56,19 @@ public class PrivateMessageController {
 
             // Create new message
             PrivateMessage message = new PrivateMessage();
+            message.setConversationKey(PrivateMessage.conversationKeyOf(request.getSenderId(), request.getReceiverId()));
             message.setSenderId(request.getSenderId());
             message.setReceiverId(request.getReceiverId());
             message.setContent(request.getContent());
             message.setTimestamp(new Date());
             message.setRead(false);
 
-            // Save message
+            // Save message and bump the receiver's unread counter for this conversation
             PrivateMessage savedMessage = privateMessageRepository.save(message);
+            privateMessageService.recordSent(savedMessage);
 
             // Get sender information to include in the notification
-            Optional<User> senderOpt = userRepository.findById(request.getSenderId());
+            Optional<User> senderOpt = userCacheService.findSummaryById(request.getSenderId());
             if (senderOpt.isPresent()) {
                 User sender = senderOpt.get();
                 Map<String, Object> messageData = new HashMap<>();
@@ -63,7 +77,7 @@ public class PrivateMessageController {
                 messageData.put("type", "NEW_MESSAGE");
 
                 // Send WebSocket notification to receiver
-                messagingTemplate.convertAndSend("/topic/messages/" + request.getReceiverId(), messageData);
+                messagingTemplate.convertAndSendToUser(request.getReceiverId(), "/queue/messages", messageData);
 
                 // Create notification for new message
                 notificationService.createMessageNotification(
@@ -80,39 +94,92 @@ public class PrivateMessageController {
         }
     }
 
-    // Get conversation history between two users
+    // Get conversation history between two users, newest page first ("load older" via before cursor)
     @GetMapping("/conversation")
     public ResponseEntity<?> getConversation(
             @RequestParam String userId1,
-            @RequestParam String userId2) {
+            @RequestParam String userId2,
+            @RequestParam(value = "before", required = false) String before,
+            @RequestParam(value = "limit", required = false) Integer limit) {
         try {
-            List<PrivateMessage> messages = privateMessageRepository
-                .findBySenderIdAndReceiverIdOrSenderIdAndReceiverIdOrderByTimestampAsc(
-                    userId1, userId2, userId2, userId1);
+            int pageSize = limit == null || limit <= 0
+                ? DEFAULT_CONVERSATION_LIMIT
+                : Math.min(limit, MAX_CONVERSATION_LIMIT);
+            FeedCursor cursor = (before == null || before.isEmpty()) ? null : FeedCursor.decode(before);
+            List<PrivateMessage> messages = privateMessageService.findConversationPage(userId1, userId2, cursor, pageSize);
+
+            // Tin nhắn trả về theo thời gian tăng dần; con trỏ là tin nhắn cũ nhất của trang
+            Map<String, Object> response = new HashMap<>();
+            response.put("messages", messages);
+            response.put("nextCursor", messages.size() < pageSize
+                ? null
+                : FeedCursor.of(messages.get(0)).encode());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 
-            return ResponseEntity.ok(messages);
+    // Get a user's conversations ordered by latest message, with preview and unread count
+    @GetMapping("/inbox/{userId}")
+    public ResponseEntity<?> getInbox(
+            @PathVariable String userId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        try {
+            int pageSize = limit == null || limit <= 0
+                ? DEFAULT_INBOX_LIMIT
+                : Math.min(limit, MAX_INBOX_LIMIT);
+            FeedCursor inboxCursor = (cursor == null || cursor.isEmpty()) ? null : FeedCursor.decode(cursor);
+            List<ConversationState> states = privateMessageService.findInboxPage(userId, inboxCursor, pageSize);
+
+            // Thông tin người còn lại của cả trang lấy trong một lần
+            Map<String, User> peers = userCacheService.findSummariesByIds(states.stream()
+                .map(ConversationState::getPeerId)
+                .distinct()
+                .toList());
+
+            List<Map<String, Object>> conversations = new ArrayList<>();
+            for (ConversationState state : states) {
+                Map<String, Object> lastMessage = new HashMap<>();
+                lastMessage.put("id", state.getLastMessageId());
+                lastMessage.put("senderId", state.getLastMessageSenderId());
+                lastMessage.put("content", state.getLastMessagePreview());
+                lastMessage.put("timestamp", state.getLastMessageAt());
+
+                Map<String, Object> conversation = new HashMap<>();
+                conversation.put("conversationKey", state.getConversationKey());
+                conversation.put("peerId", state.getPeerId());
+                conversation.put("peer", peers.get(state.getPeerId()));
+                conversation.put("lastMessage", lastMessage);
+                conversation.put("unread", state.getUnread());
+                conversations.add(conversation);
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("conversations", conversations);
+            response.put("nextCursor", states.size() < pageSize
+                ? null
+                : FeedCursor.of(states.get(states.size() - 1)).encode());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
-    // Mark messages as read
+    // Mark a conversation as read (moves the receiver's read cursor, single upsert)
     @PutMapping("/read")
     public ResponseEntity<?> markAsRead(
             @RequestParam String receiverId,
             @RequestParam String senderId) {
         try {
-            List<PrivateMessage> unreadMessages = privateMessageRepository
-                .findByReceiverIdAndReadFalse(receiverId);
-
-            for (PrivateMessage message : unreadMessages) {
-                if (message.getSenderId().equals(senderId)) {
-                    message.setRead(true);
-                    privateMessageRepository.save(message);
-                }
-            }
-
+            privateMessageService.markConversationRead(receiverId, senderId);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
             e.printStackTrace();
@@ -124,18 +191,7 @@ public class PrivateMessageController {
     @GetMapping("/unread/{userId}")
     public ResponseEntity<?> getUnreadCounts(@PathVariable String userId) {
         try {
-            List<PrivateMessage> unreadMessages = privateMessageRepository
-                .findByReceiverIdAndReadFalse(userId);
-
-            Map<String, Long> unreadCounts = new HashMap<>();
-
-            for (PrivateMessage message : unreadMessages) {
-                String senderId = message.getSenderId();
-                unreadCounts.put(senderId,
-                    unreadCounts.getOrDefault(senderId, 0L) + 1);
-            }
-
-            return ResponseEntity.ok(unreadCounts);
+            return ResponseEntity.ok(privateMessageService.getUnreadCounts(userId));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body(e.getMessage());
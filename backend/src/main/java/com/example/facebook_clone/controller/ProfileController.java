@@ -14,9 +14,12 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.example.facebook_clone.model.ImageVariant;
 import com.example.facebook_clone.model.User;
 import com.example.facebook_clone.repository.UserRepository;
 import com.example.facebook_clone.service.FileStorageService;
+import com.example.facebook_clone.service.ImageVariantService;
+import com.example.facebook_clone.service.UserCacheService;
 
 /**
  * Controller xử lý các API liên quan đến hồ sơ người dùng
@@ -31,6 +34,12 @@ public class ProfileController {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private UserCacheService userCacheService;
+
     /**
      * Lấy thông tin hồ sơ người dùng
      *
@@ -105,6 +114,9 @@ public class ProfileController {
             user.setMonth(month);
             user.setYear(year);
 
+            String previousAvatar = user.getAvatar();
+            String previousCoverPhoto = user.getCoverPhoto();
+
             // Chỉ cập nhật ảnh đại diện nếu có file mới
             if (avatar != null && !avatar.isEmpty()) {
                 String avatarFileName = fileStorageService.storeFile(avatar);
@@ -118,6 +130,17 @@ public class ProfileController {
             }
 
             User savedUser = userRepository.save(user);
+            userCacheService.invalidate(userId);
+
+            // Ảnh mới đã giữ một tham chiếu riêng (kể cả khi trùng nội dung ảnh cũ), bỏ tham chiếu của ảnh cũ
+            if (avatar != null && !avatar.isEmpty()) {
+                fileStorageService.releaseFile(previousAvatar);
+                imageVariantService.generateAsync(savedUser.getAvatar(), ImageVariant.AVATAR_SMALL, ImageVariant.AVATAR_MEDIUM);
+            }
+            if (coverPhoto != null && !coverPhoto.isEmpty()) {
+                fileStorageService.releaseFile(previousCoverPhoto);
+                imageVariantService.generateAsync(savedUser.getCoverPhoto(), ImageVariant.COVER);
+            }
             return ResponseEntity.ok(savedUser);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -0,0 +1,23 @@
+package com.example.facebook_clone.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.facebook_clone.service.UploadGarbageCollector;
+
+@RestController
+@RequestMapping("/api/uploads")
+public class UploadController {
+
+    @Autowired
+    private UploadGarbageCollector uploadGarbageCollector;
+
+    // Kết quả dọn file tải lên: lần chạy gần nhất, số file đã xóa và dung lượng thu hồi từ khi khởi động
+    @GetMapping("/gc")
+    public ResponseEntity<?> getGcStats() {
+        return ResponseEntity.ok(uploadGarbageCollector.getStats());
+    }
+}
@@ -17,6 +17,7 @@ import org.springframework.web.bind.annotation.RestController;
 import com.example.facebook_clone.security.JwtUtil;
 import com.example.facebook_clone.model.User;
 import com.example.facebook_clone.repository.UserRepository;
+import com.example.facebook_clone.service.UserCacheService;
 
 /**
  * Controller xử lý các API liên quan đến người dùng
@@ -30,6 +31,9 @@ public class UserController {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private UserCacheService userCacheService;
+
     /**
      * Lấy danh sách tất cả người dùng
      *
@@ -40,6 +44,16 @@ public class UserController {
         return userRepository.findAll();
     }
 
+    /**
+     * Thống kê cache thông tin tóm tắt người dùng
+     *
+     * @return Số lần hit, miss, eviction của cache
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<?> getUserCacheStats() {
+        return ResponseEntity.ok(userCacheService.getStats());
+    }
+
     /**
      * Lấy thông tin người dùng hiện tại dựa trên token
      *
@@ -101,7 +115,9 @@ public class UserController {
                     existingUser.setFirstName(user.getFirstName());
                     existingUser.setLastName(user.getLastName());
                     existingUser.setEmail(user.getEmail());
-                    return ResponseEntity.ok(userRepository.save(existingUser));
+                    User savedUser = userRepository.save(existingUser);
+                    userCacheService.invalidate(id);
+                    return ResponseEntity.ok(savedUser);
                 })
                 .orElseGet(() -> ResponseEntity.notFound().build());
         } catch (Exception e) {
@@ -120,6 +136,7 @@ public class UserController {
         try {
             if (userRepository.existsById(id)) {
                 userRepository.deleteById(id);
+                userCacheService.invalidate(id);
                 return ResponseEntity.ok().build();
             }
             return ResponseEntity.notFound().build();
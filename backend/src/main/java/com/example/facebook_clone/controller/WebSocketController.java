@@ -0,0 +1,23 @@
+package com.example.facebook_clone.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.facebook_clone.service.WebSocketMetricsService;
+
+@RestController
+@RequestMapping("/api/ws")
+public class WebSocketController {
+
+    @Autowired
+    private WebSocketMetricsService webSocketMetricsService;
+
+    // Thống kê gửi WebSocket: hàng đợi theo phiên, độ trễ gửi, phiên bị ngắt, executor các kênh
+    @GetMapping("/stats")
+    public ResponseEntity<?> getStats() {
+        return ResponseEntity.ok(webSocketMetricsService.getStats());
+    }
+}
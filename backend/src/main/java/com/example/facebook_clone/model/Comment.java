@@ -5,17 +5,38 @@ import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
-import javax.persistence.Transient;
-
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document(collection = "comments")
+@CompoundIndexes({
+    // Phân trang bình luận gốc / trả lời của một bài đăng theo (createdAt, _id)
+    @CompoundIndex(name = "postId_parentId_createdAt_id", def = "{'postId': 1, 'parentId': 1, 'createdAt': 1, '_id': 1}"),
+    // Phân trang trả lời của một bình luận khi chỉ biết ID bình luận cha
+    @CompoundIndex(name = "parentId_createdAt_id", def = "{'parentId': 1, 'createdAt': 1, '_id': 1}"),
+    // Tải toàn bộ một luồng trả lời theo bình luận gốc
+    @CompoundIndex(name = "postId_rootId", def = "{'postId': 1, 'rootId': 1}")
+})
 public class Comment {
+    @Id
     private String id;
+    private String postId;   // ID bài đăng chứa bình luận
     private String userId;
     private String content;
     private Date createdAt;
-    private String parentId;
-    private List<Comment> replies;
+    private String parentId; // ID bình luận cha (null nếu là bình luận gốc)
+    private String rootId;   // ID bình luận gốc của luồng (null nếu chính là bình luận gốc)
     private int depth;  // Thêm trường depth để theo dõi độ sâu của comment
     private List<String> likes; // Danh sách người dùng đã thích bình luận
+    private int likeCount;   // Luôn bằng likes.size()
+    private int replyCount;  // Số trả lời trực tiếp
+
+    // Chỉ dùng khi trả về dữ liệu, không lưu vào MongoDB
+    @Transient
+    private List<Comment> replies;
 
     @Transient
     private User user;
@@ -55,6 +76,14 @@ public class Comment {
         this.id = id;
     }
 
+    public String getPostId() {
+        return postId;
+    }
+
+    public void setPostId(String postId) {
+        this.postId = postId;
+    }
+
     public String getParentId() {
         return parentId;
     }
@@ -63,6 +92,14 @@ public class Comment {
         this.parentId = parentId;
     }
 
+    public String getRootId() {
+        return rootId;
+    }
+
+    public void setRootId(String rootId) {
+        this.rootId = rootId;
+    }
+
     public List<Comment> getReplies() {
         return replies;
     }
@@ -91,4 +128,10 @@ public class Comment {
 
     public List<String> getLikes() { return likes; }
     public void setLikes(List<String> likes) { this.likes = likes; }
+
+    public int getLikeCount() { return likeCount; }
+    public void setLikeCount(int likeCount) { this.likeCount = likeCount; }
+
+    public int getReplyCount() { return replyCount; }
+    public void setReplyCount(int replyCount) { this.replyCount = replyCount; }
 }
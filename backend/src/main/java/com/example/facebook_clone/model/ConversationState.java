@@ -0,0 +1,130 @@
+package com.example.facebook_clone.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Tóm tắt một cuộc trò chuyện theo góc nhìn của một người tham gia: con trỏ đã đọc tới đâu,
+ * số tin nhắn chưa đọc (cập nhật nguyên tử bằng $inc khi có tin nhắn mới) và tin nhắn cuối cùng.
+ * Mỗi cuộc trò chuyện có một tài liệu cho mỗi người tham gia nên hộp thư là một truy vấn theo userId.
+ */
+@Document(collection = "conversation_states")
+@CompoundIndexes({
+    // Lấy số tin nhắn chưa đọc của một người dùng theo từng cuộc trò chuyện
+    @CompoundIndex(name = "userId_unread", def = "{'userId': 1, 'unread': 1}"),
+    // Hộp thư: các cuộc trò chuyện của người dùng theo tin nhắn mới nhất
+    @CompoundIndex(name = "userId_lastMessageAt_id", def = "{'userId': 1, 'lastMessageAt': -1, '_id': -1}")
+})
+public class ConversationState {
+    public static final int PREVIEW_LENGTH = 100;
+
+    @Id
+    private String id;               // Xem idOf
+    private String userId;           // Người sở hữu trạng thái
+    private String peerId;           // Người còn lại trong cuộc trò chuyện
+    private String conversationKey;
+    private Date lastReadAt;         // Tin nhắn có timestamp không lớn hơn giá trị này đã được đọc
+    private long unread;
+    private String lastMessageId;
+    private String lastMessageSenderId;
+    private String lastMessagePreview; // Tối đa PREVIEW_LENGTH ký tự đầu của tin nhắn cuối
+    private Date lastMessageAt;
+
+    public ConversationState() {
+    }
+
+    /**
+     * ID trạng thái của một người dùng trong một cuộc trò chuyện
+     *
+     * @param userId ID người dùng
+     * @param conversationKey Khóa cuộc trò chuyện
+     * @return "userId|conversationKey"
+     */
+    public static String idOf(String userId, String conversationKey) {
+        return userId + "|" + conversationKey;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getPeerId() {
+        return peerId;
+    }
+
+    public void setPeerId(String peerId) {
+        this.peerId = peerId;
+    }
+
+    public String getConversationKey() {
+        return conversationKey;
+    }
+
+    public void setConversationKey(String conversationKey) {
+        this.conversationKey = conversationKey;
+    }
+
+    public Date getLastReadAt() {
+        return lastReadAt;
+    }
+
+    public void setLastReadAt(Date lastReadAt) {
+        this.lastReadAt = lastReadAt;
+    }
+
+    public long getUnread() {
+        return unread;
+    }
+
+    public void setUnread(long unread) {
+        this.unread = unread;
+    }
+
+    public String getLastMessageId() {
+        return lastMessageId;
+    }
+
+    public void setLastMessageId(String lastMessageId) {
+        this.lastMessageId = lastMessageId;
+    }
+
+    public String getLastMessageSenderId() {
+        return lastMessageSenderId;
+    }
+
+    public void setLastMessageSenderId(String lastMessageSenderId) {
+        this.lastMessageSenderId = lastMessageSenderId;
+    }
+
+    public String getLastMessagePreview() {
+        return lastMessagePreview;
+    }
+
+    public void setLastMessagePreview(String lastMessagePreview) {
+        this.lastMessagePreview = lastMessagePreview;
+    }
+
+    public Date getLastMessageAt() {
+        return lastMessageAt;
+    }
+
+    public void setLastMessageAt(Date lastMessageAt) {
+        this.lastMessageAt = lastMessageAt;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.facebook_clone.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Con trỏ phân trang theo cặp (createdAt, id) của phần tử cuối trang (bài đăng, bình luận, tin nhắn, cuộc trò chuyện)
+ */
+public class FeedCursor {
+    private final Date createdAt;
+    private final String id;
+
+    public FeedCursor(Date createdAt, String id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    public static FeedCursor of(Post post) {
+        return new FeedCursor(post.getCreatedAt(), post.getId());
+    }
+
+    public static FeedCursor of(Comment comment) {
+        return new FeedCursor(comment.getCreatedAt(), comment.getId());
+    }
+
+    public static FeedCursor of(PrivateMessage message) {
+        return new FeedCursor(message.getTimestamp(), message.getId());
+    }
+
+    public static FeedCursor of(ConversationState state) {
+        return new FeedCursor(state.getLastMessageAt(), state.getId());
+    }
+
+    /**
+     * Mã hóa con trỏ thành chuỗi an toàn cho URL
+     *
+     * @return Token dạng base64url của "millis:id"
+     */
+    public String encode() {
+        String raw = createdAt.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Giải mã token con trỏ
+     *
+     * @param token Token do encode() sinh ra
+     * @return Con trỏ tương ứng
+     * @throws IllegalArgumentException nếu token không hợp lệ
+     */
+    public static FeedCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            if (separator <= 0 || separator == raw.length() - 1) {
+                throw new IllegalArgumentException("Con trỏ không hợp lệ");
+            }
+            long millis = Long.parseLong(raw.substring(0, separator));
+            return new FeedCursor(new Date(millis), raw.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Con trỏ không hợp lệ", e);
+        }
+    }
+
+    public Date getCreatedAt() { return createdAt; }
+
+    public String getId() { return id; }
+}
@@ -0,0 +1,91 @@
+package com.example.facebook_clone.model;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Các kích thước thu nhỏ của ảnh tải lên.
+ * URL của bản thu nhỏ suy ra từ URL ảnh gốc: /uploads/{tên} -> /uploads/variants/{key}/{tên},
+ * nên dữ liệu đã lưu không cần thay đổi. Ảnh không thu nhỏ được (video, gif, webp...) dùng luôn URL gốc.
+ */
+public enum ImageVariant {
+    THUMB("thumb", 320), // Lưới ảnh nhiều ảnh trong bài đăng
+    FEED("feed", 1080), // Ảnh hiển thị trong bảng tin
+    AVATAR_SMALL("avatar-sm", 64), // Ảnh đại diện cạnh bình luận, tin nhắn, danh sách bạn bè
+    AVATAR_MEDIUM("avatar-md", 240), // Ảnh đại diện trong trang cá nhân
+    COVER("cover", 1280); // Ảnh bìa
+
+    public static final String ORIGINAL = "original";
+
+    private static final String UPLOADS_PREFIX = "/uploads/";
+    public static final String URL_PREFIX = UPLOADS_PREFIX + "variants/";
+
+    // Định dạng ImageIO đọc và ghi được; gif bị bỏ qua để không mất ảnh động
+    private static final Set<String> SUPPORTED_EXTENSIONS = Set.of("jpg", "jpeg", "png", "bmp");
+
+    private final String key;
+    private final int maxSize; // Cạnh dài tối đa (px)
+
+    ImageVariant(String key, int maxSize) {
+        this.key = key;
+        this.maxSize = maxSize;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * URL bản thu nhỏ của một ảnh, hoặc chính URL gốc nếu ảnh không có bản thu nhỏ
+     */
+    public String urlFor(String originalUrl) {
+        return supports(originalUrl)
+            ? URL_PREFIX + key + "/" + originalUrl.substring(UPLOADS_PREFIX.length())
+            : originalUrl;
+    }
+
+    public static ImageVariant fromKey(String key) {
+        for (ImageVariant variant : values()) {
+            if (variant.key.equals(key)) {
+                return variant;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * URL gốc và URL các bản thu nhỏ của một ảnh, theo key
+     *
+     * @param originalUrl URL ảnh gốc (có thể null)
+     * @param variants Các bản thu nhỏ cần trả về
+     * @return Map {original, key...} hoặc null nếu không có ảnh
+     */
+    public static Map<String, String> urlsFor(String originalUrl, ImageVariant... variants) {
+        if (originalUrl == null || originalUrl.isEmpty()) {
+            return null;
+        }
+        Map<String, String> urls = new LinkedHashMap<>();
+        urls.put(ORIGINAL, originalUrl);
+        for (ImageVariant variant : variants) {
+            urls.put(variant.key, variant.urlFor(originalUrl));
+        }
+        return urls;
+    }
+
+    /**
+     * Ảnh nằm trong uploads và có định dạng thu nhỏ được
+     */
+    public static boolean supports(String originalUrl) {
+        if (originalUrl == null || !originalUrl.startsWith(UPLOADS_PREFIX) || originalUrl.startsWith(URL_PREFIX)) {
+            return false;
+        }
+        int dot = originalUrl.lastIndexOf('.');
+        return dot >= 0 && SUPPORTED_EXTENSIONS.contains(originalUrl.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.facebook_clone.model;
+
+/**
+ * Kết quả thích/bỏ thích (bài đăng hoặc bình luận): trạng thái mới và số lượt thích sau khi cập nhật.
+ * Với bài đăng, eventSeq là số thứ tự sự kiện được cấp trong cùng lệnh cập nhật (0 với bình luận).
+ */
+public class LikeToggleResult {
+    private final String targetId;
+    private final String ownerId;
+    private final boolean liked;
+    private final int likeCount;
+    private final long eventSeq;
+
+    public LikeToggleResult(String targetId, String ownerId, boolean liked, int likeCount) {
+        this(targetId, ownerId, liked, likeCount, 0);
+    }
+
+    public LikeToggleResult(String targetId, String ownerId, boolean liked, int likeCount, long eventSeq) {
+        this.targetId = targetId;
+        this.ownerId = ownerId;
+        this.liked = liked;
+        this.likeCount = likeCount;
+        this.eventSeq = eventSeq;
+    }
+
+    public String getTargetId() { return targetId; }
+
+    public String getOwnerId() { return ownerId; }
+
+    public boolean isLiked() { return liked; }
+
+    public int getLikeCount() { return likeCount; }
+
+    public long getEventSeq() { return eventSeq; }
+}
@@ -0,0 +1,72 @@
+package com.example.facebook_clone.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * File tải lên được lưu theo nội dung (uploads/{aa}/{bb}/{sha256}.{ext}).
+ * Nhiều bài đăng/hồ sơ dùng chung một file; refCount đếm số tham chiếu, về 0 thì file bị xóa.
+ */
+@Document(collection = "media_blobs")
+public class MediaBlob {
+    @Id
+    private String id; // Đường dẫn tương đối trong uploads, ví dụ "ab/cd/abcd....jpg"
+    private String hash; // SHA-256 của nội dung (hex)
+    private long size;
+    private int refCount;
+    private Date createdAt;
+    private Date updatedAt;
+
+    public MediaBlob() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
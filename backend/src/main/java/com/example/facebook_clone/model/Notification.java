@@ -1,10 +1,21 @@
 package com.example.facebook_clone.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.util.Date;
+import java.util.List;
 
 @Document(collection = "notifications")
+@CompoundIndexes({
+    // Danh sách thông báo, đếm chưa đọc và đánh dấu đã đọc theo khoảng đều lọc theo userId + read
+    @CompoundIndex(name = "userId_read_createdAt", def = "{'userId': 1, 'read': 1, 'createdAt': -1}"),
+    @CompoundIndex(name = "userId_createdAt", def = "{'userId': 1, 'createdAt': -1}"),
+    // Tìm thông báo gộp đang mở theo cửa sổ thời gian
+    @CompoundIndex(name = "userId_groupKey_windowStart", def = "{'userId': 1, 'groupKey': 1, 'windowStart': -1}", sparse = true)
+})
 public class Notification {
     @Id
     private String id;
@@ -14,7 +25,16 @@ public class Notification {
     private String content;        // Nội dung thông báo
     private String entityId;       // ID của đối tượng liên quan (post, comment, message, friend request)
     private boolean read;          // Đã đọc hay chưa
-    private Date createdAt;        // Thời gian tạo thông báo
+    private Date createdAt;        // Thời gian tạo thông báo (thông báo gộp: lần cập nhật gần nhất)
+
+    // Các trường của thông báo gộp (LIKE, COMMENT_LIKE), null với thông báo thường
+    private String groupKey;       // "{type}:{entityId}"
+    private Date windowStart;      // Bắt đầu cửa sổ thời gian gộp
+    // "{userId}|{groupKey}|{windowStart millis}": mỗi cửa sổ chỉ có một tài liệu dù nhiều node cùng upsert
+    @Indexed(name = "windowKey", unique = true, sparse = true)
+    private String windowKey;
+    private int actorCount;        // Tổng số người đã thực hiện hành động
+    private List<String> actorIds; // Một số người gần nhất, mới nhất trước
     
     public Notification() {
         this.createdAt = new Date();
@@ -96,4 +116,44 @@ public class Notification {
     public void setCreatedAt(Date createdAt) {
         this.createdAt = createdAt;
     }
+
+    public String getGroupKey() {
+        return groupKey;
+    }
+
+    public void setGroupKey(String groupKey) {
+        this.groupKey = groupKey;
+    }
+
+    public Date getWindowStart() {
+        return windowStart;
+    }
+
+    public void setWindowStart(Date windowStart) {
+        this.windowStart = windowStart;
+    }
+
+    public String getWindowKey() {
+        return windowKey;
+    }
+
+    public void setWindowKey(String windowKey) {
+        this.windowKey = windowKey;
+    }
+
+    public int getActorCount() {
+        return actorCount;
+    }
+
+    public void setActorCount(int actorCount) {
+        this.actorCount = actorCount;
+    }
+
+    public List<String> getActorIds() {
+        return actorIds;
+    }
+
+    public void setActorIds(List<String> actorIds) {
+        this.actorIds = actorIds;
+    }
 }
@@ -0,0 +1,44 @@
+package com.example.facebook_clone.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Bộ đếm thông báo chưa đọc của một người dùng, được cập nhật nguyên tử bằng $inc
+ */
+@Document(collection = "notification_counters")
+public class NotificationCounter {
+    @Id
+    private String userId;
+    private long unread;
+    private Date reconciledAt; // Lần cuối đối chiếu với số thông báo chưa đọc thực tế
+
+    public NotificationCounter() {
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public long getUnread() {
+        return unread;
+    }
+
+    public void setUnread(long unread) {
+        this.unread = unread;
+    }
+
+    public Date getReconciledAt() {
+        return reconciledAt;
+    }
+
+    public void setReconciledAt(Date reconciledAt) {
+        this.reconciledAt = reconciledAt;
+    }
+}
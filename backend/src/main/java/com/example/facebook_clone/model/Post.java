@@ -3,12 +3,20 @@ package com.example.facebook_clone.model;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "posts")
+@CompoundIndexes({
+    // Phục vụ phân trang bảng tin theo (createdAt, _id) giảm dần
+    @CompoundIndex(name = "privacy_createdAt_id", def = "{'privacy': 1, 'createdAt': -1, '_id': -1}"),
+    @CompoundIndex(name = "userId_createdAt_id", def = "{'userId': 1, 'createdAt': -1, '_id': -1}")
+})
 public class Post {
     @Id
     private String id;
@@ -18,6 +26,12 @@ public class Post {
     private List<String> images;
     private List<String> videos;
     private List<String> likes;
+    private int likeCount; // Luôn bằng likes.size(), được cập nhật nguyên tử cùng likes
+    private int commentCount; // Tổng số bình luận (kể cả trả lời) trong collection comments
+    private long eventSeq; // Số thứ tự sự kiện WebSocket cuối cùng đã phát cho bài đăng
+
+    // Bình luận nằm trong collection riêng, chỉ gắn vào khi trả về (một số bình luận đầu tiên)
+    @Transient
     private List<Comment> comments;
     private String privacy = "PUBLIC"; // Mặc định là PUBLIC, có thể là PUBLIC hoặc PRIVATE
 
@@ -104,6 +118,30 @@ public class Post {
         this.likes = likes;
     }
 
+    public int getLikeCount() {
+        return likeCount;
+    }
+
+    public void setLikeCount(int likeCount) {
+        this.likeCount = likeCount;
+    }
+
+    public int getCommentCount() {
+        return commentCount;
+    }
+
+    public void setCommentCount(int commentCount) {
+        this.commentCount = commentCount;
+    }
+
+    public long getEventSeq() {
+        return eventSeq;
+    }
+
+    public void setEventSeq(long eventSeq) {
+        this.eventSeq = eventSeq;
+    }
+
     public List<Comment> getComments() {
         return comments;
     }
@@ -120,6 +158,18 @@ public class Post {
         this.images = images;
     }
 
+    // URL ảnh gốc và các bản thu nhỏ theo thứ tự của images; chỉ trả về cho client, không lưu vào MongoDB
+    public List<Map<String, String>> getImageVariants() {
+        if (images == null) {
+            return null;
+        }
+        List<Map<String, String>> variants = new ArrayList<>();
+        for (String image : images) {
+            variants.add(ImageVariant.urlsFor(image, ImageVariant.THUMB, ImageVariant.FEED));
+        }
+        return variants;
+    }
+
     public List<String> getVideos() {
         return videos;
     }
@@ -156,11 +206,14 @@ public class Post {
     public void addLike(String userId) {
         if (!this.likes.contains(userId)) {
             this.likes.add(userId);
+            this.likeCount = this.likes.size();
         }
     }
 
     public void removeLike(String userId) {
-        this.likes.remove(userId);
+        if (this.likes.remove(userId)) {
+            this.likeCount = this.likes.size();
+        }
     }
 
     public void addComment(Comment comment) {
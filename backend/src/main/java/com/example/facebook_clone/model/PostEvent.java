@@ -0,0 +1,78 @@
+package com.example.facebook_clone.model;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Sự kiện thay đổi nhỏ của bài đăng gửi qua /topic/posts/{postId}.
+ * Client áp dụng sự kiện lên bản bài đăng đang có thay vì nhận lại toàn bộ bài đăng;
+ * seq tăng liên tục theo từng bài đăng để client phát hiện sự kiện bị thiếu.
+ */
+public class PostEvent {
+
+    public enum Type {
+        LIKE_ADDED,
+        LIKE_REMOVED,
+        COMMENT_ADDED,
+        COMMENT_DELETED,
+        COMMENT_LIKE_CHANGED,
+        POST_EDITED
+    }
+
+    private Type type;
+    private String postId;
+    private long seq;
+    private Date createdAt;
+    private Map<String, Object> data;
+
+    public PostEvent() {
+    }
+
+    public PostEvent(Type type, String postId, long seq, Map<String, Object> data) {
+        this.type = type;
+        this.postId = postId;
+        this.seq = seq;
+        this.data = data;
+        this.createdAt = new Date();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getPostId() {
+        return postId;
+    }
+
+    public void setPostId(String postId) {
+        this.postId = postId;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Map<String, Object> getData() {
+        return data;
+    }
+
+    public void setData(Map<String, Object> data) {
+        this.data = data;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.facebook_clone.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Người dùng đang có phiên WebSocket trên một instance backend (khi chạy nhiều instance).
+ * Instance làm mới expiresAt định kỳ; instance bị dừng đột ngột thì tài liệu tự hết hạn (TTL index).
+ */
+@Document(collection = "presence")
+public class PresenceEntry {
+    @Id
+    private String id; // "{nodeId}|{userId}"
+    private String nodeId;
+    private String userId;
+    @Indexed(expireAfterSeconds = 0)
+    private Date expiresAt;
+
+    public PresenceEntry() {
+    }
+
+    public static String idOf(String nodeId, String userId) {
+        return nodeId + "|" + userId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -1,24 +1,39 @@
 package com.example.facebook_clone.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.util.Date;
 
 @Document(collection = "private_messages")
+// Phân trang lịch sử một cuộc trò chuyện theo (timestamp, _id) giảm dần
+@CompoundIndex(name = "conversationKey_timestamp_id", def = "{'conversationKey': 1, 'timestamp': -1, '_id': -1}")
 public class PrivateMessage {
     @Id
     private String id;
+    private String conversationKey; // Cặp ID hai người đã sắp xếp, xem conversationKeyOf
     private String senderId;
     private String receiverId;
     private String content;
     private Date timestamp;
-    private boolean read;
+    private boolean read; // Chỉ còn ý nghĩa với tin nhắn cũ; khi trả về được suy ra từ ConversationState.lastReadAt
     
     public PrivateMessage() {
         this.timestamp = new Date();
         this.read = false;
     }
     
+    /**
+     * Khóa cuộc trò chuyện giữa hai người, không phụ thuộc ai là người gửi
+     *
+     * @param userId1 ID người dùng thứ nhất
+     * @param userId2 ID người dùng thứ hai
+     * @return "idNhỏ:idLớn"
+     */
+    public static String conversationKeyOf(String userId1, String userId2) {
+        return userId1.compareTo(userId2) <= 0 ? userId1 + ":" + userId2 : userId2 + ":" + userId1;
+    }
+
     // Getters and Setters
     public String getId() {
         return id;
@@ -28,6 +43,14 @@ public class PrivateMessage {
         this.id = id;
     }
     
+    public String getConversationKey() {
+        return conversationKey;
+    }
+    
+    public void setConversationKey(String conversationKey) {
+        this.conversationKey = conversationKey;
+    }
+    
     public String getSenderId() {
         return senderId;
     }
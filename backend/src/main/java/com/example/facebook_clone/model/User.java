@@ -1,5 +1,7 @@
 package com.example.facebook_clone.model;
 
+import java.util.Map;
+
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -35,6 +37,14 @@ public class User {
     public String getCoverPhoto() { return coverPhoto; }
     public void setCoverPhoto(String coverPhoto) { this.coverPhoto = coverPhoto; }
     
+    // URL gốc và các bản thu nhỏ, chỉ trả về cho client
+    public Map<String, String> getAvatarVariants() {
+        return ImageVariant.urlsFor(avatar, ImageVariant.AVATAR_SMALL, ImageVariant.AVATAR_MEDIUM);
+    }
+    public Map<String, String> getCoverPhotoVariants() {
+        return ImageVariant.urlsFor(coverPhoto, ImageVariant.COVER);
+    }
+    
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }  
     
@@ -0,0 +1,18 @@
+package com.example.facebook_clone.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import com.example.facebook_clone.model.Comment;
+
+public interface CommentRepository extends MongoRepository<Comment, String> {
+    // Lấy tất cả bình luận thuộc các luồng có bình luận gốc cho trước
+    List<Comment> findByPostIdAndRootIdInOrderByCreatedAtAsc(String postId, Collection<String> rootIds);
+
+    // Lấy toàn bộ trả lời trong một luồng (postId đứng đầu để dùng index postId_rootId)
+    List<Comment> findByPostIdAndRootId(String postId, String rootId);
+
+    void deleteByPostId(String postId);
+}
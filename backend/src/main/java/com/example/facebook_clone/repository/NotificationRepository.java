@@ -28,4 +28,7 @@ public interface NotificationRepository extends MongoRepository<Notification, St
     
     // Xóa thông báo theo entityId
     void deleteByEntityId(String entityId);
+
+    // Xóa tất cả thông báo của người dùng (một lệnh deleteMany, không tải tài liệu)
+    long deleteByUserId(String userId);
 }
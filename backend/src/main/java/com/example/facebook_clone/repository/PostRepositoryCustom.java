@@ -0,0 +1,57 @@
+package com.example.facebook_clone.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import com.example.facebook_clone.model.Post;
+
+/**
+ * Các truy vấn bài đăng cần MongoTemplate (không thể biểu diễn bằng derived query)
+ */
+public interface PostRepositoryCustom {
+
+    /**
+     * Lấy một trang bảng tin theo keyset (createdAt, id) giảm dần
+     *
+     * @param viewerId ID người dùng đang xem (null nếu chưa đăng nhập)
+     * @param beforeCreatedAt Thời gian tạo của bài cuối trang trước (null cho trang đầu)
+     * @param beforeId ID của bài cuối trang trước (null cho trang đầu)
+     * @param limit Số bài tối đa cần lấy
+     * @return Danh sách bài đăng theo thứ tự mới nhất trước
+     */
+    List<Post> findFeedPage(String viewerId, Date beforeCreatedAt, String beforeId, int limit);
+
+    /**
+     * Ghi nội dung và quyền riêng tư bằng $set, không ghi đè media, likes và các bộ đếm
+     *
+     * @param post Bài đăng đã được sửa trong bộ nhớ
+     */
+    void updateContent(Post post);
+
+    /**
+     * Ghi các trường người dùng có thể sửa (nội dung, quyền riêng tư, media) bằng $set, chỉ khi danh sách media
+     * trong database vẫn đúng như lúc đọc. Nhờ vậy hai lần sửa chồng nhau không cùng bỏ tham chiếu một file.
+     *
+     * @param post Bài đăng đã được sửa trong bộ nhớ
+     * @param expectedImages Danh sách hình ảnh lúc đọc
+     * @param expectedVideos Danh sách video lúc đọc
+     * @return true nếu đã ghi, false nếu media đã bị sửa đồng thời
+     */
+    boolean updateEditableFields(Post post, List<String> expectedImages, List<String> expectedVideos);
+
+    /**
+     * Xóa bài đăng và trả về tài liệu đã xóa; chỉ một trong các request xóa đồng thời nhận được bài đăng
+     *
+     * @param postId ID bài đăng
+     * @return Bài đăng đã xóa, hoặc null nếu không còn
+     */
+    Post deleteAndGet(String postId);
+
+    /**
+     * Lấy trạng thái tối thiểu để đồng bộ sự kiện: chủ bài, quyền riêng tư và eventSeq
+     *
+     * @param postId ID bài đăng
+     * @return Bài đăng chỉ gồm các trường trên, hoặc null nếu không tồn tại
+     */
+    Post findSyncState(String postId);
+}
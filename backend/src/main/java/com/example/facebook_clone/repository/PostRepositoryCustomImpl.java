@@ -0,0 +1,81 @@
+package com.example.facebook_clone.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.example.facebook_clone.model.Post;
+
+/**
+ * Cài đặt các truy vấn tùy chỉnh cho PostRepository
+ */
+public class PostRepositoryCustomImpl implements PostRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public List<Post> findFeedPage(String viewerId, Date beforeCreatedAt, String beforeId, int limit) {
+        // Bài viết công khai (privacy thiếu trong dữ liệu cũ được coi là PUBLIC)
+        Criteria visible = Criteria.where("privacy").in("PUBLIC", null);
+        if (viewerId != null) {
+            // Cộng thêm tất cả bài viết của chính người xem
+            visible = new Criteria().orOperator(Criteria.where("userId").is(viewerId), visible);
+        }
+
+        Criteria criteria = visible;
+        if (beforeCreatedAt != null && beforeId != null) {
+            // Keyset: (createdAt, id) nhỏ hơn con trỏ
+            Criteria afterCursor = new Criteria().orOperator(
+                Criteria.where("createdAt").lt(beforeCreatedAt),
+                new Criteria().andOperator(
+                    Criteria.where("createdAt").is(beforeCreatedAt),
+                    Criteria.where("id").lt(beforeId)));
+            criteria = new Criteria().andOperator(visible, afterCursor);
+        }
+
+        Query query = new Query(criteria)
+            .with(Sort.by(Sort.Direction.DESC, "createdAt", "id"))
+            .limit(limit);
+        return mongoTemplate.find(query, Post.class);
+    }
+
+    @Override
+    public void updateContent(Post post) {
+        Update update = new Update()
+            .set("content", post.getContent())
+            .set("privacy", post.getPrivacy());
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(post.getId())), update, Post.class);
+    }
+
+    @Override
+    public boolean updateEditableFields(Post post, List<String> expectedImages, List<String> expectedVideos) {
+        Update update = new Update()
+            .set("content", post.getContent())
+            .set("privacy", post.getPrivacy())
+            .set("images", post.getImages())
+            .set("videos", post.getVideos());
+        Query query = new Query(Criteria.where("id").is(post.getId())
+            .and("images").is(expectedImages)
+            .and("videos").is(expectedVideos));
+        return mongoTemplate.updateFirst(query, update, Post.class).getMatchedCount() > 0;
+    }
+
+    @Override
+    public Post deleteAndGet(String postId) {
+        return mongoTemplate.findAndRemove(new Query(Criteria.where("id").is(postId)), Post.class);
+    }
+
+    @Override
+    public Post findSyncState(String postId) {
+        Query query = new Query(Criteria.where("id").is(postId));
+        query.fields().include("userId", "privacy", "eventSeq");
+        return mongoTemplate.findOne(query, Post.class);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.facebook_clone.security;
+
+import java.security.Principal;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Xác thực frame STOMP CONNECT bằng JWT (header Authorization: Bearer ...) và gắn userId làm Principal của phiên,
+ * để /user/queue/* được định tuyến tới đúng người dùng. Client chỉ được SEND tới đích /app/**.
+ */
+@Component
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final String APP_PREFIX = "/app/";
+
+    private record UserPrincipal(String userId) implements Principal {
+        @Override
+        public String getName() {
+            return userId;
+        }
+    }
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+
+        if (StompCommand.CONNECT.equals(accessor.getCommand())) {
+            String header = accessor.getFirstNativeHeader(AUTHORIZATION_HEADER);
+            if (header == null || !header.startsWith(BEARER_PREFIX)) {
+                throw new MessagingException(message, "Thiếu token xác thực");
+            }
+            String token = header.substring(BEARER_PREFIX.length()).trim();
+            if (!jwtUtil.validateToken(token)) {
+                throw new MessagingException(message, "Token không hợp lệ hoặc đã hết hạn");
+            }
+            accessor.setUser(new UserPrincipal(jwtUtil.extractUserId(token)));
+        } else if (StompCommand.SEND.equals(accessor.getCommand())) {
+            // Không cho client tự phát tin vào /topic hay hàng đợi riêng của người khác
+            String destination = accessor.getDestination();
+            if (destination == null || !destination.startsWith(APP_PREFIX)) {
+                throw new MessagingException(message, "Không được gửi tới đích " + destination);
+            }
+        }
+        return message;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.facebook_clone.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Kênh chuyển tiếp tin WebSocket giữa các instance backend.
+ * Mỗi instance vẫn giữ các subscription của client nối vào nó (simple broker); tin gửi tới /topic/**
+ * trên một instance được phát qua relay để các instance khác giao cho client của mình.
+ */
+public interface BrokerRelay {
+
+    /**
+     * Một tin đã được chuyển thành byte, kèm instance đã phát ra nó
+     */
+    record Frame(String originNodeId, String destination, String contentType, byte[] payload) {
+    }
+
+    /**
+     * ID của instance hiện tại, dùng để bỏ qua tin do chính mình phát
+     */
+    String getNodeId();
+
+    /**
+     * Phát tin cho các instance khác
+     *
+     * @param frame Tin cần phát
+     */
+    void publish(Frame frame);
+
+    /**
+     * Bắt đầu nhận tin từ các instance khác (không gồm tin do chính instance này phát)
+     *
+     * @param listener Hàm giao tin cho broker cục bộ
+     */
+    void start(Consumer<Frame> listener);
+
+    /**
+     * Dừng nhận tin
+     */
+    void stop();
+}
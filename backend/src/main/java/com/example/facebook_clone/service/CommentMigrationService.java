@@ -0,0 +1,162 @@
+package com.example.facebook_clone.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.Comment;
+import com.example.facebook_clone.model.Post;
+
+/**
+ * Chuyển bình luận đang nhúng trong tài liệu bài đăng (posts.comments) sang collection comments.
+ * Đọc tuần tự từng bài đăng, ghi bình luận bằng upsert theo ID nên có thể chạy lại an toàn.
+ * Bình luận cũ không có ID (như trong database/facebook_clone.posts.json) được cấp ID cố định
+ * suy ra từ ID bài đăng và vị trí trong cây.
+ */
+@Service
+public class CommentMigrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommentMigrationService.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Chạy chuyển đổi khi ứng dụng khởi động xong (chạy trước các service khác dùng bình luận)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    public void migrateOnStartup() {
+        try {
+            int migrated = migrate();
+            if (migrated > 0) {
+                logger.info("Đã chuyển {} bình luận sang collection comments", migrated);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Không thể chuyển bình luận sang collection comments", e);
+        }
+    }
+
+    /**
+     * Chuyển toàn bộ bình luận nhúng còn lại
+     *
+     * @return Số bình luận đã chuyển
+     */
+    public int migrate() {
+        Query query = new Query(Criteria.where("comments").exists(true));
+        query.fields().include("_id", "comments");
+
+        int total = 0;
+        List<Comment> batch = new ArrayList<>();
+        List<Object> postIds = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        try (Stream<Document> stream = mongoTemplate.stream(query, Document.class, "posts")) {
+            for (Document post : (Iterable<Document>) stream::iterator) {
+                Object rawId = post.get("_id");
+                String postId = rawId.toString();
+                int before = batch.size();
+                flatten(postId, post.getList("comments", Document.class), null, null, 0, "", batch);
+                postIds.add(rawId);
+                counts.add(batch.size() - before);
+
+                if (batch.size() >= BATCH_SIZE) {
+                    total += flush(batch, postIds, counts);
+                }
+            }
+        }
+        total += flush(batch, postIds, counts);
+        return total;
+    }
+
+    // Ghi bình luận trước, sau đó mới gỡ trường comments khỏi bài đăng.
+    // Bộ đếm được cộng thêm ($inc) chứ không ghi đè, để giữ các bình luận mới thêm trong lúc chuyển đổi;
+    // điều kiện comments còn tồn tại là dấu hiệu chưa chuyển nên mỗi bài chỉ được cộng một lần dù chạy lại
+    private int flush(List<Comment> batch, List<Object> postIds, List<Integer> counts) {
+        int written = batch.size();
+        if (!batch.isEmpty()) {
+            BulkOperations comments = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Comment.class);
+            for (Comment comment : batch) {
+                comments.replaceOne(new Query(Criteria.where("_id").is(comment.getId())), comment,
+                    FindAndReplaceOptions.options().upsert());
+            }
+            comments.execute();
+        }
+        if (!postIds.isEmpty()) {
+            BulkOperations posts = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Post.class);
+            for (int i = 0; i < postIds.size(); i++) {
+                posts.updateOne(new Query(Criteria.where("_id").is(postIds.get(i)).and("comments").exists(true)),
+                    new Update().unset("comments").inc("commentCount", counts.get(i)));
+            }
+            posts.execute();
+        }
+        batch.clear();
+        postIds.clear();
+        counts.clear();
+        return written;
+    }
+
+    private void flatten(String postId, List<Document> comments, String parentId, String rootId,
+                         int depth, String path, List<Comment> out) {
+        if (comments == null) {
+            return;
+        }
+        for (int i = 0; i < comments.size(); i++) {
+            Document raw = comments.get(i);
+            String position = path + "/" + i;
+
+            Comment comment = new Comment();
+            comment.setId(resolveId(raw, postId, position));
+            comment.setPostId(postId);
+            comment.setUserId(raw.getString("userId"));
+            comment.setContent(raw.getString("content"));
+            Date createdAt = raw.getDate("createdAt");
+            comment.setCreatedAt(createdAt != null ? createdAt : new Date(0));
+            comment.setParentId(parentId);
+            comment.setRootId(rootId);
+            comment.setDepth(depth);
+
+            List<String> likes = raw.getList("likes", String.class);
+            comment.setLikes(likes != null ? new ArrayList<>(likes) : new ArrayList<>());
+            comment.setLikeCount(comment.getLikes().size());
+
+            List<Document> replies = raw.getList("replies", Document.class);
+            comment.setReplyCount(replies != null ? replies.size() : 0);
+            comment.setReplies(null);
+            out.add(comment);
+
+            flatten(postId, replies, comment.getId(), rootId != null ? rootId : comment.getId(),
+                depth + 1, position, out);
+        }
+    }
+
+    private static String resolveId(Document raw, String postId, String position) {
+        Object id = raw.get("_id");
+        if (id == null) {
+            id = raw.get("id");
+        }
+        if (id != null) {
+            return id.toString();
+        }
+        return UUID.nameUUIDFromBytes((postId + position).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
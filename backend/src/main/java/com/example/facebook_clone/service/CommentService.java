@@ -0,0 +1,287 @@
+package com.example.facebook_clone.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.Comment;
+import com.example.facebook_clone.model.FeedCursor;
+import com.example.facebook_clone.model.LikeToggleResult;
+import com.example.facebook_clone.model.Post;
+import com.example.facebook_clone.repository.CommentRepository;
+
+/**
+ * Service quản lý bình luận lưu trong collection comments (tách khỏi tài liệu bài đăng).
+ * Mỗi bình luận trỏ tới bài đăng, bình luận cha và bình luận gốc của luồng.
+ */
+@Service
+public class CommentService {
+
+    /**
+     * Độ sâu tối đa của bình luận cha (tổng 4 tầng: 0, 1, 2, 3)
+     */
+    public static final int MAX_PARENT_DEPTH = 3;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app.feed.top-comments:3}")
+    private int topComments;
+
+    /**
+     * Thêm bình luận mới vào bài đăng và cập nhật bộ đếm
+     *
+     * @param postId ID bài đăng
+     * @param userId ID người bình luận
+     * @param content Nội dung bình luận
+     * @param parent Bình luận cha (null nếu là bình luận gốc)
+     * @return Bình luận đã lưu
+     */
+    public Comment addComment(String postId, String userId, String content, Comment parent) {
+        Comment comment = new Comment();
+        comment.setPostId(postId);
+        comment.setUserId(userId);
+        comment.setContent(content);
+        comment.setCreatedAt(new Date());
+        if (parent != null) {
+            comment.setParentId(parent.getId());
+            comment.setRootId(parent.getRootId() != null ? parent.getRootId() : parent.getId());
+            comment.setDepth(parent.getDepth() + 1);
+        }
+        Comment saved = commentRepository.insert(comment);
+
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(postId)),
+            new Update().inc("commentCount", 1), Post.class);
+        if (parent != null) {
+            mongoTemplate.updateFirst(new Query(Criteria.where("id").is(parent.getId())),
+                new Update().inc("replyCount", 1), Comment.class);
+        }
+        return saved;
+    }
+
+    /**
+     * Xóa bình luận cùng toàn bộ trả lời của nó và cập nhật bộ đếm
+     *
+     * @param comment Bình luận cần xóa
+     * @return Số bình luận đã xóa
+     */
+    public int deleteComment(Comment comment) {
+        List<String> ids = new ArrayList<>();
+        ids.add(comment.getId());
+        if (comment.getParentId() == null) {
+            // Bình luận gốc: xóa cả luồng
+            for (Comment reply : commentRepository.findByPostIdAndRootId(comment.getPostId(), comment.getId())) {
+                ids.add(reply.getId());
+            }
+        } else {
+            // Trả lời: chỉ xóa các nhánh con của nó trong luồng
+            Map<String, List<Comment>> children = groupByParent(
+                commentRepository.findByPostIdAndRootId(comment.getPostId(), comment.getRootId()));
+            collectDescendantIds(comment.getId(), children, ids);
+        }
+        commentRepository.deleteAllById(ids);
+
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(comment.getPostId())),
+            new Update().inc("commentCount", -ids.size()), Post.class);
+        if (comment.getParentId() != null) {
+            mongoTemplate.updateFirst(new Query(Criteria.where("id").is(comment.getParentId())),
+                new Update().inc("replyCount", -1), Comment.class);
+        }
+        return ids.size();
+    }
+
+    /**
+     * Xóa toàn bộ bình luận của một bài đăng
+     *
+     * @param postId ID bài đăng đã bị xóa
+     */
+    public void deleteCommentsForPost(String postId) {
+        commentRepository.deleteByPostId(postId);
+    }
+
+    /**
+     * Đảo trạng thái thích bình luận bằng cập nhật nguyên tử
+     *
+     * @param commentId ID bình luận
+     * @param userId ID người thích
+     * @return Kết quả sau khi cập nhật hoặc null nếu bình luận không tồn tại
+     */
+    public LikeToggleResult toggleLike(String commentId, String userId) {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Comment liked = mongoTemplate.findAndModify(
+                likeProjection(new Query(Criteria.where("id").is(commentId).and("likes").ne(userId))),
+                new Update().push("likes", userId).inc("likeCount", 1),
+                FindAndModifyOptions.options().returnNew(true),
+                Comment.class);
+            if (liked != null) {
+                return new LikeToggleResult(commentId, liked.getUserId(), true, liked.getLikeCount());
+            }
+            Comment unliked = mongoTemplate.findAndModify(
+                likeProjection(new Query(Criteria.where("id").is(commentId).and("likes").is(userId))),
+                new Update().pull("likes", userId).inc("likeCount", -1),
+                FindAndModifyOptions.options().returnNew(true),
+                Comment.class);
+            if (unliked != null) {
+                return new LikeToggleResult(commentId, unliked.getUserId(), false, unliked.getLikeCount());
+            }
+            if (!commentRepository.existsById(commentId)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lấy một trang bình luận gốc của bài đăng, cũ nhất trước
+     *
+     * @param postId ID bài đăng
+     * @param cursor Con trỏ trang trước (null cho trang đầu)
+     * @param limit Số bình luận tối đa
+     * @return Danh sách bình luận
+     */
+    public List<Comment> findTopLevelPage(String postId, FeedCursor cursor, int limit) {
+        return findPage(Criteria.where("postId").is(postId).and("parentId").is(null), cursor, limit);
+    }
+
+    /**
+     * Lấy một trang trả lời trực tiếp của bình luận, cũ nhất trước
+     *
+     * @param commentId ID bình luận cha
+     * @param cursor Con trỏ trang trước (null cho trang đầu)
+     * @param limit Số trả lời tối đa
+     * @return Danh sách trả lời
+     */
+    public List<Comment> findRepliesPage(String commentId, FeedCursor cursor, int limit) {
+        return findPage(Criteria.where("parentId").is(commentId), cursor, limit);
+    }
+
+    /**
+     * Gắn N bình luận gốc đầu tiên vào mỗi bài đăng bằng một truy vấn aggregation cho cả danh sách
+     *
+     * @param posts Danh sách bài đăng
+     */
+    public void attachTopComments(List<Post> posts) {
+        Set<String> postIds = new HashSet<>();
+        for (Post post : posts) {
+            post.setComments(new ArrayList<>());
+            if (post.getCommentCount() > 0) {
+                postIds.add(post.getId());
+            }
+        }
+        if (postIds.isEmpty() || topComments <= 0) {
+            return;
+        }
+
+        // $topN (MongoDB 5.2+) chỉ giữ N bình luận đầu của mỗi bài trong lúc gom nhóm,
+        // thay vì đưa mọi bình luận gốc của bài vào một mảng rồi mới cắt
+        Document topN = new Document("n", topComments)
+            .append("sortBy", new Document("createdAt", 1).append("_id", 1))
+            .append("output", "$$ROOT");
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.match(Criteria.where("postId").in(postIds).and("parentId").is(null)),
+            context -> new Document("$group", new Document("_id", "$postId")
+                .append("comments", new Document("$topN", topN))));
+
+        Map<String, List<Comment>> byPost = new HashMap<>();
+        for (Document group : mongoTemplate.aggregate(aggregation, Comment.class, Document.class)) {
+            List<Comment> comments = new ArrayList<>();
+            for (Object raw : group.getList("comments", Object.class)) {
+                comments.add(mongoTemplate.getConverter().read(Comment.class, (Document) raw));
+            }
+            byPost.put(group.getString("_id"), comments);
+        }
+        for (Post post : posts) {
+            List<Comment> comments = byPost.get(post.getId());
+            if (comments != null) {
+                post.setComments(comments);
+            }
+        }
+    }
+
+    /**
+     * Gắn trang bình luận gốc đầu tiên kèm toàn bộ luồng trả lời của chúng (dùng cho trang chi tiết)
+     *
+     * @param post Bài đăng
+     * @param limit Số bình luận gốc tối đa
+     */
+    public void attachCommentThreads(Post post, int limit) {
+        List<Comment> roots = findTopLevelPage(post.getId(), null, limit);
+        if (!roots.isEmpty()) {
+            List<String> rootIds = new ArrayList<>();
+            for (Comment root : roots) {
+                rootIds.add(root.getId());
+            }
+            Map<String, List<Comment>> children = groupByParent(
+                commentRepository.findByPostIdAndRootIdInOrderByCreatedAtAsc(post.getId(), rootIds));
+            for (Comment root : roots) {
+                attachReplies(root, children);
+            }
+        }
+        post.setComments(roots);
+    }
+
+    private void attachReplies(Comment comment, Map<String, List<Comment>> children) {
+        List<Comment> replies = children.getOrDefault(comment.getId(), new ArrayList<>());
+        comment.setReplies(replies);
+        for (Comment reply : replies) {
+            attachReplies(reply, children);
+        }
+    }
+
+    private List<Comment> findPage(Criteria scope, FeedCursor cursor, int limit) {
+        Criteria criteria = scope;
+        if (cursor != null) {
+            criteria = new Criteria().andOperator(scope, new Criteria().orOperator(
+                Criteria.where("createdAt").gt(cursor.getCreatedAt()),
+                new Criteria().andOperator(
+                    Criteria.where("createdAt").is(cursor.getCreatedAt()),
+                    Criteria.where("id").gt(cursor.getId()))));
+        }
+        Query query = new Query(criteria)
+            .with(Sort.by(Sort.Direction.ASC, "createdAt", "id"))
+            .limit(limit);
+        return mongoTemplate.find(query, Comment.class);
+    }
+
+    private static Query likeProjection(Query query) {
+        query.fields().include("userId", "likeCount");
+        return query;
+    }
+
+    private static Map<String, List<Comment>> groupByParent(List<Comment> comments) {
+        Map<String, List<Comment>> children = new HashMap<>();
+        for (Comment comment : comments) {
+            if (comment.getParentId() != null) {
+                children.computeIfAbsent(comment.getParentId(), k -> new ArrayList<>()).add(comment);
+            }
+        }
+        return children;
+    }
+
+    private static void collectDescendantIds(String commentId, Map<String, List<Comment>> children, List<String> ids) {
+        for (Comment child : children.getOrDefault(commentId, Collections.emptyList())) {
+            ids.add(child.getId());
+            collectDescendantIds(child.getId(), children, ids);
+        }
+    }
+}
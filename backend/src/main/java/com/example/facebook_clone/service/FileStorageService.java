@@ -1,22 +1,84 @@
 package com.example.facebook_clone.service;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.example.facebook_clone.model.ImageVariant;
+import com.example.facebook_clone.model.MediaBlob;
+
 /**
- * Service xử lý lưu trữ file
+ * Service xử lý lưu trữ file.
+ * File được lưu theo nội dung: SHA-256 được tính trước, nội dung đã có thì chỉ tăng số tham chiếu trong media_blobs
+ * (không ghi đĩa); nội dung mới được chép qua FileChannel vào file tạm rồi đổi tên nguyên tử sang
+ * uploads/{aa}/{bb}/{sha256}.{ext}. File bị xóa khi không còn tham chiếu nào.
  */
 @Service
 public class FileStorageService {
 
+    private static final Logger logger = LoggerFactory.getLogger(FileStorageService.class);
+
+    private static final String URL_PREFIX = "/uploads/";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int LOCK_STRIPES = 64;
+    private static final int CONTENT_HASH_CACHE_SIZE = 10000;
+    private static final Pattern STORED_NAME = Pattern.compile("[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}(\\.[a-z0-9]{1,10})?");
+    // File lưu trước khi chuyển sang lưu theo nội dung: {millis}_{tên đã lọc}
+    private static final Pattern LEGACY_NAME = Pattern.compile("\\d+_[a-zA-Z0-9._-]*");
+    private static final Pattern EXTENSION = Pattern.compile("[a-z0-9]{1,10}");
+
     private final Path fileStorageLocation;
+    private final Path tempLocation;
+    private final Path variantsLocation;
+
+    // Khóa theo nhóm tên file: lưu và giải phóng cùng một nội dung không chen nhau giữa kiểm tra và đổi tên/xóa
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    // "{đường dẫn}|{kích thước}|{thời điểm sửa}" -> SHA-256 của file không lưu theo nội dung (file cũ, bản thu nhỏ)
+    private final Map<String, String> contentHashes = Collections.synchronizedMap(
+        new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > CONTENT_HASH_CACHE_SIZE;
+            }
+        });
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
 
     /**
      * Khởi tạo service và tạo thư mục lưu trữ
@@ -24,44 +86,348 @@ public class FileStorageService {
     public FileStorageService() {
         this.fileStorageLocation = Paths.get("uploads")
                 .toAbsolutePath().normalize();
+        // Cùng thư mục cha với uploads để đổi tên nguyên tử, nhưng nằm ngoài /uploads/** nên không bị phục vụ ra ngoài
+        this.tempLocation = this.fileStorageLocation.resolveSibling("uploads-tmp");
+        this.variantsLocation = this.fileStorageLocation.resolve("variants");
 
         try {
             Files.createDirectories(this.fileStorageLocation);
+            Files.createDirectories(this.tempLocation);
         } catch (IOException ex) {
             throw new RuntimeException("Không thể tạo thư mục để lưu trữ file tải lên.", ex);
         } catch (SecurityException ex) {
             throw new RuntimeException("Không có quyền tạo thư mục để lưu trữ file tải lên.", ex);
         }
+
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
     }
 
     /**
-     * Lưu trữ file tải lên
+     * Lưu trữ file tải lên.
+     * Nội dung được đọc một lần để tính SHA-256; nếu đã có file cùng nội dung thì chỉ tăng số tham chiếu,
+     * không ghi gì ra đĩa. Nội dung mới được đọc lần hai (MultipartFile đọc lại được) vào file tạm
+     * rồi đổi tên nguyên tử.
      *
      * @param file File cần lưu trữ
-     * @return Tên file đã lưu
+     * @return Tên file đã lưu (đường dẫn tương đối trong uploads)
      */
     public String storeFile(MultipartFile file) {
+        Path temp = null;
         try {
-            String originalFilename = file.getOriginalFilename();
-            if (originalFilename == null) {
-                originalFilename = "unknown_file";
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size = 0;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            try (ReadableByteChannel in = Channels.newChannel(file.getInputStream())) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    size += read;
+                    buffer.clear();
+                }
             }
-            String fileName = StringUtils.cleanPath(originalFilename);
 
-            // Đảm bảo tên file an toàn và duy nhất
-            // Thay thế khoảng trắng bằng gạch dưới và loại bỏ ký tự đặc biệt
-            fileName = fileName.replaceAll("\\s+", "_").replaceAll("[^a-zA-Z0-9._-]", "");
+            String hash = HexFormat.of().formatHex(digest.digest());
+            String extension = extensionOf(file.getOriginalFilename());
+            String name = hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash
+                + (extension != null ? "." + extension : "");
+            Path target = fileStorageLocation.resolve(name);
 
-            // Thêm timestamp để đảm bảo tính duy nhất
-            long timestamp = System.currentTimeMillis();
-            String newFileName = timestamp + "_" + fileName;
+            // Nội dung đã có: chỉ tăng số tham chiếu, không ghi thêm bản sao nào
+            if (!addReferenceIfStored(name, target, hash, size)) {
+                // Ghi file tạm ngoài khóa để không giữ khóa trong lúc ghi đĩa; kiểm tra lại trước khi đổi tên
+                temp = newTempFile();
+                long written = 0;
+                try (ReadableByteChannel in = Channels.newChannel(file.getInputStream());
+                     FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                    while (in.read(buffer) != -1) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            written += out.write(buffer);
+                        }
+                        buffer.clear();
+                    }
+                }
+                if (written != size) {
+                    throw new IOException("Nội dung file thay đổi giữa hai lần đọc: " + file.getOriginalFilename());
+                }
 
-            Path targetLocation = this.fileStorageLocation.resolve(newFileName);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-
-            return newFileName;
+                synchronized (lockFor(name)) {
+                    if (!Files.exists(target)) {
+                        Files.createDirectories(target.getParent());
+                        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    addReference(name, hash, size);
+                }
+            }
+            return name;
         } catch (IOException ex) {
             throw new RuntimeException("Không thể lưu trữ file. Vui lòng thử lại!", ex);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("JVM không hỗ trợ SHA-256", ex);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ex) {
+                    logger.warn("Không thể xóa file tạm {}", temp, ex);
+                }
+            }
+        }
+    }
+
+    private boolean addReferenceIfStored(String name, Path target, String hash, long size) {
+        synchronized (lockFor(name)) {
+            if (!Files.exists(target)) {
+                return false;
+            }
+            addReference(name, hash, size);
+            return true;
+        }
+    }
+
+    // Gọi khi đang giữ khóa của tên file, để không chen giữa lúc release kiểm tra refCount và xóa file
+    private void addReference(String name, String hash, long size) {
+        Date now = new Date();
+        mongoTemplate.upsert(
+            new Query(Criteria.where("_id").is(name)),
+            new Update()
+                .inc("refCount", 1)
+                .set("updatedAt", now)
+                .setOnInsert("hash", hash)
+                .setOnInsert("size", size)
+                .setOnInsert("createdAt", now),
+            MediaBlob.class);
+    }
+
+    /**
+     * Bỏ một tham chiếu tới file đã lưu; file bị xóa khi không còn tham chiếu.
+     * URL không phải file lưu theo nội dung (file cũ dạng {millis}_{tên}) được bỏ qua.
+     *
+     * @param url URL dạng /uploads/...
+     */
+    public void releaseFile(String url) {
+        String name = storedNameOf(url);
+        if (name == null) {
+            return;
+        }
+        try {
+            synchronized (lockFor(name)) {
+                MediaBlob blob = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(name)),
+                    new Update().inc("refCount", -1).set("updatedAt", new Date()),
+                    FindAndModifyOptions.options().returnNew(true),
+                    MediaBlob.class);
+                if (blob == null || blob.getRefCount() > 0) {
+                    return;
+                }
+                mongoTemplate.remove(new Query(Criteria.where("_id").is(name).and("refCount").lte(0)), MediaBlob.class);
+                Files.deleteIfExists(fileStorageLocation.resolve(name));
+                for (ImageVariant variant : ImageVariant.values()) {
+                    Files.deleteIfExists(resolveVariant(name, variant));
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // Không làm hỏng thao tác của người dùng; file sót lại chỉ tốn dung lượng
+            logger.error("Không thể giải phóng file {}", url, ex);
+        }
+    }
+
+    /**
+     * Bỏ tham chiếu các file có trong danh sách cũ nhưng không còn trong danh sách mới (tính theo số lần xuất hiện)
+     *
+     * @param before URL trước khi cập nhật
+     * @param after URL sau khi cập nhật
+     */
+    public void releaseRemoved(Collection<String> before, Collection<String> after) {
+        if (before == null) {
+            return;
+        }
+        List<String> remaining = after != null ? new ArrayList<>(after) : new ArrayList<>();
+        for (String url : before) {
+            if (!remaining.remove(url)) {
+                releaseFile(url);
+            }
+        }
+    }
+
+    /**
+     * Tên file (đường dẫn tương đối trong uploads) của một URL /uploads/..., kể cả file cũ dạng {millis}_{tên}
+     *
+     * @param url URL dạng /uploads/...
+     * @return Tên file hoặc null nếu URL không trỏ tới file tải lên
+     */
+    public String fileNameOf(String url) {
+        if (url == null || !url.startsWith(URL_PREFIX)) {
+            return null;
+        }
+        String name = url.substring(URL_PREFIX.length());
+        return STORED_NAME.matcher(name).matches() || LEGACY_NAME.matcher(name).matches() ? name : null;
+    }
+
+    /**
+     * File được lưu theo nội dung (tên chứa SHA-256), nên nội dung ứng với một tên không bao giờ đổi
+     */
+    public boolean isContentAddressed(String name) {
+        return name != null && STORED_NAME.matcher(name).matches();
+    }
+
+    /**
+     * SHA-256 (hex) của nội dung file. File lưu theo nội dung lấy ngay từ tên; file khác được băm một lần
+     * và ghi nhớ theo kích thước và thời điểm sửa.
+     *
+     * @param name Tên file gốc trong uploads
+     * @param file File cần băm (file gốc hoặc bản thu nhỏ của nó)
+     * @param attributes Thuộc tính của file
+     * @return SHA-256 dạng hex
+     */
+    public String contentHash(String name, Path file, BasicFileAttributes attributes) throws IOException {
+        if (isContentAddressed(name) && file.equals(resolveFile(name))) {
+            String fileName = name.substring(name.lastIndexOf('/') + 1);
+            int dot = fileName.indexOf('.');
+            return dot >= 0 ? fileName.substring(0, dot) : fileName;
+        }
+
+        String key = file + "|" + attributes.size() + "|" + attributes.lastModifiedTime().toMillis();
+        String cached = contentHashes.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            contentHashes.put(key, hash);
+            return hash;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("JVM không hỗ trợ SHA-256", ex);
+        }
+    }
+
+    /**
+     * Đường dẫn file gốc theo tên trả về từ fileNameOf
+     */
+    public Path resolveFile(String name) {
+        return fileStorageLocation.resolve(name);
+    }
+
+    /**
+     * Đường dẫn bản thu nhỏ: uploads/variants/{key}/{tên}
+     */
+    public Path resolveVariant(String name, ImageVariant variant) {
+        return variantsLocation.resolve(variant.getKey()).resolve(name);
+    }
+
+    /**
+     * Xóa một file không còn được tham chiếu (dùng cho bộ dọn file), cùng các bản thu nhỏ và bản ghi media_blobs.
+     * Bỏ qua nếu file được sửa, hoặc nội dung được lưu lại (updatedAt của media_blobs), từ thời điểm cutoff trở đi:
+     * lưu trùng nội dung không đổi thời điểm sửa của file nhưng vẫn tạo tham chiếu mới.
+     *
+     * @param name Tên file trong uploads
+     * @param cutoffMillis Chỉ xóa file cũ hơn thời điểm này
+     * @return Số byte thu hồi, hoặc -1 nếu không xóa
+     */
+    public long deleteUnreferenced(String name, long cutoffMillis) throws IOException {
+        synchronized (lockFor(name)) {
+            Path file = resolveFile(name);
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException ex) {
+                return -1;
+            }
+            if (!attributes.isRegularFile() || attributes.lastModifiedTime().toMillis() >= cutoffMillis) {
+                return -1;
+            }
+            if (isContentAddressed(name)) {
+                MediaBlob blob = mongoTemplate.findById(name, MediaBlob.class);
+                if (blob != null && blob.getUpdatedAt() != null && blob.getUpdatedAt().getTime() >= cutoffMillis) {
+                    return -1;
+                }
+                mongoTemplate.remove(new Query(Criteria.where("_id").is(name)), MediaBlob.class);
+            }
+
+            long reclaimed = attributes.size();
+            Files.deleteIfExists(file);
+            for (ImageVariant variant : ImageVariant.values()) {
+                Path variantFile = resolveVariant(name, variant);
+                try {
+                    reclaimed += Files.size(variantFile);
+                    Files.delete(variantFile);
+                } catch (NoSuchFileException ex) {
+                    // Chưa từng tạo bản thu nhỏ này
+                }
+            }
+            return reclaimed;
+        }
+    }
+
+    /**
+     * Xóa bản ghi media_blobs có file đã mất (ví dụ bị xóa tay khỏi ổ đĩa)
+     *
+     * @param name Tên file trong uploads
+     * @param cutoffMillis Chỉ xóa bản ghi không đổi từ thời điểm này
+     * @return true nếu đã xóa
+     */
+    public boolean removeBlobIfMissing(String name, long cutoffMillis) {
+        synchronized (lockFor(name)) {
+            if (Files.exists(resolveFile(name))) {
+                return false;
+            }
+            return mongoTemplate.remove(new Query(Criteria.where("_id").is(name).and("updatedAt").lt(new Date(cutoffMillis))),
+                MediaBlob.class).getDeletedCount() > 0;
+        }
+    }
+
+    public Path getStorageLocation() {
+        return fileStorageLocation;
+    }
+
+    public Path getTempLocation() {
+        return tempLocation;
+    }
+
+    public Path getVariantsLocation() {
+        return variantsLocation;
+    }
+
+    /**
+     * Đường dẫn file tạm mới cùng phân vùng với uploads để đổi tên nguyên tử vào uploads
+     */
+    public Path newTempFile() {
+        return tempLocation.resolve(UUID.randomUUID() + ".part");
+    }
+
+    private Object lockFor(String name) {
+        return locks[Math.floorMod(name.hashCode(), locks.length)];
+    }
+
+    private static String extensionOf(String originalFilename) {
+        if (originalFilename == null) {
+            return null;
+        }
+        int dot = originalFilename.lastIndexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        String extension = originalFilename.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return EXTENSION.matcher(extension).matches() ? extension : null;
+    }
+
+    private static String storedNameOf(String url) {
+        if (url == null || !url.startsWith(URL_PREFIX)) {
+            return null;
         }
+        String name = url.substring(URL_PREFIX.length());
+        return STORED_NAME.matcher(name).matches() ? name : null;
     }
 }
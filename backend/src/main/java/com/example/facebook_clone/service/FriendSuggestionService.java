@@ -0,0 +1,388 @@
+package com.example.facebook_clone.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.Friend;
+
+/**
+ * Chỉ mục quan hệ bạn bè trong bộ nhớ để gợi ý kết bạn theo số bạn chung.
+ * Mỗi ID người dùng được ánh xạ sang một số nguyên; danh sách bạn của mỗi người là mảng int đã sắp xếp
+ * nên kiểm tra "đã là bạn" bằng tìm kiếm nhị phân và đếm bạn chung chỉ duyệt bạn của bạn.
+ */
+@Service
+public class FriendSuggestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FriendSuggestionService.class);
+
+    private static final int[] NO_FRIENDS = new int[0];
+    private static final int EXCLUDED = Integer.MIN_VALUE / 2;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Map<String, Integer> indexById = new HashMap<>();
+    private List<String> idByIndex = new ArrayList<>();
+    private int[][] neighbors = new int[16][];
+
+    // Thay đổi xảy ra trong lúc đang dựng lại chỉ mục, áp dụng lại sau khi dựng xong
+    private List<Change> pendingChanges;
+
+    // Bộ đếm bạn chung dùng lại giữa các lần gợi ý, mỗi luồng một mảng
+    private final ThreadLocal<int[]> mutualCounts = ThreadLocal.withInitial(() -> new int[0]);
+
+    private static class Change {
+        final boolean added;
+        final String userId;
+        final String friendId;
+
+        Change(boolean added, String userId, String friendId) {
+            this.added = added;
+            this.userId = userId;
+            this.friendId = friendId;
+        }
+    }
+
+    /**
+     * Một người được gợi ý kèm số bạn chung
+     */
+    public static class Suggestion {
+        private final String userId;
+        private final int mutualFriends;
+
+        public Suggestion(String userId, int mutualFriends) {
+            this.userId = userId;
+            this.mutualFriends = mutualFriends;
+        }
+
+        public String getUserId() { return userId; }
+
+        public int getMutualFriends() { return mutualFriends; }
+    }
+
+    /**
+     * Dựng chỉ mục từ MongoDB khi ứng dụng khởi động xong
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        rebuild();
+    }
+
+    /**
+     * Dựng lại toàn bộ chỉ mục bằng cách đọc tuần tự các quan hệ ACCEPTED trong collection friends
+     *
+     * @return Số người dùng có trong chỉ mục
+     */
+    public int rebuild() {
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<String, Integer> newIndexById = new HashMap<>();
+        List<String> newIdByIndex = new ArrayList<>();
+        Map<Integer, List<Integer>> edges = new HashMap<>();
+        Query query = new Query(Criteria.where("status").is("ACCEPTED"));
+        query.fields().include("userId", "friendId");
+        try (Stream<Friend> stream = mongoTemplate.stream(query, Friend.class)) {
+            stream.forEach(friend -> {
+                if (friend.getUserId() == null || friend.getFriendId() == null
+                        || friend.getUserId().equals(friend.getFriendId())) {
+                    return;
+                }
+                int a = intern(newIndexById, newIdByIndex, friend.getUserId());
+                int b = intern(newIndexById, newIdByIndex, friend.getFriendId());
+                edges.computeIfAbsent(a, k -> new ArrayList<>()).add(b);
+                edges.computeIfAbsent(b, k -> new ArrayList<>()).add(a);
+            });
+        } catch (RuntimeException e) {
+            logger.error("Không thể dựng chỉ mục gợi ý kết bạn", e);
+            lock.writeLock().lock();
+            try {
+                pendingChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return 0;
+        }
+
+        int[][] newNeighbors = new int[Math.max(16, newIdByIndex.size())][];
+        for (Map.Entry<Integer, List<Integer>> entry : edges.entrySet()) {
+            // Mỗi quan hệ được lưu hai chiều trong collection nên cần sắp xếp và bỏ trùng
+            int[] sorted = entry.getValue().stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+            newNeighbors[entry.getKey()] = sorted;
+        }
+
+        lock.writeLock().lock();
+        try {
+            indexById = newIndexById;
+            idByIndex = newIdByIndex;
+            neighbors = newNeighbors;
+            for (Change change : pendingChanges) {
+                if (change.added) {
+                    link(change.userId, change.friendId);
+                } else {
+                    unlink(change.userId, change.friendId);
+                }
+            }
+            pendingChanges = null;
+            logger.info("Đã dựng chỉ mục gợi ý kết bạn cho {} người dùng", idByIndex.size());
+            return idByIndex.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ghi nhận hai người dùng vừa trở thành bạn bè
+     *
+     * @param userId ID người dùng
+     * @param friendId ID bạn mới
+     */
+    public void addFriendship(String userId, String friendId) {
+        if (userId == null || friendId == null || userId.equals(friendId)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            link(userId, friendId);
+            if (pendingChanges != null) {
+                pendingChanges.add(new Change(true, userId, friendId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ghi nhận hai người dùng vừa hủy kết bạn
+     *
+     * @param userId ID người dùng
+     * @param friendId ID người bạn cũ
+     */
+    public void removeFriendship(String userId, String friendId) {
+        if (userId == null || friendId == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            unlink(userId, friendId);
+            if (pendingChanges != null) {
+                pendingChanges.add(new Change(false, userId, friendId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gợi ý kết bạn: bạn của bạn, xếp theo số bạn chung giảm dần.
+     * Bỏ qua chính người dùng, bạn hiện tại và những người trong danh sách loại trừ.
+     *
+     * @param userId ID người dùng cần gợi ý
+     * @param excludedIds ID cần loại trừ (ví dụ lời mời kết bạn đang chờ)
+     * @param limit Số gợi ý tối đa
+     * @return Danh sách gợi ý theo số bạn chung giảm dần
+     */
+    public List<Suggestion> suggest(String userId, Collection<String> excludedIds, int limit) {
+        lock.readLock().lock();
+        try {
+            Integer self = indexById.get(userId);
+            if (self == null || limit <= 0) {
+                return new ArrayList<>();
+            }
+            int[] friends = neighborsOf(self);
+
+            int[] counts = mutualCounts.get();
+            if (counts.length < idByIndex.size()) {
+                counts = new int[Math.max(idByIndex.size(), counts.length * 2)];
+                mutualCounts.set(counts);
+            }
+
+            // Đánh dấu chính mình và bạn hiện tại bằng số âm lớn để không bao giờ thành ứng viên
+            counts[self] = EXCLUDED;
+            for (int friend : friends) {
+                counts[friend] = EXCLUDED;
+            }
+
+            // Đếm số bạn chung cho từng bạn của bạn, ghi lại các ô đã chạm để xóa sau
+            int[] touched = new int[16];
+            int touchedCount = 0;
+            for (int friend : friends) {
+                for (int candidate : neighborsOf(friend)) {
+                    if (counts[candidate]++ == 0) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = candidate;
+                    }
+                }
+            }
+
+            // Đánh dấu các ID bị loại trừ bằng số âm để bỏ qua khi chọn top-K
+            if (excludedIds != null) {
+                for (String excludedId : excludedIds) {
+                    Integer index = indexById.get(excludedId);
+                    if (index != null && counts[index] > 0) {
+                        counts[index] = -counts[index];
+                    }
+                }
+            }
+
+            // Heap nhỏ nhất giới hạn limit phần tử: giữ các ứng viên có nhiều bạn chung nhất
+            final int[] scores = counts;
+            PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, (a, b) -> scores[a] != scores[b]
+                ? Integer.compare(scores[a], scores[b])
+                : Integer.compare(b, a));
+            for (int i = 0; i < touchedCount; i++) {
+                int candidate = touched[i];
+                if (counts[candidate] <= 0) {
+                    continue;
+                }
+                if (heap.size() == limit) {
+                    // Chỉ thay phần tử nhỏ nhất khi ứng viên tốt hơn, tránh thao tác heap với đa số ứng viên
+                    int weakest = heap.peek();
+                    if (counts[candidate] < counts[weakest]
+                            || (counts[candidate] == counts[weakest] && candidate > weakest)) {
+                        continue;
+                    }
+                    heap.poll();
+                }
+                heap.offer(candidate);
+            }
+
+            Suggestion[] result = new Suggestion[heap.size()];
+            for (int i = result.length - 1; i >= 0; i--) {
+                int candidate = heap.poll();
+                result[i] = new Suggestion(idByIndex.get(candidate), counts[candidate]);
+            }
+
+            for (int i = 0; i < touchedCount; i++) {
+                counts[touched[i]] = 0;
+            }
+            counts[self] = 0;
+            for (int friend : friends) {
+                counts[friend] = 0;
+            }
+            return new ArrayList<>(Arrays.asList(result));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Danh sách ID bạn bè của một người dùng theo chỉ mục
+     *
+     * @param userId ID người dùng
+     * @return ID các bạn bè, rỗng nếu người dùng chưa có bạn
+     */
+    public List<String> getFriendIds(String userId) {
+        lock.readLock().lock();
+        try {
+            Integer self = indexById.get(userId);
+            if (self == null) {
+                return new ArrayList<>();
+            }
+            int[] friends = neighborsOf(self);
+            List<String> ids = new ArrayList<>(friends.length);
+            for (int friend : friends) {
+                ids.add(idByIndex.get(friend));
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Số người dùng hiện có trong chỉ mục
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idByIndex.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] neighborsOf(int index) {
+        int[] list = index < neighbors.length ? neighbors[index] : null;
+        return list != null ? list : NO_FRIENDS;
+    }
+
+    private void link(String userId, String friendId) {
+        int a = intern(indexById, idByIndex, userId);
+        int b = intern(indexById, idByIndex, friendId);
+        if (neighbors.length < idByIndex.size()) {
+            neighbors = Arrays.copyOf(neighbors, Math.max(idByIndex.size(), neighbors.length * 2));
+        }
+        neighbors[a] = insertSorted(neighborsOf(a), b);
+        neighbors[b] = insertSorted(neighborsOf(b), a);
+    }
+
+    private void unlink(String userId, String friendId) {
+        Integer a = indexById.get(userId);
+        Integer b = indexById.get(friendId);
+        if (a == null || b == null) {
+            return;
+        }
+        neighbors[a] = removeSorted(neighborsOf(a), b);
+        neighbors[b] = removeSorted(neighborsOf(b), a);
+    }
+
+    private static int intern(Map<String, Integer> indexById, List<String> idByIndex, String id) {
+        Integer index = indexById.get(id);
+        if (index == null) {
+            index = idByIndex.size();
+            indexById.put(id, index);
+            idByIndex.add(id);
+        }
+        return index;
+    }
+
+    private static int[] insertSorted(int[] list, int value) {
+        int position = Arrays.binarySearch(list, value);
+        if (position >= 0) {
+            return list;
+        }
+        position = -position - 1;
+        int[] result = new int[list.length + 1];
+        System.arraycopy(list, 0, result, 0, position);
+        result[position] = value;
+        System.arraycopy(list, position, result, position + 1, list.length - position);
+        return result;
+    }
+
+    private static int[] removeSorted(int[] list, int value) {
+        int position = Arrays.binarySearch(list, value);
+        if (position < 0) {
+            return list;
+        }
+        int[] result = new int[list.length - 1];
+        System.arraycopy(list, 0, result, 0, position);
+        System.arraycopy(list, position + 1, result, position, list.length - position - 1);
+        return result;
+    }
+}
@@ -0,0 +1,421 @@
+package com.example.facebook_clone.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Node;
+
+import com.example.facebook_clone.model.ImageVariant;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Tạo các bản thu nhỏ của ảnh tải lên bằng ImageIO/Java2D.
+ * Sau khi lưu ảnh, controller gọi generateAsync để tạo trước các bản cần dùng trên pool riêng có giới hạn;
+ * khi pool đầy thì bỏ qua vì bản thu nhỏ vẫn được tạo khi có request đầu tiên (resolve) và lưu lại trên đĩa.
+ * Ảnh lớn được giải mã với subsampling nên bộ nhớ dùng chỉ phụ thuộc kích thước bản thu nhỏ;
+ * hướng xoay EXIF của JPEG được áp dụng vì bản thu nhỏ không giữ metadata.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariantService.class);
+
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final long FAILURE_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final int MAX_FAILURES = 10000;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Value("${app.image-variants.threads:2}")
+    private int threads;
+
+    @Value("${app.image-variants.queue-capacity:256}")
+    private int queueCapacity;
+
+    // Thời gian tối đa request chờ tạo bản thu nhỏ trước khi trả ảnh gốc
+    @Value("${app.image-variants.lazy-timeout-ms:10000}")
+    private long lazyTimeoutMs;
+
+    private ThreadPoolExecutor executor;
+
+    // "{key}/{tên}" -> bản thu nhỏ đang được tạo, để nhiều request cùng lúc chỉ tạo một lần
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    // "{key}/{tên}" -> thời điểm tạo thất bại (ảnh hỏng, CMYK...), để không giải mã lại ở mỗi request
+    private final Map<String, Long> failedAt = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "image-variant-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tạo trước các bản thu nhỏ của những ảnh vừa lưu
+     *
+     * @param urls URL ảnh gốc dạng /uploads/...
+     * @param variants Các bản thu nhỏ cần tạo
+     */
+    public void generateAsync(Collection<String> urls, ImageVariant... variants) {
+        if (urls == null) {
+            return;
+        }
+        for (String url : urls) {
+            generateAsync(url, variants);
+        }
+    }
+
+    public void generateAsync(String url, ImageVariant... variants) {
+        if (!ImageVariant.supports(url)) {
+            return;
+        }
+        String name = fileStorageService.fileNameOf(url);
+        if (name == null) {
+            return;
+        }
+        for (ImageVariant variant : variants) {
+            if (!Files.exists(fileStorageService.resolveVariant(name, variant))) {
+                submit(name, variant, false);
+            }
+        }
+    }
+
+    /**
+     * Đường dẫn bản thu nhỏ của một file, tạo ngay nếu chưa có
+     *
+     * @param name Tên file trong uploads
+     * @param variant Bản thu nhỏ
+     * @return Đường dẫn bản thu nhỏ, hoặc null nếu không tạo được (không phải ảnh, file gốc không còn, quá thời gian chờ)
+     */
+    public Path resolve(String name, ImageVariant variant) {
+        Path target = fileStorageService.resolveVariant(name, variant);
+        if (Files.exists(target)) {
+            return target;
+        }
+        if (!ImageVariant.supports("/uploads/" + name) || !Files.isRegularFile(fileStorageService.resolveFile(name))) {
+            return null;
+        }
+        Long failed = failedAt.get(variant.getKey() + "/" + name);
+        if (failed != null && System.currentTimeMillis() - failed < FAILURE_TTL_MS) {
+            return null;
+        }
+        try {
+            return submit(name, variant, true).get(lazyTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    private CompletableFuture<Path> submit(String name, ImageVariant variant, boolean runOnCaller) {
+        String key = variant.getKey() + "/" + name;
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+
+        Runnable task = () -> {
+            try {
+                future.complete(render(name, variant));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Không thể tạo bản thu nhỏ {} cho {}: {}", variant.getKey(), name, e.getMessage());
+                if (failedAt.size() >= MAX_FAILURES) {
+                    failedAt.clear();
+                }
+                failedAt.put(key, System.currentTimeMillis());
+                future.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, future);
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (runOnCaller) {
+                task.run();
+            } else {
+                // Bản thu nhỏ sẽ được tạo khi có request đầu tiên
+                inFlight.remove(key, future);
+                future.completeExceptionally(e);
+            }
+        }
+        return future;
+    }
+
+    private Path render(String name, ImageVariant variant) throws IOException {
+        Path target = fileStorageService.resolveVariant(name, variant);
+        if (Files.exists(target)) {
+            return target;
+        }
+        Path source = fileStorageService.resolveFile(name);
+        String format = formatOf(name);
+        Path temp = fileStorageService.newTempFile();
+        try {
+            BufferedImage image;
+            int orientation;
+            try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+                if (in == null) {
+                    throw new IOException("Không đọc được file " + name);
+                }
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+                if (!readers.hasNext()) {
+                    throw new IOException("Không phải ảnh: " + name);
+                }
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(in, true, false);
+                    int width = reader.getWidth(0);
+                    int height = reader.getHeight(0);
+                    orientation = "jpg".equals(format) ? exifOrientation(reader.getImageMetadata(0)) : 1;
+
+                    if (Math.max(width, height) <= variant.getMaxSize() && orientation == 1) {
+                        // Ảnh đã đủ nhỏ: dùng luôn nội dung gốc
+                        Files.copy(source, temp);
+                        return publish(temp, target);
+                    }
+
+                    // Bỏ bớt điểm ảnh ngay khi giải mã nhưng vẫn giữ ít nhất gấp đôi kích thước đích để thu nhỏ mịn
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    int subsampling = Math.max(1, Math.max(width, height) / (variant.getMaxSize() * 2));
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    image = reader.read(0, param);
+                } finally {
+                    reader.dispose();
+                }
+            }
+
+            boolean alpha = "png".equals(format) && image.getColorModel().hasAlpha();
+            BufferedImage scaled = orient(scale(image, variant.getMaxSize(), alpha), orientation);
+            write(scaled, format, temp);
+            return publish(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static Path publish(Path temp, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (!Files.exists(target)) {
+                throw e;
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Thu nhỏ nhiều bước, mỗi bước tối đa một nửa, để nội suy song tuyến không bị răng cưa
+     */
+    private static BufferedImage scale(BufferedImage image, int maxSize, boolean alpha) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double ratio = Math.min(1.0, (double) maxSize / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = image;
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                if (!alpha) {
+                    // Nền trắng cho ảnh trong suốt ghi ra định dạng không có kênh alpha
+                    g.setColor(Color.WHITE);
+                    g.fillRect(0, 0, width, height);
+                }
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    /**
+     * Xoay/lật ảnh theo giá trị Orientation của EXIF (1-8)
+     */
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation < 2 || orientation > 8) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        boolean swap = orientation >= 5;
+        int outWidth = swap ? h : w;
+        int outHeight = swap ? w : h;
+        int[] src = image.getRGB(0, 0, w, h, null, 0, w);
+        int[] dst = new int[src.length];
+        for (int y = 0; y < outHeight; y++) {
+            for (int x = 0; x < outWidth; x++) {
+                int sx;
+                int sy;
+                switch (orientation) {
+                    case 2 -> { sx = w - 1 - x; sy = y; }
+                    case 3 -> { sx = w - 1 - x; sy = h - 1 - y; }
+                    case 4 -> { sx = x; sy = h - 1 - y; }
+                    case 5 -> { sx = y; sy = x; }
+                    case 6 -> { sx = y; sy = h - 1 - x; }
+                    case 7 -> { sx = w - 1 - y; sy = h - 1 - x; }
+                    default -> { sx = w - 1 - y; sy = x; }
+                }
+                dst[y * outWidth + x] = src[sy * w + sx];
+            }
+        }
+        BufferedImage result = new BufferedImage(outWidth, outHeight, image.getType());
+        result.setRGB(0, 0, outWidth, outHeight, dst, 0, outWidth);
+        return result;
+    }
+
+    private static void write(BufferedImage image, String format, Path target) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("Không ghi được định dạng " + format);
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Đọc thẻ Orientation (0x0112) trong đoạn APP1 Exif của JPEG; trả về 1 nếu không có
+     */
+    private static int exifOrientation(IIOMetadata metadata) {
+        if (metadata == null) {
+            return 1;
+        }
+        try {
+            Node root = metadata.getAsTree("javax_imageio_jpeg_image_1.0");
+            for (Node n = root.getFirstChild(); n != null; n = n.getNextSibling()) {
+                if (!"markerSequence".equals(n.getNodeName())) {
+                    continue;
+                }
+                for (Node marker = n.getFirstChild(); marker != null; marker = marker.getNextSibling()) {
+                    Node tag = marker.getAttributes() != null ? marker.getAttributes().getNamedItem("MarkerTag") : null;
+                    if ("unknown".equals(marker.getNodeName()) && tag != null && "225".equals(tag.getNodeValue())
+                            && marker instanceof IIOMetadataNode node
+                            && node.getUserObject() instanceof byte[] data) {
+                        int orientation = parseOrientation(data);
+                        if (orientation > 0) {
+                            return orientation;
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // Metadata lạ: coi như không xoay
+        }
+        return 1;
+    }
+
+    private static int parseOrientation(byte[] data) {
+        // "Exif\0\0" rồi tới header TIFF
+        if (data.length < 14 || data[0] != 'E' || data[1] != 'x' || data[2] != 'i' || data[3] != 'f') {
+            return 0;
+        }
+        int tiff = 6;
+        boolean little = data[tiff] == 'I';
+        int ifd = tiff + readInt(data, tiff + 4, little);
+        if (ifd < tiff || ifd + 2 > data.length) {
+            return 0;
+        }
+        int entries = readShort(data, ifd, little);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > data.length) {
+                return 0;
+            }
+            if (readShort(data, entry, little) == 0x0112) {
+                return readShort(data, entry + 8, little);
+            }
+        }
+        return 0;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean little) {
+        int b0 = data[offset] & 0xff;
+        int b1 = data[offset + 1] & 0xff;
+        return little ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(byte[] data, int offset, boolean little) {
+        int hi = readShort(data, little ? offset + 2 : offset, little);
+        int lo = readShort(data, little ? offset : offset + 2, little);
+        return (hi << 16) | lo;
+    }
+
+    private static String formatOf(String name) {
+        String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        return "jpeg".equals(extension) ? "jpg" : extension;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.facebook_clone.service;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Relay trong cùng JVM (app.websocket.broker=local): các application context chạy trong một tiến trình
+ * (ví dụ nhiều instance trong một bài kiểm thử tích hợp) trao đổi tin qua một bus tĩnh.
+ * Tin được giao bất đồng bộ như khi đi qua mạng.
+ */
+@Service
+@ConditionalOnProperty(name = "app.websocket.broker", havingValue = "local")
+public class LocalBrokerRelay implements BrokerRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalBrokerRelay.class);
+
+    // Các instance đang chạy trong JVM
+    private static final List<LocalBrokerRelay> NODES = new CopyOnWriteArrayList<>();
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile Consumer<Frame> listener;
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(Frame frame) {
+        for (LocalBrokerRelay node : NODES) {
+            if (node != this) {
+                node.deliver(frame);
+            }
+        }
+    }
+
+    @Override
+    public void start(Consumer<Frame> listener) {
+        this.listener = listener;
+        NODES.add(this);
+    }
+
+    @Override
+    public void stop() {
+        NODES.remove(this);
+        executor.shutdown();
+    }
+
+    private void deliver(Frame frame) {
+        Consumer<Frame> current = listener;
+        if (current == null) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                current.accept(frame);
+            } catch (RuntimeException e) {
+                logger.error("Không thể giao tin relay tới {}", frame.destination(), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.facebook_clone.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Lưu song song các file tải lên của một request.
+ * Các file được chia cho tối đa per-request-concurrency luồng (luồng request cũng tham gia) trên một pool I/O
+ * dùng chung có giới hạn; khi hàng đợi của pool đầy, luồng request tự lưu phần việc của mình.
+ * Thời gian lưu nhiều file vì vậy xấp xỉ file chậm nhất thay vì tổng các file.
+ * Lưu theo kiểu tất cả hoặc không: một file lỗi thì các file đã lưu trong cùng lần gọi được giải phóng.
+ */
+@Service
+public class MediaIngestionService {
+
+    private static final String URL_PREFIX = "/uploads/";
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Value("${app.media-ingest.threads:8}")
+    private int threads;
+
+    @Value("${app.media-ingest.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${app.media-ingest.per-request-concurrency:4}")
+    private int perRequestConcurrency;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "media-ingest-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * Lưu các file và trả về URL theo đúng thứ tự đầu vào
+     *
+     * @param files Các file cần lưu
+     * @return URL dạng /uploads/... của từng file
+     */
+    public List<String> storeAll(List<MultipartFile> files) {
+        int count = files.size();
+        if (count == 0) {
+            return new ArrayList<>();
+        }
+        if (count == 1) {
+            List<String> urls = new ArrayList<>();
+            urls.add(URL_PREFIX + fileStorageService.storeFile(files.get(0)));
+            return urls;
+        }
+
+        String[] names = new String[count];
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        // Mỗi luồng lấy file kế tiếp cho đến khi hết hoặc đã có lỗi, nên file lớn không chặn các file còn lại
+        Runnable worker = () -> {
+            int index;
+            while (failure.get() == null && (index = next.getAndIncrement()) < count) {
+                try {
+                    names[index] = fileStorageService.storeFile(files.get(index));
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+
+        int workers = Math.min(count, Math.max(1, perRequestConcurrency));
+        List<CompletableFuture<Void>> running = new ArrayList<>();
+        for (int i = 1; i < workers; i++) {
+            running.add(CompletableFuture.runAsync(worker, executor));
+        }
+        worker.run();
+        for (CompletableFuture<Void> future : running) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                failure.compareAndSet(null, new RuntimeException("Không thể lưu trữ file. Vui lòng thử lại!", e.getCause()));
+            }
+        }
+
+        List<String> urls = new ArrayList<>();
+        for (String name : names) {
+            if (name != null) {
+                urls.add(URL_PREFIX + name);
+            }
+        }
+        if (failure.get() != null) {
+            releaseAll(urls);
+            throw failure.get();
+        }
+        return urls;
+    }
+
+    /**
+     * Giải phóng các file vừa lưu khi thao tác dùng chúng không hoàn tất
+     *
+     * @param urls URL dạng /uploads/...
+     */
+    public void releaseAll(Collection<String> urls) {
+        fileStorageService.releaseRemoved(urls, null);
+    }
+}
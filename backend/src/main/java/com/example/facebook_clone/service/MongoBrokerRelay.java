@@ -0,0 +1,171 @@
+package com.example.facebook_clone.service;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+
+/**
+ * Relay qua MongoDB (app.websocket.broker=mongo): mỗi tin được ghi vào capped collection broker_events,
+ * mỗi instance đọc đuổi collection này bằng tailable cursor theo thứ tự tự nhiên (thứ tự ghi) và giao tin
+ * của instance khác cho client của mình.
+ * Không cần replica set hay broker riêng; capped collection tự xóa tin cũ khi đầy.
+ */
+@Service
+@ConditionalOnProperty(name = "app.websocket.broker", havingValue = "mongo")
+public class MongoBrokerRelay implements BrokerRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoBrokerRelay.class);
+
+    private static final String COLLECTION = "broker_events";
+    private static final long RETRY_DELAY_MS = 1000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app.websocket.mongo-relay.capped-size-bytes:67108864}")
+    private long cappedSizeBytes;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private volatile boolean running;
+    private Thread tailer;
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(Frame frame) {
+        Document event = new Document("node", frame.originNodeId())
+            .append("destination", frame.destination())
+            .append("contentType", frame.contentType())
+            .append("payload", new Binary(frame.payload()))
+            .append("createdAt", new Date());
+        collection().insertOne(event);
+    }
+
+    @Override
+    public synchronized void start(Consumer<Frame> listener) {
+        if (!mongoTemplate.collectionExists(COLLECTION)) {
+            try {
+                mongoTemplate.createCollection(COLLECTION, CollectionOptions.empty().capped().size(cappedSizeBytes));
+            } catch (RuntimeException e) {
+                // Instance khác có thể vừa tạo collection
+                logger.debug("Không tạo được collection {}: {}", COLLECTION, e.getMessage());
+            }
+        }
+        running = true;
+        tailer = Thread.ofVirtual().name("broker-relay-tailer").start(() -> tail(listener));
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (tailer != null) {
+            tailer.interrupt();
+        }
+    }
+
+    private void tail(Consumer<Frame> listener) {
+        // Vị trí đọc được nhớ bằng _id của tin cuối đã đọc và chỉ so sánh bằng: ObjectId do các tiến trình khác nhau
+        // sinh ra không có thứ tự chung, còn thứ tự tự nhiên của capped collection chính là thứ tự ghi
+        Object lastId = null;
+        boolean initialized = false;
+        while (running) {
+            boolean skipping;
+            try {
+                if (!initialized) {
+                    // Chỉ giao các tin phát sau khi instance khởi động: bắt đầu từ tin cuối theo thứ tự tự nhiên
+                    Document newest = collection().find().sort(Sorts.descending("$natural")).limit(1).first();
+                    lastId = newest != null ? newest.get("_id") : null;
+                    initialized = true;
+                }
+                // Tin cuối đã đọc còn trong collection: bỏ qua các tin tới nó. Đã bị ghi đè (collection đầy vòng)
+                // thì mọi tin còn lại đều mới hơn nên giao hết
+                skipping = lastId != null && collection().find(Filters.eq("_id", lastId)).first() != null;
+            } catch (RuntimeException e) {
+                logger.warn("Không đọc được {}: {}", COLLECTION, e.getMessage());
+                if (!sleepBeforeRetry()) {
+                    break;
+                }
+                continue;
+            }
+            try (MongoCursor<Document> cursor = collection().find()
+                    .cursorType(CursorType.TailableAwait)
+                    .maxAwaitTime(1, TimeUnit.SECONDS)
+                    .noCursorTimeout(true)
+                    .iterator()) {
+                while (running) {
+                    Document event = cursor.tryNext();
+                    if (event == null) {
+                        if (cursor.getServerCursor() == null) {
+                            // Cursor đã chết (ví dụ collection còn rỗng khi mở)
+                            throw new IllegalStateException("Tailable cursor đã đóng");
+                        }
+                        if (skipping) {
+                            // Đã đọc hết mà không gặp tin cuối: nó vừa bị ghi đè, các tin sau đều là tin mới
+                            logger.warn("Tin cuối đã đọc của {} bị ghi đè khi đang mở lại cursor", COLLECTION);
+                            skipping = false;
+                        }
+                        continue;
+                    }
+                    Object id = event.get("_id");
+                    if (skipping) {
+                        skipping = !id.equals(lastId);
+                        continue;
+                    }
+                    lastId = id;
+                    if (nodeId.equals(event.getString("node"))) {
+                        continue;
+                    }
+                    try {
+                        listener.accept(new Frame(event.getString("node"), event.getString("destination"),
+                            event.getString("contentType"), event.get("payload", Binary.class).getData()));
+                    } catch (RuntimeException e) {
+                        logger.error("Không thể giao tin relay tới {}", event.getString("destination"), e);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Cursor bị đóng (collection rỗng, mất kết nối...): mở lại và đọc tiếp sau tin cuối đã đọc
+                if (!running) {
+                    break;
+                }
+                logger.debug("Mở lại tailable cursor của {}: {}", COLLECTION, e.getMessage());
+                if (!sleepBeforeRetry()) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean sleepBeforeRetry() {
+        try {
+            Thread.sleep(RETRY_DELAY_MS);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private MongoCollection<Document> collection() {
+        return mongoTemplate.getCollection(COLLECTION);
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.facebook_clone.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.Notification;
+import com.example.facebook_clone.model.User;
+
+/**
+ * Gộp các thông báo cùng loại, cùng đối tượng (ví dụ lượt thích một bài viết) thành một tài liệu
+ * cho mỗi cửa sổ thời gian: "A và 24 người khác đã thích bài viết của bạn".
+ * Cửa sổ được chia đều theo thời gian (windowStart là mốc đầu cửa sổ) và upsert theo windowKey có chỉ mục duy nhất,
+ * nên khi nhiều node cùng gộp vào một nhóm thì vẫn chỉ có một tài liệu cho mỗi cửa sổ.
+ */
+@Service
+public class NotificationAggregator {
+
+    public static final Set<String> AGGREGATED_TYPES = Set.of("LIKE", "COMMENT_LIKE");
+
+    // Số người gần nhất được lưu trên tài liệu gộp
+    private static final int MAX_ACTORS = 5;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UserCacheService userCacheService;
+
+    @Value("${app.notification-aggregation.window-minutes:60}")
+    private long windowMinutes;
+
+    /**
+     * Kết quả gộp: các tài liệu đã cập nhật, các tài liệu đã xóa và thay đổi số chưa đọc
+     */
+    public static class Result {
+        private final List<Notification> updated = new ArrayList<>();
+        private final List<String> removedIds = new ArrayList<>();
+        private int unreadDelta;
+
+        public List<Notification> getUpdated() { return updated; }
+
+        public List<String> getRemovedIds() { return removedIds; }
+
+        public int getUnreadDelta() { return unreadDelta; }
+    }
+
+    /**
+     * Áp dụng các lượt thêm/rút lại của một nhóm (người nhận, loại, đối tượng) trong một lô
+     *
+     * @param userId ID người nhận
+     * @param type Loại thông báo
+     * @param entityId ID đối tượng
+     * @param action Nội dung sau tên người thực hiện
+     * @param fallback Nội dung khi không có tên người thực hiện
+     * @param addedActors Người thực hiện mới, theo thứ tự thời gian
+     * @param retractedActors Người đã rút lại hành động (ví dụ bỏ thích)
+     * @param result Kết quả được cộng dồn
+     */
+    public void apply(String userId, String type, String entityId, String action, String fallback,
+                      List<String> addedActors, List<String> retractedActors, Result result) {
+        String groupKey = type + ":" + entityId;
+        Set<String> touchedIds = new LinkedHashSet<>();
+
+        if (!addedActors.isEmpty()) {
+            List<String> newestFirst = new ArrayList<>(addedActors);
+            Collections.reverse(newestFirst);
+            Date now = new Date();
+            long windowMs = windowMinutes * 60_000L;
+            Date windowStart = new Date(now.getTime() - Math.floorMod(now.getTime(), windowMs));
+            String windowKey = userId + "|" + groupKey + "|" + windowStart.getTime();
+
+            // Một lệnh upsert cho cả nhóm: cộng số người, chèn người mới lên đầu và giữ MAX_ACTORS người
+            Query open = new Query(Criteria.where("windowKey").is(windowKey));
+            Update update = new Update()
+                .inc("actorCount", addedActors.size())
+                .set("senderId", newestFirst.get(0))
+                .set("read", false)
+                .set("createdAt", now)
+                .setOnInsert("type", type)
+                .setOnInsert("entityId", entityId)
+                .setOnInsert("userId", userId)
+                .setOnInsert("groupKey", groupKey)
+                .setOnInsert("windowStart", windowStart);
+            update.push("actorIds").atPosition(0).slice(MAX_ACTORS).each(newestFirst.toArray());
+            Notification before;
+            try {
+                before = mongoTemplate.findAndModify(open, update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(false), Notification.class);
+            } catch (DuplicateKeyException e) {
+                // Node khác vừa tạo tài liệu của cửa sổ này: lần thử lại sẽ khớp và cập nhật tài liệu đó
+                before = mongoTemplate.findAndModify(open, update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(false), Notification.class);
+            }
+
+            if (before == null || before.isRead()) {
+                result.unreadDelta++;
+            }
+            if (before != null) {
+                touchedIds.add(before.getId());
+            } else {
+                // Tài liệu vừa được tạo bởi upsert
+                Notification inserted = mongoTemplate.findOne(open, Notification.class);
+                if (inserted != null) {
+                    touchedIds.add(inserted.getId());
+                }
+            }
+        }
+
+        for (String actorId : retractedActors) {
+            String touched = retract(userId, groupKey, actorId);
+            if (touched != null) {
+                touchedIds.add(touched);
+            }
+        }
+
+        // Dựng lại nội dung các tài liệu đã chạm, xóa tài liệu không còn ai
+        for (String id : touchedIds) {
+            Notification notification = mongoTemplate.findById(id, Notification.class);
+            if (notification == null) {
+                continue;
+            }
+            if (notification.getActorCount() <= 0) {
+                mongoTemplate.remove(new Query(Criteria.where("_id").is(id)), Notification.class);
+                if (!notification.isRead()) {
+                    result.unreadDelta--;
+                }
+                result.removedIds.add(id);
+                continue;
+            }
+
+            String content = buildContent(notification, action, fallback);
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(id)),
+                new Update().set("content", content), Notification.class);
+            notification.setContent(content);
+            result.updated.add(notification);
+        }
+    }
+
+    /**
+     * Rút một người khỏi tài liệu gộp gần nhất có chứa người đó.
+     * Nếu người đó không nằm trong MAX_ACTORS người gần nhất thì giảm số người của tài liệu gần nhất
+     * còn người bị ẩn.
+     *
+     * @return ID tài liệu đã thay đổi, hoặc null nếu không có
+     */
+    private String retract(String userId, String groupKey, String actorId) {
+        Sort newestWindow = Sort.by(Sort.Direction.DESC, "windowStart");
+        Notification visible = mongoTemplate.findAndModify(
+            new Query(Criteria.where("userId").is(userId).and("groupKey").is(groupKey).and("actorIds").is(actorId))
+                .with(newestWindow),
+            new Update().pull("actorIds", actorId).inc("actorCount", -1),
+            Notification.class);
+        if (visible != null) {
+            return visible.getId();
+        }
+
+        Notification hidden = mongoTemplate.findAndModify(
+            new Query(Criteria.where("userId").is(userId).and("groupKey").is(groupKey)
+                .andOperator(Criteria.expr(ComparisonOperators.valueOf("actorCount")
+                    .greaterThan(ArrayOperators.Size.lengthOfArray("actorIds")))))
+                .with(newestWindow),
+            new Update().inc("actorCount", -1),
+            Notification.class);
+        return hidden != null ? hidden.getId() : null;
+    }
+
+    private String buildContent(Notification notification, String action, String fallback) {
+        List<String> actorIds = notification.getActorIds() != null ? notification.getActorIds() : List.of();
+        Map<String, User> actors = userCacheService.findSummariesByIds(
+            actorIds.subList(0, Math.min(2, actorIds.size())));
+        User first = actorIds.isEmpty() ? null : actors.get(actorIds.get(0));
+        if (first == null || action == null) {
+            return fallback;
+        }
+
+        String firstName = first.getFirstName() + " " + first.getLastName();
+        int others = notification.getActorCount() - 1;
+        if (others <= 0) {
+            return firstName + " " + action;
+        }
+        User second = actorIds.size() > 1 ? actors.get(actorIds.get(1)) : null;
+        if (others == 1 && second != null) {
+            return firstName + " và " + second.getFirstName() + " " + second.getLastName() + " " + action;
+        }
+        return firstName + " và " + others + " người khác " + action;
+    }
+}
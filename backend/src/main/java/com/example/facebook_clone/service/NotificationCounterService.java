@@ -0,0 +1,231 @@
+package com.example.facebook_clone.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.Notification;
+import com.example.facebook_clone.model.NotificationCounter;
+import com.example.facebook_clone.repository.NotificationRepository;
+
+/**
+ * Bộ đếm thông báo chưa đọc theo người dùng.
+ * Giá trị được đọc từ bộ nhớ (hết hạn sau cache-ttl-ms để thấy thay đổi do node khác ghi),
+ * lưu bền trong collection notification_counters bằng $inc nguyên tử,
+ * gửi qua /user/queue/notifications mỗi khi thay đổi và định kỳ đối chiếu lại với số thực tế.
+ */
+@Service
+public class NotificationCounterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationCounterService.class);
+
+    private static final int RECONCILE_BATCH_SIZE = 500;
+
+    private record Cached(long unread, long loadedAt) {
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Value("${app.notification-counter.max-size:10000}")
+    private int maxSize;
+
+    @Value("${app.notification-counter.reconcile-interval-ms:300000}")
+    private long reconcileIntervalMs;
+
+    @Value("${app.notification-counter.cache-ttl-ms:30000}")
+    private long cacheTtlMs;
+
+    // LinkedHashMap theo thứ tự truy cập để loại bỏ người dùng ít dùng nhất
+    private final LinkedHashMap<String, Cached> counts = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    /**
+     * Lấy số thông báo chưa đọc, ưu tiên bộ nhớ rồi tới bộ đếm đã lưu.
+     * Bộ đếm chưa có hoặc đã lâu chưa đối chiếu thì đếm lại từ collection notifications.
+     *
+     * @param userId ID người dùng
+     * @return Số thông báo chưa đọc
+     */
+    public long getUnreadCount(String userId) {
+        Long cached = getCached(userId);
+        if (cached != null) {
+            return cached;
+        }
+
+        NotificationCounter counter = mongoTemplate.findById(userId, NotificationCounter.class);
+        if (counter == null || counter.getReconciledAt() == null
+                || counter.getReconciledAt().getTime() < System.currentTimeMillis() - reconcileIntervalMs) {
+            return store(userId, notificationRepository.countByUserIdAndReadFalse(userId), false);
+        }
+        putCached(userId, counter.getUnread());
+        return counter.getUnread();
+    }
+
+    /**
+     * Cộng/trừ bộ đếm sau khi thông báo được tạo, đọc hoặc xóa và gửi giá trị mới cho client
+     *
+     * @param userId ID người dùng
+     * @param delta Số lượng thay đổi (âm khi giảm)
+     * @return Số thông báo chưa đọc sau khi cập nhật
+     */
+    public long adjust(String userId, long delta) {
+        if (delta == 0) {
+            return getUnreadCount(userId);
+        }
+
+        // Chỉ $inc khi bộ đếm đã tồn tại; người dùng cũ chưa có bộ đếm thì đếm lại toàn bộ
+        NotificationCounter counter = mongoTemplate.findAndModify(
+            new Query(Criteria.where("_id").is(userId)),
+            new Update().inc("unread", delta),
+            FindAndModifyOptions.options().returnNew(true),
+            NotificationCounter.class);
+        if (counter == null || counter.getUnread() < 0) {
+            return refresh(userId);
+        }
+
+        putCached(userId, counter.getUnread());
+        push(userId, counter.getUnread());
+        return counter.getUnread();
+    }
+
+    /**
+     * Đếm lại số thông báo chưa đọc thực tế, ghi vào bộ đếm và gửi cho client
+     *
+     * @param userId ID người dùng
+     * @return Số thông báo chưa đọc thực tế
+     */
+    public long refresh(String userId) {
+        return store(userId, notificationRepository.countByUserIdAndReadFalse(userId), true);
+    }
+
+    /**
+     * Định kỳ đối chiếu bộ đếm của các người dùng đang có trong bộ nhớ với số thực tế
+     * (một lệnh aggregate cho mỗi lô người dùng) và sửa các giá trị bị lệch
+     */
+    @Scheduled(fixedDelayString = "${app.notification-counter.reconcile-interval-ms:300000}",
+               initialDelayString = "${app.notification-counter.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        List<String> userIds;
+        synchronized (counts) {
+            userIds = new ArrayList<>(counts.keySet());
+        }
+
+        int corrected = 0;
+        try {
+            for (int start = 0; start < userIds.size(); start += RECONCILE_BATCH_SIZE) {
+                List<String> batch = userIds.subList(start, Math.min(start + RECONCILE_BATCH_SIZE, userIds.size()));
+
+                // Giá trị đã lưu trước khi đếm: chỉ sửa khi nó chưa bị $inc đồng thời thay đổi trong lúc đếm
+                Map<String, Long> stored = new HashMap<>();
+                for (NotificationCounter counter : mongoTemplate.find(
+                        new Query(Criteria.where("_id").in(batch)), NotificationCounter.class)) {
+                    stored.put(counter.getUserId(), counter.getUnread());
+                }
+
+                Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("userId").in(batch).and("read").is(false)),
+                    Aggregation.group("userId").count().as("unread"));
+
+                Map<String, Long> actual = new HashMap<>();
+                for (Document row : mongoTemplate.aggregate(aggregation, Notification.class, Document.class)) {
+                    actual.put(row.getString("_id"), ((Number) row.get("unread")).longValue());
+                }
+
+                for (String userId : batch) {
+                    long real = actual.getOrDefault(userId, 0L);
+                    Long previous = stored.get(userId);
+                    if (previous != null && previous != real && storeIfUnchanged(userId, previous, real)) {
+                        corrected++;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Không thể đối chiếu bộ đếm thông báo chưa đọc", e);
+            return;
+        }
+
+        if (corrected > 0) {
+            logger.info("Đã sửa bộ đếm thông báo chưa đọc cho {}/{} người dùng", corrected, userIds.size());
+        }
+    }
+
+    private long store(String userId, long unread, boolean notify) {
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(userId)),
+            new Update().set("unread", unread).set("reconciledAt", new Date()),
+            NotificationCounter.class);
+        putCached(userId, unread);
+        if (notify) {
+            push(userId, unread);
+        }
+        return unread;
+    }
+
+    // Ghi giá trị đã đếm lại chỉ khi bộ đếm vẫn là giá trị đã đọc trước khi đếm; nếu đã bị adjust thay đổi
+    // thì bỏ qua, lần đối chiếu sau sẽ sửa nếu còn lệch
+    private boolean storeIfUnchanged(String userId, long expected, long unread) {
+        NotificationCounter counter = mongoTemplate.findAndModify(
+            new Query(Criteria.where("_id").is(userId).and("unread").is(expected)),
+            new Update().set("unread", unread).set("reconciledAt", new Date()),
+            NotificationCounter.class);
+        if (counter == null) {
+            return false;
+        }
+        putCached(userId, unread);
+        push(userId, unread);
+        return true;
+    }
+
+    private void push(String userId, long unread) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("type", "UNREAD_COUNT");
+        event.put("count", unread);
+        messagingTemplate.convertAndSendToUser(userId, "/queue/notifications", event);
+    }
+
+    // Khi chạy nhiều node, adjust trên node khác chỉ cập nhật bộ nhớ của node đó: giá trị quá cache-ttl-ms
+    // bị bỏ qua để đọc lại bộ đếm đã lưu
+    private Long getCached(String userId) {
+        synchronized (counts) {
+            Cached cached = counts.get(userId);
+            if (cached == null || cached.loadedAt() < System.currentTimeMillis() - cacheTtlMs) {
+                return null;
+            }
+            return cached.unread();
+        }
+    }
+
+    private void putCached(String userId, long unread) {
+        synchronized (counts) {
+            counts.put(userId, new Cached(unread, System.currentTimeMillis()));
+        }
+    }
+}
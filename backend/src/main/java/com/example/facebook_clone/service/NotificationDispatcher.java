@@ -0,0 +1,391 @@
+package com.example.facebook_clone.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.Notification;
+import com.example.facebook_clone.model.User;
+
+/**
+ * Hàng đợi gửi thông báo bất đồng bộ, tách khỏi luồng xử lý HTTP.
+ * Luồng request chỉ đưa thông báo vào hàng đợi có giới hạn; các worker (virtual thread) lấy theo lô,
+ * dựng nội dung, ghi MongoDB bằng một lệnh insert nhiều tài liệu và gửi WebSocket gộp theo người nhận.
+ * Mỗi worker có hàng đợi riêng và người nhận luôn được định tuyến tới cùng một worker, nên thông báo của
+ * một người được xử lý đúng thứ tự; lượt thích được gộp qua NotificationAggregator.
+ */
+@Service
+public class NotificationDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private static final long WORKER_POLL_MS = 500;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UserCacheService userCacheService;
+
+    @Autowired
+    private NotificationCounterService notificationCounterService;
+
+    @Autowired
+    private NotificationAggregator notificationAggregator;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Value("${app.notification-pipeline.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.notification-pipeline.workers:2}")
+    private int workerCount;
+
+    @Value("${app.notification-pipeline.batch-size:200}")
+    private int batchSize;
+
+    // Thời gian tối đa luồng request chờ khi hàng đợi đầy trước khi bỏ thông báo
+    @Value("${app.notification-pipeline.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    // Hàng đợi của từng worker, chọn theo người nhận
+    private final List<BlockingQueue<PendingNotification>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong lastLagMs = new AtomicLong();
+    private final AtomicLong maxLagMs = new AtomicLong();
+
+    /**
+     * Thông báo chờ xử lý. Nội dung được dựng ở worker: "{tên người gửi} {action}", hoặc fallback
+     * nếu không tìm thấy người gửi. retract = true khi người gửi rút lại hành động (ví dụ bỏ thích).
+     */
+    private static class PendingNotification {
+        final String userId;
+        final String senderId;
+        final String type;
+        final String action;
+        final String fallback;
+        final String entityId;
+        final boolean retract;
+        final long enqueuedAt;
+
+        PendingNotification(String userId, String senderId, String type, String action, String fallback,
+                            String entityId, boolean retract) {
+            this.userId = userId;
+            this.senderId = senderId;
+            this.type = type;
+            this.action = action;
+            this.fallback = fallback;
+            this.entityId = entityId;
+            this.retract = retract;
+            this.enqueuedAt = System.currentTimeMillis();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        int perWorker = Math.max(1, queueCapacity / workerCount);
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            BlockingQueue<PendingNotification> queue = new ArrayBlockingQueue<>(perWorker);
+            queues.add(queue);
+            workers.add(Thread.ofVirtual().name("notification-worker-" + i).start(() -> runWorker(queue)));
+        }
+    }
+
+    /**
+     * Dừng nhận thông báo mới và xử lý nốt phần còn trong hàng đợi
+     */
+    @PreDestroy
+    public void stop() {
+        // Không ngắt worker giữa chừng để lô đang ghi vào MongoDB được hoàn tất
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        for (BlockingQueue<PendingNotification> queue : queues) {
+            List<PendingNotification> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            if (!remaining.isEmpty()) {
+                process(remaining);
+            }
+        }
+    }
+
+    /**
+     * Đưa thông báo vào hàng đợi. Khi hàng đợi đầy, chờ tối đa offer-timeout-ms rồi bỏ thông báo.
+     *
+     * @param userId ID người nhận
+     * @param senderId ID người gửi
+     * @param type Loại thông báo
+     * @param action Nội dung sau tên người gửi (null nếu dùng nguyên fallback)
+     * @param fallback Nội dung khi không có tên người gửi
+     * @param entityId ID đối tượng liên quan
+     * @return true nếu đã đưa vào hàng đợi
+     */
+    public boolean enqueue(String userId, String senderId, String type, String action, String fallback, String entityId) {
+        return offer(new PendingNotification(userId, senderId, type, action, fallback, entityId, false));
+    }
+
+    /**
+     * Đưa yêu cầu rút lại thông báo gộp vào hàng đợi (ví dụ người dùng bỏ thích).
+     * Chỉ áp dụng cho các loại trong NotificationAggregator.AGGREGATED_TYPES.
+     *
+     * @param userId ID người nhận
+     * @param senderId ID người rút lại hành động
+     * @param type Loại thông báo
+     * @param action Nội dung sau tên người gửi, dùng để dựng lại nội dung gộp
+     * @param fallback Nội dung khi không có tên người gửi
+     * @param entityId ID đối tượng liên quan
+     * @return true nếu đã đưa vào hàng đợi
+     */
+    public boolean retract(String userId, String senderId, String type, String action, String fallback, String entityId) {
+        if (!NotificationAggregator.AGGREGATED_TYPES.contains(type)) {
+            return false;
+        }
+        return offer(new PendingNotification(userId, senderId, type, action, fallback, entityId, true));
+    }
+
+    private boolean offer(PendingNotification pending) {
+        BlockingQueue<PendingNotification> queue = queues.get(Math.floorMod(pending.userId.hashCode(), queues.size()));
+        try {
+            if (running && queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                enqueued.incrementAndGet();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dropped.incrementAndGet();
+        logger.warn("Hàng đợi thông báo đầy, bỏ thông báo {} cho người dùng {}", pending.type, pending.userId);
+        return false;
+    }
+
+    /**
+     * Thống kê hàng đợi: độ sâu, độ trễ, số thông báo đã xử lý/bị bỏ/lỗi
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        int depth = 0;
+        long oldestEnqueuedAt = 0;
+        for (BlockingQueue<PendingNotification> queue : queues) {
+            depth += queue.size();
+            PendingNotification oldest = queue.peek();
+            if (oldest != null && (oldestEnqueuedAt == 0 || oldest.enqueuedAt < oldestEnqueuedAt)) {
+                oldestEnqueuedAt = oldest.enqueuedAt;
+            }
+        }
+        stats.put("queueDepth", depth);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("workers", workerCount);
+        stats.put("enqueued", enqueued.get());
+        stats.put("processed", processed.get());
+        stats.put("dropped", dropped.get());
+        stats.put("failed", failed.get());
+        stats.put("batches", batches.get());
+        stats.put("lastLagMs", lastLagMs.get());
+        stats.put("maxLagMs", maxLagMs.get());
+        stats.put("oldestPendingMs", oldestEnqueuedAt == 0 ? 0 : System.currentTimeMillis() - oldestEnqueuedAt);
+        return stats;
+    }
+
+    private void runWorker(BlockingQueue<PendingNotification> queue) {
+        List<PendingNotification> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PendingNotification first = queue.poll(WORKER_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                // stop() sẽ xử lý phần còn lại trong hàng đợi
+                break;
+            } catch (RuntimeException e) {
+                logger.error("Lỗi khi xử lý lô thông báo", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<PendingNotification> batch) {
+        // Lấy thông tin người gửi của cả lô trong một lần
+        Map<String, User> senders = userCacheService.findSummariesByIds(batch.stream()
+            .map(pending -> pending.senderId)
+            .filter(senderId -> senderId != null)
+            .distinct()
+            .toList());
+
+        // Tách thông báo thường (insert) và thông báo gộp (nhóm theo người nhận, loại, đối tượng)
+        List<Notification> notifications = new ArrayList<>();
+        Map<String, AggregateGroup> groups = new LinkedHashMap<>();
+        for (PendingNotification pending : batch) {
+            if (NotificationAggregator.AGGREGATED_TYPES.contains(pending.type)) {
+                groups.computeIfAbsent(pending.userId + "|" + pending.type + "|" + pending.entityId,
+                    key -> new AggregateGroup(pending)).add(pending);
+                continue;
+            }
+            User sender = senders.get(pending.senderId);
+            String content = sender != null && pending.action != null
+                ? sender.getFirstName() + " " + sender.getLastName() + " " + pending.action
+                : pending.fallback;
+            notifications.add(new Notification(pending.userId, pending.senderId, pending.type, content, pending.entityId));
+        }
+
+        // Gộp theo người nhận: một tin WebSocket và một lần cập nhật bộ đếm cho mỗi người
+        Map<String, List<Map<String, Object>>> byRecipient = new LinkedHashMap<>();
+        Map<String, Integer> unreadDeltas = new HashMap<>();
+        int written = 0;
+
+        if (!notifications.isEmpty()) {
+            try {
+                for (Notification notification : mongoTemplate.insert(notifications, Notification.class)) {
+                    addPush(byRecipient, notification, senders);
+                    unreadDeltas.merge(notification.getUserId(), 1, Integer::sum);
+                    written++;
+                }
+            } catch (RuntimeException e) {
+                failed.addAndGet(notifications.size());
+                logger.error("Không thể lưu {} thông báo", notifications.size(), e);
+            }
+        }
+
+        for (AggregateGroup group : groups.values()) {
+            try {
+                NotificationAggregator.Result result = new NotificationAggregator.Result();
+                notificationAggregator.apply(group.userId, group.type, group.entityId, group.action, group.fallback,
+                    group.added(), group.retracted(), result);
+                for (Notification notification : result.getUpdated()) {
+                    addPush(byRecipient, notification, senders);
+                }
+                for (String removedId : result.getRemovedIds()) {
+                    byRecipient.computeIfAbsent(group.userId, id -> new ArrayList<>())
+                        .add(Map.of("removedNotificationId", removedId));
+                }
+                unreadDeltas.merge(group.userId, result.getUnreadDelta(), Integer::sum);
+                written += group.size;
+            } catch (RuntimeException e) {
+                failed.addAndGet(group.size);
+                logger.error("Không thể gộp thông báo {} cho người dùng {}", group.type, group.userId, e);
+            }
+        }
+
+        if (written == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long lag = now - batch.get(0).enqueuedAt;
+        lastLagMs.set(lag);
+        maxLagMs.accumulateAndGet(lag, Math::max);
+        processed.addAndGet(written);
+        batches.incrementAndGet();
+
+        for (Map.Entry<String, List<Map<String, Object>>> entry : byRecipient.entrySet()) {
+            try {
+                List<Map<String, Object>> items = entry.getValue();
+                Object payload = items.size() == 1
+                    ? items.get(0)
+                    : Map.of("type", "NOTIFICATIONS", "notifications", items);
+                messagingTemplate.convertAndSendToUser(entry.getKey(), "/queue/notifications", payload);
+            } catch (RuntimeException e) {
+                logger.error("Không thể gửi thông báo cho người dùng {}", entry.getKey(), e);
+            }
+        }
+
+        // Bộ đếm chưa đọc được cập nhật riêng: gửi tin lỗi không được làm mất phần thay đổi đã ghi vào database
+        for (Map.Entry<String, Integer> entry : unreadDeltas.entrySet()) {
+            try {
+                notificationCounterService.adjust(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                logger.error("Không thể cập nhật bộ đếm thông báo của người dùng {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private void addPush(Map<String, List<Map<String, Object>>> byRecipient, Notification notification,
+                         Map<String, User> senders) {
+        Map<String, Object> notificationData = new HashMap<>();
+        notificationData.put("notification", notification);
+        User sender = senders.get(notification.getSenderId());
+        if (sender != null) {
+            notificationData.put("sender", sender);
+        }
+        byRecipient.computeIfAbsent(notification.getUserId(), id -> new ArrayList<>()).add(notificationData);
+    }
+
+    /**
+     * Các lượt thêm/rút lại của một nhóm trong lô. Thích rồi bỏ thích (hoặc ngược lại) của cùng một người
+     * trong cùng lô thì triệt tiêu nhau.
+     */
+    private static class AggregateGroup {
+        final String userId;
+        final String type;
+        final String entityId;
+        final String action;
+        final String fallback;
+        // true: thêm người, false: rút lại; giữ thứ tự thời gian
+        final Map<String, Boolean> actors = new LinkedHashMap<>();
+        int size;
+
+        AggregateGroup(PendingNotification first) {
+            this.userId = first.userId;
+            this.type = first.type;
+            this.entityId = first.entityId;
+            this.action = first.action;
+            this.fallback = first.fallback;
+        }
+
+        void add(PendingNotification pending) {
+            size++;
+            Boolean previous = actors.remove(pending.senderId);
+            if (pending.retract) {
+                if (previous == null || !previous) {
+                    actors.put(pending.senderId, false);
+                }
+            } else if (previous == null || previous) {
+                actors.put(pending.senderId, true);
+            }
+        }
+
+        List<String> added() {
+            return actors.entrySet().stream().filter(Map.Entry::getValue).map(Map.Entry::getKey).toList();
+        }
+
+        List<String> retracted() {
+            return actors.entrySet().stream().filter(entry -> !entry.getValue()).map(Map.Entry::getKey).toList();
+        }
+    }
+}
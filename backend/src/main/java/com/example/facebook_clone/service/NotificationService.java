@@ -1,20 +1,22 @@
 package com.example.facebook_clone.service;
 
 import com.example.facebook_clone.model.Notification;
-import com.example.facebook_clone.model.User;
 import com.example.facebook_clone.repository.NotificationRepository;
-import com.example.facebook_clone.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.util.Date;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 /**
- * Service xử lý các thông báo trong hệ thống
+ * Service xử lý các thông báo trong hệ thống.
+ * Thông báo mới được đưa vào hàng đợi của NotificationDispatcher, nội dung kèm tên người gửi được dựng ở worker.
  */
 @Service
 public class NotificationService {
@@ -23,38 +25,25 @@ public class NotificationService {
     private NotificationRepository notificationRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private NotificationDispatcher notificationDispatcher;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private NotificationCounterService notificationCounterService;
 
     /**
-     * Tạo và gửi thông báo
+     * Đưa thông báo vào hàng đợi gửi bất đồng bộ (lưu và gửi WebSocket do NotificationDispatcher thực hiện)
      *
      * @param userId ID người nhận thông báo
      * @param senderId ID người gửi thông báo
      * @param type Loại thông báo
      * @param content Nội dung thông báo
      * @param entityId ID đối tượng liên quan
-     * @return Thông báo đã tạo
      */
-    public Notification createNotification(String userId, String senderId, String type, String content, String entityId) {
-        Notification notification = new Notification(userId, senderId, type, content, entityId);
-        notification = notificationRepository.save(notification);
-
-        // Lấy thông tin người gửi để hiển thị trong thông báo
-        Optional<User> senderOpt = userRepository.findById(senderId);
-
-        // Gửi thông báo qua WebSocket
-        Map<String, Object> notificationData = new HashMap<>();
-        notificationData.put("notification", notification);
-        if (senderOpt.isPresent()) {
-            notificationData.put("sender", senderOpt.get());
-        }
-
-        messagingTemplate.convertAndSend("/topic/notifications/" + userId, notificationData);
-
-        return notification;
+    public void createNotification(String userId, String senderId, String type, String content, String entityId) {
+        notificationDispatcher.enqueue(userId, senderId, type, null, content, entityId);
     }
 
     /**
@@ -63,15 +52,9 @@ public class NotificationService {
      * @param userId ID người nhận lời mời
      * @param senderId ID người gửi lời mời
      * @param requestId ID lời mời kết bạn
-     * @return Thông báo đã tạo
      */
-    public Notification createFriendRequestNotification(String userId, String senderId, String requestId) {
-        Optional<User> senderOpt = userRepository.findById(senderId);
-        String content = senderOpt.isPresent()
-            ? senderOpt.get().getFirstName() + " " + senderOpt.get().getLastName() + " đã gửi cho bạn lời mời kết bạn"
-            : "Bạn có lời mời kết bạn mới";
-
-        return createNotification(userId, senderId, "FRIEND_REQUEST", content, requestId);
+    public void createFriendRequestNotification(String userId, String senderId, String requestId) {
+        notificationDispatcher.enqueue(userId, senderId, "FRIEND_REQUEST", "đã gửi cho bạn lời mời kết bạn", "Bạn có lời mời kết bạn mới", requestId);
     }
 
     /**
@@ -80,15 +63,9 @@ public class NotificationService {
      * @param userId ID người nhận thông báo
      * @param senderId ID người chấp nhận kết bạn
      * @param requestId ID lời mời kết bạn
-     * @return Thông báo đã tạo
      */
-    public Notification createFriendAcceptNotification(String userId, String senderId, String requestId) {
-        Optional<User> senderOpt = userRepository.findById(senderId);
-        String content = senderOpt.isPresent()
-            ? senderOpt.get().getFirstName() + " " + senderOpt.get().getLastName() + " đã chấp nhận lời mời kết bạn của bạn"
-            : "Lời mời kết bạn của bạn đã được chấp nhận";
-
-        return createNotification(userId, senderId, "FRIEND_ACCEPT", content, requestId);
+    public void createFriendAcceptNotification(String userId, String senderId, String requestId) {
+        notificationDispatcher.enqueue(userId, senderId, "FRIEND_ACCEPT", "đã chấp nhận lời mời kết bạn của bạn", "Lời mời kết bạn của bạn đã được chấp nhận", requestId);
     }
 
     /**
@@ -98,15 +75,9 @@ public class NotificationService {
      * @param commenterId ID người bình luận
      * @param postId ID bài viết
      * @param commentId ID bình luận
-     * @return Thông báo đã tạo
      */
-    public Notification createCommentNotification(String postOwnerId, String commenterId, String postId, String commentId) {
-        Optional<User> commenterOpt = userRepository.findById(commenterId);
-        String content = commenterOpt.isPresent()
-            ? commenterOpt.get().getFirstName() + " " + commenterOpt.get().getLastName() + " đã bình luận về bài viết của bạn"
-            : "Có người đã bình luận về bài viết của bạn";
-
-        return createNotification(postOwnerId, commenterId, "COMMENT", content, commentId);
+    public void createCommentNotification(String postOwnerId, String commenterId, String postId, String commentId) {
+        notificationDispatcher.enqueue(postOwnerId, commenterId, "COMMENT", "đã bình luận về bài viết của bạn", "Có người đã bình luận về bài viết của bạn", commentId);
     }
 
     /**
@@ -116,15 +87,9 @@ public class NotificationService {
      * @param replierId ID người trả lời
      * @param postId ID bài viết
      * @param replyId ID bình luận trả lời
-     * @return Thông báo đã tạo
      */
-    public Notification createReplyNotification(String commentOwnerId, String replierId, String postId, String replyId) {
-        Optional<User> replierOpt = userRepository.findById(replierId);
-        String content = replierOpt.isPresent()
-            ? replierOpt.get().getFirstName() + " " + replierOpt.get().getLastName() + " đã trả lời bình luận của bạn"
-            : "Có người đã trả lời bình luận của bạn";
-
-        return createNotification(commentOwnerId, replierId, "REPLY", content, replyId);
+    public void createReplyNotification(String commentOwnerId, String replierId, String postId, String replyId) {
+        notificationDispatcher.enqueue(commentOwnerId, replierId, "REPLY", "đã trả lời bình luận của bạn", "Có người đã trả lời bình luận của bạn", replyId);
     }
 
     /**
@@ -133,15 +98,9 @@ public class NotificationService {
      * @param receiverId ID người nhận tin nhắn
      * @param senderId ID người gửi tin nhắn
      * @param messageId ID tin nhắn
-     * @return Thông báo đã tạo
      */
-    public Notification createMessageNotification(String receiverId, String senderId, String messageId) {
-        Optional<User> senderOpt = userRepository.findById(senderId);
-        String content = senderOpt.isPresent()
-            ? senderOpt.get().getFirstName() + " " + senderOpt.get().getLastName() + " đã gửi cho bạn một tin nhắn mới"
-            : "Bạn có một tin nhắn mới";
-
-        return createNotification(receiverId, senderId, "MESSAGE", content, messageId);
+    public void createMessageNotification(String receiverId, String senderId, String messageId) {
+        notificationDispatcher.enqueue(receiverId, senderId, "MESSAGE", "đã gửi cho bạn một tin nhắn mới", "Bạn có một tin nhắn mới", messageId);
     }
 
     /**
@@ -150,20 +109,14 @@ public class NotificationService {
      * @param postOwnerId ID chủ bài viết
      * @param likerId ID người thích
      * @param postId ID bài viết
-     * @return Thông báo đã tạo hoặc null nếu không cần tạo
      */
-    public Notification createLikeNotification(String postOwnerId, String likerId, String postId) {
+    public void createLikeNotification(String postOwnerId, String likerId, String postId) {
         // Không tạo thông báo nếu người thích là chủ bài viết
         if (postOwnerId.equals(likerId)) {
-            return null;
+            return;
         }
 
-        Optional<User> likerOpt = userRepository.findById(likerId);
-        String content = likerOpt.isPresent()
-            ? likerOpt.get().getFirstName() + " " + likerOpt.get().getLastName() + " đã thích bài viết của bạn"
-            : "Có người đã thích bài viết của bạn";
-
-        return createNotification(postOwnerId, likerId, "LIKE", content, postId);
+        notificationDispatcher.enqueue(postOwnerId, likerId, "LIKE", "đã thích bài viết của bạn", "Có người đã thích bài viết của bạn", postId);
     }
 
     /**
@@ -172,20 +125,44 @@ public class NotificationService {
      * @param commentOwnerId ID chủ bình luận
      * @param likerId ID người thích
      * @param commentId ID bình luận
-     * @return Thông báo đã tạo hoặc null nếu không cần tạo
      */
-    public Notification createCommentLikeNotification(String commentOwnerId, String likerId, String commentId) {
+    public void createCommentLikeNotification(String commentOwnerId, String likerId, String commentId) {
         // Không tạo thông báo nếu người thích là chủ bình luận
         if (commentOwnerId.equals(likerId)) {
-            return null;
+            return;
+        }
+
+        notificationDispatcher.enqueue(commentOwnerId, likerId, "COMMENT_LIKE", "đã thích bình luận của bạn", "Có người đã thích bình luận của bạn", commentId);
+    }
+
+    /**
+     * Rút người bỏ thích khỏi thông báo gộp lượt thích bài viết
+     *
+     * @param postOwnerId ID chủ bài viết
+     * @param likerId ID người bỏ thích
+     * @param postId ID bài viết
+     */
+    public void retractLikeNotification(String postOwnerId, String likerId, String postId) {
+        if (postOwnerId.equals(likerId)) {
+            return;
         }
 
-        Optional<User> likerOpt = userRepository.findById(likerId);
-        String content = likerOpt.isPresent()
-            ? likerOpt.get().getFirstName() + " " + likerOpt.get().getLastName() + " đã thích bình luận của bạn"
-            : "Có người đã thích bình luận của bạn";
+        notificationDispatcher.retract(postOwnerId, likerId, "LIKE", "đã thích bài viết của bạn", "Có người đã thích bài viết của bạn", postId);
+    }
+
+    /**
+     * Rút người bỏ thích khỏi thông báo gộp lượt thích bình luận
+     *
+     * @param commentOwnerId ID chủ bình luận
+     * @param likerId ID người bỏ thích
+     * @param commentId ID bình luận
+     */
+    public void retractCommentLikeNotification(String commentOwnerId, String likerId, String commentId) {
+        if (commentOwnerId.equals(likerId)) {
+            return;
+        }
 
-        return createNotification(commentOwnerId, likerId, "COMMENT_LIKE", content, commentId);
+        notificationDispatcher.retract(commentOwnerId, likerId, "COMMENT_LIKE", "đã thích bình luận của bạn", "Có người đã thích bình luận của bạn", commentId);
     }
 
     /**
@@ -205,7 +182,7 @@ public class NotificationService {
      * @return Số lượng thông báo chưa đọc
      */
     public long getUnreadCount(String userId) {
-        return notificationRepository.countByUserIdAndReadFalse(userId);
+        return notificationCounterService.getUnreadCount(userId);
     }
 
     /**
@@ -215,26 +192,64 @@ public class NotificationService {
      * @return Thông báo đã cập nhật hoặc null nếu không tìm thấy
      */
     public Notification markAsRead(String notificationId) {
-        Optional<Notification> notificationOpt = notificationRepository.findById(notificationId);
-        if (notificationOpt.isPresent()) {
-            Notification notification = notificationOpt.get();
-            notification.setRead(true);
-            return notificationRepository.save(notification);
+        // Chỉ cập nhật khi thông báo chưa đọc để bộ đếm không bị trừ hai lần
+        Notification notification = mongoTemplate.findAndModify(
+            new Query(Criteria.where("_id").is(notificationId).and("read").is(false)),
+            new Update().set("read", true),
+            FindAndModifyOptions.options().returnNew(true),
+            Notification.class);
+        if (notification != null) {
+            notificationCounterService.adjust(notification.getUserId(), -1);
+            return notification;
         }
-        return null;
+        return notificationRepository.findById(notificationId).orElse(null);
+    }
+
+    /**
+     * Đánh dấu tất cả thông báo của người dùng đã đọc bằng một lệnh updateMany
+     *
+     * @param userId ID người dùng
+     * @return Số thông báo đã được đánh dấu
+     */
+    public long markAllAsRead(String userId) {
+        Query query = new Query(Criteria.where("userId").is(userId).and("read").is(false));
+        long modified = mongoTemplate.updateMulti(query, new Update().set("read", true), Notification.class).getModifiedCount();
+        notificationCounterService.adjust(userId, -modified);
+        return modified;
     }
 
     /**
-     * Đánh dấu tất cả thông báo của người dùng đã đọc
+     * Đánh dấu đã đọc mọi thông báo tới một mốc (tính cả mốc) bằng một lệnh updateMany.
+     * Mốc là thông báo có ID cho trước (theo thứ tự createdAt, id) hoặc một thời điểm.
      *
      * @param userId ID người dùng
+     * @param upToNotificationId ID thông báo mới nhất client đã thấy (có thể null)
+     * @param upTo Thời điểm mới nhất client đã thấy, dùng khi không có ID (có thể null)
+     * @return Số thông báo đã được đánh dấu
      */
-    public void markAllAsRead(String userId) {
-        List<Notification> unreadNotifications = notificationRepository.findByUserIdAndReadFalseOrderByCreatedAtDesc(userId);
-        for (Notification notification : unreadNotifications) {
-            notification.setRead(true);
-            notificationRepository.save(notification);
+    public long markAsReadUpTo(String userId, String upToNotificationId, Date upTo) {
+        Criteria range;
+        if (upToNotificationId != null) {
+            Optional<Notification> last = notificationRepository.findById(upToNotificationId)
+                .filter(notification -> userId.equals(notification.getUserId()));
+            if (!last.isPresent()) {
+                throw new IllegalArgumentException("Không tìm thấy thông báo");
+            }
+            Date createdAt = last.get().getCreatedAt();
+            range = new Criteria().orOperator(
+                Criteria.where("createdAt").lt(createdAt),
+                Criteria.where("createdAt").is(createdAt).and("_id").lte(upToNotificationId));
+        } else if (upTo != null) {
+            range = Criteria.where("createdAt").lte(upTo);
+        } else {
+            throw new IllegalArgumentException("Cần cung cấp notificationId hoặc timestamp");
         }
+
+        Query query = new Query(new Criteria().andOperator(
+            Criteria.where("userId").is(userId).and("read").is(false), range));
+        long modified = mongoTemplate.updateMulti(query, new Update().set("read", true), Notification.class).getModifiedCount();
+        notificationCounterService.adjust(userId, -modified);
+        return modified;
     }
 
     /**
@@ -243,16 +258,22 @@ public class NotificationService {
      * @param notificationId ID thông báo cần xóa
      */
     public void deleteNotification(String notificationId) {
-        notificationRepository.deleteById(notificationId);
+        Notification deleted = mongoTemplate.findAndRemove(
+            new Query(Criteria.where("_id").is(notificationId)), Notification.class);
+        if (deleted != null && !deleted.isRead()) {
+            notificationCounterService.adjust(deleted.getUserId(), -1);
+        }
     }
 
     /**
-     * Xóa tất cả thông báo của một người dùng
+     * Xóa tất cả thông báo của một người dùng bằng một lệnh deleteMany
      *
      * @param userId ID người dùng
+     * @return Số thông báo đã xóa
      */
-    public void deleteAllNotificationsForUser(String userId) {
-        List<Notification> notifications = notificationRepository.findByUserIdOrderByCreatedAtDesc(userId);
-        notificationRepository.deleteAll(notifications);
+    public long deleteAllNotificationsForUser(String userId) {
+        long deleted = notificationRepository.deleteByUserId(userId);
+        notificationCounterService.refresh(userId);
+        return deleted;
     }
 }
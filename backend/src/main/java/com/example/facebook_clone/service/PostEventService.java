@@ -0,0 +1,142 @@
+package com.example.facebook_clone.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.Post;
+import com.example.facebook_clone.model.PostEvent;
+
+/**
+ * Service phát sự kiện thay đổi bài đăng qua WebSocket.
+ * Số thứ tự được cấp bằng $inc eventSeq trên bài đăng nên vẫn tăng liên tục khi khởi động lại.
+ * Giữ một số sự kiện gần nhất của mỗi bài đăng trong bộ nhớ để client bị thiếu sự kiện
+ * có thể lấy lại phần còn thiếu mà không cần tải toàn bộ bài đăng.
+ */
+@Service
+public class PostEventService {
+
+    private static final int RECENT_EVENTS_PER_POST = 100;
+    private static final int MAX_TRACKED_POSTS = 5000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    // Các bài đăng ít được cập nhật gần đây bị loại trước
+    private final LinkedHashMap<String, Deque<PostEvent>> recentEvents =
+        new LinkedHashMap<String, Deque<PostEvent>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Deque<PostEvent>> eldest) {
+                return size() > MAX_TRACKED_POSTS;
+            }
+        };
+
+    /**
+     * Cấp số thứ tự mới và gửi sự kiện tới /topic/posts/{postId}
+     *
+     * @param type Loại sự kiện
+     * @param postId ID bài đăng
+     * @param data Dữ liệu thay đổi
+     * @return Sự kiện đã gửi, hoặc null nếu bài đăng không còn tồn tại
+     */
+    public PostEvent publish(PostEvent.Type type, String postId, Map<String, Object> data) {
+        Query query = new Query(Criteria.where("_id").is(postId));
+        query.fields().include("eventSeq");
+        Post updated = mongoTemplate.findAndModify(query, new Update().inc("eventSeq", 1),
+            FindAndModifyOptions.options().returnNew(true), Post.class);
+        if (updated == null) {
+            return null;
+        }
+        return publish(type, postId, updated.getEventSeq(), data);
+    }
+
+    /**
+     * Gửi sự kiện với số thứ tự đã được cấp sẵn ($inc eventSeq trong cùng lệnh cập nhật dữ liệu, ví dụ khi thích)
+     *
+     * @param type Loại sự kiện
+     * @param postId ID bài đăng
+     * @param seq Số thứ tự đã cấp
+     * @param data Dữ liệu thay đổi
+     * @return Sự kiện đã gửi
+     */
+    public PostEvent publish(PostEvent.Type type, String postId, long seq, Map<String, Object> data) {
+        PostEvent event = new PostEvent(type, postId, seq, data);
+        remember(event);
+        messagingTemplate.convertAndSend("/topic/posts/" + postId, event);
+        return event;
+    }
+
+    /**
+     * Lấy các sự kiện sau một số thứ tự nếu bộ nhớ còn giữ đủ và liên tục
+     *
+     * @param postId ID bài đăng
+     * @param since Số thứ tự cuối cùng client đã áp dụng
+     * @param currentSeq Số thứ tự hiện tại của bài đăng
+     * @return Danh sách sự kiện (seq từ since + 1 đến currentSeq), hoặc null nếu client cần tải lại bài đăng
+     */
+    public synchronized List<PostEvent> findEventsSince(String postId, long since, long currentSeq) {
+        List<PostEvent> result = new ArrayList<>();
+        if (since >= currentSeq) {
+            return result;
+        }
+
+        Deque<PostEvent> events = recentEvents.get(postId);
+        if (events == null) {
+            return null;
+        }
+
+        long expected = since + 1;
+        for (PostEvent event : events) {
+            if (event.getSeq() < expected) {
+                continue;
+            }
+            // Thiếu sự kiện ở giữa (ví dụ do máy chủ khác phát) thì không thể bù
+            if (event.getSeq() != expected) {
+                return null;
+            }
+            result.add(event);
+            expected++;
+        }
+        return expected == currentSeq + 1 ? result : null;
+    }
+
+    /**
+     * Bỏ các sự kiện đã lưu của bài đăng (khi bài đăng bị xóa)
+     *
+     * @param postId ID bài đăng
+     */
+    public synchronized void forget(String postId) {
+        recentEvents.remove(postId);
+    }
+
+    private synchronized void remember(PostEvent event) {
+        Deque<PostEvent> events = recentEvents.computeIfAbsent(event.getPostId(), id -> new ArrayDeque<>());
+
+        // Các lệnh publish đồng thời có thể về không theo thứ tự seq, chèn đúng vị trí
+        List<PostEvent> later = new ArrayList<>();
+        while (!events.isEmpty() && events.peekLast().getSeq() > event.getSeq()) {
+            later.add(0, events.pollLast());
+        }
+        events.addLast(event);
+        events.addAll(later);
+
+        while (events.size() > RECENT_EVENTS_PER_POST) {
+            events.pollFirst();
+        }
+    }
+}
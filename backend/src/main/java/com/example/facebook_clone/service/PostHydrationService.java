@@ -0,0 +1,158 @@
+package com.example.facebook_clone.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.Comment;
+import com.example.facebook_clone.model.Post;
+import com.example.facebook_clone.model.User;
+import com.example.facebook_clone.repository.PostRepository;
+
+/**
+ * Service bổ sung thông tin người dùng và bài đăng gốc cho danh sách bài đăng
+ * theo lô: gom toàn bộ ID trước, mỗi loại chỉ truy vấn một lần findAllById
+ */
+@Service
+public class PostHydrationService {
+
+    /**
+     * Giới hạn số tầng bài đăng gốc được theo (bài chia sẻ của bài chia sẻ...)
+     */
+    private static final int MAX_SHARE_DEPTH = 5;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private UserCacheService userCacheService;
+
+    /**
+     * Thêm thông tin người dùng vào bài đăng, bình luận (kể cả trả lời lồng nhau)
+     * và bài đăng gốc của bài chia sẻ
+     *
+     * @param posts Danh sách bài đăng cần bổ sung
+     * @return Số truy vấn MongoDB đã thực hiện
+     */
+    public int hydrate(List<Post> posts) {
+        if (posts == null || posts.isEmpty()) {
+            return 0;
+        }
+        int queries = 0;
+
+        // Bước 1: tải bài đăng gốc theo từng tầng, mỗi tầng một truy vấn
+        List<Post> allPosts = new ArrayList<>(posts);
+        Map<String, Post> originals = new HashMap<>();
+        List<Post> level = posts;
+        for (int depth = 0; depth < MAX_SHARE_DEPTH && !level.isEmpty(); depth++) {
+            Set<String> originalIds = new HashSet<>();
+            for (Post post : level) {
+                if (post.getOriginalPostId() != null && !originals.containsKey(post.getOriginalPostId())) {
+                    originalIds.add(post.getOriginalPostId());
+                }
+            }
+            if (originalIds.isEmpty()) {
+                break;
+            }
+            List<Post> loaded = postRepository.findAllById(originalIds);
+            queries++;
+            for (Post original : loaded) {
+                originals.put(original.getId(), original);
+            }
+            allPosts.addAll(loaded);
+            level = loaded;
+        }
+
+        // Bước 2: gom tất cả userId của bài đăng và bình luận
+        Set<String> userIds = new HashSet<>();
+        for (Post post : allPosts) {
+            if (post.getUserId() != null) {
+                userIds.add(post.getUserId());
+            }
+            collectCommentUserIds(post.getComments(), userIds);
+        }
+
+        // Người dùng đã có trong cache không tốn truy vấn
+        AtomicInteger userQueries = new AtomicInteger();
+        Map<String, User> users = userCacheService.findSummariesByIds(userIds, userQueries);
+        queries += userQueries.get();
+
+        // Bước 3: gắn kết quả vào từng bài đăng
+        for (Post post : allPosts) {
+            User author = users.get(post.getUserId());
+            if (author != null) {
+                post.setUser(author);
+            }
+            attachCommentUsers(post.getComments(), users);
+            if (post.getOriginalPostId() != null) {
+                Post original = originals.get(post.getOriginalPostId());
+                if (original != null) {
+                    post.setOriginalPost(original);
+                }
+            }
+        }
+
+        return queries;
+    }
+
+    /**
+     * Thêm thông tin người dùng cho một bài đăng
+     *
+     * @param post Bài đăng cần bổ sung
+     * @return Số truy vấn MongoDB đã thực hiện
+     */
+    public int hydrate(Post post) {
+        return hydrate(List.of(post));
+    }
+
+    /**
+     * Thêm thông tin người dùng cho một danh sách bình luận (kể cả trả lời lồng nhau)
+     *
+     * @param comments Danh sách bình luận
+     * @return Số truy vấn MongoDB đã thực hiện
+     */
+    public int hydrateComments(List<Comment> comments) {
+        Set<String> userIds = new HashSet<>();
+        collectCommentUserIds(comments, userIds);
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+        AtomicInteger userQueries = new AtomicInteger();
+        Map<String, User> users = userCacheService.findSummariesByIds(userIds, userQueries);
+        attachCommentUsers(comments, users);
+        return userQueries.get();
+    }
+
+    private void collectCommentUserIds(Collection<Comment> comments, Set<String> userIds) {
+        if (comments == null) {
+            return;
+        }
+        for (Comment comment : comments) {
+            if (comment.getUserId() != null) {
+                userIds.add(comment.getUserId());
+            }
+            collectCommentUserIds(comment.getReplies(), userIds);
+        }
+    }
+
+    private void attachCommentUsers(Collection<Comment> comments, Map<String, User> users) {
+        if (comments == null) {
+            return;
+        }
+        for (Comment comment : comments) {
+            User user = users.get(comment.getUserId());
+            if (user != null) {
+                comment.setUser(user);
+            }
+            attachCommentUsers(comment.getReplies(), users);
+        }
+    }
+}
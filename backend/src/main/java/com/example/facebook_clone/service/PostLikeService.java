@@ -0,0 +1,103 @@
+package com.example.facebook_clone.service;
+
+import java.util.Collections;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.LikeToggleResult;
+import com.example.facebook_clone.model.Post;
+
+/**
+ * Service thích/bỏ thích bài đăng bằng toán tử cập nhật nguyên tử của MongoDB
+ * ($push/$pull kèm $inc likeCount) thay vì đọc - sửa - ghi lại cả bài đăng.
+ * Số thứ tự sự kiện (eventSeq) được cấp trong cùng lệnh, nên mỗi lượt thích chỉ tốn một findAndModify.
+ */
+@Service
+public class PostLikeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostLikeService.class);
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Tính likeCount cho các bài đăng cũ chưa có trường này
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillLikeCounts() {
+        try {
+            Query missing = new Query(Criteria.where("likeCount").exists(false));
+            AggregationUpdate update = AggregationUpdate.update()
+                .set("likeCount")
+                .toValue(ArrayOperators.Size.lengthOfArray(
+                    ConditionalOperators.ifNull("likes").then(Collections.emptyList())));
+            long modified = mongoTemplate.updateMulti(missing, update, Post.class).getModifiedCount();
+            if (modified > 0) {
+                logger.info("Đã tính likeCount cho {} bài đăng", modified);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Không thể tính likeCount cho bài đăng cũ", e);
+        }
+    }
+
+    /**
+     * Đảo trạng thái thích của người dùng với bài đăng.
+     * Mỗi nhánh là một lệnh findAndModify có điều kiện nên các lượt thích đồng thời không ghi đè nhau.
+     *
+     * @param postId ID bài đăng
+     * @param userId ID người thích
+     * @return Kết quả sau khi cập nhật
+     * @throws RuntimeException nếu không tìm thấy bài đăng
+     */
+    public LikeToggleResult toggleLike(String postId, String userId) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            // Chưa thích -> thêm vào likes
+            Post liked = mongoTemplate.findAndModify(
+                projected(new Query(Criteria.where("id").is(postId).and("likes").ne(userId))),
+                new Update().push("likes", userId).inc("likeCount", 1).inc("eventSeq", 1),
+                FindAndModifyOptions.options().returnNew(true),
+                Post.class);
+            if (liked != null) {
+                return new LikeToggleResult(postId, liked.getUserId(), true, liked.getLikeCount(), liked.getEventSeq());
+            }
+
+            // Đã thích -> xóa khỏi likes
+            Post unliked = mongoTemplate.findAndModify(
+                projected(new Query(Criteria.where("id").is(postId).and("likes").is(userId))),
+                new Update().pull("likes", userId).inc("likeCount", -1).inc("eventSeq", 1),
+                FindAndModifyOptions.options().returnNew(true),
+                Post.class);
+            if (unliked != null) {
+                return new LikeToggleResult(postId, unliked.getUserId(), false, unliked.getLikeCount(),
+                    unliked.getEventSeq());
+            }
+
+            // Không nhánh nào khớp: bài đăng không tồn tại, hoặc một yêu cầu khác vừa đảo trạng thái
+            if (!mongoTemplate.exists(new Query(Criteria.where("id").is(postId)), Post.class)) {
+                break;
+            }
+        }
+        throw new RuntimeException("Không tìm thấy bài đăng");
+    }
+
+    // Chỉ trả về các trường cần cho phản hồi, không kéo theo likes và bình luận
+    private static Query projected(Query query) {
+        query.fields().include("userId", "likeCount", "eventSeq");
+        return query;
+    }
+}
@@ -0,0 +1,422 @@
+package com.example.facebook_clone.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.Post;
+
+/**
+ * Chỉ mục đảo ngược trong bộ nhớ cho nội dung bài đăng.
+ * Tách từ theo tiếng Việt (bỏ dấu, đ -> d, không phân biệt hoa thường),
+ * hỗ trợ tìm theo tiền tố, theo cụm từ trong ngoặc kép và xếp hạng kết quả.
+ */
+@Service
+public class PostSearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostSearchService.class);
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern QUOTED_PHRASE = Pattern.compile("\"([^\"]*)\"");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // term -> (postId -> vị trí xuất hiện trong bài)
+    private TreeMap<String, Map<String, int[]>> postings = new TreeMap<>();
+    // postId -> thông tin cần cho lọc quyền riêng tư, xếp hạng và xóa khỏi chỉ mục
+    private Map<String, IndexedPost> documents = new HashMap<>();
+
+    // Các thay đổi xảy ra trong lúc đang dựng lại chỉ mục, sẽ được áp dụng lại sau khi hoán đổi
+    private List<Post> pendingUpdates;
+    private List<String> pendingRemovals;
+
+    private static class IndexedPost {
+        final String userId;
+        final String privacy;
+        final long createdAt;
+        final int length;
+        final Set<String> terms;
+
+        IndexedPost(String userId, String privacy, long createdAt, int length, Set<String> terms) {
+            this.userId = userId;
+            this.privacy = privacy;
+            this.createdAt = createdAt;
+            this.length = length;
+            this.terms = terms;
+        }
+    }
+
+    /**
+     * Dựng lại chỉ mục từ MongoDB khi ứng dụng khởi động xong
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        rebuild();
+    }
+
+    /**
+     * Dựng lại toàn bộ chỉ mục bằng cách đọc tuần tự (stream) collection posts
+     *
+     * @return Số bài đăng đã được đánh chỉ mục
+     */
+    public int rebuild() {
+        lock.writeLock().lock();
+        try {
+            pendingUpdates = new ArrayList<>();
+            pendingRemovals = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        TreeMap<String, Map<String, int[]>> newPostings = new TreeMap<>();
+        Map<String, IndexedPost> newDocuments = new HashMap<>();
+        Query query = new Query();
+        query.fields().include("content", "userId", "privacy", "createdAt");
+        try (Stream<Post> stream = mongoTemplate.stream(query, Post.class)) {
+            stream.forEach(post -> addTo(newPostings, newDocuments, post));
+        } catch (RuntimeException e) {
+            logger.error("Không thể dựng chỉ mục tìm kiếm bài đăng", e);
+            lock.writeLock().lock();
+            try {
+                pendingUpdates = null;
+                pendingRemovals = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return 0;
+        }
+
+        lock.writeLock().lock();
+        try {
+            postings = newPostings;
+            documents = newDocuments;
+            for (Post post : pendingUpdates) {
+                removeFrom(postings, documents, post.getId());
+                addTo(postings, documents, post);
+            }
+            for (String postId : pendingRemovals) {
+                removeFrom(postings, documents, postId);
+            }
+            pendingUpdates = null;
+            pendingRemovals = null;
+            logger.info("Đã dựng chỉ mục tìm kiếm cho {} bài đăng, {} từ khóa", documents.size(), postings.size());
+            return documents.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Thêm mới hoặc cập nhật một bài đăng trong chỉ mục
+     *
+     * @param post Bài đăng đã lưu
+     */
+    public void index(Post post) {
+        if (post == null || post.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeFrom(postings, documents, post.getId());
+            addTo(postings, documents, post);
+            if (pendingUpdates != null) {
+                pendingUpdates.add(post);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Xóa một bài đăng khỏi chỉ mục
+     *
+     * @param postId ID bài đăng đã xóa
+     */
+    public void remove(String postId) {
+        lock.writeLock().lock();
+        try {
+            removeFrom(postings, documents, postId);
+            if (pendingRemovals != null) {
+                pendingRemovals.add(postId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tìm kiếm bài đăng. Các từ đều phải xuất hiện (AND), từ cuối cùng được so khớp theo tiền tố,
+     * cụm từ đặt trong ngoặc kép phải xuất hiện liền nhau.
+     *
+     * @param queryText Chuỗi tìm kiếm
+     * @param viewerId ID người xem (null nếu chưa đăng nhập)
+     * @param limit Số kết quả tối đa
+     * @return Danh sách ID bài đăng theo thứ tự điểm giảm dần
+     */
+    public List<String> search(String queryText, String viewerId, int limit) {
+        List<List<String>> phrases = new ArrayList<>();
+        Matcher matcher = QUOTED_PHRASE.matcher(queryText);
+        while (matcher.find()) {
+            List<String> phrase = tokenize(matcher.group(1));
+            if (!phrase.isEmpty()) {
+                phrases.add(phrase);
+            }
+        }
+        List<String> terms = tokenize(matcher.replaceAll(" "));
+        if (terms.isEmpty() && phrases.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Chỉ từ cuối của câu truy vấn (khi người dùng còn đang gõ) mới được so theo tiền tố
+        boolean lastIsPrefix = !terms.isEmpty() && !queryText.trim().endsWith("\"");
+
+        lock.readLock().lock();
+        try {
+            int totalDocs = Math.max(documents.size(), 1);
+            Map<String, Double> scores = null;
+
+            for (int i = 0; i < terms.size(); i++) {
+                boolean prefix = lastIsPrefix && i == terms.size() - 1;
+                Map<String, Double> termScores = scoreTerm(terms.get(i), prefix, totalDocs);
+                scores = intersect(scores, termScores);
+                if (scores.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+
+            for (List<String> phrase : phrases) {
+                Map<String, Double> phraseScores = scorePhrase(phrase, totalDocs);
+                scores = intersect(scores, phraseScores);
+                if (scores.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+
+            // Thưởng thêm điểm khi các từ không đặt trong ngoặc kép cũng xuất hiện liền nhau
+            if (terms.size() > 1) {
+                for (Map.Entry<String, Double> entry : scores.entrySet()) {
+                    if (containsPhrase(entry.getKey(), terms, lastIsPrefix)) {
+                        entry.setValue(entry.getValue() * 2);
+                    }
+                }
+            }
+
+            List<Map.Entry<String, Double>> ranked = new ArrayList<>();
+            for (Map.Entry<String, Double> entry : scores.entrySet()) {
+                IndexedPost doc = documents.get(entry.getKey());
+                if (doc != null && isVisible(doc, viewerId)) {
+                    ranked.add(entry);
+                }
+            }
+            ranked.sort((a, b) -> {
+                int byScore = Double.compare(b.getValue(), a.getValue());
+                if (byScore != 0) {
+                    return byScore;
+                }
+                return Long.compare(documents.get(b.getKey()).createdAt, documents.get(a.getKey()).createdAt);
+            });
+
+            List<String> result = new ArrayList<>(Math.min(limit, ranked.size()));
+            for (int i = 0; i < ranked.size() && i < limit; i++) {
+                result.add(ranked.get(i).getKey());
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Số bài đăng đang có trong chỉ mục
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Chuẩn hóa và tách từ: bỏ dấu tiếng Việt, đ -> d, chữ thường
+     *
+     * @param text Văn bản cần tách
+     * @return Danh sách từ theo thứ tự xuất hiện
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD);
+        folded = COMBINING_MARKS.matcher(folded).replaceAll("")
+            .replace('đ', 'd')
+            .replace('Đ', 'D')
+            .toLowerCase(Locale.ROOT);
+        for (String token : TOKEN_SEPARATOR.split(folded)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isVisible(IndexedPost doc, String viewerId) {
+        return doc.privacy == null
+            || "PUBLIC".equals(doc.privacy)
+            || (viewerId != null && viewerId.equals(doc.userId));
+    }
+
+    private Map<String, Double> scoreTerm(String term, boolean prefix, int totalDocs) {
+        Map<String, Double> result = new HashMap<>();
+        NavigableMap<String, Map<String, int[]>> matches = prefix
+            ? postings.subMap(term, true, term + Character.MAX_VALUE, false)
+            : postings.subMap(term, true, term, true);
+        for (Map.Entry<String, Map<String, int[]>> entry : matches.entrySet()) {
+            // Khớp đúng từ được điểm cao hơn khớp tiền tố
+            double weight = entry.getKey().equals(term) ? 1.0 : 0.5;
+            double idf = Math.log(1 + (double) totalDocs / entry.getValue().size());
+            for (Map.Entry<String, int[]> posting : entry.getValue().entrySet()) {
+                double tf = posting.getValue().length / (double) documents.get(posting.getKey()).length;
+                result.merge(posting.getKey(), weight * idf * (1 + tf), Double::sum);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Double> scorePhrase(List<String> phrase, int totalDocs) {
+        Map<String, Double> candidates = null;
+        for (String term : phrase) {
+            candidates = intersect(candidates, scoreTerm(term, false, totalDocs));
+            if (candidates.isEmpty()) {
+                return candidates;
+            }
+        }
+        Map<String, Double> result = new HashMap<>();
+        for (Map.Entry<String, Double> entry : candidates.entrySet()) {
+            if (containsPhrase(entry.getKey(), phrase, false)) {
+                result.put(entry.getKey(), entry.getValue() * 2);
+            }
+        }
+        return result;
+    }
+
+    // Kiểm tra các từ xuất hiện liền nhau theo đúng thứ tự trong bài đăng
+    private boolean containsPhrase(String postId, List<String> phrase, boolean lastIsPrefix) {
+        List<int[]> positions = new ArrayList<>(phrase.size());
+        for (int i = 0; i < phrase.size(); i++) {
+            String term = phrase.get(i);
+            if (lastIsPrefix && i == phrase.size() - 1) {
+                List<Integer> merged = new ArrayList<>();
+                for (Map<String, int[]> docs : postings.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+                    int[] p = docs.get(postId);
+                    if (p != null) {
+                        for (int value : p) {
+                            merged.add(value);
+                        }
+                    }
+                }
+                positions.add(merged.stream().mapToInt(Integer::intValue).toArray());
+            } else {
+                Map<String, int[]> docs = postings.get(term);
+                int[] p = docs != null ? docs.get(postId) : null;
+                if (p == null) {
+                    return false;
+                }
+                positions.add(p);
+            }
+        }
+        for (int start : positions.get(0)) {
+            boolean matched = true;
+            for (int i = 1; i < positions.size() && matched; i++) {
+                matched = contains(positions.get(i), start + i);
+            }
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(int[] values, int target) {
+        for (int value : values) {
+            if (value == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, Double> intersect(Map<String, Double> current, Map<String, Double> next) {
+        if (current == null) {
+            return next;
+        }
+        Map<String, Double> result = new HashMap<>();
+        for (Map.Entry<String, Double> entry : current.entrySet()) {
+            Double other = next.get(entry.getKey());
+            if (other != null) {
+                result.put(entry.getKey(), entry.getValue() + other);
+            }
+        }
+        return result;
+    }
+
+    private static void addTo(TreeMap<String, Map<String, int[]>> postings, Map<String, IndexedPost> documents, Post post) {
+        if (post.getId() == null) {
+            return;
+        }
+        List<String> tokens = tokenize(post.getContent());
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            positions.computeIfAbsent(tokens.get(i), k -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+            int[] p = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(post.getId(), p);
+        }
+        long createdAt = post.getCreatedAt() != null ? post.getCreatedAt().getTime() : 0L;
+        documents.put(post.getId(), new IndexedPost(post.getUserId(), post.getPrivacy(), createdAt,
+            Math.max(tokens.size(), 1), new HashSet<>(positions.keySet())));
+    }
+
+    private static void removeFrom(TreeMap<String, Map<String, int[]>> postings, Map<String, IndexedPost> documents, String postId) {
+        IndexedPost existing = documents.remove(postId);
+        if (existing == null) {
+            return;
+        }
+        for (String term : existing.terms) {
+            Map<String, int[]> docs = postings.get(term);
+            if (docs != null) {
+                docs.remove(postId);
+                if (docs.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+}
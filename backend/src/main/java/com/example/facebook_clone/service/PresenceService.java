@@ -0,0 +1,371 @@
+package com.example.facebook_clone.service;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import com.example.facebook_clone.model.PresenceEntry;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Trạng thái trực tuyến và đang nhập tin nhắn của người dùng.
+ * Phiên STOMP được ghi nhận khi CONNECT/DISCONNECT và được làm mới bởi mọi frame từ client (kể cả heartbeat);
+ * phiên im lặng quá session-timeout-ms bị coi là đã mất. Các phiên được giữ trong ConcurrentHashMap theo người dùng.
+ * Thay đổi online/offline được gộp theo chu kỳ flush-interval-ms và chỉ gửi khi trạng thái cuối khác trạng thái
+ * đã báo; offline phải kéo dài offline-grace-ms nên kết nối chập chờn hay tải lại trang không tạo sự kiện.
+ * Sự kiện chỉ gửi tới bạn bè đang trực tuyến qua /user/queue/presence.
+ * Khi có BrokerRelay (nhiều instance), mỗi instance ghi người dùng đang nối vào nó vào collection presence (có TTL)
+ * và định kỳ đọc danh sách người dùng đang nối vào các instance khác, nên bạn bè ở instance khác vẫn được tính
+ * là trực tuyến và sự kiện đang nhập vẫn được gửi (tin /user/ được relay chuyển tới instance của người nhận).
+ * Người dùng còn phiên ở instance khác thì instance này không báo online/offline; instance giữ phiên cuối cùng báo.
+ */
+@Service
+public class PresenceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceService.class);
+
+    private static final String PRESENCE_QUEUE = "/queue/presence";
+
+    private static final class SessionInfo {
+        final String userId;
+        volatile long lastSeen;
+
+        SessionInfo(String userId, long lastSeen) {
+            this.userId = userId;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    @Value("${app.presence.offline-grace-ms:5000}")
+    private long offlineGraceMs;
+
+    @Value("${app.presence.session-timeout-ms:75000}")
+    private long sessionTimeoutMs;
+
+    @Value("${app.presence.typing-throttle-ms:3000}")
+    private long typingThrottleMs;
+
+    // Chu kỳ đọc lại danh sách người dùng đang nối vào các instance khác
+    @Value("${app.presence.shared-refresh-ms:2000}")
+    private long sharedRefreshMs;
+
+    // Lazy: dịch vụ này được cấu hình WebSocket dùng (qua PresenceChannelInterceptor) trước khi template được tạo
+    @Lazy
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private FriendSuggestionService friendSuggestionService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Chỉ có khi chạy nhiều instance (app.websocket.broker=local/mongo)
+    @Autowired(required = false)
+    private BrokerRelay brokerRelay;
+
+    private final Map<String, SessionInfo> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+
+    // Người dùng có thay đổi chưa gửi -> thời điểm thay đổi gần nhất
+    private final Map<String, Long> pendingChanges = new ConcurrentHashMap<>();
+
+    // Người dùng đã được báo là online cho bạn bè
+    private final Set<String> announcedOnline = ConcurrentHashMap.newKeySet();
+
+    // "người gửi|người nhận" -> thời điểm gửi sự kiện đang nhập gần nhất
+    private final Map<String, Long> typingSentAt = new ConcurrentHashMap<>();
+
+    private volatile long lastSweepAt;
+
+    // Người dùng đang có phiên ở instance khác (theo lần đọc collection presence gần nhất)
+    private volatile Set<String> onlineElsewhere = Set.of();
+    private volatile long lastSharedReadAt;
+    private volatile long lastSharedRenewAt;
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (user != null && sessionId != null) {
+            sessionOpened(user.getName(), sessionId);
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        sessionClosed(event.getSessionId());
+    }
+
+    /**
+     * Làm mới thời điểm hoạt động của phiên khi nhận frame từ client.
+     * Phiên đã bị coi là mất nhưng vẫn gửi frame được ghi nhận lại.
+     *
+     * @param sessionId ID phiên
+     * @param user Người dùng của phiên (có thể null)
+     */
+    public void touch(String sessionId, Principal user) {
+        SessionInfo info = sessions.get(sessionId);
+        if (info != null) {
+            info.lastSeen = System.currentTimeMillis();
+        } else if (user != null) {
+            sessionOpened(user.getName(), sessionId);
+        }
+    }
+
+    /**
+     * Người dùng có phiên nào đang mở không (ở instance này hoặc instance khác)
+     */
+    public boolean isOnline(String userId) {
+        return sessionsByUser.containsKey(userId) || onlineElsewhere.contains(userId);
+    }
+
+    /**
+     * Danh sách bạn bè đang trực tuyến của một người dùng
+     *
+     * @param userId ID người dùng
+     * @return ID các bạn bè đang trực tuyến
+     */
+    public List<String> getOnlineFriendIds(String userId) {
+        List<String> online = new ArrayList<>();
+        for (String friendId : friendSuggestionService.getFriendIds(userId)) {
+            if (isOnline(friendId)) {
+                online.add(friendId);
+            }
+        }
+        return online;
+    }
+
+    /**
+     * Báo cho người nhận biết người dùng đang (hoặc đã thôi) nhập tin nhắn.
+     * Chỉ gửi giữa bạn bè; sự kiện đang nhập được gửi tối đa một lần mỗi typing-throttle-ms.
+     *
+     * @param userId ID người đang nhập
+     * @param peerId ID người nhận
+     * @param typing true nếu đang nhập
+     */
+    public void typing(String userId, String peerId, boolean typing) {
+        if (userId == null || peerId == null || userId.equals(peerId) || !isOnline(peerId)) {
+            return;
+        }
+        String key = userId + "|" + peerId;
+        long now = System.currentTimeMillis();
+        if (typing) {
+            Long last = typingSentAt.get(key);
+            if (last != null && now - last < typingThrottleMs) {
+                return;
+            }
+        } else if (!typingSentAt.containsKey(key)) {
+            // Chưa từng báo đang nhập thì không cần báo thôi nhập
+            return;
+        }
+        if (!friendSuggestionService.getFriendIds(userId).contains(peerId)) {
+            return;
+        }
+        if (typing) {
+            typingSentAt.put(key, now);
+        } else {
+            typingSentAt.remove(key);
+        }
+
+        Map<String, Object> event = new HashMap<>();
+        event.put("type", "TYPING");
+        event.put("userId", userId);
+        event.put("typing", typing);
+        messagingTemplate.convertAndSendToUser(peerId, PRESENCE_QUEUE, event);
+    }
+
+    /**
+     * Gửi các thay đổi online/offline đã gộp tới bạn bè đang trực tuyến, mỗi người nhận một tin
+     */
+    @Scheduled(fixedDelayString = "${app.presence.flush-interval-ms:2000}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        if (now - lastSweepAt >= sessionTimeoutMs / 3) {
+            lastSweepAt = now;
+            sweep(now);
+        }
+        if (brokerRelay != null) {
+            syncShared(now);
+        }
+        if (pendingChanges.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<Map<String, Object>>> byRecipient = new HashMap<>();
+        for (Map.Entry<String, Long> entry : pendingChanges.entrySet()) {
+            String userId = entry.getKey();
+            boolean online = sessionsByUser.containsKey(userId);
+            boolean elsewhere = onlineElsewhere.contains(userId);
+            if (!online && !elsewhere && now - entry.getValue() < offlineGraceMs) {
+                continue;
+            }
+            // Có thay đổi mới trong lúc đang xét thì để lần sau
+            if (!pendingChanges.remove(userId, entry.getValue())) {
+                continue;
+            }
+            if (brokerRelay != null) {
+                publishShared(userId, online, now);
+            }
+            boolean changed;
+            if (elsewhere) {
+                // Người dùng vẫn trực tuyến ở instance khác: không báo gì, instance đó sẽ báo khi họ offline
+                if (online) {
+                    announcedOnline.add(userId);
+                } else {
+                    announcedOnline.remove(userId);
+                }
+                changed = false;
+            } else {
+                changed = online ? announcedOnline.add(userId) : announcedOnline.remove(userId);
+            }
+            if (!changed) {
+                continue;
+            }
+
+            Map<String, Object> change = new HashMap<>();
+            change.put("userId", userId);
+            change.put("online", online);
+            for (String friendId : friendSuggestionService.getFriendIds(userId)) {
+                if (isOnline(friendId)) {
+                    byRecipient.computeIfAbsent(friendId, id -> new ArrayList<>()).add(change);
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<Map<String, Object>>> entry : byRecipient.entrySet()) {
+            try {
+                Map<String, Object> event = new HashMap<>();
+                event.put("type", "PRESENCE");
+                event.put("changes", entry.getValue());
+                messagingTemplate.convertAndSendToUser(entry.getKey(), PRESENCE_QUEUE, event);
+            } catch (RuntimeException e) {
+                logger.error("Không thể gửi trạng thái trực tuyến cho người dùng {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Gỡ người dùng của instance này khỏi collection presence khi dừng
+     */
+    @PreDestroy
+    public void stop() {
+        if (brokerRelay == null) {
+            return;
+        }
+        try {
+            mongoTemplate.remove(new Query(Criteria.where("nodeId").is(brokerRelay.getNodeId())), PresenceEntry.class);
+        } catch (RuntimeException e) {
+            logger.warn("Không thể gỡ trạng thái trực tuyến của instance: {}", e.getMessage());
+        }
+    }
+
+    // Làm mới TTL cho người dùng đang nối vào instance này và đọc lại người dùng đang nối vào instance khác
+    private void syncShared(long now) {
+        try {
+            if (now - lastSharedRenewAt >= sessionTimeoutMs / 3 && !sessionsByUser.isEmpty()) {
+                lastSharedRenewAt = now;
+                BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PresenceEntry.class);
+                for (String userId : sessionsByUser.keySet()) {
+                    operations.upsert(sharedQuery(userId), sharedUpdate(userId, now));
+                }
+                operations.execute();
+            }
+            if (now - lastSharedReadAt >= sharedRefreshMs) {
+                lastSharedReadAt = now;
+                Query query = new Query(Criteria.where("nodeId").ne(brokerRelay.getNodeId())
+                    .and("expiresAt").gt(new Date(now)));
+                query.fields().include("userId");
+                Set<String> elsewhere = new HashSet<>();
+                for (PresenceEntry entry : mongoTemplate.find(query, PresenceEntry.class)) {
+                    elsewhere.add(entry.getUserId());
+                }
+                onlineElsewhere = elsewhere;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Không thể đồng bộ trạng thái trực tuyến giữa các instance: {}", e.getMessage());
+        }
+    }
+
+    private void publishShared(String userId, boolean online, long now) {
+        try {
+            if (online) {
+                mongoTemplate.upsert(sharedQuery(userId), sharedUpdate(userId, now), PresenceEntry.class);
+            } else {
+                mongoTemplate.remove(sharedQuery(userId), PresenceEntry.class);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Không thể ghi trạng thái trực tuyến của người dùng {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private Query sharedQuery(String userId) {
+        return new Query(Criteria.where("_id").is(PresenceEntry.idOf(brokerRelay.getNodeId(), userId)));
+    }
+
+    private Update sharedUpdate(String userId, long now) {
+        return new Update()
+            .set("nodeId", brokerRelay.getNodeId())
+            .set("userId", userId)
+            .set("expiresAt", new Date(now + sessionTimeoutMs));
+    }
+
+    private void sessionOpened(String userId, String sessionId) {
+        sessions.put(sessionId, new SessionInfo(userId, System.currentTimeMillis()));
+        // Thêm trong compute để không mất phiên khi tập rỗng của người dùng đang bị gỡ cùng lúc
+        sessionsByUser.compute(userId, (id, set) -> {
+            Set<String> result = set != null ? set : ConcurrentHashMap.newKeySet();
+            result.add(sessionId);
+            return result;
+        });
+        pendingChanges.put(userId, System.currentTimeMillis());
+    }
+
+    private void sessionClosed(String sessionId) {
+        // SessionDisconnectEvent có thể đến nhiều lần cho cùng một phiên
+        SessionInfo info = sessions.remove(sessionId);
+        if (info == null) {
+            return;
+        }
+        sessionsByUser.computeIfPresent(info.userId, (id, set) -> {
+            set.remove(sessionId);
+            return set.isEmpty() ? null : set;
+        });
+        pendingChanges.put(info.userId, System.currentTimeMillis());
+    }
+
+    private void sweep(long now) {
+        sessions.forEach((sessionId, info) -> {
+            if (now - info.lastSeen > sessionTimeoutMs) {
+                logger.debug("Phiên {} của người dùng {} không còn heartbeat", sessionId, info.userId);
+                sessionClosed(sessionId);
+            }
+        });
+        typingSentAt.values().removeIf(sentAt -> now - sentAt > sessionTimeoutMs);
+    }
+}
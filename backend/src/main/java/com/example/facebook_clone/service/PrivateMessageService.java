@@ -0,0 +1,385 @@
+package com.example.facebook_clone.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.ConversationState;
+import com.example.facebook_clone.model.FeedCursor;
+import com.example.facebook_clone.model.PrivateMessage;
+
+/**
+ * Service xử lý tin nhắn riêng.
+ * Lịch sử trò chuyện được truy vấn theo conversationKey (cặp ID đã sắp xếp) với chỉ mục
+ * (conversationKey, timestamp, _id) và phân trang lùi theo con trỏ ("xem tin nhắn cũ hơn").
+ * Trạng thái đã đọc được lưu theo (người dùng, cuộc trò chuyện) trong ConversationState thay vì cờ read
+ * trên từng tin nhắn: đánh dấu đã đọc là một lệnh upsert, số chưa đọc là một truy vấn nhỏ theo người dùng.
+ * ConversationState cũng giữ tin nhắn cuối cùng nên hộp thư được phục vụ bằng một truy vấn có chỉ mục.
+ */
+@Service
+public class PrivateMessageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrivateMessageService.class);
+
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    // Tài liệu đánh dấu các lần chuyển đổi dữ liệu đã hoàn tất
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String UNREAD_STATES_MIGRATION = "conversation-unread-states";
+    private static final String LAST_MESSAGES_MIGRATION = "conversation-last-messages";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Lấy một trang tin nhắn giữa hai người, cũ hơn con trỏ
+     *
+     * @param userId1 ID người dùng thứ nhất
+     * @param userId2 ID người dùng thứ hai
+     * @param before Con trỏ tin nhắn cũ nhất của trang trước (null cho trang mới nhất)
+     * @param limit Số tin nhắn tối đa
+     * @return Tin nhắn theo thứ tự thời gian tăng dần
+     */
+    public List<PrivateMessage> findConversationPage(String userId1, String userId2, FeedCursor before, int limit) {
+        Criteria scope = Criteria.where("conversationKey").is(PrivateMessage.conversationKeyOf(userId1, userId2));
+        Criteria criteria = scope;
+        if (before != null) {
+            // Keyset: (timestamp, id) nhỏ hơn con trỏ
+            criteria = new Criteria().andOperator(scope, new Criteria().orOperator(
+                Criteria.where("timestamp").lt(before.getCreatedAt()),
+                new Criteria().andOperator(
+                    Criteria.where("timestamp").is(before.getCreatedAt()),
+                    Criteria.where("id").lt(before.getId()))));
+        }
+        Query query = new Query(criteria)
+            .with(Sort.by(Sort.Direction.DESC, "timestamp", "id"))
+            .limit(limit);
+
+        List<PrivateMessage> messages = mongoTemplate.find(query, PrivateMessage.class);
+        Collections.reverse(messages);
+        applyReadState(messages, userId1, userId2);
+        return messages;
+    }
+
+    /**
+     * Lấy một trang hộp thư: các cuộc trò chuyện của người dùng theo tin nhắn mới nhất
+     *
+     * @param userId ID người dùng
+     * @param cursor Con trỏ cuộc trò chuyện cuối của trang trước (null cho trang đầu)
+     * @param limit Số cuộc trò chuyện tối đa
+     * @return Tóm tắt các cuộc trò chuyện, mới nhất trước
+     */
+    public List<ConversationState> findInboxPage(String userId, FeedCursor cursor, int limit) {
+        Criteria scope = Criteria.where("userId").is(userId).and("lastMessageAt").ne(null);
+        Criteria criteria = scope;
+        if (cursor != null) {
+            criteria = new Criteria().andOperator(scope, new Criteria().orOperator(
+                Criteria.where("lastMessageAt").lt(cursor.getCreatedAt()),
+                new Criteria().andOperator(
+                    Criteria.where("lastMessageAt").is(cursor.getCreatedAt()),
+                    Criteria.where("id").lt(cursor.getId()))));
+        }
+        Query query = new Query(criteria)
+            .with(Sort.by(Sort.Direction.DESC, "lastMessageAt", "id"))
+            .limit(limit);
+        return mongoTemplate.find(query, ConversationState.class);
+    }
+
+    /**
+     * Cập nhật tóm tắt của hai người sau khi gửi tin nhắn (một lệnh bulk): người nhận tăng số chưa đọc
+     * nếu tin nhắn mới hơn con trỏ đã đọc của họ (đánh dấu đã đọc xảy ra giữa lúc lưu và lúc ghi tóm tắt
+     * thì tin đã được tính là đọc), con trỏ đã đọc của người gửi tiến tới tin nhắn vừa gửi, tin nhắn cuối cùng
+     * chỉ được ghi nếu chưa có tin nhắn mới hơn (hai tin gửi gần như cùng lúc có thể tới đây theo thứ tự ngược)
+     *
+     * @param message Tin nhắn đã lưu
+     */
+    public void recordSent(PrivateMessage message) {
+        String key = message.getConversationKey();
+        String receiverStateId = ConversationState.idOf(message.getReceiverId(), key);
+        String senderStateId = ConversationState.idOf(message.getSenderId(), key);
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, ConversationState.class);
+        operations.upsert(
+            new Query(Criteria.where("_id").is(receiverStateId)),
+            stateOnInsert(new Update().setOnInsert("unread", 0L), message.getReceiverId(), message.getSenderId(), key));
+        operations.updateOne(new Query(Criteria.where("_id").is(receiverStateId)
+                .and("lastReadAt").not().gte(message.getTimestamp())),
+            new Update().inc("unread", 1));
+        operations.upsert(
+            new Query(Criteria.where("_id").is(senderStateId)),
+            stateOnInsert(new Update().max("lastReadAt", message.getTimestamp()).setOnInsert("unread", 0L),
+                message.getSenderId(), message.getReceiverId(), key));
+        for (String id : new String[] { receiverStateId, senderStateId }) {
+            operations.updateOne(new Query(Criteria.where("_id").is(id)
+                    .and("lastMessageAt").not().gte(message.getTimestamp())),
+                lastMessage(new Update(), message));
+        }
+        operations.execute();
+    }
+
+    /**
+     * Đánh dấu đã đọc toàn bộ cuộc trò chuyện: đưa con trỏ tới hiện tại và đặt số chưa đọc về 0
+     *
+     * @param userId ID người đọc
+     * @param peerId ID người còn lại trong cuộc trò chuyện
+     */
+    public void markConversationRead(String userId, String peerId) {
+        String key = PrivateMessage.conversationKeyOf(userId, peerId);
+        mongoTemplate.upsert(
+            new Query(Criteria.where("_id").is(ConversationState.idOf(userId, key))),
+            stateOnInsert(new Update().set("unread", 0L).max("lastReadAt", new Date()), userId, peerId, key),
+            ConversationState.class);
+    }
+
+    /**
+     * Số tin nhắn chưa đọc của người dùng theo từng người gửi
+     *
+     * @param userId ID người dùng
+     * @return Map ID người gửi -> số tin nhắn chưa đọc (chỉ gồm các cuộc trò chuyện còn tin chưa đọc)
+     */
+    public Map<String, Long> getUnreadCounts(String userId) {
+        Query query = new Query(Criteria.where("userId").is(userId).and("unread").gt(0));
+        query.fields().include("peerId", "unread");
+
+        Map<String, Long> unreadCounts = new HashMap<>();
+        for (ConversationState state : mongoTemplate.find(query, ConversationState.class)) {
+            unreadCounts.put(state.getPeerId(), state.getUnread());
+        }
+        return unreadCounts;
+    }
+
+    // Suy ra cờ read của tin nhắn từ con trỏ đã đọc của người nhận
+    private void applyReadState(List<PrivateMessage> messages, String userId1, String userId2) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        String key = PrivateMessage.conversationKeyOf(userId1, userId2);
+        Query query = new Query(Criteria.where("_id")
+            .in(ConversationState.idOf(userId1, key), ConversationState.idOf(userId2, key)));
+        query.fields().include("userId", "lastReadAt");
+
+        Map<String, Date> lastReadAt = new HashMap<>();
+        for (ConversationState state : mongoTemplate.find(query, ConversationState.class)) {
+            if (state.getLastReadAt() != null) {
+                lastReadAt.put(state.getUserId(), state.getLastReadAt());
+            }
+        }
+        for (PrivateMessage message : messages) {
+            Date readUpTo = lastReadAt.get(message.getReceiverId());
+            if (!message.isRead() && readUpTo != null && message.getTimestamp() != null
+                    && !message.getTimestamp().after(readUpTo)) {
+                message.setRead(true);
+            }
+        }
+    }
+
+    private static Update lastMessage(Update update, PrivateMessage message) {
+        String content = message.getContent() != null ? message.getContent() : "";
+        return update
+            .set("lastMessageId", message.getId())
+            .set("lastMessageSenderId", message.getSenderId())
+            .set("lastMessagePreview", content.length() > ConversationState.PREVIEW_LENGTH
+                ? content.substring(0, ConversationState.PREVIEW_LENGTH)
+                : content)
+            .set("lastMessageAt", message.getTimestamp());
+    }
+
+    private static Update stateOnInsert(Update update, String userId, String peerId, String conversationKey) {
+        return update
+            .setOnInsert("userId", userId)
+            .setOnInsert("peerId", peerId)
+            .setOnInsert("conversationKey", conversationKey);
+    }
+
+    /**
+     * Điền conversationKey và trạng thái chưa đọc cho tin nhắn cũ khi ứng dụng khởi động xong
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    public void backfillOnStartup() {
+        try {
+            int updated = backfillConversationKeys();
+            if (updated > 0) {
+                logger.info("Đã điền conversationKey cho {} tin nhắn", updated);
+            }
+            int states = backfillUnreadStates();
+            if (states > 0) {
+                logger.info("Đã cộng tin nhắn cũ chưa đọc vào {} trạng thái chưa đọc", states);
+            }
+            int summaries = backfillLastMessages();
+            if (summaries > 0) {
+                logger.info("Đã dựng tóm tắt hộp thư cho {} cuộc trò chuyện", summaries);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Không thể điền dữ liệu cho tin nhắn cũ", e);
+        }
+    }
+
+    /**
+     * Cộng số tin nhắn cũ chưa đọc (cờ read) vào trạng thái chưa đọc (một lệnh aggregate theo cặp người nhận/người gửi).
+     * Chạy một lần, đánh dấu bằng tài liệu trong collection migrations. Trạng thái đã được tạo bởi tin nhắn mới
+     * vẫn được cộng phần tin cũ; mỗi trạng thái mang cờ legacyUnreadMigrated nên chạy lại sau khi bị gián đoạn
+     * không cộng hai lần.
+     *
+     * @return Số trạng thái đã cập nhật
+     */
+    public int backfillUnreadStates() {
+        if (mongoTemplate.exists(new Query(Criteria.where("_id").is(UNREAD_STATES_MIGRATION)), MIGRATIONS_COLLECTION)) {
+            return 0;
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.match(Criteria.where("read").is(false)),
+            Aggregation.group("receiverId", "senderId").count().as("unread"));
+
+        int total = 0;
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, ConversationState.class);
+        for (Document row : mongoTemplate.aggregate(aggregation, PrivateMessage.class, Document.class)) {
+            Document group = row.get("_id", Document.class);
+            String receiverId = group.getString("receiverId");
+            String senderId = group.getString("senderId");
+            if (receiverId == null || senderId == null) {
+                continue;
+            }
+            String key = PrivateMessage.conversationKeyOf(receiverId, senderId);
+            String id = ConversationState.idOf(receiverId, key);
+            // Bảo đảm tài liệu tồn tại, sau đó cộng phần tin cũ đúng một lần
+            operations.upsert(new Query(Criteria.where("_id").is(id)),
+                stateOnInsert(new Update().setOnInsert("unread", 0L), receiverId, senderId, key));
+            operations.updateOne(new Query(Criteria.where("_id").is(id).and("legacyUnreadMigrated").ne(true)),
+                new Update().inc("unread", ((Number) row.get("unread")).longValue()).set("legacyUnreadMigrated", true));
+            if (++total % BACKFILL_BATCH_SIZE == 0) {
+                operations.execute();
+                operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, ConversationState.class);
+            }
+        }
+        if (total % BACKFILL_BATCH_SIZE != 0) {
+            operations.execute();
+        }
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(UNREAD_STATES_MIGRATION)),
+            new Update().set("completedAt", new Date()), MIGRATIONS_COLLECTION);
+        return total;
+    }
+
+    /**
+     * Đọc tuần tự các tin nhắn chưa có conversationKey và ghi theo lô; chạy lại an toàn
+     *
+     * @return Số tin nhắn đã cập nhật
+     */
+    public int backfillConversationKeys() {
+        Query query = new Query(Criteria.where("conversationKey").exists(false));
+        query.fields().include("senderId", "receiverId");
+
+        int total = 0;
+        List<PrivateMessage> batch = new ArrayList<>();
+        try (Stream<PrivateMessage> stream = mongoTemplate.stream(query, PrivateMessage.class)) {
+            for (PrivateMessage message : (Iterable<PrivateMessage>) stream::iterator) {
+                if (message.getSenderId() == null || message.getReceiverId() == null) {
+                    continue;
+                }
+                batch.add(message);
+                if (batch.size() >= BACKFILL_BATCH_SIZE) {
+                    total += flushConversationKeys(batch);
+                }
+            }
+        }
+        total += flushConversationKeys(batch);
+        return total;
+    }
+
+    /**
+     * Điền tin nhắn cuối cùng cho các cuộc trò chuyện cũ (một lệnh aggregate lấy tin mới nhất theo conversationKey).
+     * Chạy một lần, đánh dấu bằng tài liệu trong collection migrations khi chạy xong (tin nhắn mới gửi trong lúc chạy
+     * không làm bỏ qua lần điền này). Mỗi tóm tắt chỉ được ghi khi chưa có tin nhắn mới hơn nên chạy lại sau khi
+     * bị gián đoạn không ghi đè tin nhắn cuối đã có.
+     *
+     * @return Số cuộc trò chuyện đã điền
+     */
+    public int backfillLastMessages() {
+        if (mongoTemplate.exists(new Query(Criteria.where("_id").is(LAST_MESSAGES_MIGRATION)), MIGRATIONS_COLLECTION)) {
+            return 0;
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.match(Criteria.where("conversationKey").ne(null)),
+            Aggregation.sort(Sort.by(Sort.Direction.ASC, "conversationKey").and(Sort.by(Sort.Direction.DESC, "timestamp"))),
+            Aggregation.group("conversationKey")
+                .first("_id").as("messageId")
+                .first("senderId").as("senderId")
+                .first("receiverId").as("receiverId")
+                .first("content").as("content")
+                .first("timestamp").as("timestamp"))
+            .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+
+        int total = 0;
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, ConversationState.class);
+        for (Document row : mongoTemplate.aggregate(aggregation, PrivateMessage.class, Document.class)) {
+            PrivateMessage message = new PrivateMessage();
+            message.setId(String.valueOf(row.get("messageId")));
+            message.setConversationKey(row.getString("_id"));
+            message.setSenderId(row.getString("senderId"));
+            message.setReceiverId(row.getString("receiverId"));
+            message.setContent(row.getString("content"));
+            message.setTimestamp(row.getDate("timestamp"));
+            if (message.getSenderId() == null || message.getReceiverId() == null || message.getTimestamp() == null) {
+                continue;
+            }
+
+            for (String[] pair : new String[][] {
+                    { message.getSenderId(), message.getReceiverId() },
+                    { message.getReceiverId(), message.getSenderId() } }) {
+                String id = ConversationState.idOf(pair[0], message.getConversationKey());
+                // Bảo đảm tài liệu tồn tại, sau đó chỉ ghi nếu chưa có tin nhắn mới hơn
+                operations.upsert(new Query(Criteria.where("_id").is(id)),
+                    stateOnInsert(new Update().setOnInsert("unread", 0L), pair[0], pair[1], message.getConversationKey()));
+                operations.updateOne(new Query(Criteria.where("_id").is(id)
+                        .and("lastMessageAt").not().gte(message.getTimestamp())),
+                    lastMessage(new Update(), message));
+            }
+            if (++total % BACKFILL_BATCH_SIZE == 0) {
+                operations.execute();
+                operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, ConversationState.class);
+            }
+        }
+        if (total % BACKFILL_BATCH_SIZE != 0) {
+            operations.execute();
+        }
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(LAST_MESSAGES_MIGRATION)),
+            new Update().set("completedAt", new Date()), MIGRATIONS_COLLECTION);
+        return total;
+    }
+
+    private int flushConversationKeys(List<PrivateMessage> batch) {
+        int written = batch.size();
+        if (!batch.isEmpty()) {
+            BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PrivateMessage.class);
+            for (PrivateMessage message : batch) {
+                operations.updateOne(new Query(Criteria.where("_id").is(message.getId())),
+                    new Update().set("conversationKey",
+                        PrivateMessage.conversationKeyOf(message.getSenderId(), message.getReceiverId())));
+            }
+            operations.execute();
+        }
+        batch.clear();
+        return written;
+    }
+}
@@ -0,0 +1,501 @@
+package com.example.facebook_clone.service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.ImageVariant;
+import com.example.facebook_clone.model.MediaBlob;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Dọn file tải lên không còn được tham chiếu (mark-and-sweep).
+ * Đánh dấu: đọc tuần tự các URL /uploads/... trong posts (images, videos và bản originalPost cũ được nhúng),
+ * users và profiles vào một Bloom filter có kích thước giới hạn, nên bộ nhớ không tăng theo số file; dương tính giả
+ * chỉ làm một file rác được giữ lại tới lần sau. Quét: duyệt uploads theo từng phần (file cũ dạng {millis}_{tên},
+ * từng thư mục {aa}/ của file lưu theo nội dung, cuối cùng là bản thu nhỏ, file tạm và media_blobs mồ côi),
+ * nghỉ sau mỗi batch-size file và dừng khi hết max-run-ms; lần chạy sau tiếp tục từ phần đang dở.
+ * Chỉ xóa file cũ hơn grace-hours để không đụng tới file vừa tải lên mà bài đăng/hồ sơ chưa kịp lưu.
+ */
+@Service
+public class UploadGarbageCollector {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadGarbageCollector.class);
+
+    private static final String URL_PREFIX = "/uploads/";
+    private static final Pattern CAS_DIRECTORY = Pattern.compile("[0-9a-f]{2}");
+    private static final String LEGACY_PARTITION = "";
+    private static final String MAINTENANCE_PARTITION = "~";
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Value("${app.upload-gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.upload-gc.grace-hours:24}")
+    private long graceHours;
+
+    // Số file kiểm tra giữa hai lần nghỉ và thời gian nghỉ, để không chiếm hết I/O của ổ đĩa
+    @Value("${app.upload-gc.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.upload-gc.batch-pause-ms:200}")
+    private long batchPauseMs;
+
+    // Thời gian tối đa một lần chạy; phần còn lại để lần sau
+    @Value("${app.upload-gc.max-run-ms:600000}")
+    private long maxRunMs;
+
+    @Value("${app.upload-gc.bloom-max-bytes:16777216}")
+    private long bloomMaxBytes;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Lần chạy theo lịch dùng luồng riêng: scheduler mặc định chỉ có một luồng, chạy trên đó sẽ giữ
+    // các tác vụ định kỳ khác (PresenceService.flush, NotificationCounterService.reconcile) tới max-run-ms
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "upload-gc");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // Phần sẽ quét ở lần chạy sau (tên thư mục {aa}, LEGACY_PARTITION hoặc MAINTENANCE_PARTITION)
+    private volatile String nextPartition = LEGACY_PARTITION;
+
+    private final AtomicLong totalRuns = new AtomicLong();
+    private final AtomicLong totalFilesDeleted = new AtomicLong();
+    private final AtomicLong totalBytesReclaimed = new AtomicLong();
+    private volatile Map<String, Object> lastReport = Collections.emptyMap();
+
+    /**
+     * Kết quả của một lần chạy
+     */
+    private static class Run {
+        final long startedAt = System.currentTimeMillis();
+        final long deadline;
+        final long cutoff;
+        BloomFilter references;
+        long referencesMarked;
+        long filesScanned;
+        long filesDeleted;
+        long bytesReclaimed;
+        long variantsDeleted;
+        long tempFilesDeleted;
+        long blobsRemoved;
+        long sinceLastPause;
+        boolean completed;
+
+        Run(long maxRunMs, long graceMs) {
+            this.deadline = startedAt + maxRunMs;
+            this.cutoff = startedAt - graceMs;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload-gc.interval-ms:21600000}",
+               initialDelayString = "${app.upload-gc.initial-delay-ms:600000}")
+    public void scheduledRun() {
+        if (enabled && !running.get()) {
+            executor.execute(this::run);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Chạy một lần đánh dấu và quét (bỏ qua nếu đang có lần chạy khác)
+     *
+     * @return Báo cáo của lần chạy, hoặc báo cáo gần nhất nếu đang chạy
+     */
+    public Map<String, Object> run() {
+        if (!running.compareAndSet(false, true)) {
+            return lastReport;
+        }
+        try {
+            Run run = new Run(maxRunMs, TimeUnit.HOURS.toMillis(graceHours));
+            mark(run);
+            if (run.referencesMarked == 0) {
+                // Không thấy tham chiếu nào: nhiều khả năng sai database, không xóa gì
+                logger.warn("Bỏ qua dọn file tải lên: không tìm thấy tham chiếu nào trong posts/users/profiles");
+            } else {
+                sweep(run);
+            }
+            run.references = null;
+            Map<String, Object> report = report(run);
+            lastReport = report;
+            totalRuns.incrementAndGet();
+            logger.info("Dọn file tải lên: xóa {} file, thu hồi {} byte, kiểm tra {} file trong {} ms{}",
+                run.filesDeleted + run.variantsDeleted + run.tempFilesDeleted, run.bytesReclaimed, run.filesScanned,
+                report.get("durationMs"), run.completed ? "" : " (chưa quét hết, lần sau chạy tiếp)");
+            return report;
+        } catch (RuntimeException e) {
+            logger.error("Không thể dọn file tải lên", e);
+            return lastReport;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Báo cáo lần chạy gần nhất và tổng từ khi khởi động
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running.get());
+        stats.put("nextPartition", nextPartition);
+        stats.put("totalRuns", totalRuns.get());
+        stats.put("totalFilesDeleted", totalFilesDeleted.get());
+        stats.put("totalBytesReclaimed", totalBytesReclaimed.get());
+        stats.put("lastRun", lastReport);
+        return stats;
+    }
+
+    private void mark(Run run) {
+        long expected = 4 * mongoTemplate.estimatedCount("posts")
+            + 2 * mongoTemplate.estimatedCount("users")
+            + 2 * mongoTemplate.estimatedCount("profiles");
+        run.references = new BloomFilter(Math.max(expected, 10_000), BLOOM_FALSE_POSITIVE_RATE, bloomMaxBytes);
+
+        markCollection(run, "posts", "images", "videos", "originalPost.images", "originalPost.videos");
+        markCollection(run, "users", "avatar", "coverPhoto");
+        markCollection(run, "profiles", "avatar", "coverPhoto");
+    }
+
+    private void markCollection(Run run, String collection, String... fields) {
+        Query query = new Query();
+        query.fields().include(fields);
+        try (Stream<Document> stream = mongoTemplate.stream(query, Document.class, collection)) {
+            for (Document document : (Iterable<Document>) stream::iterator) {
+                for (String field : fields) {
+                    markValue(run, valueAt(document, field));
+                }
+            }
+        }
+    }
+
+    private static Object valueAt(Document document, String path) {
+        Object value = document;
+        for (String key : path.split("\\.")) {
+            if (!(value instanceof Document current)) {
+                return null;
+            }
+            value = current.get(key);
+        }
+        return value;
+    }
+
+    private void markValue(Run run, Object value) {
+        if (value instanceof List<?> list) {
+            for (Object item : list) {
+                markValue(run, item);
+            }
+        } else if (value instanceof String url) {
+            String name = fileStorageService.fileNameOf(url);
+            if (name != null) {
+                run.references.add(name);
+                run.referencesMarked++;
+            }
+        }
+    }
+
+    private void sweep(Run run) {
+        List<String> partitions = partitions();
+        int index = Math.max(0, partitions.indexOf(nextPartition));
+        for (; index < partitions.size(); index++) {
+            String partition = partitions.get(index);
+            boolean finished;
+            try {
+                if (LEGACY_PARTITION.equals(partition)) {
+                    finished = sweepLegacy(run);
+                } else if (MAINTENANCE_PARTITION.equals(partition)) {
+                    finished = sweepVariants(run) && sweepTemp(run) && sweepBlobs(run);
+                } else {
+                    finished = sweepDirectory(run, fileStorageService.getStorageLocation().resolve(partition));
+                }
+            } catch (IOException e) {
+                logger.warn("Không thể quét {}: {}", partition, e.getMessage());
+                finished = true;
+            }
+            if (!finished) {
+                nextPartition = partition;
+                return;
+            }
+        }
+        nextPartition = LEGACY_PARTITION;
+        run.completed = true;
+    }
+
+    /**
+     * Các phần của thư mục uploads theo thứ tự quét
+     */
+    private List<String> partitions() {
+        List<String> directories = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(fileStorageService.getStorageLocation(),
+                entry -> Files.isDirectory(entry) && CAS_DIRECTORY.matcher(entry.getFileName().toString()).matches())) {
+            for (Path entry : entries) {
+                directories.add(entry.getFileName().toString());
+            }
+        } catch (IOException e) {
+            logger.warn("Không thể liệt kê thư mục uploads: {}", e.getMessage());
+        }
+        Collections.sort(directories);
+
+        List<String> partitions = new ArrayList<>();
+        partitions.add(LEGACY_PARTITION);
+        partitions.addAll(directories);
+        partitions.add(MAINTENANCE_PARTITION);
+        return partitions;
+    }
+
+    private boolean sweepLegacy(Run run) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(fileStorageService.getStorageLocation())) {
+            for (Path entry : entries) {
+                if (!Files.isRegularFile(entry)) {
+                    continue;
+                }
+                if (!sweepFile(run, entry.getFileName().toString())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean sweepDirectory(Run run, Path directory) throws IOException {
+        Path root = fileStorageService.getStorageLocation();
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!Files.isRegularFile(file)) {
+                    continue;
+                }
+                if (!sweepFile(run, root.relativize(file).toString().replace('\\', '/'))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Kiểm tra một file gốc; trả về false khi hết thời gian của lần chạy
+     */
+    private boolean sweepFile(Run run, String name) throws IOException {
+        if (!throttle(run)) {
+            return false;
+        }
+        run.filesScanned++;
+        // Tên lạ (không phải file tải lên) và file còn được tham chiếu thì giữ nguyên
+        if (fileStorageService.fileNameOf(URL_PREFIX + name) == null || run.references.mightContain(name)) {
+            return true;
+        }
+        long reclaimed = fileStorageService.deleteUnreferenced(name, run.cutoff);
+        if (reclaimed >= 0) {
+            run.filesDeleted++;
+            run.bytesReclaimed += reclaimed;
+            logger.debug("Đã xóa file tải lên không còn tham chiếu {} ({} byte)", name, reclaimed);
+        }
+        return true;
+    }
+
+    /**
+     * Bản thu nhỏ có file gốc đã bị xóa (ví dụ được tạo lại ngay lúc file gốc bị xóa)
+     */
+    private boolean sweepVariants(Run run) throws IOException {
+        for (ImageVariant variant : ImageVariant.values()) {
+            Path variantRoot = fileStorageService.getVariantsLocation().resolve(variant.getKey());
+            if (!Files.isDirectory(variantRoot)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(variantRoot, 3)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (!Files.isRegularFile(file)) {
+                        continue;
+                    }
+                    if (!throttle(run)) {
+                        return false;
+                    }
+                    run.filesScanned++;
+                    String name = variantRoot.relativize(file).toString().replace('\\', '/');
+                    if (fileStorageService.fileNameOf(URL_PREFIX + name) != null
+                            && !Files.exists(fileStorageService.resolveFile(name))) {
+                        run.bytesReclaimed += deleteIfOlder(file, run.cutoff, () -> run.variantsDeleted++);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * File tạm sót lại khi tiến trình dừng giữa chừng lúc đang lưu
+     */
+    private boolean sweepTemp(Run run) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(fileStorageService.getTempLocation(), "*.part")) {
+            for (Path entry : entries) {
+                if (!throttle(run)) {
+                    return false;
+                }
+                run.filesScanned++;
+                run.bytesReclaimed += deleteIfOlder(entry, run.cutoff, () -> run.tempFilesDeleted++);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bản ghi media_blobs có file không còn trên đĩa
+     */
+    private boolean sweepBlobs(Run run) {
+        Query query = new Query(Criteria.where("updatedAt").lt(new Date(run.cutoff)));
+        query.fields().include("_id");
+        try (Stream<MediaBlob> blobs = mongoTemplate.stream(query, MediaBlob.class)) {
+            for (MediaBlob blob : (Iterable<MediaBlob>) blobs::iterator) {
+                if (!throttle(run)) {
+                    return false;
+                }
+                if (!Files.exists(fileStorageService.resolveFile(blob.getId()))
+                        && fileStorageService.removeBlobIfMissing(blob.getId(), run.cutoff)) {
+                    run.blobsRemoved++;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static long deleteIfOlder(Path file, long cutoff, Runnable onDeleted) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return 0;
+        }
+        if (attributes.lastModifiedTime().toMillis() >= cutoff || !Files.deleteIfExists(file)) {
+            return 0;
+        }
+        onDeleted.run();
+        return attributes.size();
+    }
+
+    /**
+     * Nghỉ sau mỗi batch-size file; trả về false khi đã hết thời gian của lần chạy
+     */
+    private boolean throttle(Run run) {
+        if (++run.sinceLastPause >= batchSize) {
+            run.sinceLastPause = 0;
+            try {
+                Thread.sleep(batchPauseMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return System.currentTimeMillis() < run.deadline;
+    }
+
+    private Map<String, Object> report(Run run) {
+        totalFilesDeleted.addAndGet(run.filesDeleted + run.variantsDeleted + run.tempFilesDeleted);
+        totalBytesReclaimed.addAndGet(run.bytesReclaimed);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", new Date(run.startedAt));
+        report.put("durationMs", System.currentTimeMillis() - run.startedAt);
+        report.put("completed", run.completed);
+        report.put("referencesMarked", run.referencesMarked);
+        report.put("filesScanned", run.filesScanned);
+        report.put("filesDeleted", run.filesDeleted);
+        report.put("variantsDeleted", run.variantsDeleted);
+        report.put("tempFilesDeleted", run.tempFilesDeleted);
+        report.put("blobsRemoved", run.blobsRemoved);
+        report.put("bytesReclaimed", run.bytesReclaimed);
+        return report;
+    }
+
+    /**
+     * Bloom filter trên mảng long; số bit tính theo số phần tử dự kiến và tỉ lệ dương tính giả,
+     * giới hạn bởi maxBytes. Hai giá trị băm 64-bit được kết hợp (double hashing) để ra k vị trí.
+     */
+    private static final class BloomFilter {
+        private final long[] bits;
+        private final long bitCount;
+        private final int hashCount;
+
+        BloomFilter(long expected, double falsePositiveRate, long maxBytes) {
+            long wanted = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            long words = Math.max(1, Math.min((wanted + 63) / 64, Math.max(1, maxBytes / Long.BYTES)));
+            this.bits = new long[(int) Math.min(words, Integer.MAX_VALUE - 8)];
+            this.bitCount = (long) bits.length * 64;
+            this.hashCount = (int) Math.max(1, Math.min(16, Math.round((double) bitCount / expected * Math.log(2))));
+        }
+
+        void add(String value) {
+            long h1 = hash(value, 0x9E3779B97F4A7C15L);
+            long h2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(String value) {
+            long h1 = hash(value, 0x9E3779B97F4A7C15L);
+            long h2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // FNV-1a 64-bit với seed, trộn thêm bằng bước cuối của MurmurHash3
+        private static long hash(String value, long seed) {
+            long h = 0xcbf29ce484222325L ^ seed;
+            for (int i = 0; i < value.length(); i++) {
+                h ^= value.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
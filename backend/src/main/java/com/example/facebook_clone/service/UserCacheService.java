@@ -0,0 +1,211 @@
+package com.example.facebook_clone.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.facebook_clone.model.User;
+import com.example.facebook_clone.repository.UserRepository;
+
+/**
+ * Cache trong tiến trình cho thông tin tóm tắt người dùng (id, tên, ảnh đại diện)
+ * đặt trước UserRepository.findById/findAllById.
+ * Giới hạn theo số lượng (LRU) và thời gian sống (TTL).
+ */
+@Service
+public class UserCacheService {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${app.user-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${app.user-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // LinkedHashMap theo thứ tự truy cập để loại bỏ phần tử ít dùng nhất
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxSize) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private static class Entry {
+        final User summary;
+        final long expiresAt;
+
+        Entry(User summary, long expiresAt) {
+            this.summary = summary;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Lấy thông tin tóm tắt của một người dùng
+     *
+     * @param userId ID người dùng
+     * @return Thông tin tóm tắt hoặc rỗng nếu không tồn tại
+     */
+    public Optional<User> findSummaryById(String userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        User cached = getIfPresent(userId);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return Optional.of(cached);
+        }
+        misses.incrementAndGet();
+        Optional<User> user = userRepository.findById(userId);
+        user.ifPresent(this::put);
+        return user.map(UserCacheService::toSummary);
+    }
+
+    /**
+     * Lấy thông tin tóm tắt của nhiều người dùng, chỉ truy vấn những ID chưa có trong cache
+     *
+     * @param userIds Danh sách ID người dùng
+     * @return Map từ ID sang thông tin tóm tắt (bỏ qua ID không tồn tại)
+     */
+    public Map<String, User> findSummariesByIds(Collection<String> userIds) {
+        return findSummariesByIds(userIds, null);
+    }
+
+    /**
+     * Lấy thông tin tóm tắt của nhiều người dùng và đếm số truy vấn MongoDB đã dùng
+     *
+     * @param userIds Danh sách ID người dùng
+     * @param queryCounter Bộ đếm được cộng thêm 1 nếu phải truy vấn (có thể null)
+     * @return Map từ ID sang thông tin tóm tắt (bỏ qua ID không tồn tại)
+     */
+    public Map<String, User> findSummariesByIds(Collection<String> userIds, AtomicInteger queryCounter) {
+        Map<String, User> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String userId : userIds) {
+            if (userId == null || result.containsKey(userId)) {
+                continue;
+            }
+            User cached = getIfPresent(userId);
+            if (cached != null) {
+                hits.incrementAndGet();
+                result.put(userId, cached);
+            } else {
+                misses.incrementAndGet();
+                missing.add(userId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            if (queryCounter != null) {
+                queryCounter.incrementAndGet();
+            }
+            for (User user : userRepository.findAllById(missing)) {
+                put(user);
+                result.put(user.getId(), toSummary(user));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Xóa người dùng khỏi cache sau khi hồ sơ thay đổi
+     *
+     * @param userId ID người dùng
+     */
+    public void invalidate(String userId) {
+        if (userId == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.remove(userId);
+        }
+    }
+
+    /**
+     * Thống kê hoạt động của cache
+     *
+     * @return Số lần hit, miss, eviction và kích thước hiện tại
+     */
+    public Map<String, Object> getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("size", size);
+        stats.put("maxSize", maxSize);
+        stats.put("ttlSeconds", ttlSeconds);
+        return stats;
+    }
+
+    private User getIfPresent(String userId) {
+        synchronized (entries) {
+            Entry entry = entries.get(userId);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                entries.remove(userId);
+                evictions.incrementAndGet();
+                return null;
+            }
+            return entry.summary;
+        }
+    }
+
+    private void put(User user) {
+        Entry entry = new Entry(toSummary(user), System.currentTimeMillis() + ttlSeconds * 1000);
+        synchronized (entries) {
+            entries.put(user.getId(), entry);
+            purgeExpired();
+        }
+    }
+
+    // Dọn các phần tử hết hạn ở đầu danh sách (ít được truy cập nhất)
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> iterator = entries.values().iterator();
+        int checked = 0;
+        while (iterator.hasNext() && checked++ < 8) {
+            if (iterator.next().expiresAt < now) {
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Tạo bản sao chỉ chứa các trường công khai cần hiển thị
+     */
+    private static User toSummary(User user) {
+        User summary = new User();
+        summary.setId(user.getId());
+        summary.setFirstName(user.getFirstName());
+        summary.setLastName(user.getLastName());
+        summary.setAvatar(user.getAvatar());
+        return summary;
+    }
+}
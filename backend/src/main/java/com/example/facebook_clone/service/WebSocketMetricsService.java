@@ -0,0 +1,138 @@
+package com.example.facebook_clone.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+/**
+ * Số liệu gửi WebSocket: độ sâu hàng đợi gửi của từng phiên, độ trễ gửi, số phiên bị ngắt vì nhận chậm
+ * và trạng thái executor của các kênh STOMP inbound/outbound
+ */
+@Service
+public class WebSocketMetricsService {
+
+    // Số phiên có hàng đợi sâu nhất được liệt kê trong thống kê
+    private static final int TOP_SESSIONS = 10;
+
+    /**
+     * Hàng đợi gửi của một phiên, do lớp trang trí phiên trong cấu hình WebSocket cung cấp
+     */
+    public interface SessionQueue {
+        String getSessionId();
+
+        int getQueueDepth();
+
+        long getOldestPendingMs();
+    }
+
+    @Lazy
+    @Autowired
+    @Qualifier("clientInboundChannelExecutor")
+    private ThreadPoolTaskExecutor inboundExecutor;
+
+    @Lazy
+    @Autowired
+    @Qualifier("clientOutboundChannelExecutor")
+    private ThreadPoolTaskExecutor outboundExecutor;
+
+    private final Map<String, SessionQueue> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong sendNanosTotal = new AtomicLong();
+    private final AtomicLong lastSendNanos = new AtomicLong();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+    private final AtomicLong sendFailures = new AtomicLong();
+    private final AtomicLong droppedSessions = new AtomicLong();
+
+    public void register(SessionQueue session) {
+        sessions.put(session.getSessionId(), session);
+    }
+
+    public void unregister(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    /**
+     * Ghi nhận một lần gửi (có thể gồm nhiều frame đã gộp)
+     *
+     * @param frames Số frame trong lần gửi
+     * @param nanos Thời gian gửi
+     */
+    public void recordSend(int frames, long nanos) {
+        framesSent.addAndGet(frames);
+        batchesSent.incrementAndGet();
+        sendNanosTotal.addAndGet(nanos);
+        lastSendNanos.set(nanos);
+        maxSendNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public void recordSendFailure() {
+        sendFailures.incrementAndGet();
+    }
+
+    public void recordDroppedSession() {
+        droppedSessions.incrementAndGet();
+    }
+
+    /**
+     * Thống kê gửi WebSocket hiện tại
+     */
+    public Map<String, Object> getStats() {
+        List<SessionQueue> snapshot = new ArrayList<>(sessions.values());
+        long totalDepth = 0;
+        for (SessionQueue session : snapshot) {
+            totalDepth += session.getQueueDepth();
+        }
+
+        List<Map<String, Object>> deepest = new ArrayList<>();
+        snapshot.stream()
+            .sorted(Comparator.comparingInt(SessionQueue::getQueueDepth).reversed())
+            .limit(TOP_SESSIONS)
+            .filter(session -> session.getQueueDepth() > 0)
+            .forEach(session -> {
+                Map<String, Object> item = new HashMap<>();
+                item.put("sessionId", session.getSessionId());
+                item.put("queueDepth", session.getQueueDepth());
+                item.put("oldestPendingMs", session.getOldestPendingMs());
+                deepest.add(item);
+            });
+
+        long batches = batchesSent.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", snapshot.size());
+        stats.put("totalQueueDepth", totalDepth);
+        stats.put("deepestSessions", deepest);
+        stats.put("framesSent", framesSent.get());
+        stats.put("batchesSent", batches);
+        stats.put("avgSendMs", batches == 0 ? 0.0 : sendNanosTotal.get() / (double) batches / 1_000_000);
+        stats.put("lastSendMs", TimeUnit.NANOSECONDS.toMillis(lastSendNanos.get()));
+        stats.put("maxSendMs", TimeUnit.NANOSECONDS.toMillis(maxSendNanos.get()));
+        stats.put("sendFailures", sendFailures.get());
+        stats.put("droppedSessions", droppedSessions.get());
+        stats.put("inboundExecutor", executorStats(inboundExecutor));
+        stats.put("outboundExecutor", executorStats(outboundExecutor));
+        return stats;
+    }
+
+    private static Map<String, Object> executorStats(ThreadPoolTaskExecutor executor) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("activeCount", executor.getActiveCount());
+        stats.put("queueSize", executor.getThreadPoolExecutor().getQueue().size());
+        stats.put("completedTasks", executor.getThreadPoolExecutor().getCompletedTaskCount());
+        return stats;
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.facebook_clone.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.user.DefaultUserDestinationResolver;
+import org.springframework.messaging.simp.user.UserDestinationMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import com.example.facebook_clone.service.LocalBrokerRelay;
+
+/**
+ * Hai instance (mỗi instance gồm simple broker, UserQueueBroker, UserDestinationMessageHandler và BrokerRelayBridge)
+ * nối với nhau bằng LocalBrokerRelay, không cần MongoDB. Mỗi tin /topic và /user phải tới đúng một lần
+ * các phiên đang nối vào cả hai instance, không bị phát lại vòng giữa các instance.
+ */
+class BrokerRelayBridgeMultiNodeTest {
+
+    private Node nodeA;
+    private Node nodeB;
+
+    @BeforeEach
+    void setUp() {
+        nodeA = new Node();
+        nodeB = new Node();
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodeA.stop();
+        nodeB.stop();
+    }
+
+    @Test
+    void topicMessageReachesSubscribersOnBothNodesExactlyOnce() throws Exception {
+        nodeA.subscribe("a1", "alice", "/topic/posts");
+        nodeA.subscribe("a2", "carol", "/topic/posts");
+        nodeB.subscribe("b1", "bob", "/topic/posts");
+        nodeB.subscribe("b2", "dave", "/topic/other");
+
+        nodeA.template.convertAndSend("/topic/posts", "from-a");
+        nodeB.template.convertAndSend("/topic/posts", "from-b");
+
+        awaitCount(() -> nodeA.received("a1", "from-b") + nodeA.received("a2", "from-b")
+            + nodeB.received("b1", "from-a"), 3);
+        settle();
+
+        for (String payload : List.of("from-a", "from-b")) {
+            assertThat(nodeA.received("a1", payload)).as("a1 " + payload).isEqualTo(1);
+            assertThat(nodeA.received("a2", payload)).as("a2 " + payload).isEqualTo(1);
+            assertThat(nodeB.received("b1", payload)).as("b1 " + payload).isEqualTo(1);
+            assertThat(nodeB.received("b2", payload)).as("b2 " + payload).isZero();
+        }
+    }
+
+    @Test
+    void userMessageReachesSessionsOfRecipientOnEveryNodeExactlyOnce() throws Exception {
+        // bob mở hai tab: một tab nối vào mỗi instance
+        nodeA.subscribe("a1", "bob", "/user/queue/notifications");
+        nodeB.subscribe("b1", "bob", "/user/queue/notifications");
+        nodeB.subscribe("b2", "alice", "/user/queue/notifications");
+
+        nodeA.template.convertAndSendToUser("bob", "/queue/notifications", "for-bob");
+        nodeB.template.convertAndSendToUser("alice", "/queue/notifications", "for-alice");
+
+        awaitCount(() -> nodeA.received("a1", "for-bob") + nodeB.received("b1", "for-bob")
+            + nodeB.received("b2", "for-alice"), 3);
+        settle();
+
+        assertThat(nodeA.received("a1", "for-bob")).isEqualTo(1);
+        assertThat(nodeB.received("b1", "for-bob")).isEqualTo(1);
+        assertThat(nodeB.received("b2", "for-alice")).isEqualTo(1);
+        assertThat(nodeA.received("a1", "for-alice")).isZero();
+        assertThat(nodeB.received("b2", "for-bob")).isZero();
+    }
+
+    @Test
+    void manyMessagesFromBothNodesAreDeliveredExactlyOnce() throws Exception {
+        nodeA.subscribe("a1", "alice", "/topic/feed");
+        nodeB.subscribe("b1", "bob", "/topic/feed");
+
+        int perNode = 200;
+        for (int i = 0; i < perNode; i++) {
+            nodeA.template.convertAndSend("/topic/feed", "a-" + i);
+            nodeB.template.convertAndSend("/topic/feed", "b-" + i);
+        }
+
+        awaitCount(() -> nodeA.total("a1") + nodeB.total("b1"), 4 * perNode);
+        settle();
+
+        for (Node node : List.of(nodeA, nodeB)) {
+            String session = node == nodeA ? "a1" : "b1";
+            assertThat(node.total(session)).isEqualTo(2 * perNode);
+            for (int i = 0; i < perNode; i++) {
+                assertThat(node.received(session, "a-" + i)).isEqualTo(1);
+                assertThat(node.received(session, "b-" + i)).isEqualTo(1);
+            }
+        }
+    }
+
+    private static void awaitCount(Supplier<Integer> count, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(count.get()).isGreaterThanOrEqualTo(expected);
+    }
+
+    // Chờ thêm để tin bị giao trùng (nếu có) kịp tới trước khi kiểm tra
+    private static void settle() throws InterruptedException {
+        Thread.sleep(200);
+    }
+
+    /**
+     * Một instance backend rút gọn: các kênh chạy đồng bộ, relay giao bất đồng bộ
+     */
+    private static final class Node {
+
+        private final ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel();
+        private final ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+        private final ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        private final SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+        private final DefaultSimpUserRegistry userRegistry = new DefaultSimpUserRegistry();
+        private final LocalBrokerRelay relay = new LocalBrokerRelay();
+        private final SimpleBrokerMessageHandler simpleBroker;
+        private final UserQueueBroker userQueueBroker;
+        private final UserDestinationMessageHandler userDestinationHandler;
+        private final BrokerRelayBridge bridge = new BrokerRelayBridge();
+
+        // sessionId -> payload -> số lần nhận
+        private final Map<String, Map<String, Integer>> inbox = new ConcurrentHashMap<>();
+
+        Node() {
+            // Như trong ứng dụng, payload trên brokerChannel đã được chuyển thành byte[]
+            template.setMessageConverter(new StringMessageConverter());
+            template.setUserDestinationPrefix("/user/");
+            ReflectionTestUtils.setField(bridge, "brokerRelay", relay);
+            ReflectionTestUtils.setField(bridge, "messagingTemplate", template);
+            brokerChannel.addInterceptor(bridge);
+
+            clientOutbound.subscribe(message -> {
+                if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+                    return;
+                }
+                String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+                String payload = new String((byte[]) message.getPayload(), StandardCharsets.UTF_8);
+                inbox.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).merge(payload, 1, Integer::sum);
+            });
+
+            simpleBroker = new SimpleBrokerMessageHandler(clientInbound, clientOutbound, brokerChannel, List.of("/topic"));
+            userQueueBroker = new UserQueueBroker(clientInbound, clientOutbound, brokerChannel);
+            userDestinationHandler = new UserDestinationMessageHandler(clientInbound, brokerChannel,
+                new DefaultUserDestinationResolver(userRegistry));
+            simpleBroker.start();
+            userQueueBroker.start();
+            userDestinationHandler.start();
+            bridge.start();
+        }
+
+        void subscribe(String sessionId, String userId, String destination) {
+            Principal user = () -> userId;
+            // Simple broker chỉ giao tin cho phiên đã CONNECT
+            SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+            connect.setSessionId(sessionId);
+            connect.setUser(user);
+            clientInbound.send(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+            SimpMessageHeaderAccessor connected = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+            connected.setSessionId(sessionId);
+            connected.setUser(user);
+            userRegistry.onApplicationEvent(new SessionConnectedEvent(this,
+                MessageBuilder.createMessage(new byte[0], connected.getMessageHeaders()), user));
+
+            SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+            subscribe.setSessionId(sessionId);
+            subscribe.setSubscriptionId("sub-" + sessionId + "-" + destination);
+            subscribe.setDestination(destination);
+            subscribe.setUser(user);
+            clientInbound.send(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+        }
+
+        int received(String sessionId, String payload) {
+            return inbox.getOrDefault(sessionId, Map.of()).getOrDefault(payload, 0);
+        }
+
+        int total(String sessionId) {
+            return inbox.getOrDefault(sessionId, Map.of()).values().stream().mapToInt(Integer::intValue).sum();
+        }
+
+        void stop() {
+            bridge.stop();
+            userDestinationHandler.stop();
+            userQueueBroker.stop();
+            simpleBroker.stop();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.facebook_clone.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.facebook_clone.service.WebSocketMetricsService;
+
+/**
+ * Hàng đợi gửi của phiên WebSocket: gộp frame văn bản liên tiếp và đóng phiên nhận chậm.
+ * Tác vụ xả hàng đợi chạy trên một executor thủ công để kiểm soát thời điểm gửi.
+ */
+class QueuedSessionDecoratorTest {
+
+    private static final int MAX_QUEUED_FRAMES = 4;
+    private static final int MAX_BATCH_CHARS = 10;
+
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private final List<WebSocketMessage<?>> sent = new ArrayList<>();
+
+    private WebSocketSession session;
+    private WebSocketMetricsService metrics;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> sent.add(invocation.getArgument(0))).when(session).sendMessage(any());
+        metrics = mock(WebSocketMetricsService.class);
+    }
+
+    @Test
+    void batchesConsecutiveTextFramesUpToLimit() throws IOException {
+        QueuedSessionDecorator queued = decorator(100, 60_000);
+        queued.sendMessage(new TextMessage("abcd"));
+        queued.sendMessage(new TextMessage("efgh"));
+        queued.sendMessage(new TextMessage("ij"));
+        queued.sendMessage(new TextMessage("k"));
+
+        assertThat(sent).isEmpty();
+        assertThat(queued.getQueueDepth()).isEqualTo(4);
+
+        runTasks();
+
+        assertThat(payloads()).containsExactly("abcdefghij", "k");
+        assertThat(queued.getQueueDepth()).isZero();
+        verify(metrics).recordSend(eq(3), anyLong());
+        verify(metrics).recordSend(eq(1), anyLong());
+    }
+
+    @Test
+    void binaryFrameBreaksBatch() throws IOException {
+        QueuedSessionDecorator queued = decorator(100, 60_000);
+        queued.sendMessage(new TextMessage("a"));
+        queued.sendMessage(new BinaryMessage(ByteBuffer.wrap(new byte[] {1})));
+        queued.sendMessage(new TextMessage("b"));
+        queued.sendMessage(new TextMessage("c"));
+
+        runTasks();
+
+        assertThat(sent).hasSize(3);
+        assertThat(sent.get(1)).isInstanceOf(BinaryMessage.class);
+        assertThat(((TextMessage) sent.get(0)).getPayload()).isEqualTo("a");
+        assertThat(((TextMessage) sent.get(2)).getPayload()).isEqualTo("bc");
+    }
+
+    @Test
+    void dropsSessionWhenQueueOverflows() throws IOException {
+        QueuedSessionDecorator queued = decorator(MAX_QUEUED_FRAMES, 60_000);
+        for (int i = 0; i <= MAX_QUEUED_FRAMES; i++) {
+            queued.sendMessage(new TextMessage("m" + i));
+        }
+
+        runTasks();
+
+        assertThat(sent).isEmpty();
+        assertThat(queued.getQueueDepth()).isZero();
+        verify(metrics).recordDroppedSession();
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+
+        queued.sendMessage(new TextMessage("later"));
+        runTasks();
+        assertThat(sent).isEmpty();
+    }
+
+    @Test
+    void dropsSessionWhenOldestFrameWaitsTooLong() throws Exception {
+        QueuedSessionDecorator queued = decorator(100, 5);
+        queued.sendMessage(new TextMessage("first"));
+        Thread.sleep(20);
+        queued.sendMessage(new TextMessage("second"));
+
+        runTasks();
+
+        assertThat(sent).isEmpty();
+        verify(metrics).recordDroppedSession();
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    @Test
+    void sendFailureClosesSessionWithoutCountingSlowConsumer() throws IOException {
+        doThrow(new IOException("broken pipe")).when(session).sendMessage(any());
+        QueuedSessionDecorator queued = decorator(100, 60_000);
+        queued.sendMessage(new TextMessage("a"));
+        queued.sendMessage(new BinaryMessage(ByteBuffer.wrap(new byte[] {1})));
+
+        runTasks();
+
+        verify(metrics).recordSendFailure();
+        verify(metrics, never()).recordDroppedSession();
+        verify(metrics, never()).recordSend(anyInt(), anyLong());
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(queued.getQueueDepth()).isZero();
+    }
+
+    @Test
+    void ignoresFramesForClosedSession() throws IOException {
+        when(session.isOpen()).thenReturn(false);
+        QueuedSessionDecorator queued = decorator(100, 60_000);
+        queued.sendMessage(new TextMessage("a"));
+
+        assertThat(tasks).isEmpty();
+        assertThat(queued.getQueueDepth()).isZero();
+    }
+
+    private QueuedSessionDecorator decorator(int maxQueuedFrames, long sendTimeLimitMs) {
+        return new QueuedSessionDecorator(session, tasks::add, metrics, maxQueuedFrames, MAX_BATCH_CHARS,
+            sendTimeLimitMs);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private List<String> payloads() {
+        List<String> result = new ArrayList<>();
+        for (WebSocketMessage<?> message : sent) {
+            result.add(((TextMessage) message).getPayload());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.facebook_clone.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.facebook_clone.service.FileStorageService;
+import com.example.facebook_clone.service.ImageVariantService;
+
+/**
+ * Phục vụ file tải lên: Range một đoạn, If-Range theo ETag/thời gian sửa đổi và các request có điều kiện.
+ * FileStorageService được giả lập, nội dung lấy từ một file tạm.
+ */
+class MediaControllerTest {
+
+    private static final String NAME = "ab/cd/abcdef.mp4";
+    private static final String HASH = "abcdef";
+    private static final String ETAG = "\"" + HASH + "\"";
+    private static final Instant MODIFIED = Instant.parse("2024-01-02T03:04:05Z");
+
+    private final byte[] content = new byte[1000];
+
+    private Path file;
+    private MediaController mediaController;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        file = Files.createTempFile("media-controller", ".mp4");
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(MODIFIED));
+
+        FileStorageService fileStorageService = mock(FileStorageService.class);
+        when(fileStorageService.fileNameOf("/uploads/" + NAME)).thenReturn(NAME);
+        when(fileStorageService.resolveFile(NAME)).thenReturn(file);
+        when(fileStorageService.contentHash(anyString(), any(), any())).thenReturn(HASH);
+        when(fileStorageService.isContentAddressed(NAME)).thenReturn(true);
+
+        mediaController = new MediaController();
+        ReflectionTestUtils.setField(mediaController, "fileStorageService", fileStorageService);
+        ReflectionTestUtils.setField(mediaController, "imageVariantService", mock(ImageVariantService.class));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void servesWholeFileWithValidators() throws Exception {
+        MockHttpServletResponse response = get(new MockHttpServletRequest());
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(content);
+        assertThat(response.getContentLengthLong()).isEqualTo(1000);
+        assertThat(response.getContentType()).isEqualTo("video/mp4");
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).contains("immutable");
+        assertThat(response.getDateHeader(HttpHeaders.LAST_MODIFIED)).isEqualTo(MODIFIED.toEpochMilli());
+    }
+
+    @Test
+    void servesSingleRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.RANGE, "bytes=100-199");
+
+        MockHttpServletResponse response = get(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 100-199/1000");
+        assertThat(response.getContentLengthLong()).isEqualTo(100);
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 100, 200));
+    }
+
+    @Test
+    void servesOpenEndedAndSuffixRanges() throws Exception {
+        MockHttpServletRequest openEnded = new MockHttpServletRequest();
+        openEnded.addHeader(HttpHeaders.RANGE, "bytes=990-");
+        MockHttpServletResponse response = get(openEnded);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 990-999/1000");
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 990, 1000));
+
+        MockHttpServletRequest suffix = new MockHttpServletRequest();
+        suffix.addHeader(HttpHeaders.RANGE, "bytes=-5");
+        response = get(suffix);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 995-999/1000");
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 995, 1000));
+    }
+
+    @Test
+    void rejectsUnsatisfiableRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.RANGE, "bytes=1000-1100");
+
+        MockHttpServletResponse response = get(request);
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */1000");
+    }
+
+    @Test
+    void multipleRangesFallBackToWholeFile() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-9,20-29");
+
+        MockHttpServletResponse response = get(request);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    void ifRangeWithMatchingEtagOrDateServesRange() throws Exception {
+        MockHttpServletRequest byEtag = new MockHttpServletRequest();
+        byEtag.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+        byEtag.addHeader(HttpHeaders.IF_RANGE, ETAG);
+        assertThat(get(byEtag).getStatus()).isEqualTo(206);
+
+        MockHttpServletRequest byDate = new MockHttpServletRequest();
+        byDate.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+        byDate.addHeader(HttpHeaders.IF_RANGE, httpDate(MODIFIED));
+        assertThat(get(byDate).getStatus()).isEqualTo(206);
+    }
+
+    @Test
+    void ifRangeMismatchServesWholeFile() throws Exception {
+        MockHttpServletRequest staleEtag = new MockHttpServletRequest();
+        staleEtag.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+        staleEtag.addHeader(HttpHeaders.IF_RANGE, "\"other\"");
+        MockHttpServletResponse response = get(staleEtag);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(content);
+
+        // If-Range chỉ chấp nhận so sánh mạnh nên ETag yếu không bao giờ khớp
+        MockHttpServletRequest weakEtag = new MockHttpServletRequest();
+        weakEtag.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+        weakEtag.addHeader(HttpHeaders.IF_RANGE, "W/" + ETAG);
+        assertThat(get(weakEtag).getStatus()).isEqualTo(200);
+
+        MockHttpServletRequest staleDate = new MockHttpServletRequest();
+        staleDate.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+        staleDate.addHeader(HttpHeaders.IF_RANGE, httpDate(MODIFIED.minusSeconds(60)));
+        assertThat(get(staleDate).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void conditionalGetReturnsNotModified() throws Exception {
+        MockHttpServletRequest byEtag = new MockHttpServletRequest();
+        byEtag.addHeader(HttpHeaders.IF_NONE_MATCH, "\"stale\", W/" + ETAG);
+        MockHttpServletResponse response = get(byEtag);
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+
+        MockHttpServletRequest byDate = new MockHttpServletRequest();
+        byDate.addHeader(HttpHeaders.IF_MODIFIED_SINCE, httpDate(MODIFIED));
+        assertThat(get(byDate).getStatus()).isEqualTo(304);
+
+        // Có If-None-Match thì bỏ qua If-Modified-Since
+        MockHttpServletRequest etagWins = new MockHttpServletRequest();
+        etagWins.addHeader(HttpHeaders.IF_NONE_MATCH, "\"stale\"");
+        etagWins.addHeader(HttpHeaders.IF_MODIFIED_SINCE, httpDate(MODIFIED));
+        assertThat(get(etagWins).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void headSendsHeadersOnly() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/uploads/" + NAME);
+
+        MockHttpServletResponse response = get(request);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentLengthLong()).isEqualTo(1000);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void unknownFileIsNotFound() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        mediaController.getFile("/missing.mp4", new MockHttpServletRequest(), response);
+
+        assertThat(response.getStatus()).isEqualTo(404);
+    }
+
+    private MockHttpServletResponse get(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        mediaController.getFile("/" + NAME, request, response);
+        return response;
+    }
+
+    private static String httpDate(Instant instant) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atOffset(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.facebook_clone.controller;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import org.mockito.Mockito;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.lang.NonNull;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.example.facebook_clone.service.FileStorageService;
+import com.example.facebook_clone.service.ImageVariantService;
+
+import jakarta.servlet.Filter;
+
+/**
+ * So sánh cách phục vụ file tải lên cũ (ResourceHttpRequestHandler của WebConfig trước đây, ở /legacy/**)
+ * với MediaController (/uploads/**) trên cùng một file video: tải toàn bộ, tua (Range 1MB ngẫu nhiên),
+ * kiểm tra lại cache (If-None-Match/If-Modified-Since) và các trường hợp If-Range, Range không hợp lệ.
+ * Không phải test đơn vị (surefire không chạy): chạy main() từ IDE hoặc
+ * java -cp target/classes:target/test-classes:{classpath test} com.example.facebook_clone.controller.MediaServingBenchmark
+ * trong thư mục backend. Cấu hình qua system property bench.port (mặc định 8099) và bench.size-mb (mặc định 200).
+ * Không cần MongoDB; file thử được ghi vào uploads/ và bị xóa khi chạy xong.
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableAutoConfiguration(exclude = {
+    MongoAutoConfiguration.class, MongoDataAutoConfiguration.class, MongoRepositoriesAutoConfiguration.class })
+@Import({ MediaController.class, FileStorageService.class, ImageVariantService.class })
+public class MediaServingBenchmark implements WebMvcConfigurer {
+
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final int SEEK_BYTES = 1 << 20;
+
+    private static final HttpClient client = HttpClient.newHttpClient();
+    private static volatile boolean sendfileUsed;
+    private static String baseUrl;
+
+    @Bean
+    public MongoTemplate mongoTemplate() {
+        return Mockito.mock(MongoTemplate.class);
+    }
+
+    // Ghi nhận MediaController có giao file cho sendfile của Tomcat không
+    @Bean
+    public Filter sendfileProbe() {
+        return (request, response, chain) -> {
+            chain.doFilter(request, response);
+            if (request.getAttribute(SENDFILE_FILENAME) != null) {
+                sendfileUsed = true;
+            }
+        };
+    }
+
+    /**
+     * Cấu hình WebConfig trước đây, chuyển sang /legacy/** để chạy song song
+     */
+    @Override
+    public void addResourceHandlers(@NonNull ResourceHandlerRegistry registry) {
+        registry.addResourceHandler("/legacy/**")
+            .addResourceLocations("file:uploads/")
+            .setCachePeriod(3600)
+            .resourceChain(true);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = Integer.getInteger("bench.port", 8099);
+        int sizeMb = Integer.getInteger("bench.size-mb", 200);
+        baseUrl = "http://127.0.0.1:" + port;
+
+        // Tên theo nội dung (cd/cd/{sha256}.mp4) để MediaController trả ETag từ tên và cache vĩnh viễn
+        String hash = "cd".repeat(32);
+        String name = "cd/cd/" + hash + ".mp4";
+        Path file = Paths.get("uploads", name);
+        Files.createDirectories(file.getParent());
+        byte[] data = new byte[sizeMb * 1024 * 1024];
+        new Random(1).nextBytes(data);
+        Files.write(file, data);
+
+        SpringApplication application = new SpringApplication(MediaServingBenchmark.class);
+        application.setDefaultProperties(Map.of("logging.level.root", "WARN"));
+        ConfigurableApplicationContext context = application.run(
+            "--server.port=" + port, "--server.address=127.0.0.1", "--logging.level.root=WARN",
+            "--logging.level.org.springframework.web=WARN");
+        try {
+            run(name, data);
+        } finally {
+            context.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void run(String name, byte[] data) throws Exception {
+        String current = "/uploads/" + name;
+        String legacy = "/legacy/" + name;
+
+        Random random = new Random(7);
+        long[] offsets = new long[200];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = (long) (random.nextDouble() * (data.length - SEEK_BYTES));
+        }
+        IntFunction<String[]> none = i -> new String[0];
+        IntFunction<String[]> seek = i -> new String[] {
+            "Range", "bytes=" + offsets[i % offsets.length] + "-" + (offsets[i % offsets.length] + SEEK_BYTES - 1) };
+
+        HttpResponse<byte[]> currentResponse = get(current);
+        HttpResponse<byte[]> legacyResponse = get(legacy);
+        String etag = currentResponse.headers().firstValue("ETag").orElse(null);
+        String lastModified = legacyResponse.headers().firstValue("Last-Modified").orElse(null);
+        System.out.println("MediaController: ETag=" + etag
+            + " Cache-Control=" + currentResponse.headers().firstValue("Cache-Control").orElse("-"));
+        System.out.println("ResourceHttpRequestHandler: ETag=" + legacyResponse.headers().firstValue("ETag").orElse("-")
+            + " Cache-Control=" + legacyResponse.headers().firstValue("Cache-Control").orElse("-"));
+        System.out.println("Nội dung đúng: " + Arrays.equals(currentResponse.body(), data)
+            + " / " + Arrays.equals(legacyResponse.body(), data) + ", sendfile: " + sendfileUsed);
+
+        // Lượt đầu để JIT và page cache ổn định
+        for (int round = 0; round < 2; round++) {
+            measure("cũ: tải toàn bộ", legacy, 10, none);
+            measure("mới: tải toàn bộ", current, 10, none);
+            measure("cũ: tua (Range 1MB)", legacy, 200, seek);
+            measure("mới: tua (Range 1MB)", current, 200, seek);
+        }
+        measure("cũ: If-Modified-Since", legacy, 200, i -> new String[] { "If-Modified-Since", lastModified });
+        measure("cũ: If-None-Match", legacy, 5, i -> new String[] { "If-None-Match", etag });
+        measure("mới: If-None-Match", current, 200, i -> new String[] { "If-None-Match", etag });
+        measure("mới: If-Range cũ -> 200", current, 3,
+            i -> new String[] { "Range", "bytes=0-99", "If-Range", "\"stale\"" });
+        measure("mới: If-Range khớp -> 206", current, 3, i -> new String[] { "Range", "bytes=0-99", "If-Range", etag });
+
+        HttpResponse<byte[]> unsatisfiable = get(current, "Range", "bytes=" + (data.length + 5) + "-");
+        System.out.println("Range ngoài file: " + unsatisfiable.statusCode() + " "
+            + unsatisfiable.headers().firstValue("Content-Range").orElse("-"));
+        HttpResponse<byte[]> suffix = get(current, "Range", "bytes=-10");
+        System.out.println("Range cuối file: " + suffix.statusCode() + " "
+            + suffix.headers().firstValue("Content-Range").orElse("-") + " đúng="
+            + Arrays.equals(suffix.body(), Arrays.copyOfRange(data, data.length - 10, data.length)));
+        System.out.println("Không tồn tại: " + get("/uploads/../pom.xml").statusCode()
+            + " " + get("/uploads/cd/cd/missing.mp4").statusCode());
+    }
+
+    private static void measure(String label, String path, int requests, IntFunction<String[]> headers)
+            throws IOException, InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            get(path, headers.apply(i));
+        }
+        long bytes = 0;
+        int status = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            HttpResponse<byte[]> response = get(path, headers.apply(i));
+            bytes += response.body().length;
+            status = response.statusCode();
+        }
+        double elapsedMs = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%-28s n=%-4d status=%d %9.1f ms %7.2f ms/request %9.1f MB%n",
+            label, requests, status, elapsedMs, elapsedMs / requests, bytes / 1e6);
+    }
+
+    private static HttpResponse<byte[]> get(String path, String... headers) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path));
+        if (headers.length > 0) {
+            builder.headers(headers);
+        }
+        return client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.facebook_clone.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Mã hóa/giải mã con trỏ phân trang: token đi qua URL nguyên vẹn, token hỏng luôn báo IllegalArgumentException
+ */
+class FeedCursorTest {
+
+    @Test
+    void encodeThenDecodeKeepsCreatedAtAndId() {
+        FeedCursor cursor = new FeedCursor(new Date(1_700_000_000_123L), "65a1b2c3d4e5f60718293a4b");
+
+        FeedCursor decoded = FeedCursor.decode(cursor.encode());
+
+        assertThat(decoded.getCreatedAt()).isEqualTo(cursor.getCreatedAt());
+        assertThat(decoded.getId()).isEqualTo(cursor.getId());
+    }
+
+    @Test
+    void idMayContainSeparator() {
+        // ID cuộc trò chuyện dạng "a:b" chỉ được tách ở dấu ':' đầu tiên
+        FeedCursor decoded = FeedCursor.decode(new FeedCursor(new Date(42L), "user-a:user-b").encode());
+
+        assertThat(decoded.getCreatedAt()).isEqualTo(new Date(42L));
+        assertThat(decoded.getId()).isEqualTo("user-a:user-b");
+    }
+
+    @Test
+    void tokenIsUrlSafeWithoutPadding() {
+        String token = new FeedCursor(new Date(1_700_000_000_000L), "??>>~~id").encode();
+
+        assertThat(token).doesNotContain("+", "/", "=");
+    }
+
+    @Test
+    void ofPostUsesCreatedAtAndId() {
+        Post post = new Post();
+        post.setId("p1");
+        post.setCreatedAt(new Date(1000L));
+
+        FeedCursor cursor = FeedCursor.of(post);
+
+        assertThat(cursor.getCreatedAt()).isEqualTo(new Date(1000L));
+        assertThat(cursor.getId()).isEqualTo("p1");
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        assertThatThrownBy(() -> FeedCursor.decode("không phải base64!"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FeedCursor.decode(raw("1000")))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FeedCursor.decode(raw(":p1")))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FeedCursor.decode(raw("1000:")))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FeedCursor.decode(raw("abc:p1")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Con trỏ không hợp lệ");
+    }
+
+    private static String raw(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
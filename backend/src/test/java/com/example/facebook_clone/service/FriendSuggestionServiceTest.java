@@ -0,0 +1,145 @@
+package com.example.facebook_clone.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.facebook_clone.service.FriendSuggestionService.Suggestion;
+
+/**
+ * Gợi ý kết bạn theo số bạn chung: heap top-K phải cho đúng kết quả như cách đếm trực tiếp
+ * (số bạn chung giảm dần, bằng nhau thì người được ghi nhận trước đứng trước).
+ * Quan hệ được đưa vào bằng addFriendship() nên không cần MongoDB.
+ */
+class FriendSuggestionServiceTest {
+
+    private FriendSuggestionService friendSuggestionService;
+
+    @BeforeEach
+    void setUp() {
+        friendSuggestionService = new FriendSuggestionService();
+    }
+
+    @Test
+    void suggestsFriendsOfFriendsByMutualCount() {
+        befriend("me", "a", "b", "c");
+        befriend("x", "a", "b", "c");
+        befriend("y", "a", "b");
+        befriend("z", "c");
+
+        assertThat(summary(friendSuggestionService.suggest("me", null, 10)))
+            .containsExactly("x=3", "y=2", "z=1");
+    }
+
+    @Test
+    void skipsSelfCurrentFriendsAndExcluded() {
+        befriend("me", "a", "b");
+        friendSuggestionService.addFriendship("a", "b");
+        befriend("x", "a");
+        befriend("y", "b");
+
+        assertThat(summary(friendSuggestionService.suggest("me", List.of("y"), 10))).containsExactly("x=1");
+        // Bộ đếm dùng lại giữa các lần gọi phải được xóa sạch
+        assertThat(summary(friendSuggestionService.suggest("me", null, 10))).containsExactly("x=1", "y=1");
+    }
+
+    @Test
+    void unfriendingUpdatesSuggestions() {
+        befriend("me", "a");
+        befriend("x", "a");
+        friendSuggestionService.removeFriendship("a", "x");
+
+        assertThat(friendSuggestionService.suggest("me", null, 10)).isEmpty();
+        assertThat(friendSuggestionService.getFriendIds("a")).containsExactly("me");
+    }
+
+    @Test
+    void unknownUserOrZeroLimitGivesNothing() {
+        befriend("me", "a");
+        befriend("x", "a");
+
+        assertThat(friendSuggestionService.suggest("nobody", null, 10)).isEmpty();
+        assertThat(friendSuggestionService.suggest("me", null, 0)).isEmpty();
+    }
+
+    @Test
+    void topKMatchesBruteForceOnRandomGraph() {
+        Random random = new Random(20240101L);
+        int users = 400;
+        Map<String, Set<String>> graph = new HashMap<>();
+        for (int i = 0; i < users; i++) {
+            graph.put("u" + i, new HashSet<>());
+        }
+        for (int i = 0; i < 6000; i++) {
+            String a = "u" + random.nextInt(users);
+            String b = "u" + random.nextInt(users);
+            if (!a.equals(b)) {
+                friendSuggestionService.addFriendship(a, b);
+                graph.get(a).add(b);
+                graph.get(b).add(a);
+            }
+        }
+        List<String> internOrder = internOrder();
+
+        for (int i = 0; i < users; i += 37) {
+            String userId = "u" + i;
+            List<String> excluded = List.of("u" + random.nextInt(users), "u" + random.nextInt(users));
+            for (int limit : new int[] {1, 5, 20, 1000}) {
+                assertThat(summary(friendSuggestionService.suggest(userId, excluded, limit)))
+                    .as("%s limit %d", userId, limit)
+                    .containsExactlyElementsOf(bruteForce(graph, internOrder, userId, excluded, limit));
+            }
+        }
+    }
+
+    private void befriend(String userId, String... friendIds) {
+        for (String friendId : friendIds) {
+            friendSuggestionService.addFriendship(userId, friendId);
+        }
+    }
+
+    // Thứ tự ID được ánh xạ sang số nguyên, dùng để so thứ tự khi số bạn chung bằng nhau
+    @SuppressWarnings("unchecked")
+    private List<String> internOrder() {
+        return new ArrayList<>((List<String>) ReflectionTestUtils.getField(friendSuggestionService, "idByIndex"));
+    }
+
+    private static List<String> bruteForce(Map<String, Set<String>> graph, List<String> internOrder,
+                                           String userId, List<String> excluded, int limit) {
+        Set<String> friends = graph.get(userId);
+        Map<String, Integer> mutual = new HashMap<>();
+        for (String friend : friends) {
+            for (String candidate : graph.get(friend)) {
+                if (!candidate.equals(userId) && !friends.contains(candidate) && !excluded.contains(candidate)) {
+                    mutual.merge(candidate, 1, Integer::sum);
+                }
+            }
+        }
+        List<String> ranked = new ArrayList<>(mutual.keySet());
+        ranked.sort(Comparator.<String>comparingInt(mutual::get).reversed().thenComparingInt(internOrder::indexOf));
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            result.add(ranked.get(i) + "=" + mutual.get(ranked.get(i)));
+        }
+        return result;
+    }
+
+    private static List<String> summary(List<Suggestion> suggestions) {
+        List<String> result = new ArrayList<>();
+        for (Suggestion suggestion : suggestions) {
+            result.add(suggestion.getUserId() + "=" + suggestion.getMutualFriends());
+        }
+        return result;
+    }
+}
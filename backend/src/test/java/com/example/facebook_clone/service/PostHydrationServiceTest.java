@@ -0,0 +1,167 @@
+package com.example.facebook_clone.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.facebook_clone.model.Comment;
+import com.example.facebook_clone.model.Post;
+import com.example.facebook_clone.model.User;
+import com.example.facebook_clone.repository.PostRepository;
+import com.example.facebook_clone.repository.UserRepository;
+
+/**
+ * Số truy vấn khi bổ sung thông tin cho một trang bài đăng không phụ thuộc số bài, số bình luận hay độ sâu trả lời:
+ * mỗi loại (bài đăng gốc, người dùng) đúng một findAllById.
+ */
+class PostHydrationServiceTest {
+
+    private final Map<String, Post> storedPosts = new HashMap<>();
+    private final Map<String, User> storedUsers = new HashMap<>();
+
+    private PostRepository postRepository;
+    private UserRepository userRepository;
+    private PostHydrationService postHydrationService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        postRepository = mock(PostRepository.class);
+        when(postRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<Post> found = new ArrayList<>();
+            for (String id : (Iterable<String>) invocation.getArgument(0)) {
+                if (storedPosts.containsKey(id)) {
+                    found.add(storedPosts.get(id));
+                }
+            }
+            return found;
+        });
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<User> found = new ArrayList<>();
+            for (String id : (Collection<String>) invocation.getArgument(0)) {
+                if (storedUsers.containsKey(id)) {
+                    found.add(storedUsers.get(id));
+                }
+            }
+            return found;
+        });
+
+        UserCacheService userCacheService = new UserCacheService();
+        ReflectionTestUtils.setField(userCacheService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userCacheService, "maxSize", 10_000);
+        ReflectionTestUtils.setField(userCacheService, "ttlSeconds", 300L);
+
+        postHydrationService = new PostHydrationService();
+        ReflectionTestUtils.setField(postHydrationService, "postRepository", postRepository);
+        ReflectionTestUtils.setField(postHydrationService, "userCacheService", userCacheService);
+
+        for (int i = 0; i < 200; i++) {
+            storedUsers.put("u" + i, user("u" + i));
+        }
+        storedPosts.put("original", post("original", "u199", null, 0));
+    }
+
+    @Test
+    void hydratesPageWithConstantQueries() {
+        for (int size : new int[] {1, 10, 40}) {
+            // Mỗi cỡ trang bắt đầu với cache người dùng trống
+            setUp();
+            List<Post> page = page(size);
+
+            int queries = postHydrationService.hydrate(page);
+
+            assertThat(queries).as("trang %d bài", size).isEqualTo(2);
+            verify(postRepository, times(1)).findAllById(any());
+            verify(userRepository, times(1)).findAllById(any());
+        }
+    }
+
+    @Test
+    void attachesUsersToPostsNestedRepliesAndSharedOriginal() {
+        List<Post> page = page(5);
+
+        postHydrationService.hydrate(page);
+
+        for (Post post : page) {
+            assertThat(post.getUser().getId()).isEqualTo(post.getUserId());
+            assertThat(post.getOriginalPost()).isSameAs(storedPosts.get("original"));
+            assertThat(post.getOriginalPost().getUser().getId()).isEqualTo("u199");
+            Comment reply = post.getComments().get(0).getReplies().get(0).getReplies().get(0);
+            assertThat(reply.getUser().getId()).isEqualTo(reply.getUserId());
+        }
+    }
+
+    @Test
+    void cachedUsersCostNoQuery() {
+        postHydrationService.hydrate(page(10));
+
+        int queries = postHydrationService.hydrate(page(10));
+
+        // Lần hai chỉ còn truy vấn bài đăng gốc; người dùng đã nằm trong cache
+        assertThat(queries).isEqualTo(1);
+        verify(postRepository, times(2)).findAllById(any());
+        verify(userRepository, times(1)).findAllById(any());
+    }
+
+    @Test
+    void pageWithoutSharesOrCommentsNeedsOnlyUsers() {
+        List<Post> page = List.of(post("p1", "u1", null, 0), post("p2", "u2", null, 0));
+
+        assertThat(postHydrationService.hydrate(page)).isEqualTo(1);
+        verify(postRepository, never()).findAllById(any());
+    }
+
+    // Mỗi bài chia sẻ cùng một bài gốc và có bình luận lồng ba tầng của các người dùng khác nhau
+    private static List<Post> page(int size) {
+        List<Post> page = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Post post = post("p" + i, "u" + (i % 50), "original", i);
+            page.add(post);
+        }
+        return page;
+    }
+
+    private static Post post(String id, String userId, String originalPostId, int seed) {
+        Post post = new Post();
+        post.setId(id);
+        post.setUserId(userId);
+        post.setOriginalPostId(originalPostId);
+        if (originalPostId != null) {
+            Comment deepest = comment("u" + (100 + seed % 30), null);
+            Comment reply = comment("u" + (60 + seed % 40), List.of(deepest));
+            Comment top = comment("u" + (seed % 60), List.of(reply));
+            post.setComments(new ArrayList<>(List.of(top, comment("u" + (150 + seed % 40), null))));
+        }
+        return post;
+    }
+
+    private static Comment comment(String userId, List<Comment> replies) {
+        Comment comment = new Comment();
+        comment.setUserId(userId);
+        comment.setReplies(replies != null ? new ArrayList<>(replies) : null);
+        return comment;
+    }
+
+    private static User user(String id) {
+        User user = new User();
+        user.setId(id);
+        user.setFirstName("Tên");
+        user.setLastName(id);
+        return user;
+    }
+}
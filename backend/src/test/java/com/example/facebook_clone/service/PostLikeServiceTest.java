@@ -0,0 +1,155 @@
+package com.example.facebook_clone.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.facebook_clone.model.LikeToggleResult;
+import com.example.facebook_clone.model.Post;
+
+/**
+ * Lệnh findAndModify mà thích/bỏ thích gửi tới MongoDB: điều kiện likes, $push/$pull,
+ * $inc likeCount và eventSeq trong cùng một lệnh, chỉ lấy các trường cần cho phản hồi.
+ * Tính nguyên tử khi chạy song song do MongoDB bảo đảm cho từng lệnh nên không được kiểm tra ở đây.
+ */
+class PostLikeServiceTest {
+
+    private static final String POST_ID = "post-1";
+    private static final String OWNER_ID = "owner";
+    private static final String USER_ID = "user-1";
+
+    private MongoTemplate mongoTemplate;
+    private PostLikeService postLikeService;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        postLikeService = new PostLikeService();
+        ReflectionTestUtils.setField(postLikeService, "mongoTemplate", mongoTemplate);
+    }
+
+    @Test
+    void likeIsOneGuardedFindAndModify() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Post.class)))
+            .thenReturn(post(5, 42));
+
+        LikeToggleResult result = postLikeService.toggleLike(POST_ID, USER_ID);
+
+        assertThat(result.isLiked()).isTrue();
+        assertThat(result.getLikeCount()).isEqualTo(5);
+        assertThat(result.getEventSeq()).isEqualTo(42);
+        assertThat(result.getOwnerId()).isEqualTo(OWNER_ID);
+
+        Call call = captureCalls(1).get(0);
+        assertThat(call.query().getQueryObject())
+            .isEqualTo(new Document("id", POST_ID).append("likes", new Document("$ne", USER_ID)));
+        assertThat(call.update().getUpdateObject()).isEqualTo(new Document()
+            .append("$push", new Document("likes", USER_ID))
+            .append("$inc", new Document("likeCount", 1).append("eventSeq", 1)));
+        assertProjectedAndReturnsNew(call);
+    }
+
+    @Test
+    void unlikeRunsOnlyWhenLikeGuardFails() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Post.class)))
+            .thenReturn(null, post(4, 43));
+
+        LikeToggleResult result = postLikeService.toggleLike(POST_ID, USER_ID);
+
+        assertThat(result.isLiked()).isFalse();
+        assertThat(result.getLikeCount()).isEqualTo(4);
+        assertThat(result.getEventSeq()).isEqualTo(43);
+
+        Call call = captureCalls(2).get(1);
+        assertThat(call.query().getQueryObject())
+            .isEqualTo(new Document("id", POST_ID).append("likes", USER_ID));
+        assertThat(call.update().getUpdateObject()).isEqualTo(new Document()
+            .append("$pull", new Document("likes", USER_ID))
+            .append("$inc", new Document("likeCount", -1).append("eventSeq", 1)));
+        assertProjectedAndReturnsNew(call);
+    }
+
+    @Test
+    void missingPostFailsWithoutRetrying() {
+        when(mongoTemplate.exists(any(Query.class), eq(Post.class))).thenReturn(false);
+
+        assertThatThrownBy(() -> postLikeService.toggleLike(POST_ID, USER_ID))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessage("Không tìm thấy bài đăng");
+        captureCalls(2);
+    }
+
+    @Test
+    void retriesWhenAnotherToggleWinsBothGuards() {
+        // Hai nhánh đều trượt vì yêu cầu khác vừa đảo trạng thái; lần thử sau khớp nhánh thích
+        when(mongoTemplate.exists(any(Query.class), eq(Post.class))).thenReturn(true);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Post.class)))
+            .thenReturn(null, null, post(1, 7));
+
+        LikeToggleResult result = postLikeService.toggleLike(POST_ID, USER_ID);
+
+        assertThat(result.isLiked()).isTrue();
+        assertThat(result.getEventSeq()).isEqualTo(7);
+        captureCalls(3);
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        when(mongoTemplate.exists(any(Query.class), eq(Post.class))).thenReturn(true);
+
+        assertThatThrownBy(() -> postLikeService.toggleLike(POST_ID, USER_ID))
+            .isInstanceOf(RuntimeException.class);
+        captureCalls(6);
+    }
+
+    private record Call(Query query, Update update, FindAndModifyOptions options) {
+    }
+
+    private List<Call> captureCalls(int expected) {
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate, times(expected))
+            .findAndModify(queries.capture(), updates.capture(), options.capture(), eq(Post.class));
+        return IntStream.range(0, expected)
+            .mapToObj(i -> new Call(queries.getAllValues().get(i), updates.getAllValues().get(i),
+                options.getAllValues().get(i)))
+            .toList();
+    }
+
+    private static void assertProjectedAndReturnsNew(Call call) {
+        assertThat(call.query().getFieldsObject())
+            .isEqualTo(new Document("userId", 1).append("likeCount", 1).append("eventSeq", 1));
+        assertThat(call.options().isReturnNew()).isTrue();
+    }
+
+    private static Post post(int likeCount, long eventSeq) {
+        Post post = new Post();
+        post.setId(POST_ID);
+        post.setUserId(OWNER_ID);
+        post.setLikeCount(likeCount);
+        post.setEventSeq(eventSeq);
+        return post;
+    }
+}
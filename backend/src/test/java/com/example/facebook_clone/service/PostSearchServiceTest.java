@@ -0,0 +1,128 @@
+package com.example.facebook_clone.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.facebook_clone.model.Post;
+
+/**
+ * Chỉ mục tìm kiếm bài đăng: chuẩn hóa tiếng Việt, tìm theo tiền tố/cụm từ, lọc quyền riêng tư và xếp hạng.
+ * Bài đăng được đưa vào bằng index() nên không cần MongoDB.
+ */
+class PostSearchServiceTest {
+
+    private PostSearchService postSearchService;
+
+    @BeforeEach
+    void setUp() {
+        postSearchService = new PostSearchService();
+    }
+
+    @Test
+    void tokenizeFoldsVietnameseDiacriticsAndCase() {
+        assertThat(PostSearchService.tokenize("Đường Phố HÀ NỘI, trời đẹp quá!"))
+            .containsExactly("duong", "pho", "ha", "noi", "troi", "dep", "qua");
+        assertThat(PostSearchService.tokenize("  ...  ")).isEmpty();
+        assertThat(PostSearchService.tokenize(null)).isEmpty();
+    }
+
+    @Test
+    void matchesWithoutDiacritics() {
+        postSearchService.index(post("p1", "u1", "PUBLIC", 1, "Hôm nay đi ăn phở ở Hà Nội"));
+
+        assertThat(postSearchService.search("pho ha noi", null, 10)).containsExactly("p1");
+        assertThat(postSearchService.search("PHỞ", null, 10)).containsExactly("p1");
+    }
+
+    @Test
+    void requiresEveryTerm() {
+        postSearchService.index(post("p1", "u1", "PUBLIC", 1, "mèo đen"));
+        postSearchService.index(post("p2", "u1", "PUBLIC", 2, "mèo trắng"));
+
+        assertThat(postSearchService.search("meo trang", null, 10)).containsExactly("p2");
+        assertThat(postSearchService.search("meo xanh", null, 10)).isEmpty();
+    }
+
+    @Test
+    void onlyLastTermMatchesByPrefix() {
+        postSearchService.index(post("p1", "u1", "PUBLIC", 1, "du lịch Đà Lạt"));
+
+        assertThat(postSearchService.search("du li", null, 10)).containsExactly("p1");
+        assertThat(postSearchService.search("d lich", null, 10)).isEmpty();
+        // Từ cuối nằm trong ngoặc kép đã gõ xong nên không so theo tiền tố
+        assertThat(postSearchService.search("\"du li\"", null, 10)).isEmpty();
+    }
+
+    @Test
+    void quotedPhraseMustBeAdjacent() {
+        postSearchService.index(post("p1", "u1", "PUBLIC", 1, "cà phê sữa đá"));
+        postSearchService.index(post("p2", "u1", "PUBLIC", 2, "sữa tươi và cà phê đá"));
+
+        assertThat(postSearchService.search("\"ca phe sua\"", null, 10)).containsExactly("p1");
+        assertThat(postSearchService.search("ca phe sua", null, 10)).containsExactlyInAnyOrder("p1", "p2");
+    }
+
+    @Test
+    void hidesOtherUsersPrivatePosts() {
+        postSearchService.index(post("p1", "owner", "PRIVATE", 1, "bí mật"));
+        postSearchService.index(post("p2", "owner", null, 2, "bí mật cũ"));
+
+        assertThat(postSearchService.search("bi mat", null, 10)).containsExactly("p2");
+        assertThat(postSearchService.search("bi mat", "someone", 10)).containsExactly("p2");
+        assertThat(postSearchService.search("bi mat", "owner", 10)).containsExactlyInAnyOrder("p1", "p2");
+    }
+
+    @Test
+    void ranksAdjacentTermsFirst() {
+        postSearchService.index(post("scattered", "u1", "PUBLIC", 3, "bóng rồi đá"));
+        postSearchService.index(post("adjacent", "u1", "PUBLIC", 1, "chiều nay đá bóng với bạn"));
+
+        assertThat(postSearchService.search("da bong", null, 10)).containsExactly("adjacent", "scattered");
+    }
+
+    @Test
+    void ranksExactTermAbovePrefixMatch() {
+        postSearchService.index(post("prefix", "u1", "PUBLIC", 2, "xem bongda tối nay"));
+        postSearchService.index(post("exact", "u1", "PUBLIC", 1, "xem bong tối nay"));
+
+        assertThat(postSearchService.search("xem bong", null, 10)).containsExactly("exact", "prefix");
+    }
+
+    @Test
+    void breaksTiesByNewestAndHonoursLimit() {
+        postSearchService.index(post("old", "u1", "PUBLIC", 1, "chào buổi sáng"));
+        postSearchService.index(post("new", "u1", "PUBLIC", 3, "chào buổi sáng"));
+        postSearchService.index(post("mid", "u1", "PUBLIC", 2, "chào buổi sáng"));
+
+        assertThat(postSearchService.search("chao", null, 10)).containsExactly("new", "mid", "old");
+        assertThat(postSearchService.search("chao", null, 2)).containsExactly("new", "mid");
+    }
+
+    @Test
+    void reindexReplacesTermsAndRemoveDropsPost() {
+        postSearchService.index(post("p1", "u1", "PUBLIC", 1, "nội dung cũ"));
+        postSearchService.index(post("p1", "u1", "PUBLIC", 1, "nội dung mới"));
+
+        assertThat(postSearchService.search("cu", null, 10)).isEmpty();
+        assertThat(postSearchService.search("moi", null, 10)).containsExactly("p1");
+
+        postSearchService.remove("p1");
+
+        assertThat(postSearchService.search("noi dung", null, 10)).isEmpty();
+        assertThat(postSearchService.size()).isZero();
+    }
+
+    private static Post post(String id, String userId, String privacy, long createdAt, String content) {
+        Post post = new Post();
+        post.setId(id);
+        post.setUserId(userId);
+        post.setPrivacy(privacy);
+        post.setCreatedAt(new Date(createdAt));
+        post.setContent(content);
+        return post;
+    }
+}
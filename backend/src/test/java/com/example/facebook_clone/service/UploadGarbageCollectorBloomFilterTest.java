@@ -0,0 +1,89 @@
+package com.example.facebook_clone.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Constructor;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Bloom filter của bộ dọn file tải lên: không bao giờ báo thiếu một file còn được tham chiếu (không âm tính giả)
+ * và tỉ lệ dương tính giả gần mức cấu hình. Lớp lồng là private nên được tạo qua reflection.
+ */
+class UploadGarbageCollectorBloomFilterTest {
+
+    private static final String BLOOM_FILTER = UploadGarbageCollector.class.getName() + "$BloomFilter";
+
+    @Test
+    void neverReportsAddedValueMissing() throws Exception {
+        Object filter = newFilter(10_000, 0.01, 1 << 20);
+        String[] values = new String[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = "uploads/" + UUID.randomUUID() + ".jpg";
+            add(filter, values[i]);
+        }
+
+        for (String value : values) {
+            assertThat(mightContain(filter, value)).as(value).isTrue();
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTarget() throws Exception {
+        Object filter = newFilter(20_000, 0.01, 1 << 20);
+        for (int i = 0; i < 20_000; i++) {
+            add(filter, "ab/cd/referenced-" + i + ".png");
+        }
+
+        int falsePositives = 0;
+        int probes = 50_000;
+        for (int i = 0; i < probes; i++) {
+            if (mightContain(filter, "ab/cd/orphan-" + i + ".png")) {
+                falsePositives++;
+            }
+        }
+
+        assertThat((double) falsePositives / probes).isLessThan(0.02);
+    }
+
+    @Test
+    void memoryCapOnlyRaisesFalsePositives() throws Exception {
+        // 64 byte cho 5000 giá trị: bộ lọc gần như bão hòa nhưng vẫn không được âm tính giả
+        Object filter = newFilter(5_000, 0.01, 64);
+        assertThat((long[]) ReflectionTestUtils.getField(filter, "bits")).hasSize(8);
+        for (int i = 0; i < 5_000; i++) {
+            add(filter, "legacy/" + i);
+        }
+
+        for (int i = 0; i < 5_000; i++) {
+            assertThat(mightContain(filter, "legacy/" + i)).isTrue();
+        }
+    }
+
+    @Test
+    void emptyFilterContainsNothing() throws Exception {
+        Object filter = newFilter(1_000, 0.01, 1 << 20);
+
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(mightContain(filter, "file-" + i)).isFalse();
+        }
+    }
+
+    private static Object newFilter(long expected, double falsePositiveRate, long maxBytes) throws Exception {
+        Constructor<?> constructor = Class.forName(BLOOM_FILTER)
+            .getDeclaredConstructor(long.class, double.class, long.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(expected, falsePositiveRate, maxBytes);
+    }
+
+    private static void add(Object filter, String value) {
+        ReflectionTestUtils.invokeMethod(filter, "add", value);
+    }
+
+    private static boolean mightContain(Object filter, String value) {
+        Boolean result = ReflectionTestUtils.invokeMethod(filter, "mightContain", value);
+        return Boolean.TRUE.equals(result);
+    }
+}
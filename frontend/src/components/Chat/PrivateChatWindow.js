@@ -9,8 +9,9 @@ import './PrivateChatWindow.css';
  */
 function PrivateChatWindow({ friend }) {
   const [input, setInput] = useState('');
-  const { sendMessage, closeChat, activeChats } = useChat();
+  const { sendMessage, closeChat, activeChats, loadOlderMessages, typingUsers, sendTyping } = useChat();
   const messagesEndRef = useRef(null);
+  const lastTypingSentAt = useRef(0);
   const [currentUser, setCurrentUser] = useState(null);
 
   // Lấy thông tin người dùng từ localStorage
@@ -35,10 +36,29 @@ function PrivateChatWindow({ friend }) {
     messagesEndRef.current?.scrollIntoView({ behavior: 'smooth' });
   };
 
-  // Cuộn xuống cuối cùng khi tin nhắn thay đổi
+  // Cuộn xuống cuối cùng khi có tin nhắn mới (không cuộn khi tải tin nhắn cũ hơn)
+  const lastMessageId = chat?.messages?.[chat.messages.length - 1]?.id;
   useEffect(() => {
     scrollToBottom();
-  }, [chat?.messages]);
+  }, [lastMessageId]);
+
+  /**
+   * Xử lý khi nhập tin nhắn: báo đang nhập tối đa mỗi 2 giây, báo thôi nhập khi xóa hết
+   * @param {Event} e - Sự kiện thay đổi input
+   */
+  const handleInputChange = (e) => {
+    const value = e.target.value;
+    setInput(value);
+
+    const now = Date.now();
+    if (value.trim() && now - lastTypingSentAt.current > 2000) {
+      lastTypingSentAt.current = now;
+      sendTyping(friend.id, true);
+    } else if (!value.trim() && lastTypingSentAt.current) {
+      lastTypingSentAt.current = 0;
+      sendTyping(friend.id, false);
+    }
+  };
 
   /**
    * Xử lý khi gửi tin nhắn
@@ -72,6 +92,8 @@ function PrivateChatWindow({ friend }) {
 
     sendMessage(friend.id, input);
     setInput('');
+    lastTypingSentAt.current = 0;
+    sendTyping(friend.id, false);
   };
 
   /**
@@ -106,6 +128,11 @@ function PrivateChatWindow({ friend }) {
 
       {/* Phần nội dung chat */}
       <div className="chat-body">
+        {chat?.nextCursor && (
+          <button className="chat-load-older" onClick={() => loadOlderMessages(friend.id)}>
+            Xem tin nhắn cũ hơn
+          </button>
+        )}
         {chat?.messages && chat.messages.length > 0 && currentUser ? (
           chat.messages.map((message, index) => (
             <div
@@ -123,6 +150,9 @@ function PrivateChatWindow({ friend }) {
             <p>Bắt đầu cuộc trò chuyện với {friend.firstName}</p>
           </div>
         )}
+        {typingUsers[friend.id] && (
+          <div className="chat-typing">{friend.firstName} đang nhập...</div>
+        )}
         {/* Tham chiếu để cuộn xuống cuối cùng */}
         <div ref={messagesEndRef} />
       </div>
@@ -134,7 +164,7 @@ function PrivateChatWindow({ friend }) {
             type="text"
             placeholder="Nhập tin nhắn..."
             value={input}
-            onChange={(e) => setInput(e.target.value)}
+            onChange={handleInputChange}
             aria-label="Nhập tin nhắn"
           />
           <button type="submit" aria-label="Gửi tin nhắn">
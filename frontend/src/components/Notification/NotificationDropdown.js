@@ -45,6 +45,20 @@ const NotificationDropdown = ({ currentUser }) => {
     };
   }, []);
 
+  /**
+   * Áp dụng một thông báo nhận qua WebSocket: thông báo gộp đã có thì được thay thế và đưa lên đầu,
+   * thông báo bị rút lại (removedNotificationId) thì bị xóa khỏi danh sách
+   */
+  const applyNotificationItem = (list, item) => {
+    if (item.removedNotificationId) {
+      return list.filter(existing => existing.notification.id !== item.removedNotificationId);
+    }
+    if (!item.notification) {
+      return list;
+    }
+    return [item, ...list.filter(existing => existing.notification.id !== item.notification.id)];
+  };
+
   /**
    * Đăng ký nhận thông báo qua WebSocket
    */
@@ -53,11 +67,15 @@ const NotificationDropdown = ({ currentUser }) => {
       await webSocketService.connect();
 
       webSocketService.subscribeToNotifications(currentUser.id, (data) => {
-        // Thêm thông báo mới vào danh sách
-        if (data.notification) {
-          setNotifications(prev => [data, ...prev]);
-          setUnreadCount(prev => prev + 1);
+        // Server gửi số chưa đọc mới mỗi khi bộ đếm thay đổi
+        if (data.type === 'UNREAD_COUNT') {
+          setUnreadCount(data.count);
+          return;
         }
+
+        // Nhiều thông báo cho cùng người nhận được server gộp thành một tin
+        const items = data.type === 'NOTIFICATIONS' ? data.notifications : [data];
+        setNotifications(prev => items.reduce(applyNotificationItem, prev));
       });
     } catch (error) {
       console.error('Lỗi khi đăng ký nhận thông báo:', error);
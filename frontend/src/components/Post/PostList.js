@@ -3,6 +3,7 @@ import { API_ENDPOINTS } from '../../config/api';
 import './PostList.css';
 import SharePostModal from './SharePostModal';
 import { webSocketService } from '../../services/websocket';
+import { applyPostEvent } from '../../services/postEvents';
 import { useToast } from '../../context/ToastContext';
 import PostOptionsMenu from './PostOptionsMenu';
 import ImageViewerModal from './ImageViewerModal';
@@ -53,7 +54,7 @@ const PostContent = memo(({ post, onImageClick }) => {
         <div className="shared-post border rounded p-3">
           <div className="d-flex align-items-center mb-2">
             <img
-              src={getFullImageUrl(post.originalPost.user?.avatar)}
+              src={getFullImageUrl(post.originalPost.user?.avatarVariants?.['avatar-sm'] || post.originalPost.user?.avatar)}
               alt={post.originalPost.user?.firstName || 'User'}
               className="rounded-circle me-2"
               style={{ width: '32px', height: '32px', objectFit: 'cover' }}
@@ -127,8 +128,9 @@ const PostContent = memo(({ post, onImageClick }) => {
                   }}
                   style={{ cursor: 'pointer' }}
                 >
+                  {/* Bảng tin dùng bản thu nhỏ; xem ảnh lớn (onImageClick) vẫn dùng ảnh gốc */}
                   <img
-                    src={getFullMediaUrl(image)}
+                    src={getFullMediaUrl(post.imageVariants?.[index]?.[post.images.length > 2 ? 'thumb' : 'feed'] || image)}
                     alt="Nội dung bài đăng"
                     className="img-fluid rounded"
                   />
@@ -223,7 +225,7 @@ const Comment = ({ comment, postId, onReply, onDelete, currentUser, userProfile,
     <div className="comment-thread" style={{ marginLeft }}>
       <div className="comment-main d-flex gap-2 mb-2">
         <img
-          src={getFullImageUrl(comment.user?.avatar)}
+          src={getFullImageUrl(comment.user?.avatarVariants?.['avatar-sm'] || comment.user?.avatar)}
           alt="User"
           className="rounded-circle"
           style={{ width: '32px', height: '32px', objectFit: 'cover' }}
@@ -470,7 +472,7 @@ const PostItem = memo(({ post, currentUser, userProfile, handleLike, handleComme
       <div className="card-body">
         <div className="d-flex align-items-center gap-2 mb-3">
           <img
-            src={getFullImageUrl(post.user?.avatar)}
+            src={getFullImageUrl(post.user?.avatarVariants?.['avatar-sm'] || post.user?.avatar)}
             alt="Người dùng"
             className="rounded-circle"
             style={{ width: '40px', height: '40px', objectFit: 'cover', cursor: 'pointer' }}
@@ -702,7 +704,7 @@ const PostItem = memo(({ post, currentUser, userProfile, handleLike, handleComme
               alt="Bình luận"
               className="action-icon"
             />
-            <span>{post.comments?.length || 0} Bình luận</span>
+            <span>{post.commentCount ?? post.comments?.length ?? 0} Bình luận</span>
           </button>
           <button
             className="btn btn-link text-secondary"
@@ -825,10 +827,10 @@ const PostList = ({ posts: initialPosts, currentUser }) => {
   }, [initialPosts]);
 
   // Sort posts when receiving WebSocket updates
-  const handleWebSocketUpdate = useCallback((updatedPost) => {
+  const handleWebSocketUpdate = useCallback((event) => {
     setPosts(prevPosts => {
       const newPosts = prevPosts.map(post =>
-        post.id === updatedPost.id ? updatedPost : post
+        post.id === event.postId ? applyPostEvent(post, event) : post
       );
       return newPosts.sort((a, b) => {
         const dateA = new Date(a.createdAt);
@@ -1241,7 +1243,7 @@ const PostList = ({ posts: initialPosts, currentUser }) => {
             console.log(`PostList: Subscribing to post ${post.id}`);
             currentSubscribedPosts.add(post.id);
             try {
-              await webSocketService.subscribeToPost(post.id, handleWebSocketUpdate);
+              await webSocketService.subscribeToPost(post.id, handleWebSocketUpdate, post.eventSeq);
             } catch (error) {
               console.error(`PostList: Failed to subscribe to post ${post.id}:`, error);
             }
@@ -10,7 +10,7 @@ import './RightSidebar.css';
 function RightSidebar() {
   const [friends, setFriends] = useState([]);
   const [loading, setLoading] = useState(false);
-  const { openChat, unreadCounts } = useChat();
+  const { openChat, unreadCounts, onlineUsers } = useChat();
   const navigate = useNavigate();
 
   // Thêm hàm xử lý click vào avatar
@@ -188,11 +188,13 @@ function RightSidebar() {
                       }}
                     />
                     {/* Chỉ báo trạng thái online */}
-                    <span
-                      className="position-absolute bg-success rounded-circle"
-                      style={{ width: '8px', height: '8px', bottom: '2px', right: '2px', border: '1px solid white' }}
-                      aria-label="Đang hoạt động"
-                    ></span>
+                    {onlineUsers[friend.id] && (
+                      <span
+                        className="position-absolute bg-success rounded-circle"
+                        style={{ width: '8px', height: '8px', bottom: '2px', right: '2px', border: '1px solid white' }}
+                        aria-label="Đang hoạt động"
+                      ></span>
+                    )}
                   </div>
                   <span className="text-dark">{`${friend.firstName || ''} ${friend.lastName || ''}`}</span>
                 </div>
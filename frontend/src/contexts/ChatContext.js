@@ -1,4 +1,4 @@
-import React, { createContext, useState, useEffect, useContext } from 'react';
+import React, { createContext, useState, useEffect, useContext, useRef } from 'react';
 import { webSocketService } from '../services/websocket';
 import { API_ENDPOINTS } from '../config/api';
 
@@ -7,6 +7,9 @@ import { API_ENDPOINTS } from '../config/api';
  */
 export const ChatContext = createContext();
 
+// Chỉ báo đang nhập tự tắt nếu không được làm mới (server gửi lại tối đa 3 giây một lần)
+const TYPING_TIMEOUT_MS = 6000;
+
 /**
  * Provider cung cấp chức năng chat cho toàn bộ ứng dụng
  * @param {Object} props - Props của component
@@ -16,6 +19,9 @@ export const ChatProvider = ({ children }) => {
   const [activeChats, setActiveChats] = useState([]);
   const [unreadCounts, setUnreadCounts] = useState({});
   const [currentUser, setCurrentUser] = useState(null);
+  const [onlineUsers, setOnlineUsers] = useState({});
+  const [typingUsers, setTypingUsers] = useState({});
+  const typingTimers = useRef({});
 
   // Lấy thông tin người dùng hiện tại từ localStorage
   useEffect(() => {
@@ -116,6 +122,80 @@ export const ChatProvider = ({ children }) => {
     };
   }, [currentUser, activeChats]);
 
+  // Trạng thái trực tuyến ban đầu của bạn bè, sau đó cập nhật theo sự kiện PRESENCE/TYPING
+  useEffect(() => {
+    if (!currentUser?.id) return;
+
+    const timers = typingTimers.current;
+
+    /**
+     * Xử lý sự kiện trạng thái trực tuyến hoặc đang nhập
+     * @param {Object} data - Sự kiện từ /user/queue/presence
+     */
+    const handlePresenceEvent = (data) => {
+      if (data.type === 'PRESENCE' && Array.isArray(data.changes)) {
+        setOnlineUsers(prev => {
+          const next = { ...prev };
+          data.changes.forEach(change => {
+            if (change.online) {
+              next[change.userId] = true;
+            } else {
+              delete next[change.userId];
+            }
+          });
+          return next;
+        });
+      } else if (data.type === 'TYPING') {
+        clearTimeout(timers[data.userId]);
+        if (data.typing) {
+          timers[data.userId] = setTimeout(() => {
+            setTypingUsers(prev => ({ ...prev, [data.userId]: false }));
+          }, TYPING_TIMEOUT_MS);
+        }
+        setTypingUsers(prev => ({ ...prev, [data.userId]: !!data.typing }));
+      }
+    };
+
+    const fetchOnlineFriends = async () => {
+      try {
+        const response = await fetch(`${API_ENDPOINTS.BASE_URL}/api/presence/friends/${currentUser.id}`, {
+          headers: {
+            'Authorization': `Bearer ${localStorage.getItem('userToken')}`
+          }
+        });
+
+        if (response.ok) {
+          const data = await response.json();
+          const online = {};
+          (data.online || []).forEach(id => {
+            online[id] = true;
+          });
+          setOnlineUsers(online);
+        }
+      } catch (error) {
+        console.error('Lỗi khi lấy trạng thái trực tuyến của bạn bè:', error);
+      }
+    };
+
+    webSocketService.subscribeToPresence(currentUser.id, handlePresenceEvent)
+      .then(fetchOnlineFriends)
+      .catch(error => console.error('Lỗi khi đăng ký trạng thái trực tuyến:', error));
+
+    return () => {
+      webSocketService.unsubscribeFromPresence(currentUser.id);
+      Object.values(timers).forEach(clearTimeout);
+    };
+  }, [currentUser?.id]);
+
+  /**
+   * Báo cho người bạn biết mình đang (hoặc đã thôi) nhập tin nhắn
+   * @param {string} friendId - ID của người bạn
+   * @param {boolean} typing - true nếu đang nhập
+   */
+  const sendTyping = (friendId, typing) => {
+    webSocketService.sendTyping(friendId, typing);
+  };
+
   /**
    * Mở cuộc trò chuyện với một người bạn
    * @param {Object} friend - Thông tin người bạn
@@ -169,14 +249,15 @@ export const ChatProvider = ({ children }) => {
       );
 
       if (response.ok) {
-        const messages = await response.json();
+        const page = await response.json();
 
-        // Thêm cuộc trò chuyện mới
+        // Thêm cuộc trò chuyện mới (trang tin nhắn mới nhất, nextCursor để tải tin nhắn cũ hơn)
         setActiveChats([
           ...activeChats,
           {
             friend,
-            messages: Array.isArray(messages) ? messages : []
+            messages: Array.isArray(page.messages) ? page.messages : [],
+            nextCursor: page.nextCursor || null
           }
         ]);
 
@@ -202,6 +283,39 @@ export const ChatProvider = ({ children }) => {
     }
   };
 
+  /**
+   * Tải trang tin nhắn cũ hơn của cuộc trò chuyện
+   * @param {string} friendId - ID của người bạn
+   */
+  const loadOlderMessages = async (friendId) => {
+    const chat = activeChats.find(c => c.friend.id === friendId);
+    if (!currentUser?.id || !chat?.nextCursor) return;
+
+    try {
+      const response = await fetch(
+        `${API_ENDPOINTS.BASE_URL}/api/messages/conversation?userId1=${currentUser.id}&userId2=${friendId}&before=${encodeURIComponent(chat.nextCursor)}`,
+        {
+          headers: {
+            'Authorization': `Bearer ${localStorage.getItem('userToken')}`
+          }
+        }
+      );
+
+      if (response.ok) {
+        const page = await response.json();
+        setActiveChats(prev => prev.map(c => (c.friend.id === friendId
+          ? {
+              ...c,
+              messages: [...(page.messages || []), ...c.messages],
+              nextCursor: page.nextCursor || null
+            }
+          : c)));
+      }
+    } catch (error) {
+      console.error('Lỗi khi tải tin nhắn cũ hơn:', error);
+    }
+  };
+
   /**
    * Đóng cuộc trò chuyện
    * @param {string} friendId - ID của người bạn
@@ -282,7 +396,11 @@ export const ChatProvider = ({ children }) => {
         unreadCounts,
         openChat,
         closeChat,
-        sendMessage
+        sendMessage,
+        loadOlderMessages,
+        onlineUsers,
+        typingUsers,
+        sendTyping
       }}
     >
       {children}
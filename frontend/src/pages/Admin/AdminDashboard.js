@@ -13,9 +13,9 @@ const AdminDashboard = () => {
   useEffect(() => {
     const fetchData = async () => {
       try {
-        const postsResponse = await axios.get('http://localhost:8080/api/posts');
+        const postsResponse = await axios.get('http://localhost:8080/api/posts/count');
         const usersResponse = await axios.get('http://localhost:8080/api/users');
-        setTotalPosts(postsResponse.data.length);
+        setTotalPosts(postsResponse.data.count);
         setTotalUsers(usersResponse.data.length);
       } catch (err) {
         setError('Failed to fetch data');
@@ -24,9 +24,18 @@ const ManagePosts = () => {
     const fetchPosts = async () => {
       setLoading(true);
       try {
-        const response = await axios.get('http://localhost:8080/api/posts');
-        setPosts(response.data);
-        setFilteredPosts(response.data);
+        // Bảng tin trả từng trang theo con trỏ: đọc lần lượt các trang cho đến hết
+        const allPosts = [];
+        let cursor = null;
+        do {
+          const response = await axios.get('http://localhost:8080/api/posts/feed', {
+            params: { limit: 100, ...(cursor ? { cursor } : {}) }
+          });
+          allPosts.push(...response.data.posts);
+          cursor = response.data.nextCursor;
+        } while (cursor);
+        setPosts(allPosts);
+        setFilteredPosts(allPosts);
         setLoading(false);
       } catch (err) {
         setError('Failed to fetch posts');
@@ -170,7 +179,7 @@ const ManagePosts = () => {
                               <span className="me-2"><FaVideo /> {post.videos.length}</span>
                             )}
                             {post.comments && (
-                              <span className="me-2"><FaComment /> {post.comments.length}</span>
+                              <span className="me-2"><FaComment /> {post.commentCount ?? post.comments.length}</span>
                             )}
                             {post.likes && (
                               <span><FaHeart /> {post.likes.length}</span>
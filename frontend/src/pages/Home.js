@@ -12,9 +12,37 @@ import { API_ENDPOINTS } from '../config/api';
 const Home = () => {
   const [posts, setPosts] = useState([]);
   const [loading, setLoading] = useState(true);
+  const [nextCursor, setNextCursor] = useState(null);
+  const [loadingMore, setLoadingMore] = useState(false);
   const { currentUser } = useUser();
 
-  // Lấy danh sách bài đăng khi component được mount hoặc currentUser thay đổi
+  /**
+   * Lấy một trang bảng tin từ API
+   * @param {string|null} cursor - Con trỏ trang trước (null cho trang đầu)
+   * @returns {Promise<{posts: Array, nextCursor: string|null}>}
+   */
+  const fetchFeedPage = async (cursor) => {
+    const params = new URLSearchParams({ userId: currentUser.id });
+    if (cursor) {
+      params.append('cursor', cursor);
+    }
+    const response = await fetch(`${API_ENDPOINTS.BASE_URL}${API_ENDPOINTS.POSTS}/feed?${params}`, {
+      headers: {
+        'Authorization': `Bearer ${localStorage.getItem('userToken')}`
+      }
+    });
+    if (!response.ok) {
+      throw new Error(`HTTP ${response.status}`);
+    }
+    const data = await response.json();
+    // Đảm bảo posts là một mảng và lọc ra các bài đăng hợp lệ
+    return {
+      posts: Array.isArray(data.posts) ? data.posts.filter(post => post && post.id) : [],
+      nextCursor: data.nextCursor || null
+    };
+  };
+
+  // Lấy trang đầu của bảng tin khi component được mount hoặc currentUser thay đổi
   useEffect(() => {
     // Chỉ tiếp tục nếu có thông tin người dùng hợp lệ
     if (!currentUser?.id) {
@@ -22,39 +50,49 @@ const Home = () => {
     }
 
     /**
-     * Lấy danh sách bài đăng từ API
+     * Lấy trang đầu của bảng tin
      */
     const fetchPosts = async () => {
       try {
-        // Kiểm tra xem người dùng đã đăng nhập chưa
-        if (!currentUser?.id) {
-          return; // Chỉ return thay vì chuyển hướng
-        }
-
-        const response = await fetch(`${API_ENDPOINTS.BASE_URL}${API_ENDPOINTS.POSTS}?userId=${currentUser.id}`, {
-          headers: {
-            'Authorization': `Bearer ${localStorage.getItem('userToken')}`
-          }
-        });
-
-        if (response.ok) {
-          const data = await response.json();
-          // Đảm bảo data là một mảng và lọc ra các bài đăng hợp lệ
-          setPosts(Array.isArray(data) ? data.filter(post => post && post.id) : []);
-        } else {
-          setPosts([]);
-        }
+        const page = await fetchFeedPage(null);
+        setPosts(page.posts);
+        setNextCursor(page.nextCursor);
       } catch (error) {
         console.error('Lỗi khi lấy bài đăng:', error);
         setPosts([]);
+        setNextCursor(null);
       } finally {
         setLoading(false);
       }
     };
 
     fetchPosts();
+    // eslint-disable-next-line react-hooks/exhaustive-deps
   }, [currentUser]); // Thêm currentUser vào dependencies
 
+  /**
+   * Tải thêm bài đăng của trang tiếp theo
+   */
+  const loadMore = async () => {
+    if (!nextCursor || loadingMore) {
+      return;
+    }
+    setLoadingMore(true);
+    try {
+      const page = await fetchFeedPage(nextCursor);
+      // Bỏ các bài đã có (ví dụ bài vừa đăng đã được thêm vào đầu danh sách)
+      setPosts(prev => {
+        const ids = new Set(prev.map(post => post.id));
+        return [...prev, ...page.posts.filter(post => !ids.has(post.id))];
+      });
+      setNextCursor(page.nextCursor);
+    } catch (error) {
+      console.error('Lỗi khi tải thêm bài đăng:', error);
+    } finally {
+      setLoadingMore(false);
+    }
+  };
+
   // Hiển thị thông báo nếu chưa đăng nhập
   if (!currentUser) {
     return <div className="alert alert-warning m-3">Vui lòng đăng nhập để tiếp tục</div>;
@@ -93,6 +131,15 @@ const Home = () => {
                 currentUser={currentUser}
                 userData={currentUser} // Để tương thích ngược
               />
+
+              {/* Tải thêm bài đăng */}
+              {nextCursor && (
+                <div className="text-center my-3">
+                  <button className="btn btn-light" onClick={loadMore} disabled={loadingMore}>
+                    {loadingMore ? 'Đang tải...' : 'Xem thêm bài đăng'}
+                  </button>
+                </div>
+              )}
             </>
           )}
         </div>
@@ -4,6 +4,7 @@ import { API_ENDPOINTS } from '../../config/api';
 import { useUser } from '../../contexts/UserContext';
 import { useToast } from '../../context/ToastContext';
 import { webSocketService } from '../../services/websocket';
+import { applyPostEvent } from '../../services/postEvents';
 import LeftSidebar from '../../components/LeftSidebar';
 import RightSidebar from '../../components/RightSidebar';
 import SharePostModal from '../../components/Post/SharePostModal';
@@ -130,63 +131,9 @@ const PostDetail = () => {
   useEffect(() => {
     if (postId && currentUser?.id) {
       // Subscribe to post updates
-      webSocketService.subscribeToPost(postId, (updatedPost) => {
-        // Kiểm tra xem có đang nhập liệu không
-        const isTyping = isUserTyping.current;
-
-        // Kiểm tra xem có ô nhập phản hồi nào đang hiển thị không
-        const isReplyVisible = isReplyInputVisible.current;
-
-        // Chỉ cập nhật khi không đang nhập liệu và không có ô nhập phản hồi nào đang hiển thị
-        if (!isTyping && !isReplyVisible) {
-          setPost(prevPost => {
-            // Nếu không có post trước đó, thì cập nhật
-            if (!prevPost) {
-              return updatedPost;
-            }
-
-            // Tạo bản sao của updatedPost để tránh tham chiếu trực tiếp
-            const newPost = { ...updatedPost };
-
-            // Giữ nguyên các đường dẫn hình ảnh và video từ post cũ
-            // để tránh việc tải lại không cần thiết
-            if (prevPost.images && newPost.images) {
-              newPost.images = [...prevPost.images];
-            }
-            if (prevPost.videos && newPost.videos) {
-              newPost.videos = [...prevPost.videos];
-            }
-
-            // Giữ nguyên các bình luận đang được hiển thị
-            if (prevPost.comments && newPost.comments) {
-              // Chỉ cập nhật nội dung bình luận, không thay đổi trạng thái hiển thị
-              newPost.comments = newPost.comments.map(newComment => {
-                const oldComment = prevPost.comments.find(c => c.id === newComment.id);
-                if (oldComment) {
-                  // Giữ lại các trạng thái hiển thị từ bình luận cũ
-                  return {
-                    ...newComment,
-                    // Giữ nguyên các thuộc tính UI nếu có
-                  };
-                }
-                return newComment;
-              });
-            }
-
-            // Nếu là bài đăng chia sẻ, cũng giữ nguyên hình ảnh của bài gốc
-            if (prevPost.originalPost && newPost.originalPost) {
-              newPost.originalPost = { ...newPost.originalPost };
-              if (prevPost.originalPost.images && newPost.originalPost.images) {
-                newPost.originalPost.images = [...prevPost.originalPost.images];
-              }
-              if (prevPost.originalPost.videos && newPost.originalPost.videos) {
-                newPost.originalPost.videos = [...prevPost.originalPost.videos];
-              }
-            }
-
-            return newPost;
-          });
-        }
+      webSocketService.subscribeToPost(postId, (event) => {
+        // Sự kiện chỉ chứa phần thay đổi nên luôn áp dụng ngay, không làm mất nội dung đang nhập
+        setPost(prevPost => applyPostEvent(prevPost, event));
       });
 
       return () => {
@@ -0,0 +1,92 @@
+/**
+ * Áp dụng sự kiện thay đổi bài viết (nhận qua /topic/posts/{postId}) lên bản bài viết đang hiển thị.
+ * Trả về đối tượng mới, không sửa trực tiếp bài viết cũ.
+ */
+
+const addUnique = (list, value) => (list?.includes(value) ? list : [...(list || []), value]);
+
+const removeValue = (list, value) => (list || []).filter(item => item !== value);
+
+// Áp dụng hàm update lên bình luận có id tương ứng (ở bất kỳ cấp nào)
+const mapComment = (comments, commentId, update) => (comments || []).map(comment => {
+  if (comment.id === commentId) {
+    return update(comment);
+  }
+  if (comment.replies?.length) {
+    return { ...comment, replies: mapComment(comment.replies, commentId, update) };
+  }
+  return comment;
+});
+
+const removeComment = (comments, commentId) => (comments || [])
+  .filter(comment => comment.id !== commentId)
+  .map(comment => (comment.replies?.length
+    ? { ...comment, replies: removeComment(comment.replies, commentId) }
+    : comment));
+
+const containsComment = (comments, commentId) => (comments || []).some(comment =>
+  comment.id === commentId || containsComment(comment.replies, commentId));
+
+export const applyPostEvent = (post, event) => {
+  if (!post || !event) return post;
+
+  // Kết quả đồng bộ lại: thay thế toàn bộ bài viết
+  if (event.type === 'SNAPSHOT') {
+    return event.post;
+  }
+
+  const data = event.data || {};
+  const next = { ...post, eventSeq: Math.max(post.eventSeq || 0, event.seq || 0) };
+
+  switch (event.type) {
+    case 'LIKE_ADDED':
+      next.likes = addUnique(post.likes, data.userId);
+      next.likeCount = data.likeCount;
+      return next;
+    case 'LIKE_REMOVED':
+      next.likes = removeValue(post.likes, data.userId);
+      next.likeCount = data.likeCount;
+      return next;
+    case 'COMMENT_ADDED': {
+      const comment = { ...data.comment, replies: data.comment.replies || [] };
+      if (containsComment(post.comments, comment.id)) {
+        return next;
+      }
+      next.commentCount = (post.commentCount || 0) + 1;
+      next.comments = comment.parentId
+        ? mapComment(post.comments, comment.parentId, parent => ({
+            ...parent,
+            replyCount: (parent.replyCount || 0) + 1,
+            replies: [...(parent.replies || []), comment]
+          }))
+        : [...(post.comments || []), comment];
+      return next;
+    }
+    case 'COMMENT_DELETED':
+      next.commentCount = Math.max(0, (post.commentCount || 0) - (data.deletedCount || 0));
+      next.comments = removeComment(post.comments, data.commentId);
+      if (data.parentId) {
+        next.comments = mapComment(next.comments, data.parentId, parent => ({
+          ...parent,
+          replyCount: Math.max(0, (parent.replyCount || 0) - 1)
+        }));
+      }
+      return next;
+    case 'COMMENT_LIKE_CHANGED':
+      next.comments = mapComment(post.comments, data.commentId, comment => ({
+        ...comment,
+        likes: data.liked ? addUnique(comment.likes, data.userId) : removeValue(comment.likes, data.userId),
+        likeCount: data.likeCount
+      }));
+      return next;
+    case 'POST_EDITED':
+      next.content = data.content;
+      next.privacy = data.privacy;
+      next.images = data.images;
+      next.imageVariants = data.imageVariants;
+      next.videos = data.videos;
+      return next;
+    default:
+      return post;
+  }
+};
@@ -4,7 +4,7 @@ import { API_ENDPOINTS } from '../config/api';
 
 /**
  * Dịch vụ WebSocket để xử lý kết nối thời gian thực
- * Quản lý các kết nối và đăng ký cho bài viết, bạn bè, tin nhắn và thông báo
+ * Quản lý các kết nối và đăng ký cho bài viết, bạn bè, tin nhắn, thông báo và trạng thái trực tuyến
  */
 class WebSocketService {
     constructor() {
@@ -16,6 +16,7 @@ class WebSocketService {
         this.friendSubscriptions = new Map(); // Đăng ký cho cập nhật bạn bè
         this.messageSubscriptions = new Map(); // Đăng ký cho tin nhắn
         this.notificationSubscriptions = new Map(); // Đăng ký cho thông báo
+        this.presenceSubscriptions = new Map(); // Đăng ký cho trạng thái trực tuyến và đang nhập
 
         // Trạng thái kết nối
         this.connected = false;
@@ -65,6 +66,12 @@ class WebSocketService {
 
                 this.stompClient = new Client({
                     webSocketFactory: () => socket,
+                    // Server xác thực CONNECT bằng JWT; đọc lại token mỗi lần (kết nối lại sau khi đăng nhập lại)
+                    beforeConnect: () => {
+                        this.stompClient.connectHeaders = {
+                            Authorization: `Bearer ${localStorage.getItem('userToken')}`
+                        };
+                    },
                     debug: (str) => {
                         // Chỉ log các thông báo quan trọng để tránh spam console
                         if (str.includes('CONNECT') || str.includes('ERROR') || str.includes('DISCONNECT')) {
@@ -162,12 +169,14 @@ class WebSocketService {
                 const currentFriendSubscriptions = new Map(this.friendSubscriptions);
                 const currentMessageSubscriptions = new Map(this.messageSubscriptions);
                 const currentNotificationSubscriptions = new Map(this.notificationSubscriptions);
+                const currentPresenceSubscriptions = new Map(this.presenceSubscriptions);
 
                 // Xóa các map đăng ký trước khi hủy kích hoạt
                 this.subscriptions.clear();
                 this.friendSubscriptions.clear();
                 this.messageSubscriptions.clear();
                 this.notificationSubscriptions.clear();
+                this.presenceSubscriptions.clear();
 
                 // Hủy kích hoạt client
                 this.stompClient.deactivate();
@@ -177,6 +186,7 @@ class WebSocketService {
                 this.friendSubscriptions = currentFriendSubscriptions;
                 this.messageSubscriptions = currentMessageSubscriptions;
                 this.notificationSubscriptions = currentNotificationSubscriptions;
+                this.presenceSubscriptions = currentPresenceSubscriptions;
             } catch (e) {
                 console.error('Lỗi khi hủy kích hoạt STOMP client:', e);
                 // Xóa các đăng ký khi có lỗi
@@ -184,6 +194,7 @@ class WebSocketService {
                 this.friendSubscriptions.clear();
                 this.messageSubscriptions.clear();
                 this.notificationSubscriptions.clear();
+                this.presenceSubscriptions.clear();
             } finally {
                 this.stompClient = null;
             }
@@ -277,14 +288,30 @@ class WebSocketService {
                 this.notificationSubscriptions.set(userId, tempNotificationSubscriptions.get(userId));
             }
         }
+
+        // Đăng ký lại cho trạng thái trực tuyến
+        const presenceSubscriptions = new Map(this.presenceSubscriptions);
+        const tempPresenceSubscriptions = new Map(this.presenceSubscriptions);
+        this.presenceSubscriptions.clear();
+
+        for (const [userId, { callback }] of presenceSubscriptions) {
+            try {
+                await this.subscribeToPresence(userId, callback);
+            } catch (error) {
+                console.error(`Lỗi khi đăng ký lại trạng thái trực tuyến cho người dùng ${userId}:`, error);
+                // Khôi phục đăng ký gốc trong map
+                this.presenceSubscriptions.set(userId, tempPresenceSubscriptions.get(userId));
+            }
+        }
     }
 
     /**
-     * Đăng ký nhận cập nhật cho một bài viết
+     * Đăng ký nhận sự kiện thay đổi cho một bài viết
      * @param {string} postId ID của bài viết
-     * @param {Function} callback Hàm callback xử lý khi nhận được cập nhật
+     * @param {Function} callback Hàm callback nhận sự kiện (áp dụng bằng applyPostEvent)
+     * @param {number} lastSeq eventSeq của bản bài viết đang hiển thị (để phát hiện sự kiện bị thiếu)
      */
-    async subscribeToPost(postId, callback) {
+    async subscribeToPost(postId, callback, lastSeq) {
         if (!postId || !callback) return;
 
         if (this.subscriptions.has(postId)) {
@@ -296,15 +323,16 @@ class WebSocketService {
                 await this.connect();
             }
 
-            const subscription = this.stompClient.subscribe(`/topic/posts/${postId}`, message => {
+            const entry = { callback, subscription: null, lastSeq, syncing: false };
+            entry.subscription = this.stompClient.subscribe(`/topic/posts/${postId}`, message => {
                 try {
-                    const post = JSON.parse(message.body);
-                    callback(post);
+                    const event = JSON.parse(message.body);
+                    this.handlePostEvent(postId, entry, event);
                 } catch (error) {
                     console.error('Lỗi khi phân tích tin nhắn:', error);
                 }
             });
-            this.subscriptions.set(postId, { callback, subscription });
+            this.subscriptions.set(postId, entry);
         } catch (error) {
             console.error(`Lỗi khi đăng ký bài viết ${postId}:`, error);
             // Thử kết nối lại khi đăng ký thất bại
@@ -312,6 +340,68 @@ class WebSocketService {
         }
     }
 
+    /**
+     * Chuyển sự kiện theo đúng thứ tự seq, đồng bộ lại khi phát hiện sự kiện bị thiếu
+     * @param {string} postId ID của bài viết
+     * @param {Object} entry Thông tin đăng ký của bài viết
+     * @param {Object} event Sự kiện nhận được
+     */
+    handlePostEvent(postId, entry, event) {
+        // Đang đồng bộ lại thì kết quả đồng bộ sẽ bao gồm sự kiện này
+        if (entry.syncing) return;
+
+        // Chưa biết seq ban đầu: lấy sự kiện đầu tiên làm mốc
+        if (entry.lastSeq === undefined || entry.lastSeq === null) {
+            entry.lastSeq = event.seq;
+            entry.callback(event);
+            return;
+        }
+
+        // Sự kiện cũ hoặc trùng lặp
+        if (event.seq <= entry.lastSeq) return;
+
+        if (event.seq === entry.lastSeq + 1) {
+            entry.lastSeq = event.seq;
+            entry.callback(event);
+            return;
+        }
+
+        this.resyncPost(postId, entry);
+    }
+
+    /**
+     * Lấy lại các sự kiện bị thiếu (hoặc toàn bộ bài viết) từ server
+     * @param {string} postId ID của bài viết
+     * @param {Object} entry Thông tin đăng ký của bài viết
+     */
+    async resyncPost(postId, entry) {
+        entry.syncing = true;
+        try {
+            const userData = JSON.parse(localStorage.getItem('userData') || 'null');
+            const viewerParam = userData?.id ? `&viewerId=${userData.id}` : '';
+            const response = await fetch(`${API_ENDPOINTS.BASE_URL}/api/posts/${postId}/events?since=${entry.lastSeq}${viewerParam}`, {
+                headers: {
+                    'Authorization': `Bearer ${localStorage.getItem('userToken')}`
+                }
+            });
+            if (!response.ok) {
+                throw new Error(`HTTP ${response.status}`);
+            }
+
+            const data = await response.json();
+            if (data.events) {
+                data.events.forEach(event => entry.callback(event));
+            } else if (data.post) {
+                entry.callback({ type: 'SNAPSHOT', postId, seq: data.seq, post: data.post });
+            }
+            entry.lastSeq = data.seq;
+        } catch (error) {
+            console.error(`Lỗi khi đồng bộ lại bài viết ${postId}:`, error);
+        } finally {
+            entry.syncing = false;
+        }
+    }
+
     /**
      * Hủy đăng ký cập nhật cho một bài viết
      * @param {string} postId ID của bài viết
@@ -329,7 +419,7 @@ class WebSocketService {
     }
 
     /**
-     * Đăng ký nhận cập nhật về bạn bè cho một người dùng
+     * Đăng ký nhận cập nhật về bạn bè cho một người dùng (hàng đợi riêng /user/queue/friends của phiên đã xác thực)
      * @param {string} userId ID của người dùng
      * @param {Function} callback Hàm callback xử lý khi nhận được cập nhật
      */
@@ -348,7 +438,7 @@ class WebSocketService {
                 await this.connect();
             }
 
-            const subscription = this.stompClient.subscribe(`/topic/friends/${userId}`, message => {
+            const subscription = this.stompClient.subscribe('/user/queue/friends', message => {
                 try {
                     const data = JSON.parse(message.body);
                     callback(data);
@@ -382,7 +472,7 @@ class WebSocketService {
     }
 
     /**
-     * Đăng ký nhận tin nhắn cho một người dùng
+     * Đăng ký nhận tin nhắn cho một người dùng (hàng đợi riêng /user/queue/messages của phiên đã xác thực)
      * @param {string} userId ID của người dùng
      * @param {Function} callback Hàm callback xử lý khi nhận được tin nhắn
      */
@@ -401,7 +491,7 @@ class WebSocketService {
                 await this.connect();
             }
 
-            const subscription = this.stompClient.subscribe(`/topic/messages/${userId}`, message => {
+            const subscription = this.stompClient.subscribe('/user/queue/messages', message => {
                 try {
                     const data = JSON.parse(message.body);
                     callback(data);
@@ -434,7 +524,7 @@ class WebSocketService {
     }
 
     /**
-     * Đăng ký nhận thông báo cho một người dùng
+     * Đăng ký nhận thông báo cho một người dùng (hàng đợi riêng /user/queue/notifications của phiên đã xác thực)
      * @param {string} userId ID của người dùng
      * @param {Function} callback Hàm callback xử lý khi nhận được thông báo
      */
@@ -453,7 +543,7 @@ class WebSocketService {
                 await this.connect();
             }
 
-            const subscription = this.stompClient.subscribe(`/topic/notifications/${userId}`, message => {
+            const subscription = this.stompClient.subscribe('/user/queue/notifications', message => {
                 try {
                     const data = JSON.parse(message.body);
                     callback(data);
@@ -485,6 +575,76 @@ class WebSocketService {
         }
     }
 
+    /**
+     * Đăng ký nhận trạng thái trực tuyến và đang nhập của bạn bè (hàng đợi riêng /user/queue/presence)
+     * @param {string} userId ID của người dùng
+     * @param {Function} callback Hàm callback nhận sự kiện PRESENCE hoặc TYPING
+     */
+    async subscribeToPresence(userId, callback) {
+        if (!userId || !callback) {
+            console.error('ID người dùng hoặc callback không hợp lệ cho đăng ký trạng thái trực tuyến');
+            return;
+        }
+
+        if (this.presenceSubscriptions.has(userId)) {
+            return;
+        }
+
+        try {
+            if (!this.connected) {
+                await this.connect();
+            }
+
+            const subscription = this.stompClient.subscribe('/user/queue/presence', message => {
+                try {
+                    const data = JSON.parse(message.body);
+                    callback(data);
+                } catch (error) {
+                    console.error('Lỗi khi phân tích sự kiện trạng thái trực tuyến:', error);
+                }
+            });
+
+            this.presenceSubscriptions.set(userId, { callback, subscription });
+        } catch (error) {
+            console.error(`Lỗi khi đăng ký trạng thái trực tuyến cho người dùng ${userId}:`, error);
+            this.reconnectWithDelay();
+        }
+    }
+
+    /**
+     * Hủy đăng ký trạng thái trực tuyến cho một người dùng
+     * @param {string} userId ID của người dùng
+     */
+    unsubscribeFromPresence(userId) {
+        const sub = this.presenceSubscriptions.get(userId);
+        if (sub && sub.subscription) {
+            try {
+                sub.subscription.unsubscribe();
+            } catch (e) {
+                console.error(`Lỗi khi hủy đăng ký trạng thái trực tuyến cho người dùng ${userId}:`, e);
+            }
+            this.presenceSubscriptions.delete(userId);
+        }
+    }
+
+    /**
+     * Báo cho người nhận biết mình đang (hoặc đã thôi) nhập tin nhắn
+     * @param {string} peerId ID của người nhận
+     * @param {boolean} typing true nếu đang nhập
+     */
+    sendTyping(peerId, typing) {
+        if (!this.connected || !this.stompClient || !peerId) return;
+
+        try {
+            this.stompClient.publish({
+                destination: '/app/typing',
+                body: JSON.stringify({ peerId, typing })
+            });
+        } catch (error) {
+            console.error('Lỗi khi gửi trạng thái đang nhập:', error);
+        }
+    }
+
     /**
      * Ngắt kết nối WebSocket và hủy tất cả các đăng ký
      */
@@ -542,6 +702,18 @@ class WebSocketService {
             });
             this.notificationSubscriptions.clear();
 
+            // Hủy đăng ký từ trạng thái trực tuyến
+            this.presenceSubscriptions.forEach((sub) => {
+                if (sub.subscription) {
+                    try {
+                        sub.subscription.unsubscribe();
+                    } catch (e) {
+                        console.error('Lỗi khi hủy đăng ký trạng thái trực tuyến:', e);
+                    }
+                }
+            });
+            this.presenceSubscriptions.clear();
+
             this.resetConnection();
         }
     }